@@ -1,5 +1,8 @@
 package animation;
 
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
@@ -25,6 +28,15 @@ public class AnimatedModel {
 	// Skeleton of the animated model
 	private final Joint rootJoint; // Only needed to have a reference to the root joint, as it is structured in a hierarchy
 	private final int jointCount; // Holds the amount of joints in the skeleton, so we know how big we have to create the matrix
+	
+	// The joints flattened into arrays, and the pose the animator writes into every frame
+	private final Skeleton skeleton;
+	private final Pose pose;
+	
+	// The joint transforms packed one after the other, 16 floats each, ready to be loaded into the shader in one call
+	private final FloatBuffer jointPalette;
+	// The same transforms as dual quaternions, 8 floats each
+	private final FloatBuffer dualQuaternionPalette;
 
 	/**
 	 * AnimatedModel needs its own animator, as this will do all the work, 
@@ -49,13 +61,26 @@ public class AnimatedModel {
 		this.modelTexture = modelTexture;
 		this.rootJoint = rootJoint;
 		this.jointCount = jointCount;
-		this.animator = new Animator(this);
 		this.position = position;
 		this.rotX = rotX;
 		this.rotY = rotY;
 		this.rotZ = rotZ;
 		this.scale = scale;
 		rootJoint.calculateInverseBindTransform(new Matrix4f()); // This function takes in a parent bind transform, but as we use the root joint, we just send in a matrix
+		this.skeleton = new Skeleton(rootJoint, jointCount);
+		this.pose = new Pose(jointCount);
+		pose.load(skeleton.getBindPose());
+		this.jointPalette = BufferUtils.createFloatBuffer(jointCount * 16);
+		this.dualQuaternionPalette = BufferUtils.createFloatBuffer(jointCount * DualQuaternion.FLOATS);
+		this.animator = new Animator(this);
+	}
+	
+	/**
+	 * Creates another animated model with the same mesh and texture, but with its own joints, so it can
+	 * play its own animation. Used to fill the world with many of the same character.
+	 */
+	public AnimatedModel createInstance(Vector3f position, float rotX, float rotY, float rotZ, float scale) {
+		return new AnimatedModel(rawModel, modelTexture, rootJoint.copy(), jointCount, position, rotX, rotY, rotZ, scale);
 	}
 	
 	/**
@@ -83,6 +108,21 @@ public class AnimatedModel {
 		animator.doAnimation(animation);
 	}
 	
+	/**
+	 * Tells the animator of this animated model to fade over to the animation.
+	 * @param seconds - how long the fade takes
+	 */
+	public void crossFade(Animation animation, float seconds) {
+		animator.crossFade(animation, seconds);
+	}
+	
+	/**
+	 * Tells the animator of this animated model to play the baked animation.
+	 */
+	public void doAnimation(BakedAnimation animation) {
+		animator.doAnimation(animation);
+	}
+	
 	/**
 	 * Updates the animator for this entity, basically updating the animated
 	 * pose of the entity. Must be called every frame.
@@ -90,30 +130,62 @@ public class AnimatedModel {
 	public void update() {
 		animator.update();
 	}
-
 	
 	/**
-	 * Adds the current joint as well as their children to the matrix array
-	 * containing the joint transforms
+	 * Same as the method above, with the time since the last update given.
 	 */
-	private void addJointsToMatrixArray(Joint currentJoint, Matrix4f[] jointMatrices) {
-		jointMatrices[currentJoint.jointID] = currentJoint.getAnimatedTransform();
-		for (Joint childJoint : currentJoint.children) {
-			addJointsToMatrixArray(childJoint, jointMatrices);
-		}
+	public void update(float seconds) {
+		animator.update(seconds);
 	}
 	
 	// Getters and setters
 	
 	/**
-	 * Creates a matrix, the size dependent of the amounts of joints in the skeleton.
-	 * The way the joints are ordered is dependent of the index of the joint. 
-	 * And returns the transforms of the joints in the current pose of the animation
+	 * Returns the transforms of the joints in the current pose of the animation, by the index of the joint.
+	 * The array and the matrices in it are the same every time, the animator writes the new pose into them.
 	 */
 	public Matrix4f[] getJointTransforms() {
-		Matrix4f[] jointMatrices = new Matrix4f[jointCount];
-		addJointsToMatrixArray(rootJoint, jointMatrices);
-		return jointMatrices;
+		return skeleton.getJointTransforms();
+	}
+	
+	/**
+	 * Packs the joint transforms into the direct buffer of the model, column by column the way OpenGL
+	 * wants them, and returns it ready to be read. The buffer is the same every time.
+	 */
+	public FloatBuffer getJointPalette() {
+		Matrix4f[] transforms = skeleton.getJointTransforms();
+		jointPalette.clear();
+		for (Matrix4f transform : transforms) {
+			transform.store(jointPalette);
+		}
+		jointPalette.flip();
+		return jointPalette;
+	}
+	
+	/**
+	 * Packs the joint transforms into the direct buffer of the model as dual quaternions, half the size of
+	 * the matrices, and returns it ready to be read. The buffer is the same every time.
+	 */
+	public FloatBuffer getDualQuaternionPalette() {
+		Matrix4f[] transforms = skeleton.getJointTransforms();
+		dualQuaternionPalette.clear();
+		for (Matrix4f transform : transforms) {
+			DualQuaternion.store(transform, dualQuaternionPalette);
+		}
+		dualQuaternionPalette.flip();
+		return dualQuaternionPalette;
+	}
+	
+	public Skeleton getSkeleton() {
+		return skeleton;
+	}
+	
+	public Pose getPose() {
+		return pose;
+	}
+	
+	public Animator getAnimator() {
+		return animator;
 	}
 	
 	public RawModel getRawModel() {
@@ -1,8 +1,5 @@
 package animation;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
@@ -12,8 +9,7 @@ import colladaParser.ColladaLoader;
 import colladaParser.AnimatedModelData;
 import colladaParser.AnimationData;
 import colladaParser.JointData;
-import colladaParser.JointTransformData;
-import colladaParser.KeyFrameData;
+import colladaParser.JointTrackData;
 import colladaParser.MeshData;
 import colladaParser.SkeletonData;
 import renderEngine.Loader;
@@ -31,9 +27,9 @@ public class AnimatedModelLoader {
 	public AnimatedModel loadAnimatedModel(String modelFile, String textureFile, Vector3f position, float rotX, float rotY, float rotZ, float scale, Loader loader) {
 		MyFile modelfile = new MyFile("res", modelFile +".dae");
 		
-		AnimatedModelData entityData = ColladaLoader.loadColladaModel(modelfile, 3);
+		AnimatedModelData entityData = ColladaLoader.loadColladaModel(modelfile, SkinningFormat.WEIGHTS_PER_VERTEX);
 		MeshData modelMesh = entityData.getMeshData();
-		RawModel model = loader.loadAnimatedModelToVAO(modelMesh.getVertices(), modelMesh.getTextureCoords(), modelMesh.getNormals(), modelMesh.getIndices(), modelMesh.getJointIds(), modelMesh.getVertexWeights());
+		RawModel model = loader.loadAnimatedModelToVAO(modelMesh.getVertices(), modelMesh.getTextureCoords(), modelMesh.getNormals(), modelMesh.getIndices(), modelMesh.getJointIds(), modelMesh.getVertexWeights(), modelMesh.getWeightsPerVertex());
 		ModelTexture texture = new ModelTexture(loader.loadTexture(textureFile)); // Set texture
 		SkeletonData skeletonData = entityData.getJointsData();
 		Joint headJoint = createJoints(skeletonData.headJoint);
@@ -42,8 +38,22 @@ public class AnimatedModelLoader {
 	}
 	
 	/**
-	 * Loads up the animation. Finds the keyframes in the collada file, 
-	 * creates the key frames, and initializes a new animation
+	 * Loads only the skeleton of a model, without uploading anything to the GPU. The AnimatedModel
+	 * has no RawModel or texture, so it can be animated but not rendered. Used where there is no
+	 * OpenGL, like the animation benchmarks.
+	 */
+	public AnimatedModel loadSkeleton(String modelFile) {
+		MyFile modelfile = new MyFile("res", modelFile +".dae");
+		
+		AnimatedModelData entityData = ColladaLoader.loadColladaModel(modelfile, SkinningFormat.WEIGHTS_PER_VERTEX);
+		SkeletonData skeletonData = entityData.getJointsData();
+		Joint headJoint = createJoints(skeletonData.headJoint);
+		return new AnimatedModel(null, null, headJoint, skeletonData.jointCount, new Vector3f(0, 0, 0), 0, 0, 0, 1);
+	}
+	
+	/**
+	 * Loads up the animation. Finds the keyframes of every joint in the collada file, 
+	 * creates a track for each joint, and initializes a new animation
 	 * @param file
 	 * @return
 	 */
@@ -51,43 +61,38 @@ public class AnimatedModelLoader {
 		MyFile colladaFile = new MyFile(new MyFile("res"), file + ".dae");
 		
 		AnimationData animationData = ColladaLoader.loadColladaAnimation(colladaFile);
-		KeyFrame[] frames = new KeyFrame[animationData.keyFrames.length];
-		for (int i = 0; i < frames.length; i++) {
-			frames[i] = createKeyFrame(animationData.keyFrames[i]);
+		JointTrack[] tracks = new JointTrack[animationData.tracks.length];
+		for (int i = 0; i < tracks.length; i++) {
+			tracks[i] = createTrack(animationData.tracks[i]);
 		}
-		return new Animation(animationData.lengthSeconds, frames);
+		return new Animation(animationData.lengthSeconds, tracks);
 	}
 	
 	/**
-	 * Creates a keyframe from the data extracted from the collada file.
+	 * Creates the track of one joint from the data extracted from the collada file.
+	 * The translation and rotation are taken out of every matrix, the same way 
+	 * the keyframes of a JointTransform are.
 	 * 
 	 * @param data
-	 *            - the data about the keyframe that was extracted from the
-	 *            collada file.
-	 * @return The keyframe.
+	 *            - the keyframes of the joint from the collada file.
+	 * @return The track.
 	 */
-	private static KeyFrame createKeyFrame(KeyFrameData data) {
-		Map<String, JointTransform> map = new HashMap<String, JointTransform>();
-		for (JointTransformData jointData : data.jointTransforms) {
-			JointTransform jointTransform = createTransform(jointData);
-			map.put(jointData.jointNameId, jointTransform);
+	private static JointTrack createTrack(JointTrackData data) {
+		int count = data.times.length;
+		float[] translations = new float[count * 3];
+		float[] rotations = new float[count * 4];
+		for (int i = 0; i < count; i++) {
+			Matrix4f matrix = data.jointLocalTransforms[i];
+			Quaternion rotation = Quaternion.fromMatrix(matrix);
+			translations[i * 3] = matrix.m30;
+			translations[i * 3 + 1] = matrix.m31;
+			translations[i * 3 + 2] = matrix.m32;
+			rotations[i * 4] = rotation.getX();
+			rotations[i * 4 + 1] = rotation.getY();
+			rotations[i * 4 + 2] = rotation.getZ();
+			rotations[i * 4 + 3] = rotation.getW();
 		}
-		return new KeyFrame(data.time, map);
-	}
-	
-	
-	/**
-	 * Creates a joint transform from the data extracted from the collada file.
-	 * 
-	 * @param data
-	 *            - the data from the collada file.
-	 * @return The joint transform.
-	 */
-	private static JointTransform createTransform(JointTransformData data) {
-		Matrix4f matrix = data.jointLocalTransform;
-		Quaternion rotation = Quaternion.fromMatrix(matrix);
-		Vector3f translation = new Vector3f(matrix.m30, matrix.m31, matrix.m32);
-		return new JointTransform(translation, rotation);
+		return new JointTrack(data.jointNameId, data.times, translations, rotations);
 	}
 	
 	/**
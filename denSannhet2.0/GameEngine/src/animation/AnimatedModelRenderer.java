@@ -1,14 +1,17 @@
 package animation;
 
+import java.util.List;
+
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
 
 import animation.AnimatedModel;
 import models.RawModel;
+import renderEngine.GlStateCache;
 import renderEngine.MasterRenderer;
+import renderEngine.RenderQueue;
+import shaders.shaderProgram;
 import textures.ModelTexture;
 import toolbox.Maths;
 
@@ -19,63 +22,121 @@ import toolbox.Maths;
  * 
  * @author Glenn Arne Christensen
  */
-public class AnimatedModelRenderer {
+public class AnimatedModelRenderer implements RenderQueue.Renderer {
 
 	private AnimatedModelShader shader;
+	private GlStateCache glState = GlStateCache.get();
+	
+	// The animated models of the frame, the items submitted to the render queue are indices into it
+	private List<AnimatedModel> frameModels;
+	private ModelTexture boundTexture;
+	
+	private int uploadsAtBegin = 0;
+	private int uniformUploads = 0;
 
 	/**
-	 * Initializes the shader program used for rendering animated models.
+	 * Takes the shader program used for rendering animated models. The camera, sky colour and lights come from
+	 * the SceneData of the MasterRenderer, so nothing has to be loaded here.
 	 */
-	public AnimatedModelRenderer(AnimatedModelShader shader, Matrix4f projectionMatrix) {
+	public AnimatedModelRenderer(AnimatedModelShader shader) {
 		this.shader = shader;
-		
-		// Loads the shader, only has to be done once
-		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
-		shader.stop();
 	}
 
 	/**
-	 * Renders the animated entity. Works the same as rendering a entity,
-	 * but notice with a animated model we have to enable five attributes
+	 * Submits all the animated entities to the render queue, one draw each. The queue sorts them by texture
+	 * and VAO, so a crowd of the same character only binds them once.
+	 */
+	public void submit(List<AnimatedModel> entities, RenderQueue queue, Vector3f cameraPosition) {
+		frameModels = entities;
+		uniformUploads = 0;
+		for (int i = 0; i < entities.size(); i++) {
+			AnimatedModel entity = entities.get(i);
+			Vector3f position = entity.getPosition();
+			float dx = position.x - cameraPosition.x;
+			float dy = position.y - cameraPosition.y;
+			float dz = position.z - cameraPosition.z;
+			long key = queue.createKey(MasterRenderer.ANIMATED_SHADER, false, entity.getModelTexture().getID(),
+					entity.getRawModel().getVaoID(), (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+			queue.submit(key, i);
+		}
+	}
+	
+	@Override
+	public void begin() {
+		shader.start();
+		shader.loadSkinningMode();
+		boundTexture = null;
+		uploadsAtBegin = shaderProgram.getUniformUploads();
+	}
+	
+	@Override
+	public void bindTexture(int item) {
+		// Tells OpenGL which texture we want to render
+		glState.bindTexture(0, GL11.GL_TEXTURE_2D, frameModels.get(item).getModelTexture().getID());
+	}
+	
+	/**
+	 * Binds the VAO. Notice with a animated model we have to enable five attributes
 	 * of the VAO before we render the animated entity. This is because 
-	 * we need to have the joints and weights
+	 * we need to have the joints and weights.
 	 */
-	public void render(AnimatedModel entity) {
-		prepareTexturedModel(entity);
+	@Override
+	public void bindModel(int item) {
+		glState.bindVertexArray(frameModels.get(item).getRawModel().getVaoID());
+		enableAttributes();
+	}
+	
+	/**
+	 * Renders the animated entity. The material is only loaded again when the texture is different
+	 * from the one before it.
+	 */
+	@Override
+	public void draw(int item) {
+		AnimatedModel entity = frameModels.get(item);
+		if (entity.getModelTexture() != boundTexture) {
+			boundTexture = entity.getModelTexture();
+			loadMaterial(boundTexture);
+		}
 		prepareInstance(entity);
 		
 		// Have to get the joint transforms of the animated model before we render it
-		shader.loadJointTransforms(entity.getJointTransforms());
-		
+		shader.loadJointTransforms(entity);
 		
 		GL11.glDrawElements(GL11.GL_TRIANGLES, entity.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
-		unbindTexturedModel(); // Unbinds all textures after its done
+	}
+	
+	@Override
+	public void end() {
+		uniformUploads = shaderProgram.getUniformUploads() - uploadsAtBegin;
+		// Also have to unbind the VAO by putting in a 0
+		glState.bindVertexArray(0);
+		shader.stop();
 	}
 	
 	/**
-	 * Prepares the animated model by enabling five attributes of the VAO.
-	 * We also load up damper and reflectivity onto texture, before binding it.
+	 * @return the number of glUniform calls used to draw the animated models in the last frame
 	 */
-	public void prepareTexturedModel (AnimatedModel entity) {
-		RawModel rawModel = entity.getRawModel();
-		
-		// Binds the VAO we want to use
-		GL30.glBindVertexArray(rawModel.getVaoID());
-		GL20.glEnableVertexAttribArray(0);
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
-		GL20.glEnableVertexAttribArray(3);
-		GL20.glEnableVertexAttribArray(4);
-		
-		// Load up the texture and apply the shinedamper and reflectivity on it
-		ModelTexture texture = entity.getModelTexture();
+	public int getUniformUploads() {
+		return uniformUploads;
+	}
+	
+	/**
+	 * Enables the five attributes of the VAO that is bound.
+	 */
+	private void enableAttributes() {
+		glState.enableVertexAttribArray(0);
+		glState.enableVertexAttribArray(1);
+		glState.enableVertexAttribArray(2);
+		glState.enableVertexAttribArray(3);
+		glState.enableVertexAttribArray(4);
+	}
+	
+	/**
+	 * Load up the number of rows, shinedamper and reflectivity of the texture.
+	 */
+	private void loadMaterial(ModelTexture texture) {
 		shader.loadNumberOfRows(texture.getNumberOfRows());
 		shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
-		
-		// Tells OpenGL which texture we want to render
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, entity.getModelTexture().getID());
 	}
 	
 	/**
@@ -87,21 +148,5 @@ public class AnimatedModelRenderer {
 		shader.loadOffset(0, 0);
 		
 	}
-	
-	/**
-	 *  Disable the attribute list when everything is finished.
-	 */
-	private void unbindTexturedModel() {
-		MasterRenderer.enableCulling();
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL20.glDisableVertexAttribArray(3);
-		GL20.glDisableVertexAttribArray(4);
-		
-		// Also have to unbind the VAO by putting in a 0
-		GL30.glBindVertexArray(0);
-		
-	}
 
 }
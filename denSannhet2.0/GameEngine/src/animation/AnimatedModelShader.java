@@ -1,16 +1,11 @@
 package animation;
 
+import renderEngine.SceneData;
 import shaders.shaderProgram;
-import toolbox.Maths;
 
-import java.util.List;
+import java.nio.FloatBuffer;
 
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
-
-import entities.Camera;
-import entities.Light;
 
 /**
  * Implemented the same way as done for a entity,
@@ -27,21 +22,22 @@ public class AnimatedModelShader extends shaderProgram {
 	private static final String FRAGMENT_SHADER = "src/animation/animatedEntityFragment.txt";
 	
 	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int location_lightPosition[];
-	private int location_lightColour[];
-	private int location_attenuation[];
 	private int location_shineDamper;
 	private int location_reflectivity;
 	private int location_useFakeLighting;
-	private int location_skyColour;
 	private int location_numberOfRows;
 	private int location_offset;
 	private int location_jointTransforms[]; 
+	private int location_jointDualQuaternions;
+	private int location_useDualQuaternions;
+	
+	// Loads the whole palette of joint transforms with one call, instead of one call per joint
+	private boolean paletteUpload = true;
+	// Skins with dual quaternions, 8 floats per joint, instead of matrices
+	private boolean dualQuaternionSkinning = false;
 	
-	private static final int MAX_LIGHTS = 10;
 	private static final int MAX_JOINTS = 50; // The max number of joints allowed in a skeleton
+	private static final Matrix4f IDENTITY = new Matrix4f(); // Loaded for the joints the skeleton doesn't have
 	
 	/**
 	 * Creates a shader program for the AnimatedModelRenderer and 
@@ -64,28 +60,19 @@ public class AnimatedModelShader extends shaderProgram {
 	// Gets the location of the uniform variable found in animatedEntityVertex
 	@Override
 	protected void getAllUniformLocations() {
+		super.bindUniformBlock(SceneData.BLOCK_NAME, SceneData.BINDING);
 		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
 		location_shineDamper = super.getUniformLocation("shineDamper");
 		location_reflectivity = super.getUniformLocation("reflectivity");
-		location_skyColour = super.getUniformLocation("skyColour");
 		location_numberOfRows = super.getUniformLocation("numberOfRows");
 		location_offset = super.getUniformLocation("offset");
 		
-		location_lightPosition = new int[MAX_LIGHTS];
-		location_lightColour = new int[MAX_LIGHTS];
-		location_attenuation = new int[MAX_LIGHTS];
-		for(int i=0; i < 10; i++) {
-			location_lightPosition[i] = super.getUniformLocation("lightPosition["+i+"]");
-			location_lightColour[i] = super.getUniformLocation("lightColour["+i+"]");
-			location_attenuation[i] = super.getUniformLocation("attenuation[" + i + "]");
-		}
-		
 		location_jointTransforms = new int[MAX_JOINTS];
 		for(int i=0; i<MAX_JOINTS; i++) {
 			location_jointTransforms[i] = super.getUniformLocation("jointTransforms[" + i + "]");
 		}
+		location_jointDualQuaternions = super.getUniformLocation("jointDualQuaternions[0]");
+		location_useDualQuaternions = super.getUniformLocation("useDualQuaternions");
 		
 		
 	}
@@ -101,11 +88,7 @@ public class AnimatedModelShader extends shaderProgram {
 	}
 	
 	public void loadOffset(float x, float y) {
-		super.load2DVector(location_offset, new Vector2f(x, y));
-	}
-	
-	public void loadSkyColor(float r, float g, float b) {
-		super.loadVector(location_skyColour, new Vector3f(r, g, b));
+		super.load2DVector(location_offset, x, y);
 	}
 	
 	public void loadFakeLightingVariable(boolean useFakeLighting) {
@@ -117,41 +100,69 @@ public class AnimatedModelShader extends shaderProgram {
 		super.loadMatrix(location_transformationMatrix, matrix);
 	}
 	
-	// Takes inn a light we want to load up
-	public void loadLights(List<Light> lights) {
-		for(int i = 0; i < 10; i++) {
-			if(i < lights.size()) {
-				super.loadVector(location_lightPosition[i], lights.get(i).getPosition());
-				super.loadVector(location_lightColour[i], lights.get(i).getColour());
-				super.loadVector(location_attenuation[i], lights.get(i).getAttentuation());
-			}else {
-				super.loadVector(location_lightPosition[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_lightColour[i],  new Vector3f(0, 0, 0));
-				super.loadVector(location_attenuation[i], new Vector3f(1, 0, 0));
+	/**
+	 * Loads the joint transforms of the model. With the palette upload this is one call for the whole
+	 * array, with the joints packed into the direct buffer of the model. The joints after the last one of
+	 * the skeleton are left as they are, the vertices of the model never point to them.
+	 */
+	public void loadJointTransforms(AnimatedModel model) {
+		if(dualQuaternionSkinning) {
+			FloatBuffer palette = model.getDualQuaternionPalette();
+			if(palette.remaining() > MAX_JOINTS * DualQuaternion.FLOATS) {
+				palette.limit(palette.position() + MAX_JOINTS * DualQuaternion.FLOATS);
+			}
+			super.loadVectors(location_jointDualQuaternions, palette);
+		}else if(paletteUpload) {
+			FloatBuffer palette = model.getJointPalette();
+			if(palette.remaining() > MAX_JOINTS * 16) {
+				palette.limit(palette.position() + MAX_JOINTS * 16);
 			}
+			super.loadMatrices(location_jointTransforms[0], palette);
+		}else {
+			loadJointTransforms(model.getJointTransforms());
+		}
+	}
+	
+	/**
+	 * The palette and the joints one by one are loaded to the same array, so the values remembered for
+	 * the joints are forgotten when switching.
+	 */
+	public void setPaletteUpload(boolean paletteUpload) {
+		if(this.paletteUpload != paletteUpload) {
+			super.forgetUniforms();
 		}
+		this.paletteUpload = paletteUpload;
 	}
 	
-	// Takes inn the joint transforms we want to load up
+	public boolean isPaletteUpload() {
+		return paletteUpload;
+	}
+	
+	/**
+	 * Tells the shader if the joints are loaded as matrices or dual quaternions, loaded once per frame
+	 * after the shader is started. loadJointTransforms(AnimatedModel) loads what the shader expects.
+	 */
+	public void loadSkinningMode() {
+		super.loadBoolean(location_useDualQuaternions, dualQuaternionSkinning);
+	}
+	
+	public void setDualQuaternionSkinning(boolean dualQuaternionSkinning) {
+		this.dualQuaternionSkinning = dualQuaternionSkinning;
+	}
+	
+	public boolean isDualQuaternionSkinning() {
+		return dualQuaternionSkinning;
+	}
+	
+	// Takes inn the joint transforms we want to load up, one matrix at a time
 	public void loadJointTransforms(Matrix4f[] transforms) {
 		for(int i=0; i < MAX_JOINTS; i++) {
 			if(i < transforms.length) {
 				super.loadMatrix(location_jointTransforms[i], transforms[i]);
 			}else {
-				super.loadMatrix(location_jointTransforms[i], new Matrix4f());
+				super.loadMatrix(location_jointTransforms[i], IDENTITY);
 			}
 		}
 	}
 	
-	// Takes inn the projection matrix we want to load up
-	public void loadProjectionMatrix(Matrix4f projection) {
-		super.loadMatrix(location_projectionMatrix, projection);
-	}
-	
-	// Takes inn the view matrix we want to load up
-	public void loadViewMatrix(Camera camera) {
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		super.loadMatrix(location_viewMatrix, viewMatrix);
-	}
-
 }
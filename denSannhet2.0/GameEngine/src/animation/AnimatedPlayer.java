@@ -5,7 +5,7 @@ import org.lwjgl.input.Keyboard;
 import animation.AnimatedModel;
 import animation.Animation;
 import renderEngine.DisplayManager;
-import terrains.Terrain;
+import terrains.TerrainGrid;
 
 
 public class AnimatedPlayer extends AnimatedModel {
@@ -15,6 +15,8 @@ public class AnimatedPlayer extends AnimatedModel {
 	private static final float GRAVITY = -50;
 	private static final float JUMP_POWER = 30;
 	private static final float TERRAIN_HEIGHT = 0;
+	// How long it takes to fade from one animation to the next
+	private static final float FADE_TIME = 0.2f;
 	
 	Animation currentAnimation = null;
 	
@@ -37,7 +39,12 @@ public class AnimatedPlayer extends AnimatedModel {
 		this.runAnimation = run;
 	}
 	
-	public void move(Terrain terrain, AnimatedModel model) {
+	/**
+	 * Moves the player, and keeps it on top of the ground of whichever terrain it is on.
+	 * @param terrains - the terrains around the player
+	 * @param model
+	 */
+	public void move(TerrainGrid terrains, AnimatedModel model) {
 		checkInputs();
 		rotateAnimatedPlayer(model);
 		float distance = currentSpeed * DisplayManager.getFrameTimeSeconds();
@@ -46,7 +53,7 @@ public class AnimatedPlayer extends AnimatedModel {
 		super.increasePosition(dx, 0, dz);
 		upwardsSpeed += GRAVITY * DisplayManager.getFrameTimeSeconds();
 		super.increasePosition(0, upwardsSpeed * DisplayManager.getFrameTimeSeconds(), 0);
-		float terrainHeight = terrain.getHeightOfTerrain(super.getPosition().x, super.getPosition().z);
+		float terrainHeight = terrains.getHeight(super.getPosition().x, super.getPosition().z);
 		
 		if(super.getPosition().y<terrainHeight) {
 			upwardsSpeed = 0;
@@ -68,7 +75,7 @@ public class AnimatedPlayer extends AnimatedModel {
 	private void setAnimation(Animation animation) {
 		if(currentAnimation != animation) {
 			currentAnimation = animation;
-			doAnimation(animation);
+			crossFade(animation, FADE_TIME);
 		}
 	}
 	
@@ -1,5 +1,7 @@
 package animation;
 
+import java.util.Map;
+
 /**
  * A animation that can be applied on a AnimatedModel
  * 
@@ -10,15 +12,73 @@ public class Animation {
 	// Is the length of the whole animation
 	private final float length; // Is defined in seconds
 	
-	// Holds all the keyframes in the animation, and is also order correctly
+	// Holds all the keyframes in the animation, and is also order correctly. Null if the animation was made from tracks
 	private final KeyFrame[] keyFrames;
+	
+	// A track for every joint, each with its own key times
+	private final JointTrack[] tracks;
 
 	/**
-	 * Constructor for a Animation.
+	 * Constructor for a Animation where every joint has a keyframe at the same times.
 	 */
 	public Animation(float lengthInSeconds, KeyFrame[] frames) {
 		this.length = lengthInSeconds;
 		this.keyFrames = frames;
+		this.tracks = createTracks(frames);
+	}
+	
+	/**
+	 * Constructor for a Animation made of one track per joint.
+	 */
+	public Animation(float lengthInSeconds, JointTrack[] tracks) {
+		this.length = lengthInSeconds;
+		this.keyFrames = null;
+		this.tracks = tracks;
+	}
+	
+	/**
+	 * Copies the transforms of every joint out of the keyframes, into one JointTrack per joint.
+	 */
+	private static JointTrack[] createTracks(KeyFrame[] frames) {
+		if (frames.length == 0) {
+			return new JointTrack[0];
+		}
+		// The tracks share one array of times
+		float[] times = new float[frames.length];
+		for (int i = 0; i < frames.length; i++) {
+			times[i] = frames[i].getTimeStamp();
+		}
+		Map<String, JointTransform> firstPose = frames[0].getJointKeyFrames();
+		JointTrack[] tracks = new JointTrack[firstPose.size()];
+		int track = 0;
+		for (String jointName : firstPose.keySet()) {
+			float[] translations = new float[frames.length * 3];
+			float[] rotations = new float[frames.length * 4];
+			for (int i = 0; i < frames.length; i++) {
+				JointTransform transform = frames[i].getJointKeyFrames().get(jointName);
+				translations[i * 3] = transform.getPosition().x;
+				translations[i * 3 + 1] = transform.getPosition().y;
+				translations[i * 3 + 2] = transform.getPosition().z;
+				rotations[i * 4] = transform.getRotation().getX();
+				rotations[i * 4 + 1] = transform.getRotation().getY();
+				rotations[i * 4 + 2] = transform.getRotation().getZ();
+				rotations[i * 4 + 3] = transform.getRotation().getW();
+			}
+			tracks[track++] = new JointTrack(jointName, times, translations, rotations);
+		}
+		return tracks;
+	}
+	
+	/**
+	 * Finds the joint of every track in the skeleton.
+	 * @return the joint ID for every track, -1 for tracks of joints the skeleton doesn't have
+	 */
+	public int[] bind(Skeleton skeleton) {
+		int[] jointIDs = new int[tracks.length];
+		for (int i = 0; i < tracks.length; i++) {
+			jointIDs[i] = skeleton.getJointID(tracks[i].getJointName());
+		}
+		return jointIDs;
 	}
 
 	// Getters
@@ -28,8 +88,15 @@ public class Animation {
 	}
 
 
+	/**
+	 * @return the keyframes, or null if the animation was made from tracks
+	 */
 	public KeyFrame[] getKeyFrames() {
 		return keyFrames;
 	}
+	
+	public JointTrack[] getTracks() {
+		return tracks;
+	}
 
 }
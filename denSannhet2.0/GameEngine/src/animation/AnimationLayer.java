@@ -0,0 +1,157 @@
+package animation;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * One animation playing inside a Animator, with its own time and its own pose buffer. The Animator samples
+ * every layer into its pose, and blends the poses together into the pose of the model: the clip that is fading
+ * out and the one fading in, and the layers on top of them.
+ *
+ * A layer on top either replaces the pose under it by its weight, or is additive: then only how far the
+ * animation has moved from its first keyframe is added onto the pose under it, like a breathing or aiming clip
+ * on top of running. A mask gives every joint its own weight, so a layer can move only the arms.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class AnimationLayer {
+
+	private final Skeleton skeleton;
+
+	// The joint IDs of the tracks of every animation played, shared by all the layers of the Animator
+	private final Map<Animation, int[]> bindings;
+
+	private Animation animation;
+	private float time = 0;
+	private int[] trackJoints;
+	private int[] cursors = new int[0];
+	private final Pose pose;
+
+	private float weight = 1;
+	private float[] mask;
+	private boolean additive;
+	// The first keyframe of a additive animation, what the animation is measured from
+	private final Pose reference;
+
+	protected AnimationLayer(Skeleton skeleton, Map<Animation, int[]> bindings) {
+		this.skeleton = skeleton;
+		this.bindings = bindings;
+		this.pose = new Pose(skeleton.getJointCount());
+		this.reference = new Pose(skeleton.getJointCount());
+		pose.load(skeleton.getBindPose());
+	}
+
+	/**
+	 * Starts the animation from the start. Joints the animation has no track for stay in the bind pose, and with
+	 * no animation at all the layer holds the bind pose.
+	 */
+	protected void play(Animation animation, boolean additive) {
+		this.animation = animation;
+		this.additive = additive;
+		this.time = 0;
+		pose.load(skeleton.getBindPose());
+		if (animation == null) {
+			return;
+		}
+		trackJoints = bindings.get(animation);
+		if (trackJoints == null) {
+			trackJoints = animation.bind(skeleton);
+			bindings.put(animation, trackJoints);
+		}
+		if (cursors.length < trackJoints.length) {
+			cursors = new int[trackJoints.length];
+		}
+		Arrays.fill(cursors, 0);
+		if (additive) {
+			sample();
+			reference.load(pose);
+		}
+	}
+
+	/**
+	 * Increases the time of the animation. If the time is longer than the animation, it starts over again,
+	 * so the animation loops.
+	 */
+	protected void advance(float seconds) {
+		if (animation != null) {
+			time += seconds;
+			if (time > animation.getLength()) {
+				time = 0;
+			}
+		}
+	}
+
+	/**
+	 * Works out the pose of the animation at the time into the pose of the layer. Every joint has its own track
+	 * with its own keyframes, so for every track the previous keyframe is found from the cursor, and the joint is
+	 * interpolated between it and the next one.
+	 */
+	protected void sample() {
+		if (animation == null) {
+			return;
+		}
+		JointTrack[] tracks = animation.getTracks();
+		for (int i = 0; i < tracks.length; i++) {
+			if (trackJoints[i] >= 0) {
+				int previous = tracks[i].findPreviousKey(time, cursors[i]);
+				cursors[i] = previous;
+				tracks[i].sample(time, previous, pose, trackJoints[i]);
+			}
+		}
+	}
+
+	/**
+	 * Puts the pose of the layer on top of the pose under it, by the weight and mask of the layer.
+	 */
+	protected void apply(Pose target) {
+		if (additive) {
+			Pose.add(target, pose, reference, weight, mask, target);
+		} else {
+			Pose.blend(target, pose, weight, mask, target);
+		}
+	}
+
+	public Animation getAnimation() {
+		return animation;
+	}
+
+	public float getTime() {
+		return time;
+	}
+
+	/**
+	 * Jumps to a time in the animation, the keyframes are found with a binary search the next update.
+	 */
+	public void setTime(float time) {
+		this.time = time;
+	}
+
+	public float getWeight() {
+		return weight;
+	}
+
+	public void setWeight(float weight) {
+		this.weight = weight;
+	}
+
+	public float[] getMask() {
+		return mask;
+	}
+
+	/**
+	 * @param mask - the weight of every joint by joint ID, from Skeleton.createMask. Null for every joint
+	 */
+	public void setMask(float[] mask) {
+		this.mask = mask;
+	}
+
+	public boolean isAdditive() {
+		return additive;
+	}
+
+	public Pose getPose() {
+		return pose;
+	}
+
+}
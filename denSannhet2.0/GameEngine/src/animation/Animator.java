@@ -3,10 +3,7 @@ package animation;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.lwjgl.util.vector.Matrix4f;
-
 import animation.AnimatedModel;
-import animation.Joint;
 import renderEngine.DisplayManager;
 
 /**
@@ -22,23 +19,126 @@ public class Animator {
 	// The animated model it is going to animate
 	private final AnimatedModel entity;
 
-	// The animation that is going to be applied to the model
-	private Animation currentAnimation;
+	/**
+	 * How many layers can be played on top of the current animation, like a additive breathing
+	 * clip, or a clip masked to the arms.
+	 */
+	public static final int MAX_LAYERS = 4;
+
+	/**
+	 * The animation that is going to be applied to the model, and the one it is fading from. They
+	 * swap places when a new cross-fade starts, so switching animations doesn't create any objects.
+	 */
+	private AnimationLayer current;
+	private AnimationLayer previous;
+	private boolean fading = false;
+	private float fadeDuration = 0;
+	private float fadeTime = 0;
+
+	private final AnimationLayer[] layers = new AnimationLayer[MAX_LAYERS];
 	
-	// Stores the time/progression it is in the animation
+	// Or a baked animation, played from the stored frames instead
+	private BakedAnimation bakedAnimation;
+	
+	// Stores the time/progression it is in the baked animation
 	private float animationTime = 0;
+	
+	/**
+	 * The joint ID of every track of every animation played on this model. Worked out the first time a animation
+	 * is played and kept, so switching between animations doesn't look up the joints by name again.
+	 */
+	private final Map<Animation, int[]> bindings = new HashMap<Animation, int[]>();
 
 
 	public Animator(AnimatedModel entity) {
 		this.entity = entity;
+		this.current = new AnimationLayer(entity.getSkeleton(), bindings);
+		this.previous = new AnimationLayer(entity.getSkeleton(), bindings);
 	}
 
 	/**
-	 * Starts the current animation from the start
+	 * Starts the current animation from the start, straight away.
 	 */
 	public void doAnimation(Animation animation) {
-		this.currentAnimation = animation;
+		this.bakedAnimation = null;
+		this.fading = false;
+		current.play(animation, false);
+		if (animation != null) {
+			// Joints the animation has no track for stay in the bind pose
+			entity.getPose().load(current.getPose());
+		}
+	}
+	
+	/**
+	 * Starts the animation from the start, and fades over to it from the animation that is playing. Both
+	 * keep playing while they fade. With no animation it fades to the bind pose. If a fade is going on
+	 * already, it fades from the animation that was fading in.
+	 * @param animation
+	 * @param seconds - how long the fade takes
+	 */
+	public void crossFade(Animation animation, float seconds) {
+		if ((current.getAnimation() == null && !fading) || bakedAnimation != null) {
+			doAnimation(animation);
+			return;
+		}
+		AnimationLayer from = current;
+		current = previous;
+		previous = from;
+		current.play(animation, false);
+		fading = true;
+		fadeDuration = seconds;
+		fadeTime = 0;
+	}
+	
+	/**
+	 * Plays a animation on top of the current animation, from the start.
+	 * @param index - which layer, from 0 to MAX_LAYERS - 1. The layers are put on top of each other in order
+	 * @param animation
+	 * @param weight - how much of the layer to use, 0 to 1
+	 * @param mask - the weight of every joint, from Skeleton.createMask, or null for all the joints
+	 * @param additive - if the movement of the animation is added on top, instead of replacing the pose
+	 * @return the layer, to change its weight later
+	 */
+	public AnimationLayer setLayer(int index, Animation animation, float weight, float[] mask, boolean additive) {
+		if (layers[index] == null) {
+			layers[index] = new AnimationLayer(entity.getSkeleton(), bindings);
+		}
+		AnimationLayer layer = layers[index];
+		layer.play(animation, additive);
+		layer.setWeight(weight);
+		layer.setMask(mask);
+		return layer;
+	}
+	
+	/**
+	 * Stops the animation of the layer.
+	 */
+	public void clearLayer(int index) {
+		if (layers[index] != null) {
+			layers[index].play(null, false);
+		}
+	}
+	
+	/**
+	 * @return the layer, or null if nothing has been played on it
+	 */
+	public AnimationLayer getLayer(int index) {
+		return layers[index];
+	}
+
+	/**
+	 * Starts playing a baked animation from the start. The joint transforms are blended straight from
+	 * the frames of the baked animation, the pose of the model is not used and stays as it was.
+	 */
+	public void doAnimation(BakedAnimation animation) {
+		current.play(null, false);
+		this.fading = false;
+		this.bakedAnimation = animation;
 		this.animationTime = 0;
+		if (animation != null && animation.getJointCount() != entity.getJointCount()) {
+			System.err.println("Baked animation has " + animation.getJointCount() + " joints, the model has " + entity.getJointCount());
+			this.bakedAnimation = null;
+		}
 	}
 
 	/**
@@ -49,113 +149,98 @@ public class Animator {
 	 * joints by setting the joint transforms.
 	 */
 	public void update() {
-		// If there is an animation, update it
-		if (currentAnimation != null) {
-			increaseAnimationTime();
-			Map<String, Matrix4f> currentPose = calculateCurrentAnimationPose(); // Calculates the pose that the model should be in
-			applyPoseToJoints(currentPose, entity.getRootJoint(), new Matrix4f()); // Applies the pose to the models joints
-		}
-		
+		update(DisplayManager.getFrameTimeSeconds());
 	}
-
+	
 	/**
-	 * Increases the time of the animated that is current. If the animated time is
-	 * longer than the length of the animation, it will then start over again, so 
-	 * the animation loops.
+	 * Same as the method above, with the time since the last update given instead of taken from the
+	 * DisplayManager. Doesn't create any objects, the pose and the matrices are written into the
+	 * buffers of the model.
+	 * 
+	 * Every animation playing is sampled into the pose of its layer. The animation fading out is blended
+	 * into the one fading in, and the layers are put on top of that, all in the pose of the model. The
+	 * joint hierarchy is only worked through once, for the final pose.
+	 * @param seconds
 	 */
-	private void increaseAnimationTime() {
-		animationTime += DisplayManager.getFrameTimeSeconds();
-		if (animationTime > currentAnimation.getLength()) {
-			this.animationTime = 0; // Sets it back to zero, so the animation time is reset
+	public void update(float seconds) {
+		if (bakedAnimation != null) {
+			increaseAnimationTime(seconds, bakedAnimation.getLength());
+			bakedAnimation.sample(animationTime, entity.getJointTransforms());
+			return;
 		}
+		boolean layered = hasLayers();
+		// If there is no animation, the pose stays as it is
+		if (current.getAnimation() == null && !fading && !layered) {
+			return;
+		}
+		Pose pose = entity.getPose();
+		current.advance(seconds);
+		current.sample();
+		if (fading) {
+			previous.advance(seconds);
+			previous.sample();
+			fadeTime += seconds;
+			float weight = fadeDuration > 0 ? Math.min(1, fadeTime / fadeDuration) : 1;
+			Pose.blend(previous.getPose(), current.getPose(), weight, null, pose);
+			fading = weight < 1;
+		} else {
+			pose.load(current.getPose());
+		}
+		if (layered) {
+			for (AnimationLayer layer : layers) {
+				if (layer != null && layer.getAnimation() != null) {
+					layer.advance(seconds);
+					layer.sample();
+					layer.apply(pose);
+				}
+			}
+		}
+		entity.getSkeleton().applyPose(pose); // Applies the pose to the models joints
 	}
-
-	/**     
-	 * Calculates the current pose of the animation, by finding the previous
-	 * and the next frames which are dependent of the time the animation is in.         
-	 * Then finds the progression by calculation where the timer is between
-	 * frame A and frame B. At the end it interpolates between the two poses
-	 * dependent on the value of "progression"                 
-	 */
-	private Map<String, Matrix4f> calculateCurrentAnimationPose() {
-		KeyFrame[] frames = getPreviousAndNextFrames();
-		float progression = calculateProgression(frames[0], frames[1]);
-		return interpolatePoses(frames[0], frames[1], progression);
-	}
-
-	/**            
-	 * Applies the pose to the joints and all of its children. 
-	 * It gets the local transform (The original transform of the joint), from the hash map 
-	 * and calculate the current transform by multiplying the parent of the 
-	 * joint transform, with the original transform of the joint. By
-	 * multiplying them we get the original position of the joint, in relation of the 
-	 * origin of the model
-	 * 
-	 * Its the same as done in the "Joint" class, in the "calculateInverseBindTransform"
-	 * where we get the bind transform.
-	 * 
-	 * Then we apply the pose to the joints of the model until there is no more.
-	 * 
-	 * And at the end, we calculate the joint transform.
-	 * Explaination on this can you find on the report, in chapter XX
-	 */
-	private void applyPoseToJoints(Map<String, Matrix4f> currentPose, Joint joint, Matrix4f parentTransform) {
-		Matrix4f currentLocalTransform = currentPose.get(joint.name);
-		Matrix4f currentTransform = Matrix4f.mul(parentTransform, currentLocalTransform, null);
-		for (Joint childJoint : joint.children) {
-			applyPoseToJoints(currentPose, childJoint, currentTransform);
+	
+	private boolean hasLayers() {
+		for (AnimationLayer layer : layers) {
+			if (layer != null && layer.getAnimation() != null) {
+				return true;
+			}
 		}
-		Matrix4f.mul(currentTransform, joint.getInverseBindTransform(), currentTransform);
-		joint.setAnimationTransform(currentTransform);
+		return false;
 	}
 
-	/**        
-	 * Finds the previous and next keyframe in the animation. 
-	 * In the case were there is no previous frame, the
-	 * first keyframe is used for previous and next.                
+	/**
+	 * Jumps to a time in the current animation. The keyframes are found with a binary search the
+	 * next update, and from there on with the cursors again.
+	 * @param time - in seconds from the start of the animation
 	 */
-	private KeyFrame[] getPreviousAndNextFrames() {
-		KeyFrame[] allFrames = currentAnimation.getKeyFrames();
-		KeyFrame previousFrame = allFrames[0];
-		KeyFrame nextFrame = allFrames[0];
-		for (int i = 1; i < allFrames.length; i++) {
-			nextFrame = allFrames[i];
-			if (nextFrame.getTimeStamp() > animationTime) {
-				break;
-			}
-			previousFrame = allFrames[i];
+	public void setAnimationTime(float time) {
+		if (bakedAnimation != null) {
+			this.animationTime = time;
+		} else {
+			current.setTime(time);
 		}
-		return new KeyFrame[] { previousFrame, nextFrame };
 	}
-
+	
+	public float getAnimationTime() {
+		return bakedAnimation != null ? animationTime : current.getTime();
+	}
+	
 	/**
-	 * Calculates how far it is between the previous and next keyframe.
-	 * By finding the total time between the two keyframes, then the current time
-	 * it is in. And dividing those two values.
+	 * @return true while the last animation is still fading out
 	 */
-	private float calculateProgression(KeyFrame previousFrame, KeyFrame nextFrame) {
-		float totalTime = nextFrame.getTimeStamp() - previousFrame.getTimeStamp();
-		float currentTime = animationTime - previousFrame.getTimeStamp();
-		return currentTime / totalTime;
+	public boolean isFading() {
+		return fading;
 	}
 
-	/**        
-	 *  Transforms the current pose of the model.
-	 *  Goes through all the joints, on each iteration it gets their transform in the previous frame,
-	 *  and getting the transform for the next frame.
-	 *  It then interpolates the two transforms, 
-	 *  and adds them to hash map that has the values of the current pose, 
-	 *  as well as the name of the current joint.
+	/**
+	 * Increases the time of the baked animation. If the animated time is
+	 * longer than the length of the animation, it will then start over again, so 
+	 * the animation loops.
 	 */
-	private Map<String, Matrix4f> interpolatePoses(KeyFrame previousFrame, KeyFrame nextFrame, float progression) {
-		Map<String, Matrix4f> currentPose = new HashMap<String, Matrix4f>();
-		for (String jointName : previousFrame.getJointKeyFrames().keySet()) {
-			JointTransform previousTransform = previousFrame.getJointKeyFrames().get(jointName);
-			JointTransform nextTransform = nextFrame.getJointKeyFrames().get(jointName);
-			JointTransform currentTransform = JointTransform.interpolate(previousTransform, nextTransform, progression);
-			currentPose.put(jointName, currentTransform.getLocalTransform());
+	private void increaseAnimationTime(float seconds, float length) {
+		animationTime += seconds;
+		if (animationTime > length) {
+			this.animationTime = 0; // Sets it back to zero, so the animation time is reset
 		}
-		return currentPose;
 	}
 
 }
@@ -0,0 +1,143 @@
+package animation;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * A animation sampled at a fixed rate into the joint transforms the shader needs, so playing it is only a blend
+ * between two stored frames: no keyframes to find, no quaternions and no joint hierarchy to multiply through.
+ * One baked animation is shared by every model with the same skeleton playing it, and each of them plays it from
+ * its own time.
+ *
+ * The frames are stored in one float array, 12 floats per joint per frame: the 3x3 rotation and scale part and
+ * the translation of the matrix, the last row of a joint transform is always (0, 0, 0, 1). Between two frames
+ * every number is blended linearly, which is a little off from the live Animator in between, the more the
+ * joint turns from one frame to the next. The higher the frame rate, the smaller the error and the bigger the
+ * array.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class BakedAnimation {
+
+	private static final int FLOATS_PER_JOINT = 12;
+
+	private final float length;
+	private final int jointCount;
+	private final int frameCount;
+	private final float frameDuration;
+	private final float[] frames;
+
+	private BakedAnimation(float length, int jointCount, int frameCount, float[] frames) {
+		this.length = length;
+		this.jointCount = jointCount;
+		this.frameCount = frameCount;
+		this.frameDuration = frameCount > 1 ? length / (frameCount - 1) : 0;
+		this.frames = frames;
+	}
+
+	/**
+	 * Samples the animation on a copy of the model, so the model itself is left as it is. The frames are spread
+	 * evenly from the start to the end of the animation, both included.
+	 * @param model - any model with the skeleton the animation will be played on
+	 * @param animation
+	 * @param framesPerSecond - how many frames to store for every second of the animation
+	 * @return the baked animation, for every model with the same skeleton
+	 */
+	public static BakedAnimation bake(AnimatedModel model, Animation animation, float framesPerSecond) {
+		AnimatedModel copy = model.createInstance(model.getPosition(), 0, 0, 0, 1);
+		int jointCount = copy.getJointCount();
+		int frameCount = Math.max(2, (int) Math.ceil(animation.getLength() * framesPerSecond) + 1);
+		float[] frames = new float[frameCount * jointCount * FLOATS_PER_JOINT];
+		copy.doAnimation(animation);
+		Matrix4f[] transforms = copy.getJointTransforms();
+		for (int frame = 0; frame < frameCount; frame++) {
+			copy.getAnimator().setAnimationTime(animation.getLength() * frame / (frameCount - 1));
+			copy.update(0);
+			for (int joint = 0; joint < jointCount; joint++) {
+				store(transforms[joint], frames, (frame * jointCount + joint) * FLOATS_PER_JOINT);
+			}
+		}
+		return new BakedAnimation(animation.getLength(), jointCount, frameCount, frames);
+	}
+
+	private static void store(Matrix4f matrix, float[] frames, int pointer) {
+		frames[pointer++] = matrix.m00;
+		frames[pointer++] = matrix.m01;
+		frames[pointer++] = matrix.m02;
+		frames[pointer++] = matrix.m10;
+		frames[pointer++] = matrix.m11;
+		frames[pointer++] = matrix.m12;
+		frames[pointer++] = matrix.m20;
+		frames[pointer++] = matrix.m21;
+		frames[pointer++] = matrix.m22;
+		frames[pointer++] = matrix.m30;
+		frames[pointer++] = matrix.m31;
+		frames[pointer] = matrix.m32;
+	}
+
+	/**
+	 * Writes the joint transforms at the time into the matrices, blended between the two frames around it.
+	 * @param time - in seconds from the start of the animation
+	 * @param jointTransforms - by joint ID
+	 */
+	public void sample(float time, Matrix4f[] jointTransforms) {
+		float frame = frameDuration > 0 ? time / frameDuration : 0;
+		int previous;
+		float blend;
+		if (frame <= 0) {
+			previous = 0;
+			blend = 0;
+		} else if (frame >= frameCount - 1) {
+			previous = frameCount - 2;
+			blend = 1;
+		} else {
+			previous = (int) frame;
+			blend = frame - previous;
+		}
+		int a = previous * jointCount * FLOATS_PER_JOINT;
+		int b = a + jointCount * FLOATS_PER_JOINT;
+		for (int joint = 0; joint < jointCount; joint++) {
+			Matrix4f matrix = jointTransforms[joint];
+			matrix.m00 = blend(a++, b++, blend);
+			matrix.m01 = blend(a++, b++, blend);
+			matrix.m02 = blend(a++, b++, blend);
+			matrix.m03 = 0;
+			matrix.m10 = blend(a++, b++, blend);
+			matrix.m11 = blend(a++, b++, blend);
+			matrix.m12 = blend(a++, b++, blend);
+			matrix.m13 = 0;
+			matrix.m20 = blend(a++, b++, blend);
+			matrix.m21 = blend(a++, b++, blend);
+			matrix.m22 = blend(a++, b++, blend);
+			matrix.m23 = 0;
+			matrix.m30 = blend(a++, b++, blend);
+			matrix.m31 = blend(a++, b++, blend);
+			matrix.m32 = blend(a++, b++, blend);
+			matrix.m33 = 1;
+		}
+	}
+
+	private float blend(int a, int b, float blend) {
+		return frames[a] + (frames[b] - frames[a]) * blend;
+	}
+
+	public float getLength() {
+		return length;
+	}
+
+	public int getJointCount() {
+		return jointCount;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return the memory the frames take up, shared by every model playing the animation
+	 */
+	public long getSizeInBytes() {
+		return frames.length * 4L;
+	}
+
+}
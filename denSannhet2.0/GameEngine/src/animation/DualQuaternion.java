@@ -0,0 +1,71 @@
+package animation;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * Turns joint transforms into dual quaternions for skinning, 8 floats per joint instead of the 16 of a matrix.
+ * The real part is the rotation and the dual part the translation, both stored as (x, y, z, w). Blending dual
+ * quaternions keeps the volume around a bent joint, where blending matrices makes it collapse a little.
+ *
+ * The joint transforms must only rotate and move, a matrix that scales can't be a dual quaternion. The
+ * rotation here is worked out the usual way, for a matrix multiplied with a column vector on its right, like
+ * the shader does. The Quaternion class uses the rows of the matrix instead, and doesn't fit the shader.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class DualQuaternion {
+
+	public static final int FLOATS = 8;
+
+	/**
+	 * Puts the dual quaternion of the joint transform into the buffer, the real part first.
+	 */
+	public static void store(Matrix4f matrix, FloatBuffer buffer) {
+		// element (row, column) of the matrix is m[column][row]
+		float trace = matrix.m00 + matrix.m11 + matrix.m22;
+		float x, y, z, w;
+		if (trace > 0) {
+			float s = (float) Math.sqrt(trace + 1) * 2;
+			w = 0.25f * s;
+			x = (matrix.m12 - matrix.m21) / s;
+			y = (matrix.m20 - matrix.m02) / s;
+			z = (matrix.m01 - matrix.m10) / s;
+		} else if (matrix.m00 > matrix.m11 && matrix.m00 > matrix.m22) {
+			float s = (float) Math.sqrt(1 + matrix.m00 - matrix.m11 - matrix.m22) * 2;
+			w = (matrix.m12 - matrix.m21) / s;
+			x = 0.25f * s;
+			y = (matrix.m10 + matrix.m01) / s;
+			z = (matrix.m20 + matrix.m02) / s;
+		} else if (matrix.m11 > matrix.m22) {
+			float s = (float) Math.sqrt(1 + matrix.m11 - matrix.m00 - matrix.m22) * 2;
+			w = (matrix.m20 - matrix.m02) / s;
+			x = (matrix.m10 + matrix.m01) / s;
+			y = 0.25f * s;
+			z = (matrix.m21 + matrix.m12) / s;
+		} else {
+			float s = (float) Math.sqrt(1 + matrix.m22 - matrix.m00 - matrix.m11) * 2;
+			w = (matrix.m01 - matrix.m10) / s;
+			x = (matrix.m20 + matrix.m02) / s;
+			y = (matrix.m21 + matrix.m12) / s;
+			z = 0.25f * s;
+		}
+		float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+		x /= length;
+		y /= length;
+		z /= length;
+		w /= length;
+		// the dual part is half the translation times the rotation
+		float tx = matrix.m30;
+		float ty = matrix.m31;
+		float tz = matrix.m32;
+		buffer.put(x).put(y).put(z).put(w);
+		buffer.put(0.5f * (tx * w + ty * z - tz * y));
+		buffer.put(0.5f * (-tx * z + ty * w + tz * x));
+		buffer.put(0.5f * (tx * y - ty * x + tz * w));
+		buffer.put(-0.5f * (tx * x + ty * y + tz * z));
+	}
+
+}
@@ -80,6 +80,18 @@ public class Joint {
 		
 	}
 	
+	/**
+	 * Copies the joint and all its children. The copies have their own animated transforms, so they can be 
+	 * put in another pose. The bind transforms never change, and are shared.
+	 */
+	protected Joint copy() {
+		Joint copy = new Joint(jointID, name, localBindTransform);
+		for (Joint jointChild : children) {
+			copy.addChild(jointChild.copy());
+		}
+		return copy;
+	}
+	
 	// Getters and setters
 
 	public Matrix4f getAnimatedTransform() {
@@ -98,6 +110,10 @@ public class Joint {
 	public Matrix4f getInverseBindTransform() {
 		return inverseBindTransform;
 	}
+	
+	public Matrix4f getLocalBindTransform() {
+		return localBindTransform;
+	}
 
 	
 
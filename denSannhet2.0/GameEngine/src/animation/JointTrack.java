@@ -0,0 +1,131 @@
+package animation;
+
+/**
+ * The keyframes of one joint in a animation, stored as flat float arrays instead of a
+ * JointTransform for every keyframe. The values of keyframe i are at
+ * translations[i * 3] and rotations[i * 4], the rotation as a normalized quaternion (x, y, z, w).
+ *
+ * Every track has its own key times, so a joint that barely moves can have a few keyframes
+ * while another one has thousands.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class JointTrack {
+
+	/**
+	 * How many keyframes the cursor may step forward before a binary search is quicker.
+	 */
+	private static final int CURSOR_STEPS = 4;
+
+	// The name of the joint in the collada file, the animation is bound to the joint IDs of a skeleton with it
+	private final String jointName;
+
+	private final float[] times;
+	private final float[] translations;
+	private final float[] rotations;
+
+	public JointTrack(String jointName, float[] times, float[] translations, float[] rotations) {
+		this.jointName = jointName;
+		this.times = times;
+		this.translations = translations;
+		this.rotations = rotations;
+	}
+
+	/**
+	 * Finds the keyframe the time is in, the last keyframe at or before the time. The search starts at the
+	 * cursor, the keyframe found last frame, as a animation that plays forward is almost always still
+	 * in the same keyframe or in the next one. When the time has gone back, or jumped far ahead, the
+	 * keyframe is found with a binary search instead.
+	 *
+	 * Before the second keyframe this is always 0, like the Animator has always done it.
+	 * @param time
+	 * @param cursor - the keyframe found for the last time
+	 * @return the keyframe
+	 */
+	protected int findPreviousKey(float time, int cursor) {
+		int last = times.length - 1;
+		if (cursor >= 0 && cursor <= last && (cursor == 0 || times[cursor] <= time)) {
+			for (int steps = 0; steps < CURSOR_STEPS; steps++) {
+				if (cursor == last || times[cursor + 1] > time) {
+					return cursor;
+				}
+				cursor++;
+			}
+		}
+		return binarySearch(time);
+	}
+
+	/**
+	 * @return the last keyframe from the second one on at or before the time, or 0 if there is none
+	 */
+	private int binarySearch(float time) {
+		int low = 1;
+		int high = times.length - 1;
+		int found = 0;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (times[middle] <= time) {
+				found = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Writes the transform at the time into the pose. It is interpolated between the previous keyframe and
+	 * the next one the same way as JointTransform.interpolate: the translation linearly, and the rotation
+	 * with nlerp. On the last keyframe there is nothing to interpolate to, and the last keyframe is used.
+	 * @param time
+	 * @param previous - the keyframe from findPreviousKey
+	 * @param pose
+	 * @param jointID
+	 */
+	protected void sample(float time, int previous, Pose pose, int jointID) {
+		int next = Math.min(previous + 1, times.length - 1);
+		float totalTime = times[next] - times[previous];
+		float progression = totalTime <= 0 ? 0 : (time - times[previous]) / totalTime;
+		float[] translation = pose.getTranslations();
+		int a = previous * 3;
+		int b = next * 3;
+		int t = jointID * 3;
+		translation[t] = translations[a] + (translations[b] - translations[a]) * progression;
+		translation[t + 1] = translations[a + 1] + (translations[b + 1] - translations[a + 1]) * progression;
+		translation[t + 2] = translations[a + 2] + (translations[b + 2] - translations[a + 2]) * progression;
+		Pose.nlerp(rotations, previous * 4, rotations, next * 4, progression, pose.getRotations(), jointID * 4);
+	}
+
+	public String getJointName() {
+		return jointName;
+	}
+
+	/**
+	 * @return the number of keyframes in the track
+	 */
+	public int getKeyCount() {
+		return times.length;
+	}
+
+	public float[] getTimes() {
+		return times;
+	}
+
+	public float[] getTranslations() {
+		return translations;
+	}
+
+	public float[] getRotations() {
+		return rotations;
+	}
+
+	/**
+	 * @return the time of the last keyframe
+	 */
+	public float getEndTime() {
+		return times.length == 0 ? 0 : times[times.length - 1];
+	}
+
+}
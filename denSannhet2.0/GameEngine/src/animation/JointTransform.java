@@ -22,6 +22,14 @@ public class JointTransform {
 		this.rotation = rotation;
 	}
 
+	public Vector3f getPosition() {
+		return position;
+	}
+
+	public Quaternion getRotation() {
+		return rotation;
+	}
+
 	/**
 	 * Creates a transformation matrix by translating the position of the joint
 	 * and then rotating it, by converting quaternion to a 4x4 rotation matrix. As 
@@ -33,12 +33,12 @@ public class KeyFrame {
 
 	// Getters
 	
-	protected float getTimeStamp() {
+	public float getTimeStamp() {
 		return timeStamp;
 	}
 
 
-	protected Map<String, JointTransform> getJointKeyFrames() {
+	public Map<String, JointTransform> getJointKeyFrames() {
 		return pose;
 	}
 
@@ -0,0 +1,173 @@
+package animation;
+
+/**
+ * The local transform of every joint of a skeleton, relative to its parent, indexed by Joint.jointID.
+ * The translation of joint i is at translations[i * 3] and its rotation, a quaternion (x, y, z, w),
+ * at rotations[i * 4].
+ *
+ * A pose is made once per AnimatedModel and written into every frame, so animating a model
+ * doesn't create any objects.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class Pose {
+
+	private final float[] translations;
+	private final float[] rotations;
+
+	public Pose(int jointCount) {
+		this.translations = new float[jointCount * 3];
+		this.rotations = new float[jointCount * 4];
+		for (int i = 0; i < jointCount; i++) {
+			rotations[i * 4 + 3] = 1;
+		}
+	}
+
+	/**
+	 * Copies another pose with the same number of joints into this one.
+	 */
+	public void load(Pose pose) {
+		System.arraycopy(pose.translations, 0, translations, 0, translations.length);
+		System.arraycopy(pose.rotations, 0, rotations, 0, rotations.length);
+	}
+
+	public void setTranslation(int jointID, float x, float y, float z) {
+		translations[jointID * 3] = x;
+		translations[jointID * 3 + 1] = y;
+		translations[jointID * 3 + 2] = z;
+	}
+
+	public void setRotation(int jointID, Quaternion rotation) {
+		rotations[jointID * 4] = rotation.getX();
+		rotations[jointID * 4 + 1] = rotation.getY();
+		rotations[jointID * 4 + 2] = rotation.getZ();
+		rotations[jointID * 4 + 3] = rotation.getW();
+	}
+
+	public int getJointCount() {
+		return translations.length / 3;
+	}
+
+	public float[] getTranslations() {
+		return translations;
+	}
+
+	public float[] getRotations() {
+		return rotations;
+	}
+
+	/**
+	 * Blends from one pose towards another, the translations linearly and the rotations with nlerp. The result
+	 * may be one of the two poses.
+	 * @param a - the pose at weight 0
+	 * @param b - the pose at weight 1
+	 * @param weight
+	 * @param mask - the weight is multiplied with the mask of every joint, null for the same weight on every joint
+	 * @param result
+	 */
+	public static void blend(Pose a, Pose b, float weight, float[] mask, Pose result) {
+		int jointCount = result.getJointCount();
+		for (int i = 0; i < jointCount; i++) {
+			float w = mask == null ? weight : weight * mask[i];
+			Pose from = w <= 0 ? a : w >= 1 ? b : null;
+			if (from != null) {
+				if (from != result) {
+					System.arraycopy(from.translations, i * 3, result.translations, i * 3, 3);
+					System.arraycopy(from.rotations, i * 4, result.rotations, i * 4, 4);
+				}
+				continue;
+			}
+			for (int t = i * 3; t < i * 3 + 3; t++) {
+				result.translations[t] = a.translations[t] + (b.translations[t] - a.translations[t]) * w;
+			}
+			nlerp(a.rotations, i * 4, b.rotations, i * 4, w, result.rotations, i * 4);
+		}
+	}
+
+	/**
+	 * Adds how far a pose has moved from a reference pose onto a base pose. The translation moved is added,
+	 * and the rotation from the reference to the pose is done in the space of the joint, on top of the
+	 * rotation of the base. With a weight below 1 only part of the movement is added. The result may be
+	 * the base pose.
+	 * @param base
+	 * @param additive - the pose of the additive animation
+	 * @param reference - the pose the additive animation is measured from
+	 * @param weight
+	 * @param mask - the weight is multiplied with the mask of every joint, null for the same weight on every joint
+	 * @param result
+	 */
+	public static void add(Pose base, Pose additive, Pose reference, float weight, float[] mask, Pose result) {
+		int jointCount = result.getJointCount();
+		for (int i = 0; i < jointCount; i++) {
+			float w = mask == null ? weight : weight * mask[i];
+			if (w <= 0) {
+				if (base != result) {
+					System.arraycopy(base.translations, i * 3, result.translations, i * 3, 3);
+					System.arraycopy(base.rotations, i * 4, result.rotations, i * 4, 4);
+				}
+				continue;
+			}
+			for (int t = i * 3; t < i * 3 + 3; t++) {
+				result.translations[t] = base.translations[t] + (additive.translations[t] - reference.translations[t]) * w;
+			}
+			int r = i * 4;
+			// the rotation from the reference to the additive pose. The rotation matrices of these quaternions are
+			// transposed, so inverse(reference) * additive as matrices is additive * conjugate(reference) as quaternions
+			float rx = -reference.rotations[r], ry = -reference.rotations[r + 1], rz = -reference.rotations[r + 2], rw = reference.rotations[r + 3];
+			float ax = additive.rotations[r], ay = additive.rotations[r + 1], az = additive.rotations[r + 2], aw = additive.rotations[r + 3];
+			float dx = aw * rx + ax * rw + ay * rz - az * ry;
+			float dy = aw * ry - ax * rz + ay * rw + az * rx;
+			float dz = aw * rz + ax * ry - ay * rx + az * rw;
+			float dw = aw * rw - ax * rx - ay * ry - az * rz;
+			if (w < 1) {
+				// nlerp from no rotation at all, the shortest way round
+				float sign = dw < 0 ? -w : w;
+				dx *= sign;
+				dy *= sign;
+				dz *= sign;
+				dw = (1 - w) + dw * sign;
+				float mag = (float) Math.sqrt(dw * dw + dx * dx + dy * dy + dz * dz);
+				dx /= mag;
+				dy /= mag;
+				dz /= mag;
+				dw /= mag;
+			}
+			// base * difference as matrices
+			float bx = base.rotations[r], by = base.rotations[r + 1], bz = base.rotations[r + 2], bw = base.rotations[r + 3];
+			result.rotations[r] = dw * bx + dx * bw + dy * bz - dz * by;
+			result.rotations[r + 1] = dw * by - dx * bz + dy * bw + dz * bx;
+			result.rotations[r + 2] = dw * bz + dx * by - dy * bx + dz * bw;
+			result.rotations[r + 3] = dw * bw - dx * bx - dy * by - dz * bz;
+		}
+	}
+
+	/**
+	 * The same "nlerp" as Quaternion.interpolate, with the quaternions stored as (x, y, z, w) in float arrays.
+	 * The calculations are done in the same order, so the result is exactly the same.
+	 */
+	protected static void nlerp(float[] a, int aOffset, float[] b, int bOffset, float blend, float[] result, int offset) {
+		float ax = a[aOffset], ay = a[aOffset + 1], az = a[aOffset + 2], aw = a[aOffset + 3];
+		float bx = b[bOffset], by = b[bOffset + 1], bz = b[bOffset + 2], bw = b[bOffset + 3];
+		float dot = aw * bw + ax * bx + ay * by + az * bz;
+		float blendI = 1f - blend;
+		float x, y, z, w;
+		if (dot < 0) {
+			w = blendI * aw + blend * -bw;
+			x = blendI * ax + blend * -bx;
+			y = blendI * ay + blend * -by;
+			z = blendI * az + blend * -bz;
+		} else {
+			w = blendI * aw + blend * bw;
+			x = blendI * ax + blend * bx;
+			y = blendI * ay + blend * by;
+			z = blendI * az + blend * bz;
+		}
+		float mag = (float) Math.sqrt(w * w + x * x + y * y + z * z);
+		result[offset] = x / mag;
+		result[offset + 1] = y / mag;
+		result[offset + 2] = z / mag;
+		result[offset + 3] = w / mag;
+	}
+
+}
@@ -0,0 +1,153 @@
+package animation;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates the animation of many animated models at once, split over a number of threads. The list is cut
+ * into one part per thread, the calling thread does the first part itself, and the update returns when all
+ * the parts are done, so the poses are ready to be rendered.
+ *
+ * Every model only writes into its own pose and the matrices of its own joints, so the models can be worked
+ * out in any order. Models that share their joints, like AnimatedPlayer does with the model it was made from,
+ * must not be updated by two threads at once, and should not both have a animation playing.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class PoseEvaluator {
+
+	/**
+	 * A pose takes about a microsecond, so with fewer models than this per thread it is quicker not to
+	 * hand them over to another thread at all.
+	 */
+	private static final int MIN_MODELS_PER_JOB = 16;
+
+	private final int threads;
+	private final ExecutorService workers;
+	private final Job[] jobs;
+
+	/**
+	 * @param threads - the number of threads to update the models on, counting the thread calling update
+	 */
+	public PoseEvaluator(int threads) {
+		this.threads = Math.max(1, threads);
+		this.jobs = new Job[this.threads - 1];
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new Job();
+		}
+		this.workers = jobs.length == 0 ? null : Executors.newFixedThreadPool(jobs.length, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "pose-evaluator-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Updates the animation of every model in the list, and waits until all of them are done.
+	 * @param models
+	 * @param seconds - the time since the last update
+	 */
+	public void update(List<AnimatedModel> models, float seconds) {
+		int count = models.size();
+		int parts = Math.min(threads, count / MIN_MODELS_PER_JOB);
+		if (parts <= 1) {
+			update(models, seconds, 0, count);
+			return;
+		}
+		CountDownLatch done = new CountDownLatch(parts - 1);
+		for (int part = 1; part < parts; part++) {
+			Job job = jobs[part - 1];
+			job.set(models, seconds, count * part / parts, count * (part + 1) / parts, done);
+			workers.execute(job);
+		}
+		update(models, seconds, 0, count / parts);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				// the models are still being written to, so it has to wait for them anyway
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for (int part = 1; part < parts; part++) {
+			RuntimeException error = jobs[part - 1].takeError();
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+	private static void update(List<AnimatedModel> models, float seconds, int from, int to) {
+		for (int i = from; i < to; i++) {
+			models.get(i).update(seconds);
+		}
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void cleanUp() {
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * One part of the list, made once per thread and handed the next part every update.
+	 */
+	private static class Job implements Runnable {
+
+		private List<AnimatedModel> models;
+		private float seconds;
+		private int from;
+		private int to;
+		private CountDownLatch done;
+		private RuntimeException error;
+
+		private void set(List<AnimatedModel> models, float seconds, int from, int to, CountDownLatch done) {
+			this.models = models;
+			this.seconds = seconds;
+			this.from = from;
+			this.to = to;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			try {
+				update(models, seconds, from, to);
+			} catch (RuntimeException e) {
+				error = e;
+			} finally {
+				models = null;
+				done.countDown();
+			}
+		}
+
+		private RuntimeException takeError() {
+			RuntimeException e = error;
+			error = null;
+			return e;
+		}
+	}
+
+}
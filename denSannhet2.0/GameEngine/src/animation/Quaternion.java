@@ -48,6 +48,22 @@ public class Quaternion {
 		z /= mag;
 	}
 
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getW() {
+		return w;
+	}
+
 	/**
 	 * Converts the quaternion to a 4x4 matrix representing the exact same
 	 * rotation as this quaternion. (The rotation is only contained in the
@@ -0,0 +1,185 @@
+package animation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * The joint hierarchy of a AnimatedModel flattened into arrays indexed by Joint.jointID, so a pose can be
+ * applied with a loop instead of recursion and a hash map lookup for every joint.
+ *
+ * The joints are stored in an order where a parent always comes before its children, so when a joint is
+ * reached the model space transform of its parent is already worked out. All the matrices are made once,
+ * and written into every frame.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class Skeleton {
+
+	private static final Matrix4f IDENTITY = new Matrix4f();
+
+	private final int jointCount;
+
+	// The joint IDs with parents first, and the parent of every joint (-1 for the root joint)
+	private final int[] order;
+	private final int[] parents;
+	private final Matrix4f[] inverseBindTransforms;
+
+	/**
+	 * The animated transforms of the joints, the same Matrix4f objects as Joint.getAnimatedTransform,
+	 * so models that share joints also share the result.
+	 */
+	private final Matrix4f[] jointTransforms;
+
+	// The model space transform of every joint before the inverse bind transform is applied
+	private final Matrix4f[] modelTransforms;
+	private final Matrix4f localTransform = new Matrix4f();
+
+	private final Map<String, Integer> jointIDs = new HashMap<String, Integer>();
+	private final Pose bindPose;
+
+	/**
+	 * The inverse bind transforms of the joints must have been calculated already.
+	 */
+	public Skeleton(Joint rootJoint, int jointCount) {
+		this.jointCount = jointCount;
+		this.order = new int[jointCount];
+		this.parents = new int[jointCount];
+		this.inverseBindTransforms = new Matrix4f[jointCount];
+		this.jointTransforms = new Matrix4f[jointCount];
+		this.modelTransforms = new Matrix4f[jointCount];
+		this.bindPose = new Pose(jointCount);
+		int count = addJoint(rootJoint, -1, 0);
+		if (count != jointCount) {
+			System.err.println("Skeleton has " + count + " joints, expected " + jointCount);
+		}
+	}
+
+	/**
+	 * Adds the joint and all its children, the joint first.
+	 * @return the number of joints added so far
+	 */
+	private int addJoint(Joint joint, int parent, int count) {
+		int id = joint.jointID;
+		order[count++] = id;
+		parents[id] = parent;
+		inverseBindTransforms[id] = joint.getInverseBindTransform();
+		jointTransforms[id] = joint.getAnimatedTransform();
+		modelTransforms[id] = new Matrix4f();
+		jointIDs.put(joint.name, id);
+		Matrix4f bind = joint.getLocalBindTransform();
+		bindPose.setTranslation(id, bind.m30, bind.m31, bind.m32);
+		bindPose.setRotation(id, Quaternion.fromMatrix(bind));
+		for (Joint child : joint.children) {
+			count = addJoint(child, id, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Works out the animated transform of every joint from the local transforms in the pose. This is the
+	 * same maths as the recursive Animator.applyPoseToJoints used to do, in the same order, so the matrices
+	 * come out exactly the same.
+	 */
+	public void applyPose(Pose pose) {
+		float[] translations = pose.getTranslations();
+		float[] rotations = pose.getRotations();
+		for (int i = 0; i < jointCount; i++) {
+			int id = order[i];
+			loadLocalTransform(translations, id * 3, rotations, id * 4, localTransform);
+			int parent = parents[id];
+			Matrix4f.mul(parent < 0 ? IDENTITY : modelTransforms[parent], localTransform, modelTransforms[id]);
+			Matrix4f.mul(modelTransforms[id], inverseBindTransforms[id], jointTransforms[id]);
+		}
+	}
+
+	/**
+	 * Writes the translation and rotation into the matrix. Gives the same matrix as
+	 * JointTransform.getLocalTransform, which translates a identity matrix and multiplies it with
+	 * Quaternion.toRotationMatrix.
+	 */
+	private static void loadLocalTransform(float[] translations, int t, float[] rotations, int r, Matrix4f matrix) {
+		float x = rotations[r];
+		float y = rotations[r + 1];
+		float z = rotations[r + 2];
+		float w = rotations[r + 3];
+		final float xy = x * y;
+		final float xz = x * z;
+		final float xw = x * w;
+		final float yz = y * z;
+		final float yw = y * w;
+		final float zw = z * w;
+		final float xSquared = x * x;
+		final float ySquared = y * y;
+		final float zSquared = z * z;
+		matrix.m00 = 1 - 2 * (ySquared + zSquared);
+		matrix.m01 = 2 * (xy - zw);
+		matrix.m02 = 2 * (xz + yw);
+		matrix.m03 = 0;
+		matrix.m10 = 2 * (xy + zw);
+		matrix.m11 = 1 - 2 * (xSquared + zSquared);
+		matrix.m12 = 2 * (yz - xw);
+		matrix.m13 = 0;
+		matrix.m20 = 2 * (xz - yw);
+		matrix.m21 = 2 * (yz + xw);
+		matrix.m22 = 1 - 2 * (xSquared + ySquared);
+		matrix.m23 = 0;
+		matrix.m30 = translations[t];
+		matrix.m31 = translations[t + 1];
+		matrix.m32 = translations[t + 2];
+		matrix.m33 = 1;
+	}
+
+	/**
+	 * @return the ID of the joint with the name, or -1 if the skeleton has no such joint
+	 */
+	public int getJointID(String name) {
+		Integer id = jointIDs.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Creates a mask for a AnimationLayer, with a weight of 1 for the joint and every joint under it, and 0 for
+	 * the rest. So a mask of the shoulder gives the whole arm.
+	 * @return the weight of every joint by joint ID, all 0 if the skeleton has no such joint
+	 */
+	public float[] createMask(String jointName) {
+		float[] mask = new float[jointCount];
+		int root = getJointID(jointName);
+		for (int i = 0; i < jointCount; i++) {
+			int id = order[i];
+			if (id == root || (parents[id] >= 0 && mask[parents[id]] > 0)) {
+				mask[id] = 1;
+			}
+		}
+		return mask;
+	}
+
+	public int getJointCount() {
+		return jointCount;
+	}
+
+	/**
+	 * @return the animated transforms by joint ID, ready to be loaded into the shader
+	 */
+	public Matrix4f[] getJointTransforms() {
+		return jointTransforms;
+	}
+
+	/**
+	 * @return the pose the skeleton is in without any animation
+	 */
+	public Pose getBindPose() {
+		return bindPose;
+	}
+
+	/**
+	 * @return the parent of the joint, -1 for the root joint
+	 */
+	public int getParent(int jointID) {
+		return parents[jointID];
+	}
+
+}
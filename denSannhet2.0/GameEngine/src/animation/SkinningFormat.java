@@ -0,0 +1,92 @@
+package animation;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * The compact layout of the joints and weights of a animated model on the GPU. Every vertex has 4 joint
+ * indices of one unsigned byte each, followed by 4 weights as normalized unsigned shorts, 12 bytes in all.
+ * Both attributes are read from the same interleaved buffer. Before this every vertex had 3 joint IDs as ints
+ * and 3 weights as floats in two buffers, 24 bytes.
+ *
+ * The weights are rounded to 1/65535, and the biggest weight takes what is left over, so the 4 weights always
+ * add up to exactly 1 and the vertex doesn't shrink or grow.
+ *
+ * @author Glenn Arne Christensen
+ *
+ */
+public class SkinningFormat {
+
+	public static final int WEIGHTS_PER_VERTEX = 4;
+	public static final int BYTES_PER_VERTEX = WEIGHTS_PER_VERTEX + WEIGHTS_PER_VERTEX * 2;
+	// Where the weights start in a vertex, after the joint indices
+	public static final int WEIGHTS_OFFSET = WEIGHTS_PER_VERTEX;
+
+	private static final int MAX_WEIGHT = 65535;
+	private static final int MAX_JOINT_INDEX = 255;
+
+	/**
+	 * Packs the joints and weights into the layout. Vertices with more than 4 weights keep the first 4, the
+	 * collada loader sorts them biggest first, and the rest is shared out over those. Vertices with fewer are
+	 * filled up with joint 0 and weight 0.
+	 * @param jointIds - the joint IDs of every vertex, one after the other
+	 * @param weights - the weights of every vertex, in the same order
+	 * @param weightsPerVertex - how many joint IDs and weights every vertex has in the arrays
+	 * @return the packed vertices, ready to be read
+	 */
+	public static ByteBuffer pack(int[] jointIds, float[] weights, int weightsPerVertex) {
+		int vertexCount = weightsPerVertex == 0 ? 0 : jointIds.length / weightsPerVertex;
+		ByteBuffer buffer = BufferUtils.createByteBuffer(vertexCount * BYTES_PER_VERTEX);
+		int count = Math.min(weightsPerVertex, WEIGHTS_PER_VERTEX);
+		int[] quantized = new int[WEIGHTS_PER_VERTEX];
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			int first = vertex * weightsPerVertex;
+			float total = 0;
+			for (int i = 0; i < count; i++) {
+				total += weights[first + i];
+			}
+			int sum = 0;
+			int biggest = 0;
+			for (int i = 0; i < WEIGHTS_PER_VERTEX; i++) {
+				float weight = i < count && total > 0 ? weights[first + i] / total : 0;
+				quantized[i] = Math.round(weight * MAX_WEIGHT);
+				sum += quantized[i];
+				if (quantized[i] > quantized[biggest]) {
+					biggest = i;
+				}
+			}
+			if (sum > 0) {
+				quantized[biggest] += MAX_WEIGHT - sum;
+			}
+			for (int i = 0; i < WEIGHTS_PER_VERTEX; i++) {
+				int joint = i < count ? jointIds[first + i] : 0;
+				if (joint < 0 || joint > MAX_JOINT_INDEX) {
+					System.err.println("Joint " + joint + " doesn't fit in a byte, vertex " + vertex + " uses joint 0 instead");
+					joint = 0;
+				}
+				buffer.put((byte) joint);
+			}
+			for (int i = 0; i < WEIGHTS_PER_VERTEX; i++) {
+				buffer.putShort((short) quantized[i]);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @return the joint index of the vertex as the shader reads it
+	 */
+	public static int getJoint(ByteBuffer packed, int vertex, int i) {
+		return packed.get(vertex * BYTES_PER_VERTEX + i) & 0xFF;
+	}
+
+	/**
+	 * @return the weight of the vertex as the shader reads it
+	 */
+	public static float getWeight(ByteBuffer packed, int vertex, int i) {
+		return (packed.getShort(vertex * BYTES_PER_VERTEX + WEIGHTS_OFFSET + i * 2) & 0xFFFF) / (float) MAX_WEIGHT;
+	}
+
+}
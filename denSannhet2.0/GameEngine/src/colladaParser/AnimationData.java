@@ -2,7 +2,7 @@ package colladaParser;
 
 /**
  * Contains the extracted data for an animation, which includes the length of
- * the entire animation and the data for all the keyframes of the animation.
+ * the entire animation and the keyframes of every joint of the animation.
  * 
  * @author Karl
  *
@@ -10,11 +10,11 @@ package colladaParser;
 public class AnimationData {
 
 	public final float lengthSeconds;
-	public final KeyFrameData[] keyFrames;
+	public final JointTrackData[] tracks;
 
-	public AnimationData(float lengthSeconds, KeyFrameData[] keyFrames) {
+	public AnimationData(float lengthSeconds, JointTrackData[] tracks) {
 		this.lengthSeconds = lengthSeconds;
-		this.keyFrames = keyFrames;
+		this.tracks = tracks;
 	}
 
 }
@@ -1,6 +1,7 @@
 package colladaParser;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 import org.lwjgl.BufferUtils;
@@ -8,8 +9,7 @@ import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
 import colladaParser.AnimationData;
-import colladaParser.JointTransformData;
-import colladaParser.KeyFrameData;
+import colladaParser.JointTrackData;
 import colladaParser.XmlNode;
 
 public class AnimationLoader {
@@ -26,18 +26,24 @@ public class AnimationLoader {
 	
 	public AnimationData extractAnimation(){
 		String rootNode = findRootJointName();
-		float[] times = getKeyTimes();
-		float duration = times[times.length-1];
-		KeyFrameData[] keyFrames = initKeyFrames(times);
 		List<XmlNode> animationNodes = animationData.getChildren("animation");
-		for(XmlNode jointNode : animationNodes){
-			loadJointTransforms(keyFrames, jointNode, rootNode);
+		JointTrackData[] tracks = new JointTrackData[animationNodes.size()];
+		float duration = 0;
+		for(int i=0;i<tracks.length;i++){
+			tracks[i] = loadJointTrack(animationNodes.get(i), rootNode);
+			float[] times = tracks[i].times;
+			if(times.length > 0){
+				duration = Math.max(duration, times[times.length-1]);
+			}
 		}
-		return new AnimationData(duration, keyFrames);
+		return new AnimationData(duration, tracks);
 	}
 	
-	private float[] getKeyTimes(){
-		XmlNode timeData = animationData.getChild("animation").getChild("source").getChild("float_array");
+	/**
+	 * Reads the key times of one joint, every channel has its own.
+	 */
+	private float[] getKeyTimes(XmlNode jointData){
+		XmlNode timeData = getSource(jointData, "INPUT").getChild("float_array");
 		String[] rawTimes = timeData.getData().split(" ");
 		float[] times = new float[rawTimes.length];
 		for(int i=0;i<times.length;i++){
@@ -46,25 +52,22 @@ public class AnimationLoader {
 		return times;
 	}
 	
-	private KeyFrameData[] initKeyFrames(float[] times){
-		KeyFrameData[] frames = new KeyFrameData[times.length];
-		for(int i=0;i<frames.length;i++){
-			frames[i] = new KeyFrameData(times[i]);
-		}
-		return frames;
-	}
-	
-	private void loadJointTransforms(KeyFrameData[] frames, XmlNode jointData, String rootNodeId){
+	private JointTrackData loadJointTrack(XmlNode jointData, String rootNodeId){
 		String jointNameId = getJointName(jointData);
-		String dataId = getDataId(jointData);
-		XmlNode transformData = jointData.getChildWithAttribute("source", "id", dataId);
-		String[] rawData = transformData.getChild("float_array").getData().split(" ");
-		processTransforms(jointNameId, rawData, frames, jointNameId.equals(rootNodeId));
+		float[] times = getKeyTimes(jointData);
+		String[] rawData = getSource(jointData, "OUTPUT").getChild("float_array").getData().split(" ");
+		if(rawData.length < times.length * 16){
+			System.err.println("Animation of " + jointNameId + " has " + times.length + " key times, but only " + rawData.length / 16 + " transforms");
+			times = Arrays.copyOf(times, rawData.length / 16);
+		}
+		Matrix4f[] transforms = processTransforms(rawData, times.length, jointNameId.equals(rootNodeId));
+		return new JointTrackData(jointNameId, times, transforms);
 	}
 	
-	private String getDataId(XmlNode jointData){
-		XmlNode node = jointData.getChild("sampler").getChildWithAttribute("input", "semantic", "OUTPUT");
-		return node.getAttribute("source").substring(1);
+	private XmlNode getSource(XmlNode jointData, String semantic){
+		XmlNode node = jointData.getChild("sampler").getChildWithAttribute("input", "semantic", semantic);
+		String dataId = node.getAttribute("source").substring(1);
+		return jointData.getChildWithAttribute("source", "id", dataId);
 	}
 	
 	private String getJointName(XmlNode jointData){
@@ -73,10 +76,11 @@ public class AnimationLoader {
 		return data.split("/")[0];
 	}
 	
-	private void processTransforms(String jointName, String[] rawData, KeyFrameData[] keyFrames, boolean root){
+	private Matrix4f[] processTransforms(String[] rawData, int count, boolean root){
 		FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
 		float[] matrixData = new float[16];
-		for(int i=0;i<keyFrames.length;i++){
+		Matrix4f[] transforms = new Matrix4f[count];
+		for(int i=0;i<count;i++){
 			for(int j=0;j<16;j++){
 				matrixData[j] = Float.parseFloat(rawData[i*16 + j]);
 			}
@@ -90,8 +94,9 @@ public class AnimationLoader {
 				//because up axis in Blender is different to up axis in game
 				Matrix4f.mul(CORRECTION, transform, transform);
 			}
-			keyFrames[i].addJointTransform(new JointTransformData(jointName, transform));
+			transforms[i] = transform;
 		}
+		return transforms;
 	}
 	
 	private String findRootJointName(){
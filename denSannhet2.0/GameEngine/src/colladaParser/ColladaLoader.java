@@ -20,7 +20,7 @@ public class ColladaLoader {
 		SkeletonLoader jointsLoader = new SkeletonLoader(node.getChild("library_visual_scenes"), skinningData.jointOrder);
 		SkeletonData jointsData = jointsLoader.extractBoneData();
 
-		GeometryLoader g = new GeometryLoader(node.getChild("library_geometries"), skinningData.verticesSkinData);
+		GeometryLoader g = new GeometryLoader(node.getChild("library_geometries"), skinningData.verticesSkinData, maxWeights);
 		MeshData meshData = g.extractModelData();
 
 		return new AnimatedModelData(meshData, jointsData);
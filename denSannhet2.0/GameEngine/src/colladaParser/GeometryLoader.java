@@ -25,6 +25,7 @@ public class GeometryLoader {
 	private final XmlNode meshData;
 
 	private final List<VertexSkinData> vertexWeights;
+	private final int weightsPerVertex;
 	
 	private float[] verticesArray;
 	private float[] normalsArray;
@@ -38,8 +39,9 @@ public class GeometryLoader {
 	List<Vector3f> normals = new ArrayList<Vector3f>();
 	List<Integer> indices = new ArrayList<Integer>();
 	
-	public GeometryLoader(XmlNode geometryNode, List<VertexSkinData> vertexWeights) {
+	public GeometryLoader(XmlNode geometryNode, List<VertexSkinData> vertexWeights, int weightsPerVertex) {
 		this.vertexWeights = vertexWeights;
+		this.weightsPerVertex = weightsPerVertex;
 		this.meshData = geometryNode.getChild("geometry").getChild("mesh");
 	}
 	
@@ -50,7 +52,7 @@ public class GeometryLoader {
 		initArrays();
 		convertDataToArrays();
 		convertIndicesListToArray();
-		return new MeshData(verticesArray, texturesArray, normalsArray, indicesArray, jointIdsArray, weightsArray);
+		return new MeshData(verticesArray, texturesArray, normalsArray, indicesArray, jointIdsArray, weightsArray, weightsPerVertex);
 	}
 
 	private void readRawData() {
@@ -155,12 +157,10 @@ public class GeometryLoader {
 			normalsArray[i * 3 + 1] = normalVector.y;
 			normalsArray[i * 3 + 2] = normalVector.z;
 			VertexSkinData weights = currentVertex.getWeightsData();
-			jointIdsArray[i * 3] = weights.jointIds.get(0);
-			jointIdsArray[i * 3 + 1] = weights.jointIds.get(1);
-			jointIdsArray[i * 3 + 2] = weights.jointIds.get(2);
-			weightsArray[i * 3] = weights.weights.get(0);
-			weightsArray[i * 3 + 1] = weights.weights.get(1);
-			weightsArray[i * 3 + 2] = weights.weights.get(2);
+			for (int j = 0; j < weightsPerVertex; j++) {
+				jointIdsArray[i * weightsPerVertex + j] = weights.jointIds.get(j);
+				weightsArray[i * weightsPerVertex + j] = weights.weights.get(j);
+			}
 
 		}
 		return furthestPoint;
@@ -191,8 +191,8 @@ public class GeometryLoader {
 		this.verticesArray = new float[vertices.size() * 3];
 		this.texturesArray = new float[vertices.size() * 2];
 		this.normalsArray = new float[vertices.size() * 3];
-		this.jointIdsArray = new int[vertices.size() * 3];
-		this.weightsArray = new float[vertices.size() * 3];
+		this.jointIdsArray = new int[vertices.size() * weightsPerVertex];
+		this.weightsArray = new float[vertices.size() * weightsPerVertex];
 	}
 
 	private void removeUnusedVertices() {
@@ -0,0 +1,23 @@
+package colladaParser;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * The keyframes of one joint in an animation, read from its own channel in the
+ * collada file. Every joint has its own key times, they don't have to be the
+ * same as the ones of the other joints.
+ *
+ */
+public class JointTrackData {
+
+	public final String jointNameId;
+	public final float[] times;
+	public final Matrix4f[] jointLocalTransforms;
+
+	public JointTrackData(String jointNameId, float[] times, Matrix4f[] jointLocalTransforms) {
+		this.jointNameId = jointNameId;
+		this.times = times;
+		this.jointLocalTransforms = jointLocalTransforms;
+	}
+
+}
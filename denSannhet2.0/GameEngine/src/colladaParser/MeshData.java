@@ -16,15 +16,17 @@ public class MeshData {
 	private int[] indices;
 	private int[] jointIds;
 	private float[] vertexWeights;
+	private int weightsPerVertex;
 
 	public MeshData(float[] vertices, float[] textureCoords, float[] normals, int[] indices,
-			int[] jointIds, float[] vertexWeights) {
+			int[] jointIds, float[] vertexWeights, int weightsPerVertex) {
 		this.vertices = vertices;
 		this.textureCoords = textureCoords;
 		this.normals = normals;
 		this.indices = indices;
 		this.jointIds = jointIds;
 		this.vertexWeights = vertexWeights;
+		this.weightsPerVertex = weightsPerVertex;
 	}
 
 	public int[] getJointIds() {
@@ -34,6 +36,13 @@ public class MeshData {
 	public float[] getVertexWeights(){
 		return vertexWeights;
 	}
+	
+	/**
+	 * @return the number of joint IDs and weights every vertex has in the arrays
+	 */
+	public int getWeightsPerVertex(){
+		return weightsPerVertex;
+	}
 
 	public float[] getVertices() {
 		return vertices;
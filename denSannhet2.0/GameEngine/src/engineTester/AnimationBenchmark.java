@@ -0,0 +1,231 @@
+package engineTester;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import animation.AnimatedModel;
+import animation.AnimatedModelLoader;
+import animation.Animation;
+import animation.Joint;
+import animation.JointTransform;
+import animation.KeyFrame;
+import animation.Quaternion;
+import colladaParser.AnimationData;
+import colladaParser.ColladaLoader;
+import colladaParser.JointTrackData;
+
+	/**
+	 * Compares the pose evaluation of Animator with the way it was done before, with a HashMap of joint
+	 * names and new matrices, vectors and quaternions for every joint every frame. The joint matrices must be
+	 * exactly the same, and the new way must not allocate anything.
+	 *
+	 * The bytes allocated are measured with the allocation counter of the JVM for the current thread. The
+	 * model and animation are loaded from res/model.dae on the classpath, so run it with the src folder on the
+	 * classpath. Usage: AnimationBenchmark [frames]. Exits with 1 if a check fails.
+	 */
+public class AnimationBenchmark {
+
+	private static final float FRAME_TIME = 1 / 60f;
+
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		AnimatedModelLoader loader = new AnimatedModelLoader();
+		AnimatedModel model = loader.loadSkeleton("model");
+		Animation animation = loader.loadAnimation("model");
+		model.doAnimation(animation);
+		LegacyAnimator legacy = new LegacyAnimator(model, animation.getLength(), loadKeyFrames("model"));
+
+		// the same frames on both, compared joint by joint
+		int mismatches = 0;
+		int compared = 0;
+		int framesPerLoop = (int) Math.ceil(animation.getLength() / FRAME_TIME) + 1;
+		for (int i = 0; i < framesPerLoop * 3; i++) {
+			model.update(FRAME_TIME);
+			legacy.update(FRAME_TIME);
+			if (!legacy.isFinite()) {
+				// the old code divided 0 by 0 on the last keyframe, there is nothing to compare there
+				continue;
+			}
+			compared++;
+			Matrix4f[] transforms = model.getJointTransforms();
+			for (int joint = 0; joint < transforms.length; joint++) {
+				if (!equal(transforms[joint], legacy.jointTransforms[joint])) {
+					mismatches++;
+				}
+			}
+		}
+		System.out.println(model.getJointCount() + " joints, " + legacy.keyFrames.length + " keyframes, "
+				+ compared + " frames compared, " + mismatches + " joint matrices different");
+
+		for (int warmup = 0; warmup < 5; warmup++) {
+			runLegacy(legacy, frames / 10);
+			runNew(model, frames / 10);
+		}
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		runLegacy(legacy, frames);
+		report("Old Animator (HashMap per frame)", start, allocated, frames);
+		allocated = allocatedBytes();
+		start = System.nanoTime();
+		runNew(model, frames);
+		long newBytes = report("Animator (Pose and Skeleton)", start, allocated, frames);
+
+		// reading the allocation counter allocates a few bytes itself, so anything below a byte per frame is nothing
+		if (mismatches > 0 || newBytes >= frames) {
+			System.exit(1);
+		}
+	}
+
+	private static void runLegacy(LegacyAnimator legacy, int frames) {
+		for (int i = 0; i < frames; i++) {
+			legacy.update(FRAME_TIME);
+		}
+	}
+
+	private static void runNew(AnimatedModel model, int frames) {
+		for (int i = 0; i < frames; i++) {
+			model.update(FRAME_TIME);
+		}
+	}
+
+	/**
+	 * Loads the keyframes the way the old AnimatedModelLoader did, a JointTransform per joint per keyframe.
+	 * The joints of model.dae all have keyframes at the same times, so the times of the first joint are the
+	 * times of all of them.
+	 */
+	private static KeyFrame[] loadKeyFrames(String file) {
+		AnimationData data = ColladaLoader.loadColladaAnimation(new MyFile(new MyFile("res"), file + ".dae"));
+		float[] times = data.tracks[0].times;
+		KeyFrame[] frames = new KeyFrame[times.length];
+		for (int i = 0; i < frames.length; i++) {
+			Map<String, JointTransform> pose = new HashMap<String, JointTransform>();
+			for (JointTrackData track : data.tracks) {
+				Matrix4f matrix = track.jointLocalTransforms[i];
+				pose.put(track.jointNameId, new JointTransform(new Vector3f(matrix.m30, matrix.m31, matrix.m32),
+						Quaternion.fromMatrix(matrix)));
+			}
+			frames[i] = new KeyFrame(times[i], pose);
+		}
+		return frames;
+	}
+
+	private static boolean equal(Matrix4f a, Matrix4f b) {
+		return a.m00 == b.m00 && a.m01 == b.m01 && a.m02 == b.m02 && a.m03 == b.m03
+				&& a.m10 == b.m10 && a.m11 == b.m11 && a.m12 == b.m12 && a.m13 == b.m13
+				&& a.m20 == b.m20 && a.m21 == b.m21 && a.m22 == b.m22 && a.m23 == b.m23
+				&& a.m30 == b.m30 && a.m31 == b.m31 && a.m32 == b.m32 && a.m33 == b.m33;
+	}
+
+	private static long report(String name, long start, long allocatedBefore, int frames) {
+		long nanos = System.nanoTime() - start;
+		long bytes = allocatedBytes() - allocatedBefore;
+		System.out.println(name + ": " + ((float) nanos / frames) + " ns per frame, "
+				+ ((float) bytes / frames) + " bytes per frame");
+		return bytes;
+	}
+
+	/**
+	 * @return the bytes allocated by this thread so far, or 0 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Animator as it was before, writing the result into its own array instead of into the joints.
+	 */
+	private static class LegacyAnimator {
+
+		private final Joint rootJoint;
+		private final float length;
+		private final KeyFrame[] keyFrames;
+		private final Matrix4f[] jointTransforms;
+		private float animationTime = 0;
+
+		private LegacyAnimator(AnimatedModel model, float length, KeyFrame[] keyFrames) {
+			this.rootJoint = model.getRootJoint();
+			this.length = length;
+			this.keyFrames = keyFrames;
+			this.jointTransforms = new Matrix4f[model.getJointCount()];
+		}
+
+		private void update(float seconds) {
+			animationTime += seconds;
+			if (animationTime > length) {
+				animationTime = 0;
+			}
+			KeyFrame[] frames = getPreviousAndNextFrames();
+			float totalTime = frames[1].getTimeStamp() - frames[0].getTimeStamp();
+			float progression = (animationTime - frames[0].getTimeStamp()) / totalTime;
+			Map<String, Matrix4f> currentPose = interpolatePoses(frames[0], frames[1], progression);
+			applyPoseToJoints(currentPose, rootJoint, new Matrix4f());
+		}
+
+		private boolean isFinite() {
+			for (Matrix4f matrix : jointTransforms) {
+				if (Float.isNaN(matrix.m00) || Float.isNaN(matrix.m30)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void applyPoseToJoints(Map<String, Matrix4f> currentPose, Joint joint, Matrix4f parentTransform) {
+			Matrix4f currentLocalTransform = currentPose.get(joint.name);
+			Matrix4f currentTransform = Matrix4f.mul(parentTransform, currentLocalTransform, null);
+			for (Joint childJoint : joint.children) {
+				applyPoseToJoints(currentPose, childJoint, currentTransform);
+			}
+			Matrix4f.mul(currentTransform, joint.getInverseBindTransform(), currentTransform);
+			jointTransforms[joint.jointID] = currentTransform;
+		}
+
+		private KeyFrame[] getPreviousAndNextFrames() {
+			KeyFrame[] allFrames = keyFrames;
+			KeyFrame previousFrame = allFrames[0];
+			KeyFrame nextFrame = allFrames[0];
+			for (int i = 1; i < allFrames.length; i++) {
+				nextFrame = allFrames[i];
+				if (nextFrame.getTimeStamp() > animationTime) {
+					break;
+				}
+				previousFrame = allFrames[i];
+			}
+			return new KeyFrame[] { previousFrame, nextFrame };
+		}
+
+		private Map<String, Matrix4f> interpolatePoses(KeyFrame previousFrame, KeyFrame nextFrame, float progression) {
+			Map<String, Matrix4f> currentPose = new HashMap<String, Matrix4f>();
+			for (String jointName : previousFrame.getJointKeyFrames().keySet()) {
+				JointTransform previousTransform = previousFrame.getJointKeyFrames().get(jointName);
+				JointTransform nextTransform = nextFrame.getJointKeyFrames().get(jointName);
+				currentPose.put(jointName, interpolate(previousTransform, nextTransform, progression));
+			}
+			return currentPose;
+		}
+
+		/**
+		 * JointTransform.interpolate followed by JointTransform.getLocalTransform.
+		 */
+		private static Matrix4f interpolate(JointTransform frameA, JointTransform frameB, float progression) {
+			Vector3f start = frameA.getPosition();
+			Vector3f end = frameB.getPosition();
+			Vector3f position = new Vector3f(start.x + (end.x - start.x) * progression,
+					start.y + (end.y - start.y) * progression, start.z + (end.z - start.z) * progression);
+			Quaternion rotation = Quaternion.interpolate(frameA.getRotation(), frameB.getRotation(), progression);
+			Matrix4f matrix = new Matrix4f();
+			matrix.translate(position);
+			Matrix4f.mul(matrix, rotation.toRotationMatrix(), matrix);
+			return matrix;
+		}
+	}
+
+}
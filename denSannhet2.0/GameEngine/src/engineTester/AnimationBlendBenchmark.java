@@ -0,0 +1,298 @@
+package engineTester;
+
+import java.lang.management.ManagementFactory;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import animation.AnimatedModel;
+import animation.AnimatedModelLoader;
+import animation.Animation;
+import animation.Joint;
+import animation.JointTrack;
+import animation.Pose;
+import animation.Quaternion;
+
+	/**
+	 * Checks the cross-fades, masked layers and additive layers of Animator against poses worked out on their own,
+	 * and times 1, 2 and 4 animations blended together.
+	 *
+	 * The checks play the animation in res/model.dae, and copies of it started from another keyframe, on their own
+	 * models for reference:
+	 * - the start of a cross-fade is exactly the old animation, the middle the blend of both, the end exactly the new one
+	 * - a masked layer gives exactly the layer inside the mask, and exactly the animation under it outside the mask
+	 * - an additive layer turns every joint by the rotation of the layer from its first keyframe, and weight 0 changes nothing
+	 * - the same layers played twice give exactly the same joint matrices, and blending creates no objects
+	 *
+	 * Run it with the src folder on the classpath. Usage: AnimationBlendBenchmark [frames]. Exits with 1 if a check fails.
+	 */
+public class AnimationBlendBenchmark {
+
+	private static final float FRAME_TIME = 1 / 60f;
+	private static final float TOLERANCE = 1e-4f;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		AnimatedModelLoader loader = new AnimatedModelLoader();
+		AnimatedModel skeleton = loader.loadSkeleton("model");
+		Animation run = loader.loadAnimation("model");
+		Animation[] clips = { run, shift(run, 1), shift(run, 2), shift(run, 3) };
+
+		checkCrossFade(skeleton, clips[0], clips[1]);
+		checkMask(skeleton, clips[0], clips[1]);
+		checkAdditive(skeleton, clips[0], clips[1]);
+		checkDeterministic(skeleton, clips);
+
+		AnimatedModel one = create(skeleton, 1, clips);
+		AnimatedModel fade = create(skeleton, 2, clips);
+		AnimatedModel layered = create(skeleton, 4, clips);
+		for (int warmup = 0; warmup < 5; warmup++) {
+			time(one, frames / 10);
+			time(fade, frames / 10);
+			time(layered, frames / 10);
+		}
+		long oneNanos = time(one, frames);
+		long allocated = allocatedBytes();
+		long fadeNanos = time(fade, frames);
+		long layeredNanos = time(layered, frames);
+		long bytes = allocatedBytes() - allocated;
+		System.out.println("1 animation:                  " + oneNanos / frames + " ns per pose");
+		System.out.println("2 animations (cross-fade):    " + fadeNanos / frames + " ns per pose, "
+				+ (float) fadeNanos / oneNanos + "x");
+		System.out.println("4 animations (fade + layers): " + layeredNanos / frames + " ns per pose, "
+				+ (float) layeredNanos / oneNanos + "x");
+		// reading the allocation counter allocates a few bytes itself, so anything below a byte per frame is nothing
+		if (bytes >= frames) {
+			System.out.println("Blending allocated " + bytes + " bytes");
+			failures++;
+		}
+		System.out.println(failures + " checks failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The animation started from another keyframe, every track has the same keyframes moved along by the shift.
+	 */
+	private static Animation shift(Animation animation, int shift) {
+		JointTrack[] tracks = animation.getTracks();
+		JointTrack[] shifted = new JointTrack[tracks.length];
+		for (int i = 0; i < tracks.length; i++) {
+			int count = tracks[i].getKeyCount();
+			float[] translations = new float[count * 3];
+			float[] rotations = new float[count * 4];
+			for (int key = 0; key < count; key++) {
+				int from = (key + shift) % count;
+				System.arraycopy(tracks[i].getTranslations(), from * 3, translations, key * 3, 3);
+				System.arraycopy(tracks[i].getRotations(), from * 4, rotations, key * 4, 4);
+			}
+			shifted[i] = new JointTrack(tracks[i].getJointName(), tracks[i].getTimes(), translations, rotations);
+		}
+		return new Animation(animation.getLength(), shifted);
+	}
+
+	private static AnimatedModel play(AnimatedModel skeleton, Animation animation) {
+		AnimatedModel model = skeleton.createInstance(new Vector3f(), 0, 0, 0, 1);
+		model.doAnimation(animation);
+		return model;
+	}
+
+	private static void checkCrossFade(AnimatedModel skeleton, Animation from, Animation to) {
+		AnimatedModel model = play(skeleton, from);
+		AnimatedModel fromOnly = play(skeleton, from);
+		for (int i = 0; i < 3; i++) {
+			model.update(0.1f);
+			fromOnly.update(0.1f);
+		}
+		model.crossFade(to, 0.5f);
+		AnimatedModel toOnly = play(skeleton, to);
+		model.update(0);
+		fromOnly.update(0);
+		toOnly.update(0);
+		check("start of cross-fade", equal(model.getPose(), fromOnly.getPose()));
+		model.update(0.25f);
+		fromOnly.update(0.25f);
+		toOnly.update(0.25f);
+		Pose half = new Pose(skeleton.getJointCount());
+		Pose.blend(fromOnly.getPose(), toOnly.getPose(), 0.5f, null, half);
+		check("middle of cross-fade", equal(model.getPose(), half));
+		model.update(0.25f);
+		toOnly.update(0.25f);
+		check("end of cross-fade", equal(model.getPose(), toOnly.getPose()) && !model.getAnimator().isFading());
+	}
+
+	private static void checkMask(AnimatedModel skeleton, Animation base, Animation layer) {
+		float[] mask = findPartialMask(skeleton, skeleton.getRootJoint());
+		AnimatedModel model = play(skeleton, base);
+		model.getAnimator().setLayer(0, layer, 1, mask, false);
+		AnimatedModel baseOnly = play(skeleton, base);
+		AnimatedModel layerOnly = play(skeleton, layer);
+		model.update(0.3f);
+		baseOnly.update(0.3f);
+		layerOnly.update(0.3f);
+		boolean inside = true;
+		boolean outside = true;
+		for (int joint = 0; joint < mask.length; joint++) {
+			if (mask[joint] > 0) {
+				inside &= equal(model.getPose(), layerOnly.getPose(), joint);
+			} else {
+				outside &= equal(model.getPose(), baseOnly.getPose(), joint);
+			}
+		}
+		check("masked layer inside the mask", inside);
+		check("masked layer outside the mask", outside);
+	}
+
+	/**
+	 * @return the mask of the first joint that has some of the joints under it, but not all of them
+	 */
+	private static float[] findPartialMask(AnimatedModel skeleton, Joint joint) {
+		float[] mask = skeleton.getSkeleton().createMask(joint.name);
+		int count = 0;
+		for (float weight : mask) {
+			count += weight > 0 ? 1 : 0;
+		}
+		if (count > 1 && count < mask.length) {
+			return mask;
+		}
+		for (Joint child : joint.children) {
+			float[] childMask = findPartialMask(skeleton, child);
+			if (childMask != null) {
+				return childMask;
+			}
+		}
+		return null;
+	}
+
+	private static void checkAdditive(AnimatedModel skeleton, Animation base, Animation layer) {
+		AnimatedModel model = play(skeleton, base);
+		model.getAnimator().setLayer(0, layer, 1, null, true);
+		AnimatedModel unchanged = play(skeleton, base);
+		unchanged.getAnimator().setLayer(0, layer, 0, null, true);
+		AnimatedModel baseOnly = play(skeleton, base);
+		AnimatedModel layerOnly = play(skeleton, layer);
+		layerOnly.update(0);
+		Pose reference = new Pose(skeleton.getJointCount());
+		reference.load(layerOnly.getPose());
+		model.update(0.3f);
+		unchanged.update(0.3f);
+		baseOnly.update(0.3f);
+		layerOnly.update(0.3f);
+		check("additive layer with weight 0", equal(unchanged.getPose(), baseOnly.getPose()));
+		boolean correct = true;
+		for (int joint = 0; joint < skeleton.getJointCount(); joint++) {
+			// base * inverse(reference) * layer, as rotation matrices
+			Matrix4f expected = rotation(baseOnly.getPose(), joint);
+			Matrix4f.mul(expected, Matrix4f.invert(rotation(reference, joint), null), expected);
+			Matrix4f.mul(expected, rotation(layerOnly.getPose(), joint), expected);
+			correct &= close(expected, rotation(model.getPose(), joint));
+			for (int axis = 0; axis < 3; axis++) {
+				int t = joint * 3 + axis;
+				float moved = layerOnly.getPose().getTranslations()[t] - reference.getTranslations()[t];
+				correct &= Math.abs(baseOnly.getPose().getTranslations()[t] + moved
+						- model.getPose().getTranslations()[t]) < TOLERANCE;
+			}
+		}
+		check("additive layer", correct);
+	}
+
+	private static void checkDeterministic(AnimatedModel skeleton, Animation[] clips) {
+		AnimatedModel a = create(skeleton, 4, clips);
+		AnimatedModel b = create(skeleton, 4, clips);
+		boolean same = true;
+		for (int i = 0; i < 500; i++) {
+			a.update(FRAME_TIME);
+			b.update(FRAME_TIME);
+			Matrix4f[] transformsA = a.getJointTransforms();
+			Matrix4f[] transformsB = b.getJointTransforms();
+			for (int joint = 0; joint < transformsA.length; joint++) {
+				same &= transformsA[joint].toString().equals(transformsB[joint].toString());
+			}
+		}
+		check("the same layers played twice", same);
+	}
+
+	/**
+	 * A model playing the number of animations at once: one, a cross-fade that never ends, or a cross-fade with
+	 * a masked and an additive layer on top.
+	 */
+	private static AnimatedModel create(AnimatedModel skeleton, int animations, Animation[] clips) {
+		AnimatedModel model = play(skeleton, clips[0]);
+		if (animations >= 2) {
+			model.update(0.2f);
+			model.crossFade(clips[1], Float.MAX_VALUE);
+		}
+		if (animations >= 4) {
+			float[] mask = findPartialMask(skeleton, skeleton.getRootJoint());
+			model.getAnimator().setLayer(0, clips[2], 0.7f, mask, false);
+			model.getAnimator().setLayer(1, clips[3], 0.5f, null, true);
+		}
+		return model;
+	}
+
+	private static long time(AnimatedModel model, int frames) {
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			model.update(FRAME_TIME);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static Matrix4f rotation(Pose pose, int joint) {
+		float[] r = pose.getRotations();
+		return new Quaternion(r[joint * 4], r[joint * 4 + 1], r[joint * 4 + 2], r[joint * 4 + 3]).toRotationMatrix();
+	}
+
+	private static boolean close(Matrix4f a, Matrix4f b) {
+		return Math.abs(a.m00 - b.m00) < TOLERANCE && Math.abs(a.m01 - b.m01) < TOLERANCE
+				&& Math.abs(a.m02 - b.m02) < TOLERANCE && Math.abs(a.m10 - b.m10) < TOLERANCE
+				&& Math.abs(a.m11 - b.m11) < TOLERANCE && Math.abs(a.m12 - b.m12) < TOLERANCE
+				&& Math.abs(a.m20 - b.m20) < TOLERANCE && Math.abs(a.m21 - b.m21) < TOLERANCE
+				&& Math.abs(a.m22 - b.m22) < TOLERANCE;
+	}
+
+	private static boolean equal(Pose a, Pose b) {
+		for (int joint = 0; joint < a.getJointCount(); joint++) {
+			if (!equal(a, b, joint)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equal(Pose a, Pose b, int joint) {
+		for (int i = joint * 3; i < joint * 3 + 3; i++) {
+			if (a.getTranslations()[i] != b.getTranslations()[i]) {
+				return false;
+			}
+		}
+		for (int i = joint * 4; i < joint * 4 + 4; i++) {
+			if (a.getRotations()[i] != b.getRotations()[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "ok:     " : "FAILED: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+
+	/**
+	 * @return the bytes allocated by this thread so far, or 0 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+}
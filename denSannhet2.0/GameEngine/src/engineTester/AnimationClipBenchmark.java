@@ -0,0 +1,185 @@
+package engineTester;
+
+import java.util.Random;
+
+import animation.AnimatedModel;
+import animation.AnimatedModelLoader;
+import animation.Animation;
+import animation.Animator;
+import animation.JointTrack;
+
+	/**
+	 * Measures how long it takes to work out a pose as the clips get longer, like a mocap clip with thousands of
+	 * keyframes. The clips are made from the animation in res/model.dae, repeated over and over at 120 keyframes
+	 * a second. Every third joint has half, and every third a quarter as many keyframes, so the tracks don't share
+	 * their key times.
+	 *
+	 * For every length it times playing the clip at 60 frames a second, where the cursors find the keyframes, and
+	 * jumping to a random time every frame, where a binary search does. The old linear scan through the keyframes
+	 * is timed on its own for comparison. The translations of the pose are checked against a linear scan of every
+	 * track. Run it with the src folder on the classpath. Usage: AnimationClipBenchmark [frames]. Exits with 1 if a
+	 * translation is different.
+	 */
+public class AnimationClipBenchmark {
+
+	private static final float FRAME_TIME = 1 / 60f;
+	private static final float KEYS_PER_SECOND = 120;
+	private static final int[] LENGTHS = { 10, 100, 1000, 10000, 100000 };
+
+	private static int mismatches = 0;
+
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		AnimatedModelLoader loader = new AnimatedModelLoader();
+		AnimatedModel model = loader.loadSkeleton("model");
+		Animation source = loader.loadAnimation("model");
+		for (int keys : LENGTHS) {
+			// warms up the JIT, so the first length isn't timed in the interpreter
+			Animation clip = createClip(source, keys);
+			time(model, clip, frames / 10, false);
+			time(model, clip, frames / 10, true);
+		}
+		System.out.println("keys per track  playing (ns/frame)  seeking (ns/frame)  linear scan (ns/frame)");
+		for (int keys : LENGTHS) {
+			Animation clip = createClip(source, keys);
+			model.doAnimation(clip);
+			check(model, clip);
+			long playing = time(model, clip, frames, false);
+			long seeking = time(model, clip, frames, true);
+			long scan = timeLinearScan(clip, frames);
+			System.out.println(pad(keys, 14) + pad(playing / frames, 20) + pad(seeking / frames, 20)
+					+ pad(scan / frames, 24));
+		}
+		System.out.println(mismatches + " translations different from a linear scan");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Repeats the keyframes of the source animation until every track has the number of keys.
+	 */
+	private static Animation createClip(Animation source, int keys) {
+		JointTrack[] sourceTracks = source.getTracks();
+		JointTrack[] tracks = new JointTrack[sourceTracks.length];
+		float length = (keys - 1) / KEYS_PER_SECOND;
+		for (int i = 0; i < tracks.length; i++) {
+			JointTrack sourceTrack = sourceTracks[i];
+			int count = Math.max(2, keys >> (i % 3));
+			float[] times = new float[count];
+			float[] translations = new float[count * 3];
+			float[] rotations = new float[count * 4];
+			int sourceKeys = sourceTrack.getKeyCount();
+			for (int key = 0; key < count; key++) {
+				times[key] = length * key / (count - 1);
+				System.arraycopy(sourceTrack.getTranslations(), (key % sourceKeys) * 3, translations, key * 3, 3);
+				System.arraycopy(sourceTrack.getRotations(), (key % sourceKeys) * 4, rotations, key * 4, 4);
+			}
+			tracks[i] = new JointTrack(sourceTrack.getJointName(), times, translations, rotations);
+		}
+		return new Animation(length, tracks);
+	}
+
+	private static long time(AnimatedModel model, Animation clip, int frames, boolean seeking) {
+		Animator animator = model.getAnimator();
+		Random random = new Random(1);
+		float[] seeks = new float[1024];
+		for (int i = 0; i < seeks.length; i++) {
+			seeks[i] = random.nextFloat() * clip.getLength();
+		}
+		for (int run = 0; run < 2; run++) {
+			model.doAnimation(clip);
+			long start = System.nanoTime();
+			for (int i = 0; i < frames; i++) {
+				if (seeking) {
+					animator.setAnimationTime(seeks[i & 1023]);
+					model.update(0);
+				} else {
+					model.update(FRAME_TIME);
+				}
+			}
+			if (run == 1) {
+				return System.nanoTime() - start;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * The old Animator searched the keyframes from the start every frame, once for all the joints.
+	 */
+	private static long timeLinearScan(Animation clip, int frames) {
+		float[] times = clip.getTracks()[0].getTimes();
+		float animationTime = 0;
+		int sum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			animationTime += FRAME_TIME;
+			if (animationTime > clip.getLength()) {
+				animationTime = 0;
+			}
+			sum += linearScan(times, animationTime);
+		}
+		long nanos = System.nanoTime() - start;
+		if (sum == -1) {
+			System.out.println(sum);
+		}
+		return nanos;
+	}
+
+	private static int linearScan(float[] times, float time) {
+		int previous = 0;
+		for (int i = 1; i < times.length; i++) {
+			if (times[i] > time) {
+				break;
+			}
+			previous = i;
+		}
+		return previous;
+	}
+
+	/**
+	 * Plays the clip forward, and then jumps around in it, and compares the translation of every joint with
+	 * one interpolated between the keyframes a linear scan finds.
+	 */
+	private static void check(AnimatedModel model, Animation clip) {
+		Random random = new Random(2);
+		Animator animator = model.getAnimator();
+		for (int i = 0; i < 2000; i++) {
+			if (i < 1000) {
+				model.update(FRAME_TIME);
+			} else {
+				animator.setAnimationTime(random.nextFloat() * clip.getLength());
+				model.update(0);
+			}
+			float time = animator.getAnimationTime();
+			float[] pose = model.getPose().getTranslations();
+			for (JointTrack track : clip.getTracks()) {
+				float[] times = track.getTimes();
+				float[] translations = track.getTranslations();
+				int previous = linearScan(times, time);
+				int next = Math.min(previous + 1, times.length - 1);
+				float totalTime = times[next] - times[previous];
+				float progression = totalTime <= 0 ? 0 : (time - times[previous]) / totalTime;
+				int jointID = model.getSkeleton().getJointID(track.getJointName());
+				for (int axis = 0; axis < 3; axis++) {
+					float a = translations[previous * 3 + axis];
+					float b = translations[next * 3 + axis];
+					if (pose[jointID * 3 + axis] != a + (b - a) * progression) {
+						mismatches++;
+					}
+				}
+			}
+		}
+	}
+
+	private static String pad(long value, int width) {
+		String text = String.valueOf(value);
+		StringBuilder builder = new StringBuilder();
+		for (int i = text.length(); i < width; i++) {
+			builder.append(' ');
+		}
+		return builder.append(text).toString();
+	}
+
+}
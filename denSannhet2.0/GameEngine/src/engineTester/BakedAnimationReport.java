@@ -0,0 +1,103 @@
+package engineTester;
+
+import java.util.Random;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import animation.AnimatedModel;
+import animation.AnimatedModelLoader;
+import animation.Animation;
+import animation.BakedAnimation;
+
+	/**
+	 * Bakes the animation in res/model.dae at a few frame rates, and prints for each how much memory the frames
+	 * take up, how far the joint transforms are from the live Animator, and how long a pose takes compared to
+	 * the live Animator. The memory is shared by every model playing the baked animation.
+	 *
+	 * The error is the biggest and the average difference between the joint transforms of the two, at random
+	 * times in the animation. The translation error is in model units, the rotation error is the biggest
+	 * difference of any number in the 3x3 part of the matrix. No OpenGL is needed, run it with the src folder on
+	 * the classpath. Usage: BakedAnimationReport [frames].
+	 */
+public class BakedAnimationReport {
+
+	private static final float[] RATES = { 10, 30, 60, 120 };
+	private static final int SAMPLES = 10000;
+	private static final float FRAME_TIME = 1 / 60f;
+
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		AnimatedModelLoader loader = new AnimatedModelLoader();
+		AnimatedModel live = loader.loadSkeleton("model");
+		Animation animation = loader.loadAnimation("model");
+		AnimatedModel baked = live.createInstance(new Vector3f(), 0, 0, 0, 1);
+		live.doAnimation(animation);
+		long liveNanos = time(live, frames);
+		System.out.println(live.getJointCount() + " joints, " + animation.getLength() + " seconds, live Animator: "
+				+ liveNanos / frames + " ns per pose");
+		for (float rate : RATES) {
+			BakedAnimation bakedAnimation = BakedAnimation.bake(live, animation, rate);
+			baked.doAnimation(bakedAnimation);
+			float[] errors = measureError(live, baked, animation);
+			long bakedNanos = time(baked, frames);
+			System.out.println(rate + " fps: " + bakedAnimation.getFrameCount() + " frames, "
+					+ bakedAnimation.getSizeInBytes() + " bytes, translation error max " + errors[0] + " average "
+					+ errors[1] + ", rotation error max " + errors[2] + ", " + bakedNanos / frames + " ns per pose");
+		}
+	}
+
+	/**
+	 * @return the biggest and the average translation error, and the biggest rotation error
+	 */
+	private static float[] measureError(AnimatedModel live, AnimatedModel baked, Animation animation) {
+		Random random = new Random(1);
+		float maxTranslation = 0;
+		double totalTranslation = 0;
+		float maxRotation = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			float time = random.nextFloat() * animation.getLength();
+			live.getAnimator().setAnimationTime(time);
+			live.update(0);
+			baked.getAnimator().setAnimationTime(time);
+			baked.update(0);
+			Matrix4f[] a = live.getJointTransforms();
+			Matrix4f[] b = baked.getJointTransforms();
+			for (int joint = 0; joint < a.length; joint++) {
+				float dx = a[joint].m30 - b[joint].m30;
+				float dy = a[joint].m31 - b[joint].m31;
+				float dz = a[joint].m32 - b[joint].m32;
+				float translation = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				maxTranslation = Math.max(maxTranslation, translation);
+				totalTranslation += translation;
+				maxRotation = Math.max(maxRotation, rotationError(a[joint], b[joint]));
+			}
+		}
+		return new float[] { maxTranslation, (float) (totalTranslation / (SAMPLES * live.getJointCount())),
+				maxRotation };
+	}
+
+	private static float rotationError(Matrix4f a, Matrix4f b) {
+		float error = Math.abs(a.m00 - b.m00);
+		error = Math.max(error, Math.abs(a.m01 - b.m01));
+		error = Math.max(error, Math.abs(a.m02 - b.m02));
+		error = Math.max(error, Math.abs(a.m10 - b.m10));
+		error = Math.max(error, Math.abs(a.m11 - b.m11));
+		error = Math.max(error, Math.abs(a.m12 - b.m12));
+		error = Math.max(error, Math.abs(a.m20 - b.m20));
+		error = Math.max(error, Math.abs(a.m21 - b.m21));
+		return Math.max(error, Math.abs(a.m22 - b.m22));
+	}
+
+	private static long time(AnimatedModel model, int frames) {
+		for (int i = 0; i < frames / 10; i++) {
+			model.update(FRAME_TIME);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			model.update(FRAME_TIME);
+		}
+		return System.nanoTime() - start;
+	}
+
+}
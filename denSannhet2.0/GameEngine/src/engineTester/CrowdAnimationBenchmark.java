@@ -0,0 +1,111 @@
+package engineTester;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import animation.AnimatedModel;
+import animation.AnimatedModelLoader;
+import animation.Animation;
+import animation.PoseEvaluator;
+
+	/**
+	 * Measures how many poses a second PoseEvaluator works out for a crowd, with 1, 2, 4 and 8 threads. The crowd
+	 * is made of copies of the skeleton in res/model.dae, each with its own joints, playing the animation from a
+	 * different time. No OpenGL is needed.
+	 *
+	 * Every thread count starts the crowd from the same times, and the joint matrices at the end must be exactly
+	 * the same as the ones worked out on one thread. How much faster more threads are depends on the number of
+	 * cores, which is printed first. Run it with the src folder on the classpath.
+	 * Usage: CrowdAnimationBenchmark [models] [frames]. Exits with 1 if a matrix is different.
+	 */
+public class CrowdAnimationBenchmark {
+
+	private static final float FRAME_TIME = 1 / 60f;
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		AnimatedModelLoader loader = new AnimatedModelLoader();
+		AnimatedModel skeleton = loader.loadSkeleton("model");
+		Animation animation = loader.loadAnimation("model");
+		List<AnimatedModel> crowd = new ArrayList<AnimatedModel>();
+		float[] startTimes = new float[count];
+		Random random = new Random(1);
+		for (int i = 0; i < count; i++) {
+			crowd.add(skeleton.createInstance(new Vector3f(i, 0, 0), 0, 0, 0, 1));
+			startTimes[i] = random.nextFloat() * animation.getLength();
+		}
+		System.out.println(count + " models with " + skeleton.getJointCount() + " joints, " + frames + " frames, "
+				+ Runtime.getRuntime().availableProcessors() + " cores");
+
+		Matrix4f[][] expected = null;
+		int mismatches = 0;
+		for (int threads : THREADS) {
+			PoseEvaluator evaluator = new PoseEvaluator(threads);
+			// warms up the JIT and the threads
+			start(crowd, animation, startTimes);
+			run(evaluator, crowd, frames / 4);
+			start(crowd, animation, startTimes);
+			long start = System.nanoTime();
+			run(evaluator, crowd, frames);
+			long nanos = System.nanoTime() - start;
+			evaluator.cleanUp();
+			double posesPerSecond = (double) count * frames / (nanos / 1e9);
+			System.out.println(threads + " threads: " + (long) posesPerSecond + " poses per second, "
+					+ (nanos / frames / 1000) + " us per frame");
+			if (expected == null) {
+				expected = copyTransforms(crowd);
+			} else {
+				mismatches += compare(expected, crowd);
+			}
+		}
+		System.out.println(mismatches + " joint matrices different from one thread");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void start(List<AnimatedModel> crowd, Animation animation, float[] startTimes) {
+		for (int i = 0; i < crowd.size(); i++) {
+			crowd.get(i).doAnimation(animation);
+			crowd.get(i).getAnimator().setAnimationTime(startTimes[i]);
+		}
+	}
+
+	private static void run(PoseEvaluator evaluator, List<AnimatedModel> crowd, int frames) {
+		for (int i = 0; i < frames; i++) {
+			evaluator.update(crowd, FRAME_TIME);
+		}
+	}
+
+	private static Matrix4f[][] copyTransforms(List<AnimatedModel> crowd) {
+		Matrix4f[][] copies = new Matrix4f[crowd.size()][];
+		for (int i = 0; i < copies.length; i++) {
+			Matrix4f[] transforms = crowd.get(i).getJointTransforms();
+			copies[i] = new Matrix4f[transforms.length];
+			for (int joint = 0; joint < transforms.length; joint++) {
+				copies[i][joint] = new Matrix4f(transforms[joint]);
+			}
+		}
+		return copies;
+	}
+
+	private static int compare(Matrix4f[][] expected, List<AnimatedModel> crowd) {
+		int mismatches = 0;
+		for (int i = 0; i < expected.length; i++) {
+			Matrix4f[] transforms = crowd.get(i).getJointTransforms();
+			for (int joint = 0; joint < transforms.length; joint++) {
+				if (!expected[i][joint].toString().equals(transforms[joint].toString())) {
+					mismatches++;
+				}
+			}
+		}
+		return mismatches;
+	}
+
+}
@@ -0,0 +1,202 @@
+package engineTester;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+import models.RawModel;
+import models.TexturedModel;
+import textures.ModelTexture;
+import toolbox.Frustum;
+import world.EntityGrid;
+
+	/**
+	 * Times the EntityGrid against looping through a ArrayList of every entity, the way the entities were found
+	 * before, with 1000, 100000 and 1000000 entities. No OpenGL is needed, the entities have a model with a
+	 * bounding radius but no VAO. Every
+	 * model has a radius, the grid only adds entities without one when their cell is visible and the list can't
+	 * know about cells.
+	 *
+	 * The entities are spread over a square world with one entity every 20x20 units, so the world grows with the
+	 * number of entities and the queries always cover about the same number of them. For every size the same
+	 * random cameras run queryRange with a 400x400 square, queryRadius with a radius of 200 and queryFrustum
+	 * with a view distance of 1000, on the grid and on the list, and the two have to find exactly the same
+	 * entities. Usage: EntityGridBenchmark [queries]. Exits with 1 if they ever differ.
+	 */
+public class EntityGridBenchmark {
+
+	private static final int[] SIZES = { 1000, 100000, 1000000 };
+	private static final float SPACING = 20;
+	private static final float RANGE = 400;
+	private static final float RADIUS = 200;
+	private static final float FAR_PLANE = 1000;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		for(int size : SIZES) {
+			run(size, queries);
+		}
+		if(failures > 0) {
+			System.out.println("FAILED: " + failures + " queries found different entities");
+			System.exit(1);
+		}
+	}
+
+	private static void run(int size, int queries) {
+		float side = (float) Math.sqrt(size) * SPACING;
+		Random random = new Random(size);
+		TexturedModel small = new TexturedModel(new RawModel(0, 0, 2), new ModelTexture(0));
+		TexturedModel big = new TexturedModel(new RawModel(0, 0, 10), new ModelTexture(0));
+		List<Entity> list = new ArrayList<Entity>(size);
+		EntityGrid grid = new EntityGrid();
+		for(int i = 0; i < size; i++) {
+			TexturedModel model = i % 10 == 0 ? big : small;
+			Vector3f position = new Vector3f(random.nextFloat() * side, random.nextFloat() * 20, random.nextFloat() * side);
+			Entity entity = new Entity(model, position, 0, 0, 0, 1 + random.nextFloat() * 2);
+			list.add(entity);
+			grid.insert(entity);
+		}
+
+		float[] xs = new float[queries];
+		float[] zs = new float[queries];
+		float[] yaws = new float[queries];
+		Frustum[] frustums = new Frustum[queries];
+		for(int i = 0; i < queries; i++) {
+			xs[i] = random.nextFloat() * side;
+			zs[i] = random.nextFloat() * side;
+			yaws[i] = random.nextFloat() * 360;
+			frustums[i] = new Frustum();
+			frustums[i].update(createProjectionMatrix(), createViewMatrix(xs[i], 10, zs[i], 10, yaws[i]));
+		}
+
+		List<Entity> fromGrid = new ArrayList<Entity>();
+		List<Entity> fromList = new ArrayList<Entity>();
+		long[] gridNanos = new long[3];
+		long[] listNanos = new long[3];
+		int found = 0;
+		// the first round warms up, the second one is timed
+		for(int round = 0; round < 2; round++) {
+			for(int kind = 0; kind < 3; kind++) {
+				gridNanos[kind] = 0;
+				listNanos[kind] = 0;
+			}
+			found = 0;
+			for(int i = 0; i < queries; i++) {
+				for(int kind = 0; kind < 3; kind++) {
+					fromGrid.clear();
+					fromList.clear();
+					long start = System.nanoTime();
+					queryGrid(grid, kind, xs[i], zs[i], frustums[i], fromGrid);
+					long middle = System.nanoTime();
+					queryList(list, kind, xs[i], zs[i], frustums[i], fromList);
+					long end = System.nanoTime();
+					gridNanos[kind] += middle - start;
+					listNanos[kind] += end - middle;
+					found += fromGrid.size();
+					if(!sameEntities(fromGrid, fromList)) {
+						failures++;
+					}
+				}
+			}
+		}
+		System.out.println(size + " entities, " + grid.getCellCount() + " cells, " + found / (queries * 3) + " found per query on average:");
+		String[] names = { "queryRange ", "queryRadius ", "queryFrustum" };
+		for(int kind = 0; kind < 3; kind++) {
+			System.out.println("  " + names[kind] + ": grid " + gridNanos[kind] / queries / 1000 + " us, list "
+					+ listNanos[kind] / queries / 1000 + " us per query");
+		}
+	}
+
+	private static void queryGrid(EntityGrid grid, int kind, float x, float z, Frustum frustum, List<Entity> result) {
+		if(kind == 0) {
+			grid.queryRange(x - RANGE / 2, z - RANGE / 2, x + RANGE / 2, z + RANGE / 2, result);
+		} else if(kind == 1) {
+			grid.queryRadius(x, z, RADIUS, result);
+		} else {
+			grid.queryFrustum(frustum, result);
+		}
+	}
+
+	/**
+	 * The same tests the grid does for every entity, on every entity of the list.
+	 */
+	private static void queryList(List<Entity> list, int kind, float x, float z, Frustum frustum, List<Entity> result) {
+		float minX = x - RANGE / 2;
+		float maxX = x + RANGE / 2;
+		float minZ = z - RANGE / 2;
+		float maxZ = z + RANGE / 2;
+		for(int i = 0; i < list.size(); i++) {
+			Entity entity = list.get(i);
+			Vector3f p = entity.getPosition();
+			boolean add;
+			if(kind == 0) {
+				add = p.x >= minX && p.x <= maxX && p.z >= minZ && p.z <= maxZ;
+			} else if(kind == 1) {
+				float dx = p.x - x;
+				float dz = p.z - z;
+				add = dx * dx + dz * dz <= RADIUS * RADIUS;
+			} else {
+				float radius = entity.getModel().getRawModel().getBoundingRadius() * entity.getScale();
+				add = frustum.sphereInFrustum(p.x, p.y, p.z, radius);
+			}
+			if(add) {
+				result.add(entity);
+			}
+		}
+	}
+
+	private static boolean sameEntities(List<Entity> a, List<Entity> b) {
+		if(a.size() != b.size()) {
+			return false;
+		}
+		Map<Entity, Boolean> set = new IdentityHashMap<Entity, Boolean>();
+		for(Entity entity : a) {
+			set.put(entity, Boolean.TRUE);
+		}
+		for(Entity entity : b) {
+			if(set.remove(entity) == null) {
+				return false;
+			}
+		}
+		return set.isEmpty();
+	}
+
+	/**
+	 * The projection matrix of the MasterRenderer, for a 16:9 display and a shorter view distance.
+	 */
+	private static Matrix4f createProjectionMatrix() {
+		float aspectRatio = 16f / 9f;
+		float nearPlane = 0.1f;
+		float y_scale = (float) ((1f / Math.tan(Math.toRadians(120 / 2f))) * aspectRatio);
+		float x_scale = y_scale / aspectRatio;
+		float frustum_length = FAR_PLANE - nearPlane;
+		Matrix4f projectionMatrix = new Matrix4f();
+		projectionMatrix.m00 = x_scale;
+		projectionMatrix.m11 = y_scale;
+		projectionMatrix.m22 = -((FAR_PLANE + nearPlane) / frustum_length);
+		projectionMatrix.m23 = -1;
+		projectionMatrix.m32 = -((2 * nearPlane * FAR_PLANE) / frustum_length);
+		projectionMatrix.m33 = 0;
+		return projectionMatrix;
+	}
+
+	/**
+	 * The view matrix Maths.createViewMatrix makes for a camera at the position with the pitch and yaw.
+	 */
+	private static Matrix4f createViewMatrix(float x, float y, float z, float pitch, float yaw) {
+		Matrix4f viewMatrix = new Matrix4f();
+		Matrix4f.rotate((float) Math.toRadians(pitch), new Vector3f(1, 0, 0), viewMatrix, viewMatrix);
+		Matrix4f.rotate((float) Math.toRadians(yaw), new Vector3f(0, 1, 0), viewMatrix, viewMatrix);
+		Matrix4f.translate(new Vector3f(-x, -y, -z), viewMatrix, viewMatrix);
+		return viewMatrix;
+	}
+
+}
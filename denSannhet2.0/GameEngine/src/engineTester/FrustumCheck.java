@@ -0,0 +1,215 @@
+package engineTester;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import entities.Entity;
+import models.RawModel;
+import models.TexturedModel;
+import textures.ModelTexture;
+import toolbox.Frustum;
+import world.EntityGrid;
+
+	/**
+	 * Checks the plane tests of Frustum without OpenGL. The projection has a 90 degree field of view, a square
+	 * display, a near plane at 1 and a far plane at 100, so seen from the camera the frustum is every point with
+	 * |x| <= -z, |y| <= -z and 1 <= -z <= 100, and the distance to every plane is easy to work out by hand.
+	 *
+	 * The spheres are placed in camera space and moved into the world with the inverse of the view matrix, and
+	 * every case is checked for a camera looking straight down -z and for one that is moved, turned and tilted.
+	 * The cases cover spheres inside, outside and straddling the planes, points with a radius of 0, and the
+	 * radius of a model scaled with its entity the way MasterRenderer does it.
+	 *
+	 * Last it runs EntityGrid queries without proper bounds: a frustum made from a zero matrix, which has NaN
+	 * bounds, and ranges out to infinity. Each has to finish within a few seconds. Exits with 1 if a check fails.
+	 */
+public class FrustumCheck {
+
+	private static final float NEAR_PLANE = 1;
+	private static final float FAR_PLANE = 100;
+	private static final float EPSILON = 1e-3f;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		checkCamera("straight camera", createViewMatrix(0, 0, 0, 0, 0));
+		checkCamera("turned camera", createViewMatrix(10, 5, 20, 20, 90));
+		checkBounds();
+		checkGridWithoutBounds();
+		if(failures > 0) {
+			System.out.println("FAILED: " + failures + " checks");
+			System.exit(1);
+		}
+		System.out.println("All frustum checks passed");
+	}
+
+	private static void checkCamera(String name, Matrix4f viewMatrix) {
+		Frustum frustum = new Frustum();
+		frustum.update(createProjectionMatrix(), viewMatrix);
+		Matrix4f cameraToWorld = Matrix4f.invert(viewMatrix, null);
+
+		// inside, with the distance to the near and far plane
+		Vector3f centre = toWorld(cameraToWorld, 0, 0, -50);
+		check(name, "sphere in the middle", frustum.sphereInFrustum(centre.x, centre.y, centre.z, 1), true);
+		checkDistance(name, frustum, Frustum.NEAR, centre, 49);
+		checkDistance(name, frustum, Frustum.FAR, centre, 50);
+		// the left plane is x = z, so (-60, 0, -50) is 10 / sqrt(2) = 7.07 outside it
+		checkDistance(name, frustum, Frustum.LEFT, toWorld(cameraToWorld, -60, 0, -50), (float) (-10 / Math.sqrt(2)));
+
+		// outside
+		check(name, "sphere behind the camera", sphere(frustum, cameraToWorld, 0, 0, 10, 1), false);
+		check(name, "sphere left of the frustum", sphere(frustum, cameraToWorld, -60, 0, -50, 5), false);
+		check(name, "sphere above the frustum", sphere(frustum, cameraToWorld, 0, 60, -50, 5), false);
+		check(name, "sphere past the far plane", sphere(frustum, cameraToWorld, 0, 0, -110, 5), false);
+
+		// straddling, the centre is outside but some of the sphere is inside
+		check(name, "sphere on the left plane", sphere(frustum, cameraToWorld, -53, 0, -50, 5), true);
+		check(name, "sphere on the right plane", sphere(frustum, cameraToWorld, 53, 0, -50, 5), true);
+		check(name, "sphere on the bottom plane", sphere(frustum, cameraToWorld, 0, -53, -50, 5), true);
+		check(name, "sphere on the far plane", sphere(frustum, cameraToWorld, 0, 0, -103, 5), true);
+		check(name, "sphere on the near plane", sphere(frustum, cameraToWorld, 0, 0, 2, 5), true);
+
+		// points
+		check(name, "point inside", sphere(frustum, cameraToWorld, 0, 0, -50, 0), true);
+		check(name, "point just inside the left plane", sphere(frustum, cameraToWorld, -49.9f, 0, -50, 0), true);
+		check(name, "point just outside the left plane", sphere(frustum, cameraToWorld, -50.1f, 0, -50, 0), false);
+		check(name, "point in front of the near plane", sphere(frustum, cameraToWorld, 0, 0, -0.5f, 0), false);
+
+		// a model with a radius of 2 scaled by 3, 7 / sqrt(2) = 4.95 outside the left plane
+		Entity entity = new Entity(new TexturedModel(new RawModel(0, 0, 2), new ModelTexture(0)),
+				toWorld(cameraToWorld, -57, 0, -50), 0, 0, 0, 3);
+		Vector3f p = entity.getPosition();
+		float modelRadius = entity.getModel().getRawModel().getBoundingRadius();
+		check(name, "entity with the radius of the model", frustum.sphereInFrustum(p.x, p.y, p.z, modelRadius), false);
+		check(name, "entity with the scaled radius", frustum.sphereInFrustum(p.x, p.y, p.z, modelRadius * entity.getScale()), true);
+
+		// boxes
+		check(name, "box around the middle", box(frustum, cameraToWorld, 0, 0, -50, 2), true);
+		check(name, "box behind the camera", box(frustum, cameraToWorld, 0, 0, 20, 2), false);
+	}
+
+	/**
+	 * The straight camera sees from x = -100 to 100 and z = -1 to -100, at the far plane, and its 8 corners
+	 * are the bounds EntityGrid uses.
+	 */
+	private static void checkBounds() {
+		Frustum frustum = new Frustum();
+		frustum.update(createProjectionMatrix(), createViewMatrix(0, 0, 0, 0, 0));
+		check("straight camera", "bounds " + frustum.getMinX() + ", " + frustum.getMinZ() + " to " + frustum.getMaxX()
+				+ ", " + frustum.getMaxZ(), Math.abs(frustum.getMinX() + FAR_PLANE) < EPSILON * FAR_PLANE
+				&& Math.abs(frustum.getMaxX() - FAR_PLANE) < EPSILON * FAR_PLANE
+				&& Math.abs(frustum.getMinZ() + FAR_PLANE) < EPSILON * FAR_PLANE
+				&& Math.abs(frustum.getMaxZ() + NEAR_PLANE) < EPSILON * FAR_PLANE, true);
+	}
+
+	/**
+	 * The queries run on another thread, so a query that never returns is a failed check instead of a hang.
+	 */
+	private static void checkGridWithoutBounds() {
+		final Frustum broken = new Frustum();
+		Matrix4f zero = new Matrix4f();
+		zero.setZero();
+		broken.update(zero, zero);
+		final EntityGrid empty = new EntityGrid();
+		final EntityGrid grid = new EntityGrid();
+		TexturedModel model = new TexturedModel(new RawModel(0, 0, 1), new ModelTexture(0));
+		for(int i = 0; i < 3; i++) {
+			grid.insert(new Entity(model, new Vector3f(i * 1000, 0, -i * 1000), 0, 0, 0, 1));
+		}
+		final int[] found = new int[5];
+		Thread queries = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				found[0] = empty.queryFrustum(broken, new ArrayList<Entity>()).size();
+				grid.queryFrustum(broken, new ArrayList<Entity>());
+				float infinity = Float.POSITIVE_INFINITY;
+				found[1] = grid.queryRange(-infinity, -infinity, infinity, infinity, new ArrayList<Entity>()).size();
+				found[2] = grid.queryRange(Float.MAX_VALUE, Float.MAX_VALUE, infinity, infinity, new ArrayList<Entity>()).size();
+				found[3] = grid.queryRadius(0, 0, infinity, new ArrayList<Entity>()).size();
+				found[4] = 1;
+			}
+		}, "grid-queries");
+		queries.setDaemon(true);
+		queries.start();
+		try {
+			queries.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(found[4] != 1) {
+			System.out.println("FAILED (grid): a query without proper bounds did not finish");
+			failures++;
+			return;
+		}
+		checkCount("empty grid with a NaN frustum", found[0], 0);
+		checkCount("range out to infinity", found[1], 3);
+		checkCount("range past the last cell", found[2], 0);
+		checkCount("infinite radius", found[3], 3);
+	}
+
+	private static void checkCount(String what, int found, int expected) {
+		if(found != expected) {
+			System.out.println("FAILED (grid): " + what + " found " + found + " entities, expected " + expected);
+			failures++;
+		}
+	}
+
+	private static boolean sphere(Frustum frustum, Matrix4f cameraToWorld, float x, float y, float z, float radius) {
+		Vector3f p = toWorld(cameraToWorld, x, y, z);
+		return frustum.sphereInFrustum(p.x, p.y, p.z, radius);
+	}
+
+	/**
+	 * A box around a sphere with the radius, which stays a box around it in the world however the camera turns.
+	 */
+	private static boolean box(Frustum frustum, Matrix4f cameraToWorld, float x, float y, float z, float radius) {
+		Vector3f p = toWorld(cameraToWorld, x, y, z);
+		return frustum.boxInFrustum(p.x - radius, p.y - radius, p.z - radius, p.x + radius, p.y + radius, p.z + radius);
+	}
+
+	private static Vector3f toWorld(Matrix4f cameraToWorld, float x, float y, float z) {
+		Vector4f world = Matrix4f.transform(cameraToWorld, new Vector4f(x, y, z, 1), null);
+		return new Vector3f(world.x, world.y, world.z);
+	}
+
+	private static void checkDistance(String name, Frustum frustum, int plane, Vector3f p, float expected) {
+		float distance = frustum.distanceToPlane(plane, p.x, p.y, p.z);
+		check(name, "distance to plane " + plane + " is " + distance + ", expected " + expected,
+				Math.abs(distance - expected) < EPSILON * FAR_PLANE, true);
+	}
+
+	private static void check(String camera, String what, boolean result, boolean expected) {
+		if(result != expected) {
+			System.out.println("FAILED (" + camera + "): " + what + " should be " + (expected ? "visible" : "culled"));
+			failures++;
+		}
+	}
+
+	private static Matrix4f createProjectionMatrix() {
+		float frustum_length = FAR_PLANE - NEAR_PLANE;
+		Matrix4f projectionMatrix = new Matrix4f();
+		projectionMatrix.m00 = 1;
+		projectionMatrix.m11 = 1;
+		projectionMatrix.m22 = -((FAR_PLANE + NEAR_PLANE) / frustum_length);
+		projectionMatrix.m23 = -1;
+		projectionMatrix.m32 = -((2 * NEAR_PLANE * FAR_PLANE) / frustum_length);
+		projectionMatrix.m33 = 0;
+		return projectionMatrix;
+	}
+
+	/**
+	 * The view matrix Maths.createViewMatrix makes for a camera at the position with the pitch and yaw.
+	 */
+	private static Matrix4f createViewMatrix(float x, float y, float z, float pitch, float yaw) {
+		Matrix4f viewMatrix = new Matrix4f();
+		Matrix4f.rotate((float) Math.toRadians(pitch), new Vector3f(1, 0, 0), viewMatrix, viewMatrix);
+		Matrix4f.rotate((float) Math.toRadians(yaw), new Vector3f(0, 1, 0), viewMatrix, viewMatrix);
+		Matrix4f.translate(new Vector3f(-x, -y, -z), viewMatrix, viewMatrix);
+		return viewMatrix;
+	}
+
+}
@@ -0,0 +1,259 @@
+package engineTester;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import renderEngine.GlStateCache;
+
+	/**
+	 * Checks the GlStateCache without OpenGL. A fake backend keeps the state OpenGL would have, and the same
+	 * random calls are made both through the cache and straight on a second fake backend. After every call the
+	 * two have to be in the same state, else the cache skipped a call it shouldn't have. Deleting VAOs and
+	 * textures and invalidating the cache are part of the random calls.
+	 *
+	 * Then it plays a frame the way the renderers make their calls without the render queue, every draw using
+	 * its program, binding its VAO and texture, enabling its attributes and turning culling back on, and prints
+	 * how many calls went through and how many were skipped. Exits with 1 if the states ever differ. Usage: GlStateCacheCheck [calls].
+	 */
+public class GlStateCacheCheck {
+
+	private static final int VAOS = 12;
+	private static final int TEXTURES = 20;
+	private static final int UNITS = 6;
+	private static final int ATTRIBUTES = 8;
+	private static final int[] CAPABILITIES = { GL11.GL_CULL_FACE, GL11.GL_DEPTH_TEST, GL11.GL_BLEND };
+	private static final int[] TARGETS = { GL11.GL_TEXTURE_2D, GL30.GL_TEXTURE_2D_ARRAY };
+
+	/**
+	 * Keeps the state OpenGL would have after the calls, and counts them.
+	 */
+	private static class FakeBackend implements GlStateCache.Backend {
+		private int program = 0;
+		private int vao = 0;
+		private int[] attributes = new int[VAOS + 1];
+		private int activeUnit = 0;
+		private int[][] textures = new int[GlStateCache.MAX_TEXTURE_UNITS][TARGETS.length];
+		private boolean[] capabilities = new boolean[CAPABILITIES.length];
+		private int cullFace = GL11.GL_BACK;
+		private int blendSource = GL11.GL_ONE;
+		private int blendDestination = GL11.GL_ZERO;
+		private int calls = 0;
+
+		public void useProgram(int program) {
+			this.program = program;
+			calls++;
+		}
+		public void bindVertexArray(int vao) {
+			this.vao = vao;
+			calls++;
+		}
+		public void enableVertexAttribArray(int index) {
+			attributes[vao] |= 1 << index;
+			calls++;
+		}
+		public void disableVertexAttribArray(int index) {
+			attributes[vao] &= ~(1 << index);
+			calls++;
+		}
+		public void activeTexture(int unit) {
+			activeUnit = unit;
+			calls++;
+		}
+		public void bindTexture(int target, int texture) {
+			textures[activeUnit][indexOf(TARGETS, target)] = texture;
+			calls++;
+		}
+		public void enable(int capability) {
+			capabilities[indexOf(CAPABILITIES, capability)] = true;
+			calls++;
+		}
+		public void disable(int capability) {
+			capabilities[indexOf(CAPABILITIES, capability)] = false;
+			calls++;
+		}
+		public void cullFace(int mode) {
+			cullFace = mode;
+			calls++;
+		}
+		public void blendFunc(int source, int destination) {
+			blendSource = source;
+			blendDestination = destination;
+			calls++;
+		}
+
+		/**
+		 * What OpenGL does when a VAO is deleted and its ID is given to a new one.
+		 */
+		private void deleteVertexArray(int id) {
+			attributes[id] = 0;
+			if(vao == id) {
+				vao = 0;
+			}
+		}
+
+		/**
+		 * What OpenGL does when a texture is deleted.
+		 */
+		private void deleteTexture(int id) {
+			for(int[] unit : textures) {
+				for(int i = 0; i < unit.length; i++) {
+					if(unit[i] == id) {
+						unit[i] = 0;
+					}
+				}
+			}
+		}
+
+		/**
+		 * The active texture unit is left out, the cache may leave another unit active than calling OpenGL
+		 * straight would, and nothing is drawn differently because of it.
+		 */
+		private boolean sameState(FakeBackend other) {
+			if(program != other.program || vao != other.vao || cullFace != other.cullFace
+					|| blendSource != other.blendSource || blendDestination != other.blendDestination) {
+				return false;
+			}
+			if(!Arrays.equals(attributes, other.attributes) || !Arrays.equals(capabilities, other.capabilities)) {
+				return false;
+			}
+			for(int i = 0; i < textures.length; i++) {
+				if(!Arrays.equals(textures[i], other.textures[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	public static void main(String[] args) {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		Random random = new Random(1);
+		FakeBackend cached = new FakeBackend();
+		FakeBackend direct = new FakeBackend();
+		GlStateCache cache = new GlStateCache(cached);
+		for(int i = 0; i < calls; i++) {
+			int operation = random.nextInt(12);
+			int vao = 1 + random.nextInt(VAOS);
+			int texture = random.nextInt(TEXTURES);
+			int unit = random.nextInt(UNITS);
+			int target = TARGETS[random.nextInt(TARGETS.length)];
+			int attribute = random.nextInt(ATTRIBUTES);
+			int capability = CAPABILITIES[random.nextInt(CAPABILITIES.length)];
+			switch(operation) {
+			case 0:
+				int program = random.nextInt(4);
+				cache.useProgram(program);
+				direct.useProgram(program);
+				break;
+			case 1:
+				cache.bindVertexArray(vao);
+				direct.bindVertexArray(vao);
+				break;
+			case 2:
+				cache.enableVertexAttribArray(attribute);
+				direct.enableVertexAttribArray(attribute);
+				break;
+			case 3:
+				cache.disableVertexAttribArray(attribute);
+				direct.disableVertexAttribArray(attribute);
+				break;
+			case 4:
+				cache.bindTexture(unit, target, texture);
+				direct.activeTexture(unit);
+				direct.bindTexture(target, texture);
+				break;
+			case 5:
+				// the way the Loader binds textures, to whatever unit is active
+				cache.bindTexture(target, texture);
+				direct.activeTexture(cached.activeUnit);
+				direct.bindTexture(target, texture);
+				break;
+			case 6:
+				cache.enable(capability);
+				direct.enable(capability);
+				break;
+			case 7:
+				cache.disable(capability);
+				direct.disable(capability);
+				break;
+			case 8:
+				int mode = random.nextBoolean() ? GL11.GL_BACK : GL11.GL_FRONT;
+				cache.cullFace(mode);
+				direct.cullFace(mode);
+				break;
+			case 9:
+				int source = random.nextBoolean() ? GL11.GL_SRC_ALPHA : GL11.GL_ONE;
+				cache.blendFunc(source, GL11.GL_ONE_MINUS_SRC_ALPHA);
+				direct.blendFunc(source, GL11.GL_ONE_MINUS_SRC_ALPHA);
+				break;
+			case 10:
+				if(random.nextBoolean()) {
+					cached.deleteVertexArray(vao);
+					cache.forgetVertexArray(vao);
+					direct.deleteVertexArray(vao);
+				} else {
+					cached.deleteTexture(texture);
+					cache.forgetTexture(texture);
+					direct.deleteTexture(texture);
+				}
+				break;
+			default:
+				if(random.nextInt(20) == 0) {
+					cache.invalidate();
+				}
+			}
+			if(!cached.sameState(direct)) {
+				System.out.println("FAILED: the state is different after call " + i + ", operation " + operation);
+				System.exit(1);
+			}
+		}
+		System.out.println(calls + " random calls: " + cached.calls + " went through the cache, " + direct.calls
+				+ " made straight, the state always the same");
+
+		playFrame(cache, cached);
+	}
+
+	/**
+	 * A frame of 100 draws over 4 VAOs and 6 textures, every draw setting all of its state, with culling turned
+	 * off for every 10th draw.
+	 */
+	private static void playFrame(GlStateCache cache, FakeBackend backend) {
+		cache.startFrame();
+		int before = backend.calls;
+		for(int draw = 0; draw < 100; draw++) {
+			cache.useProgram(1);
+			cache.bindVertexArray(1 + draw / 25);
+			cache.enableVertexAttribArray(0);
+			cache.enableVertexAttribArray(1);
+			cache.enableVertexAttribArray(2);
+			cache.bindTexture(0, GL11.GL_TEXTURE_2D, 1 + draw / 17);
+			if(draw % 10 == 0) {
+				cache.disable(GL11.GL_CULL_FACE);
+			}
+			cache.enable(GL11.GL_CULL_FACE);
+			cache.cullFace(GL11.GL_BACK);
+		}
+		cache.bindVertexArray(0);
+		cache.useProgram(0);
+		cache.startFrame();
+		System.out.println("One frame of 100 draws: " + cache.getIssuedCalls() + " calls went through, "
+				+ cache.getSuppressedCalls() + " skipped (" + (backend.calls - before) + " counted by the backend)");
+		if(cache.getIssuedCalls() != backend.calls - before) {
+			System.out.println("FAILED: the cache counted " + cache.getIssuedCalls() + " calls");
+			System.exit(1);
+		}
+	}
+
+	private static int indexOf(int[] values, int value) {
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] == value) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown value " + value);
+	}
+
+}
@@ -0,0 +1,174 @@
+package engineTester;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import terrains.HeightField;
+import terrains.Terrain;
+import terrains.TerrainData;
+
+	/**
+	 * Compares Terrain.generateTerrainData with the way it was done before the HeightField: heights kept as
+	 * float[][], and every pixel read with getRGB five times (once for the height, four times for the normal).
+	 *
+	 * It runs on the 256x256 heightMap of the game and on a made up 4096x4096 one, and prints the generation
+	 * time, the heap bytes of the heights a terrain keeps for collision, and how far the quantized heights are
+	 * from the old ones. The 4096 terrain needs a big heap, run it with -Xmx4g.
+	 *
+	 * Run from the GameEngine folder, so the heightMap can be found. Usage: HeightFieldBenchmark [bigSize]
+	 */
+public class HeightFieldBenchmark {
+
+	private static final float MAX_HEIGHT = 40;
+	private static final float MAX_PIXEL_COLOUR = 256 * 256 * 256;
+
+	public static void main(String[] args) throws IOException {
+		int bigSize = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		BufferedImage heightMap = ImageIO.read(new File("res/textures/terrain/heightmap.png"));
+		run("heightmap.png", heightMap, 5);
+		run(bigSize + "x" + bigSize + " made up", makeHeightMap(bigSize), 1);
+	}
+
+	private static void run(String name, BufferedImage image, int repeats) {
+		int size = image.getHeight();
+		long legacyNanos = Long.MAX_VALUE;
+		long newNanos = Long.MAX_VALUE;
+		float[][] legacyHeights = null;
+		HeightField field = null;
+		for(int i = 0; i < repeats; i++) {
+			long start = System.nanoTime();
+			legacyHeights = legacyGenerate(image);
+			legacyNanos = Math.min(legacyNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			TerrainData data = Terrain.generateTerrainData(image);
+			newNanos = Math.min(newNanos, System.nanoTime() - start);
+			field = data.getHeights();
+		}
+		float maxError = 0;
+		for(int x = 0; x < size; x++) {
+			for(int z = 0; z < size; z++) {
+				maxError = Math.max(maxError, Math.abs(legacyHeights[x][z] - field.get(x, z)));
+			}
+		}
+		System.out.println(name + " (" + size + "x" + size + ")");
+		System.out.println("  generation:  float[][] and getRGB per pixel " + (legacyNanos / 1000000f) + " ms, HeightField "
+				+ (newNanos / 1000000f) + " ms");
+		System.out.println("  heights on the heap:  float[][] " + floatRowsBytes(size) / 1024 + " KB, HeightField "
+				+ shortArrayBytes(size * size) / 1024 + " KB");
+		System.out.println("  largest height difference " + maxError + " (quantization step " + field.getScale() + ")");
+	}
+
+	/**
+	 * The heap bytes of a float[size][size] with compressed references: the array of rows, and every row with
+	 * its 16 byte header, rounded up to 8 bytes like the JVM does.
+	 */
+	private static long floatRowsBytes(int size) {
+		return align(16 + 4L * size) + size * align(16 + 4L * size);
+	}
+
+	private static long shortArrayBytes(int length) {
+		return align(16 + 2L * length);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) / 8 * 8;
+	}
+
+	/**
+	 * A smooth heightMap of random hills, coloured the way the heightMaps of the game are.
+	 */
+	private static BufferedImage makeHeightMap(int size) {
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(5);
+		float[] phases = new float[8];
+		for(int i = 0; i < phases.length; i++) {
+			phases[i] = random.nextFloat() * 6.28f;
+		}
+		for(int y = 0; y < size; y++) {
+			for(int x = 0; x < size; x++) {
+				double value = 0;
+				for(int octave = 0; octave < 4; octave++) {
+					double frequency = (octave + 1) * 6.28 / size * 3;
+					value += Math.sin(x * frequency + phases[octave]) * Math.cos(y * frequency + phases[octave + 4]) / (octave + 1);
+				}
+				int colour = (int) ((value / 2.1 + 1) / 2 * 0xFFFFFF);
+				image.setRGB(x, y, Math.min(Math.max(colour, 0), 0xFFFFFF));
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * generateTerrainData as it was before the HeightField, returning the heights it kept for collision.
+	 */
+	private static float[][] legacyGenerate(BufferedImage image) {
+		int VERTEX_COUNT = image.getHeight();
+		float[][] heights = new float [VERTEX_COUNT][VERTEX_COUNT];
+		int count = VERTEX_COUNT * VERTEX_COUNT;
+		float[] vertices = new float[count * 3];
+		float[] normals = new float[count * 3];
+		float[] textureCoords = new float[count * 2];
+		int[] indices = new int[6 * (VERTEX_COUNT - 1)*(VERTEX_COUNT - 1)];
+		int vertexPointer = 0;
+		for(int i = 0; i < VERTEX_COUNT; i++){
+			for(int j = 0; j < VERTEX_COUNT; j++){
+				vertices[vertexPointer * 3] = (float)j/((float)VERTEX_COUNT - 1) * Terrain.SIZE;
+				float height = getHeight(j, i, image);
+				heights[j][i] = height;
+				vertices[vertexPointer * 3 + 1] = height;
+				vertices[vertexPointer * 3 + 2] = (float)i/((float)VERTEX_COUNT - 1) * Terrain.SIZE;
+				Vector3f normal = calculateNormal(j, i, image);
+				normals[vertexPointer * 3] = normal.x;
+				normals[vertexPointer * 3 + 1] = normal.y;
+				normals[vertexPointer * 3 + 2] = normal.z;
+				textureCoords[vertexPointer * 2] = (float)j/((float)VERTEX_COUNT - 1);
+				textureCoords[vertexPointer * 2 + 1] = (float)i/((float)VERTEX_COUNT - 1);
+				vertexPointer++;
+			}
+		}
+		int pointer = 0;
+		for(int gz=0;gz<VERTEX_COUNT-1;gz++){
+			for(int gx=0;gx<VERTEX_COUNT-1;gx++){
+				int topLeft = (gz*VERTEX_COUNT)+gx;
+				int topRight = topLeft + 1;
+				int bottomLeft = ((gz+1)*VERTEX_COUNT)+gx;
+				int bottomRight = bottomLeft + 1;
+				indices[pointer++] = topLeft;
+				indices[pointer++] = bottomLeft;
+				indices[pointer++] = topRight;
+				indices[pointer++] = topRight;
+				indices[pointer++] = bottomLeft;
+				indices[pointer++] = bottomRight;
+			}
+		}
+		return heights;
+	}
+
+	private static Vector3f calculateNormal(int x, int z, BufferedImage image) {
+		float heightL = getHeight(x - 1, z, image);
+		float heightR = getHeight(x + 1, z, image);
+		float heightD = getHeight(x, z - 1, image);
+		float heightU = getHeight(x, z + 1, image);
+		Vector3f normal = new Vector3f(heightL - heightR, 2f, heightD - heightU);
+		normal.normalise();
+		return normal;
+	}
+
+	private static float getHeight(int x, int y, BufferedImage image) {
+		if(x < 0 || x >= image.getHeight() || y < 0 || y >= image.getHeight()) {
+			return 0;
+		}
+		float height = image.getRGB(x, y);
+		height += MAX_PIXEL_COLOUR/2f;
+		height /= MAX_PIXEL_COLOUR/2f;
+		height *= MAX_HEIGHT;
+		return height;
+	}
+
+}
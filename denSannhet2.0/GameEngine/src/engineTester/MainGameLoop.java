@@ -13,44 +13,90 @@ import animation.AnimatedModel;
 import animation.AnimatedModelLoader;
 import animation.AnimatedPlayer;
 import animation.Animation;
+import animation.BakedAnimation;
 import entities.Camera;
 import entities.Entity;
 import entities.Light;
 import entities.Player;
-import guis.GuiRenderer;
 import guis.GuiTexture;
 import models.RawModel;
 import models.TexturedModel;
-import objConverter.ModelData;
-import objConverter.OBJFileLoader;
+import renderEngine.Asset;
+import renderEngine.AssetPipeline;
 import renderEngine.DisplayManager;
 import renderEngine.Loader;
 import renderEngine.MasterRenderer;
+import renderEngine.TextureManager;
 import terrains.Terrain;
+import terrains.TerrainData;
+import terrains.TerrainGrid;
+import terrains.TerrainStreamer;
 import textures.ModelTexture;
 import textures.TerrainTexture;
 import textures.TerrainTexturePack;
+import textures.TextureArray;
+import textures.TextureHandle;
+import textures.TexturePacker;
+import world.EntityGrid;
 
 public class MainGameLoop {
 	
+	// How long every frame may spend uploading textures to the GPU
+	private static final long UPLOAD_BUDGET_NANOS = 2000000;
+	// How long every frame may spend uploading new terrain tiles
+	private static final long TERRAIN_BUDGET_NANOS = 2000000;
+	// The tiles on each side of the player that are always loaded, and the most tiles kept loaded
+	private static final int TERRAIN_RADIUS = 1;
+	private static final int MAX_TERRAIN_TILES = 16;
+	// Displaced tiles only upload their heights as a texture, and share one flat grid instead of a mesh each
+	private static final boolean DISPLACED_TERRAIN = true;
+	// Copies of the animated model running around the start, each with its own skeleton. 0 for none
+	private static final int CROWD_SIZE = 0;
+	// The crowd plays the run animation baked at this many frames a second, shared by all of them. 0 to animate each one live
+	private static final float CROWD_BAKE_RATE = 60;
+	
 	public static void main(String[] args) {
 		
 		DisplayManager.createDisplay();
 		Loader loader = new Loader();
 		Random random = new Random();
-		MasterRenderer renderer = new MasterRenderer();
-		GuiRenderer guiRenderer = new GuiRenderer(loader);
+		MasterRenderer renderer = new MasterRenderer(loader);
 		
 		List<Entity> entities = new ArrayList<Entity>();
 		List<Light> lights = new ArrayList<Light>();
-		List<Terrain> terrains = new ArrayList<Terrain>();
 		List<GuiTexture> guis = new ArrayList<GuiTexture>();		
 	
 		// the sun
 		lights.add(new Light(new Vector3f(0, 10000, -7000), new Vector3f(1.001f, 1.001f, 1.001f)));
 	
+	// Assets
+		// Textures are streamed in while the game runs, with a grey placeholder until they are ready. They are asked
+		// for first, so the PNGs are decoded while the models and the texture array below are loading
+		TextureManager textures = new TextureManager(loader);
+		List<TextureHandle> textureHandles = new ArrayList<TextureHandle>();
+		TextureHandle playerTexture = acquire(textures, textureHandles, "models/person/playerTexture");
+		TextureHandle grassyTexture = acquire(textures, textureHandles, "textures/terrain/grassy");
+		TextureHandle mudTexture = acquire(textures, textureHandles, "textures/terrain/mud");
+		TextureHandle pathTexture = acquire(textures, textureHandles, "textures/terrain/path");
+		TextureHandle flowersTexture = acquire(textures, textureHandles, "textures/terrain/pinkFlowers");
+		TextureHandle blendMapTexture = acquire(textures, textureHandles, "textures/terrain/blendMap_alternative_2");
+		TextureHandle healthTexture = acquire(textures, textureHandles, "textures/health");
+		// Everything is read, parsed and decoded at the same time on worker threads, only the uploads happen here
+		AssetPipeline assets = new AssetPipeline(loader);
+		Asset<RawModel> personMesh = assets.loadModel("models/person/person");
+		Asset<RawModel> pineMesh = assets.loadModel("models/pine");
+		Asset<RawModel> fernMesh = assets.loadModel("models/fern");
+		Asset<RawModel> grassMesh = assets.loadModel("models/grassModel");
+		Asset<RawModel> lampMesh = assets.loadModel("models/lamp/lamp");
+		// The textures of the entities are packed into one texture array, so they never have to be rebound
+		Asset<TextureArray> entityTextures = assets.loadTextureArray(new TexturePacker(2048, 2048, 16), 
+				"textures/pine", "textures/fern_atlas_texture", "textures/diffuse", "textures/flower", "models/lamp/lamp");
+		assets.waitForAll();
+		assets.shutdown();
+		assets.printReport();
+	// Assets end
 	// Player
-		TexturedModel personModel = loadTexturedModel("models/person/person", "models/person/playerTexture", 1, loader);		
+		TexturedModel personModel = createTexturedModel(personMesh, new ModelTexture(playerTexture), 1);		
 		Player player = new Player(personModel, new Vector3f( 100f, 0.0f, -50f), 0f, 0f, 0f, 1.0f);
 	// Player end
 	// Camera	
@@ -58,59 +104,74 @@ public class MainGameLoop {
 	// Camera end	
 	// Terrain
 		//textures to paint the terrain with
-		TerrainTexture backgroundTexture = new TerrainTexture(loader.loadTexture("textures/terrain/grassy"));
-		TerrainTexture rTexture = new TerrainTexture(loader.loadTexture("textures/terrain/mud"));
-		TerrainTexture bTexture = new TerrainTexture(loader.loadTexture("textures/terrain/path"));
-		TerrainTexture gTexture = new TerrainTexture(loader.loadTexture("textures/terrain/pinkFlowers"));
+		TerrainTexture backgroundTexture = new TerrainTexture(grassyTexture);
+		TerrainTexture rTexture = new TerrainTexture(mudTexture);
+		TerrainTexture bTexture = new TerrainTexture(pathTexture);
+		TerrainTexture gTexture = new TerrainTexture(flowersTexture);
 		// creating the package of textures
 		TerrainTexturePack texturePack = new TerrainTexturePack(backgroundTexture, rTexture, bTexture, gTexture);
 		// getting the design, pattern of how we are painting the terrain.
-		TerrainTexture blendMap = new TerrainTexture(loader.loadTexture("textures/terrain/blendMap_alternative_2"));
-		// Create 4 different terrains, although same heightMap, texturePack and blendMap.
-		terrains.add(new Terrain(0, -1, loader, texturePack, blendMap,"textures/terrain/heightmap"));
-		terrains.add(new Terrain(-1, -1, loader, texturePack, blendMap,"textures/terrain/blendmap_GOT"));
-		terrains.add(new Terrain(-1, 0, loader, texturePack, blendMap,"textures/terrain/heightmap"));
-		terrains.add(new Terrain(0, 0, loader, texturePack, blendMap,"textures/terrain/heightmap"));
+		TerrainTexture blendMap = new TerrainTexture(blendMapTexture);
+		// The terrain tiles are generated around the player while the game runs, with the same texturePack and blendMap.
+		// The tiles where both grid coordinates are odd use the GOT heightMap, the rest the normal heightMap.
+		TerrainStreamer terrainStreamer = new TerrainStreamer(loader, texturePack, blendMap, new TerrainStreamer.TileSource() {
+			@Override
+			public TerrainData generate(int gridX, int gridZ) {
+				if((gridX & 1) == 1 && (gridZ & 1) == 1) {
+					return generateTile("textures/terrain/blendmap_GOT");
+				}
+				return generateTile("textures/terrain/heightmap");
+			}
+		}, TERRAIN_RADIUS, MAX_TERRAIN_TILES);
+		terrainStreamer.loadAround(new Vector3f(0, 0, 0));
+		TerrainGrid terrainGrid = terrainStreamer.getGrid();
 	// Terrain end	
 	// Models
 		// Environment Models
-			TexturedModel tree = loadTexturedModel("models/pine", "textures/pine", 1, loader);
-			TexturedModel fern = loadTexturedModel("models/fern", "textures/fern_atlas_texture", 2, loader);
+			TexturedModel tree = createTexturedModel(pineMesh, new ModelTexture(entityTextures.get(), "textures/pine"), 1);
+			TexturedModel fern = createTexturedModel(fernMesh, new ModelTexture(entityTextures.get(), "textures/fern_atlas_texture"), 2);
 			fern.getTexture().setHasTransparency(true);		
-			TexturedModel grass = loadTexturedModel("models/grassModel", "textures/diffuse", 3, loader);
+			TexturedModel grass = createTexturedModel(grassMesh, new ModelTexture(entityTextures.get(), "textures/diffuse"), 3);
 			grass.getTexture().setHasTransparency(true);		
 			grass.getTexture().setUseFakeLighting(true);
-			TexturedModel flower = loadTexturedModel("models/grassModel", "textures/flower", 1, loader);
+			TexturedModel flower = createTexturedModel(grassMesh, new ModelTexture(entityTextures.get(), "textures/flower"), 1);
 			flower.getTexture().setHasTransparency(true);
 			flower.getTexture().setUseFakeLighting(true);
-			TexturedModel lamp = loadTexturedModel("models/lamp/lamp", "models/lamp/lamp", 1, loader);
+			TexturedModel lamp = createTexturedModel(lampMesh, new ModelTexture(entityTextures.get(), "models/lamp/lamp"), 1);
 			//TODO: have to use the check system from CollisionMultipleTerrains. but the "check-system" has to be a own method, so it can be used multiple places.
 			for(int i = 0; i < 100; i++) {
 				float x;
 				float z = random.nextFloat() * ( -800);
-				entities.add(new Entity(tree,  new Vector3f(x = random.nextFloat() * 800, terrains.get(0).getHeightOfTerrain(x, z), z), 0f, 0f, 0f, 3.0f));
-				entities.add(new Entity(grass, random.nextInt(6), new Vector3f(x = random.nextFloat() * 800, terrains.get(0).getHeightOfTerrain(x, z), z), 0f, 0f, 0f, 1.5f));
-				entities.add(new Entity(flower, new Vector3f(x = random.nextFloat() * 800, terrains.get(0).getHeightOfTerrain(x, z), z), 0f, 0f, 0f, 1.5f));
-				entities.add(new Entity(fern, random.nextInt(4),  new Vector3f(x = random.nextFloat() * 800, terrains.get(0).getHeightOfTerrain(x, z), z), 0f, 0f, 0f, 1.0f));
+				entities.add(new Entity(tree,  new Vector3f(x = random.nextFloat() * 800, terrainGrid.getHeight(x, z), z), 0f, 0f, 0f, 3.0f));
+				entities.add(new Entity(grass, random.nextInt(6), new Vector3f(x = random.nextFloat() * 800, terrainGrid.getHeight(x, z), z), 0f, 0f, 0f, 1.5f));
+				entities.add(new Entity(flower, new Vector3f(x = random.nextFloat() * 800, terrainGrid.getHeight(x, z), z), 0f, 0f, 0f, 1.5f));
+				entities.add(new Entity(fern, random.nextInt(4),  new Vector3f(x = random.nextFloat() * 800, terrainGrid.getHeight(x, z), z), 0f, 0f, 0f, 1.0f));
 				
 			}
 		// Environment Models end
 		// GUI 
 			// Health Bar
-			guis.add(new GuiTexture(loader.loadTexture("textures/health"), new Vector2f(-0.745f, 0.94f), new Vector2f(0.25f, 0.25f)));
+			guis.add(new GuiTexture(healthTexture, new Vector2f(-0.745f, 0.94f), new Vector2f(0.25f, 0.25f)));
 		// GUI end
 			
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 10, 10, -250, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 120, 10, -275, "Green",0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 230, 10, -300, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 340, 10, -325, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 450, 10, -350, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 660, 10, -105, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 770, 10, -200, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 80, 10, -425, "Green", 0);
-			modelWithLight(entities, lights, lamp, 1, terrains.get(0), 750, 10, -350, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 10, 10, -250, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 120, 10, -275, "Green",0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 230, 10, -300, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 340, 10, -325, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 450, 10, -350, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 660, 10, -105, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 770, 10, -200, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 80, 10, -425, "Green", 0);
+			modelWithLight(entities, lights, lamp, 1, terrainGrid, 750, 10, -350, "Green", 0);
 			
 	// Models end
+	// Spatial index, so we only look at the entities close to the camera every frame
+			EntityGrid entityGrid = new EntityGrid();
+			for(Entity entity: entities) {
+				entityGrid.insert(entity);
+			}
+			List<Entity> visibleEntities = new ArrayList<Entity>();
+	// Spatial index end
 			
 	// Animation
 			AnimatedModelLoader animatedLoader = new AnimatedModelLoader();
@@ -124,19 +185,56 @@ public class MainGameLoop {
 			
 			Camera cameraOnAnimatedPlayer = new Camera(animatedPlayer);
 			
+			List<AnimatedModel> crowd = new ArrayList<AnimatedModel>();
+			BakedAnimation bakedRun = CROWD_SIZE > 0 && CROWD_BAKE_RATE > 0 ? BakedAnimation.bake(animatedEntity, runAnimation, CROWD_BAKE_RATE) : null;
+			Random crowdRandom = new Random(CROWD_SIZE);
+			for(int i = 0; i < CROWD_SIZE; i++) {
+				float x = 150 + crowdRandom.nextFloat() * 100;
+				float z = 250 + crowdRandom.nextFloat() * 100;
+				AnimatedModel member = animatedEntity.createInstance(new Vector3f(x, terrainGrid.getHeight(x, z), z), 0, crowdRandom.nextFloat() * 360, 0, 1);
+				if(bakedRun != null) {
+					member.doAnimation(bakedRun);
+				} else {
+					member.doAnimation(runAnimation);
+				}
+				// Not all in step
+				member.getAnimator().setAnimationTime(crowdRandom.nextFloat() * runAnimation.getLength());
+				crowd.add(member);
+			}
+			
 		
 	// MainLoop
+		boolean texturesLoading = true;
 		while(!Display.isCloseRequested()){
 			
-			collisionMultipleTerrainsAnimatedPlayer(animatedPlayer, animatedEntity, terrains); // Move method for player is inside this method
+			// Finish loading textures, but never spend more than a few milliseconds of the frame on it
+			loader.processUploads(UPLOAD_BUDGET_NANOS);
+			if(texturesLoading && textures.getPending() == 0) {
+				texturesLoading = false;
+				System.out.println("Textures: " + textures.getTextureCount() + " loaded, " + textures.getHits() + " hits, "
+						+ textures.getMisses() + " misses, " + (textures.getBytesResident() / 1024) + " KB resident");
+			}
+			
+			terrainStreamer.update(animatedPlayer.getPosition(), TERRAIN_BUDGET_NANOS);
+			collisionMultipleTerrainsAnimatedPlayer(animatedPlayer, animatedEntity, terrainGrid); // Move method for player is inside this method
 //			collisionMultipleTerrains(player, terrains);
 			
 			
 //			renderer.processEntity(player); // No player if this is gone
-			renderTerrain(renderer, terrains);
-			renderEntities(renderer, entities); // All entities are gone if this is commented away. Player is still present
+			renderer.updateFrustum(cameraOnAnimatedPlayer); // Before the entities, so they are culled against this frame's camera
+			renderTerrain(renderer, terrainStreamer.getTerrains());
+			visibleEntities.clear();
+			entityGrid.queryFrustum(renderer.getFrustum(), visibleEntities);
+			// The grid is the only culling stage, the entities it left out are still counted as culled
+			renderer.processVisibleEntities(visibleEntities, entityGrid.size() - visibleEntities.size()); // All entities are gone if this is commented away. Player is still present
 			
 			// Render with animation
+			for(AnimatedModel member : crowd) {
+				renderer.processAnimatedModel(member);
+			}
+			for(GuiTexture gui : guis) {
+				renderer.processGui(gui);
+			}
 			renderer.render(lights, cameraOnAnimatedPlayer, animatedEntity);
 			
 //			collisionCameraTerrain(cameraOnAnimatedPlayer, terrains);
@@ -147,7 +245,6 @@ public class MainGameLoop {
 			
 			// render without animation	
 			//renderer.render(lights, camera); // Completely black if commented away
-			guiRenderer.render(guis);
 			
 			DisplayManager.updateDisplay();
 			
@@ -155,14 +252,32 @@ public class MainGameLoop {
 				break;
 			}
 		}
-		guiRenderer.cleanUp();
+		System.out.println("Terrain: " + terrainStreamer.getTilesGenerated() + " tiles generated, " 
+				+ terrainStreamer.getTilesEvicted() + " evicted, " + terrainStreamer.getResidentTiles() + " resident using "
+				+ (terrainStreamer.getResidentBytes() / 1024) + " KB, " + terrainStreamer.getAverageGenerationMillis() 
+				+ " ms average generation, " + terrainStreamer.getMaxGenerationMillis() + " ms max");
+		terrainStreamer.cleanUp();
+		// The player, the terrain and the GUI are dropped here, so their textures are given back
+		for(TextureHandle handle : textureHandles) {
+			textures.release(handle);
+		}
+		textures.cleanUp();
 		renderer.cleanUp();
 		loader.cleanUp();
 		DisplayManager.closeDisplay();
 	}
 	
+	/**
+	 * Asks the TextureManager for the texture, and keeps the handle so it can be released at the end.
+	 */
+	private static TextureHandle acquire(TextureManager textures, List<TextureHandle> handles, String fileName) {
+		TextureHandle handle = textures.acquire(fileName);
+		handles.add(handle);
+		return handle;
+	}
+	
 	private static void modelWithLight(List<Entity> entities, List<Light> lights, TexturedModel model, int modelSize,
-			Terrain currentTerrain, float xLocation, float yLocation, float zLocation, String colour, int colourStrength) {
+			TerrainGrid terrainGrid, float xLocation, float yLocation, float zLocation, String colour, int colourStrength) {
 		int rgb_RED = 0;
 		int rgb_GREEN = 0;
 		int rgb_BLUE = 0;
@@ -179,14 +294,15 @@ public class MainGameLoop {
 		
 		lights.add(new Light(new Vector3f(xLocation, yLocation, zLocation), new Vector3f(rgb_RED, rgb_GREEN, rgb_BLUE),new Vector3f(1.0f, 0.01f, 0.002f)));
 		
-		entities.add(new Entity(model, new Vector3f(xLocation, currentTerrain.getHeightOfTerrain(xLocation, zLocation), zLocation), 0f, 0f, 0f, modelSize));
+		entities.add(new Entity(model, new Vector3f(xLocation, terrainGrid.getHeight(xLocation, zLocation), zLocation), 0f, 0f, 0f, modelSize));
 		
 	}
 	
-	private static void renderEntities(MasterRenderer renderer, List<Entity> entities) {
-		for(Entity entity: entities) {
-			renderer.processEntity(entity);
+	private static TerrainData generateTile(String heightMap) {
+		if(DISPLACED_TERRAIN) {
+			return Terrain.generateHeightData(heightMap);
 		}
+		return Terrain.generateTerrainData(heightMap);
 	}
 	
 	private static void renderTerrain(MasterRenderer renderer, List<Terrain> terrains) {
@@ -210,26 +326,17 @@ public class MainGameLoop {
 //		}
 //	}
 	
-	private static void collisionMultipleTerrainsAnimatedPlayer(AnimatedPlayer player, AnimatedModel animatedEntity, List<Terrain> terrains) {
-		int px = (int) player.getPosition().x;
-		int pz = (int) player.getPosition().z;
-		
-		if( px <= 800 && px >= 0 && pz >= -800 && pz <= 0) {       // x: 0 to 800 and z: 0 to -800
-			player.move(terrains.get(0), animatedEntity);
-		}else if ( px >= -800 && px <= 0 && pz >= -800 && pz <= 0 ) {	// x: 0 to -800 and z: 0 to -800
-			player.move(terrains.get(1), animatedEntity);
-		}else if ( px >= -800 && px <= 0 && pz <= 800 && pz >= 0 ) {	// x: 0 to -800 and z: 0 to 800
-			player.move(terrains.get(2), animatedEntity);
-		}else if ( px <= 800 && px >= 0 && pz <= 800 && pz >= 0 ) {	// x: 0 to 800 and z: 0 to 800
-			player.move(terrains.get(3), animatedEntity);
+	private static void collisionMultipleTerrainsAnimatedPlayer(AnimatedPlayer player, AnimatedModel animatedEntity, TerrainGrid terrainGrid) {
+		// The player stands still until the tile under it is loaded
+		if(terrainGrid.contains(player.getPosition().x, player.getPosition().z)) {
+			player.move(terrainGrid, animatedEntity);
 		}
 	}
 	
-	private static TexturedModel loadTexturedModel(String modelFileName, String textureFileName, int numberOfRows, Loader loader) {
-		final ModelData data = OBJFileLoader.loadOBJ(modelFileName);
-		final RawModel rawModel = loader.loadToVAO(data.getVertices(), data.getTextureCoords(), data.getNormals(),data.getIndices());
+	private static TexturedModel createTexturedModel(Asset<RawModel> mesh, ModelTexture texture, int numberOfRows) {
+		final RawModel rawModel = mesh.get();
 		
-		ModelTexture temp = new ModelTexture(loader.loadTexture(textureFileName));
+		ModelTexture temp = texture;
 		if( numberOfRows > 1) {
 			temp.setNumberOfRows(numberOfRows);
 		}
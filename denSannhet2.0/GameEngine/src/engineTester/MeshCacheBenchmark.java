@@ -0,0 +1,42 @@
+package engineTester;
+
+import java.io.File;
+
+import objConverter.MeshCache;
+import objConverter.OBJFileLoader;
+
+	/**
+	 * Measures how long it takes to load the models of the game with a cold mesh cache, where every .obj file
+	 * has to be parsed, against a warm cache, where the .mesh files are memory mapped.
+	 * Needs no display, run it from the GameEngine folder like the game itself.
+	 */
+public class MeshCacheBenchmark {
+
+	private static final String[] MODELS = {"models/pine", "models/fern", "models/grassModel",
+			"models/lamp/lamp", "models/person/person", "models/yoyo"};
+
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) {
+		double cold = 0;
+		double warm = 0;
+		for(int round = 0; round < ROUNDS; round++) {
+			for(String model : MODELS) {
+				MeshCache.delete(new File("res/" + model + ".obj"));
+			}
+			cold += loadAll();
+			warm += loadAll();
+		}
+		System.out.println("Cold cache: " + (cold / ROUNDS) + " ms per startup");
+		System.out.println("Warm cache: " + (warm / ROUNDS) + " ms per startup");
+	}
+
+	private static double loadAll() {
+		OBJFileLoader.resetCacheStatistics();
+		for(String model : MODELS) {
+			OBJFileLoader.loadMesh(model);
+		}
+		return OBJFileLoader.getLoadTimeMillis();
+	}
+
+}
@@ -57,7 +57,7 @@ public class MyFile {
 	}
 
 	public InputStream getInputStream() {
-		return Class.class.getResourceAsStream(path);
+		return MyFile.class.getResourceAsStream(path);
 	}
 
 	public BufferedReader getReader() throws Exception {
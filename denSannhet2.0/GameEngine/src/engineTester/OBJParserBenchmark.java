@@ -0,0 +1,123 @@
+package engineTester;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import objConverter.ModelData;
+import objConverter.OBJFileLoader;
+
+	/**
+	 * Checks that OBJFileLoader.loadOBJ gives exactly the same ModelData as the old loadOBJLegacy for every .obj
+	 * file in res, and then measures how fast both of them are, in MB of .obj text per second and bytes
+	 * allocated per MB. Needs no display, run it from the GameEngine folder like the game itself.
+	 */
+public class OBJParserBenchmark {
+
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int ROUNDS = 50;
+
+	public static void main(String[] args) {
+		List<String> models = new ArrayList<String>();
+		findModels(new File("res"), "", models);
+		long totalBytes = 0;
+		boolean allSame = true;
+		for(String model : models) {
+			totalBytes += new File("res/" + model + ".obj").length();
+			boolean same;
+			try {
+				same = isSame(OBJFileLoader.loadOBJLegacy(model), OBJFileLoader.loadOBJ(model));
+			} catch (RuntimeException e) {
+				// the old loader can not read every file, compare only the ones it can
+				System.out.println("skipped  " + model + " (" + e + ")");
+				continue;
+			}
+			allSame &= same;
+			System.out.println((same ? "same     " : "DIFFERENT ") + model);
+		}
+		System.out.println(allSame ? "All models are identical" : "Some models are different!");
+
+		String[] names = models.toArray(new String[models.size()]);
+		run("legacy", names, totalBytes, true);
+		run("parser", names, totalBytes, false);
+	}
+
+	private static void run(String name, String[] models, long totalBytes, boolean legacy) {
+		for(int i = 0; i < WARMUP_ROUNDS; i++) {
+			loadAll(models, legacy);
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = allocatedBytes(threads);
+		long start = System.nanoTime();
+		for(int i = 0; i < ROUNDS; i++) {
+			loadAll(models, legacy);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long allocated = allocatedBytes(threads) - allocatedBefore;
+		double megabytes = totalBytes * (double) ROUNDS / (1024 * 1024);
+		System.out.println(name + ": " + (megabytes / seconds) + " MB/s, "
+				+ (allocated < 0 ? "?" : String.valueOf(allocated / megabytes)) + " bytes allocated per MB");
+	}
+
+	private static void loadAll(String[] models, boolean legacy) {
+		for(String model : models) {
+			try {
+				if(legacy) {
+					OBJFileLoader.loadOBJLegacy(model);
+				} else {
+					OBJFileLoader.loadOBJ(model);
+				}
+			} catch (RuntimeException e) {
+				// already reported
+			}
+		}
+	}
+
+	/**
+	 * Uses the HotSpot extension of ThreadMXBean when it is there.
+	 * @return the bytes allocated by this thread, or -1 if the JVM can't tell
+	 */
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static boolean isSame(ModelData a, ModelData b) {
+		return sameBits(a.getVertices(), b.getVertices()) && sameBits(a.getTextureCoords(), b.getTextureCoords())
+				&& sameBits(a.getNormals(), b.getNormals()) && Arrays.equals(a.getIndices(), b.getIndices())
+				&& Float.floatToRawIntBits(a.getFurthestPoint()) == Float.floatToRawIntBits(b.getFurthestPoint());
+	}
+
+	private static boolean sameBits(float[] a, float[] b) {
+		if(a.length != b.length) {
+			return false;
+		}
+		for(int i = 0; i < a.length; i++) {
+			if(Float.floatToRawIntBits(a[i]) != Float.floatToRawIntBits(b[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void findModels(File folder, String prefix, List<String> models) {
+		File[] files = folder.listFiles();
+		if(files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for(File file : files) {
+			if(file.isDirectory()) {
+				findModels(file, prefix + file.getName() + "/", models);
+			} else if(file.getName().endsWith(".obj")) {
+				models.add(prefix + file.getName().substring(0, file.getName().length() - 4));
+			}
+		}
+	}
+
+}
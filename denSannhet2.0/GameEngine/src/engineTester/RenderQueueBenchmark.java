@@ -0,0 +1,150 @@
+package engineTester;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import renderEngine.MasterRenderer;
+import renderEngine.RenderQueue;
+
+	/**
+	 * Submits a frame that looks like the game to the render queue, without any OpenGL: textured models spread over
+	 * a few textures and texture arrays, some with transparency, a crowd of two animated characters, the terrain
+	 * tiles and the GUIs, all in the random order of a HashMap. It prints the state changes made and skipped with
+	 * the draws in the order they were submitted, and sorted by key, and how long the radix sort of the keys takes
+	 * next to Arrays.sort. Exits with 1 if the queue isn't sorted or the GUIs are out of order.
+	 * Usage: RenderQueueBenchmark [draws].
+	 */
+public class RenderQueueBenchmark {
+
+	private static final int MODELS = 60;
+	private static final int MODEL_TEXTURES = 12;
+	private static final int CROWD = 200;
+	private static final int TERRAINS = 9;
+	private static final int GUIS = 4;
+	private static final int ROUNDS = 200;
+
+	public static void main(String[] args) {
+		int draws = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		Random random = new Random(1);
+		RenderQueue queue = new RenderQueue(10000) {
+			@Override
+			protected void applyCulling(boolean culling) {
+			}
+		};
+		final int[] guiOrder = new int[GUIS];
+		final int[] guiDraws = new int[1];
+		RenderQueue.Renderer nothing = new RenderQueue.Renderer() {
+			public void begin() {}
+			public void bindTexture(int item) {}
+			public void bindModel(int item) {}
+			public void draw(int item) {}
+			public void end() {}
+		};
+		queue.setRenderer(MasterRenderer.ENTITY_SHADER, nothing);
+		queue.setRenderer(MasterRenderer.ANIMATED_SHADER, nothing);
+		queue.setRenderer(MasterRenderer.TERRAIN_SHADER, nothing);
+		queue.setRenderer(MasterRenderer.GUI_SHADER, new RenderQueue.Renderer() {
+			public void begin() {}
+			public void bindTexture(int item) {}
+			public void bindModel(int item) {}
+			public void draw(int item) {
+				guiOrder[guiDraws[0]++] = item;
+			}
+			public void end() {}
+		});
+		
+		long[] frame = createFrame(queue, random);
+		boolean failed = false;
+		for (int sorted = 0; sorted < 2; sorted++) {
+			queue.setSorting(sorted == 1);
+			for (int i = 0; i < frame.length; i++) {
+				queue.submit(frame[i], i);
+			}
+			guiDraws[0] = 0;
+			queue.execute();
+			System.out.println((sorted == 1 ? "Sorted" : "Submitted order") + ": " + queue.getDraws() + " draws, "
+					+ describe(queue, RenderQueue.STATE_PROGRAM, "program") + ", "
+					+ describe(queue, RenderQueue.STATE_TEXTURE, "texture") + ", "
+					+ describe(queue, RenderQueue.STATE_VAO, "VAO") + ", "
+					+ describe(queue, RenderQueue.STATE_CULLING, "culling"));
+			for (int i = 0; i < GUIS; i++) {
+				if (guiOrder[i] != frame.length - GUIS + i) {
+					System.out.println("FAILED: GUI " + i + " was drawn as number " + guiOrder[i]);
+					failed = true;
+				}
+			}
+		}
+		queue.setSorting(true);
+		
+		long[] keys = new long[draws];
+		for (int i = 0; i < draws; i++) {
+			keys[i] = queue.createKey(random.nextInt(3), random.nextInt(10) == 0, random.nextInt(64),
+					random.nextInt(512), random.nextFloat() * 10000);
+		}
+		long radixNanos = 0;
+		long arraysNanos = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int i = 0; i < draws; i++) {
+				queue.submit(keys[i], i);
+			}
+			long start = System.nanoTime();
+			queue.sort();
+			radixNanos += System.nanoTime() - start;
+			for (int i = 1; i < queue.getSize(); i++) {
+				if (queue.getKey(i - 1) > queue.getKey(i)) {
+					System.out.println("FAILED: keys " + (i - 1) + " and " + i + " out of order");
+					failed = true;
+					break;
+				}
+			}
+			queue.setSorting(false);
+			queue.execute();
+			queue.setSorting(true);
+			long[] copy = keys.clone();
+			start = System.nanoTime();
+			Arrays.sort(copy);
+			arraysNanos += System.nanoTime() - start;
+		}
+		System.out.println(draws + " keys: radix sort " + radixNanos / ROUNDS / 1000 + " us, Arrays.sort "
+				+ arraysNanos / ROUNDS / 1000 + " us");
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates the keys of one frame, the opaque draws shuffled and the GUIs last.
+	 */
+	private static long[] createFrame(RenderQueue queue, Random random) {
+		long[] keys = new long[MODELS + CROWD + TERRAINS + GUIS];
+		int count = 0;
+		for (int i = 0; i < MODELS; i++) {
+			int texture = 1 + random.nextInt(MODEL_TEXTURES);
+			keys[count++] = queue.createKey(MasterRenderer.ENTITY_SHADER, texture <= 2, texture, 100 + i,
+					random.nextFloat() * 2000);
+		}
+		for (int i = 0; i < CROWD; i++) {
+			int character = random.nextInt(2);
+			keys[count++] = queue.createKey(MasterRenderer.ANIMATED_SHADER, false, 20 + character, 300 + character,
+					random.nextFloat() * 500);
+		}
+		for (int i = 0; i < TERRAINS; i++) {
+			keys[count++] = queue.createKey(MasterRenderer.TERRAIN_SHADER, false, 30, 400, random.nextFloat() * 2000);
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int other = random.nextInt(i + 1);
+			long swap = keys[i];
+			keys[i] = keys[other];
+			keys[other] = swap;
+		}
+		for (int i = 0; i < GUIS; i++) {
+			keys[count++] = queue.createGuiKey(MasterRenderer.GUI_SHADER, 40 + i % 2, 500);
+		}
+		return keys;
+	}
+
+	private static String describe(RenderQueue queue, int state, String name) {
+		return name + " " + queue.getIssued(state) + " changed / " + queue.getElided(state) + " skipped";
+	}
+
+}
@@ -0,0 +1,179 @@
+package engineTester;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+import animation.AnimatedModel;
+import animation.AnimatedModelLoader;
+import animation.Animation;
+import animation.SkinningFormat;
+import colladaParser.ColladaLoader;
+import colladaParser.MeshData;
+
+	/**
+	 * Prints what the skinning of res/model.dae costs on the GPU, the old way and the new way. The VRAM of
+	 * every vertex, with 3 joint IDs as ints and 3 weights as floats before, and the 12 bytes of SkinningFormat
+	 * after. And the bytes loaded into the shader for every model every frame: the 50 matrices loaded one by
+	 * one before, the palette of the joints of the skeleton, and the palette as dual quaternions.
+	 *
+	 * It also checks the new data: how far the packed weights are from the float weights, and how far the
+	 * vertices skinned with dual quaternions are from the vertices skinned with matrices, at random times in
+	 * the animation, the same maths as animatedEntityVertex. No OpenGL is needed, run it with the src folder on
+	 * the classpath. Exits with 1 if the packed weights don't add up to 1.
+	 */
+public class SkinningReport {
+
+	private static final int SAMPLES = 200;
+	private static final int OLD_WEIGHTS = 3;
+	private static final int OLD_UPLOADED_JOINTS = 50;
+	// positions, texture coords and normals, the same before and after
+	private static final int VERTEX_BYTES = (3 + 2 + 3) * 4;
+
+	public static void main(String[] args) {
+		MeshData mesh = ColladaLoader.loadColladaModel(new MyFile("res", "model.dae"), SkinningFormat.WEIGHTS_PER_VERTEX).getMeshData();
+		int weightsPerVertex = mesh.getWeightsPerVertex();
+		int[] jointIds = mesh.getJointIds();
+		float[] weights = mesh.getVertexWeights();
+		int vertexCount = jointIds.length / weightsPerVertex;
+		ByteBuffer packed = SkinningFormat.pack(jointIds, weights, weightsPerVertex);
+
+		AnimatedModelLoader loader = new AnimatedModelLoader();
+		AnimatedModel model = loader.loadSkeleton("model");
+		Animation animation = loader.loadAnimation("model");
+		model.doAnimation(animation);
+		int jointCount = model.getJointCount();
+
+		int oldBytes = VERTEX_BYTES + OLD_WEIGHTS * 4 * 2;
+		int newBytes = VERTEX_BYTES + SkinningFormat.BYTES_PER_VERTEX;
+		System.out.println(vertexCount + " vertices, " + jointCount + " joints");
+		System.out.println("VRAM per vertex: " + oldBytes + " bytes before (" + OLD_WEIGHTS * 4 * 2 + " for skinning), "
+				+ newBytes + " bytes after (" + SkinningFormat.BYTES_PER_VERTEX + " for skinning), " + vertexCount * oldBytes
+				+ " -> " + vertexCount * newBytes + " bytes for the model");
+		System.out.println("Uploaded per model per frame: " + OLD_UPLOADED_JOINTS * 64 + " bytes joint by joint, "
+				+ jointCount * 64 + " bytes as a matrix palette, " + jointCount * 32 + " bytes as dual quaternions");
+
+		int moreThanOld = 0;
+		float maxWeightError = 0;
+		float maxSumError = 0;
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			if (weightsPerVertex > OLD_WEIGHTS && weights[vertex * weightsPerVertex + OLD_WEIGHTS] > 0) {
+				moreThanOld++;
+			}
+			float total = 0;
+			for (int i = 0; i < weightsPerVertex; i++) {
+				total += weights[vertex * weightsPerVertex + i];
+			}
+			float sum = 0;
+			for (int i = 0; i < SkinningFormat.WEIGHTS_PER_VERTEX; i++) {
+				float weight = i < weightsPerVertex && total > 0 ? weights[vertex * weightsPerVertex + i] / total : 0;
+				float unpacked = SkinningFormat.getWeight(packed, vertex, i);
+				maxWeightError = Math.max(maxWeightError, Math.abs(weight - unpacked));
+				sum += unpacked;
+			}
+			if (total > 0) {
+				maxSumError = Math.max(maxSumError, Math.abs(1 - sum));
+			}
+		}
+		System.out.println(moreThanOld + " vertices have more than " + OLD_WEIGHTS + " weights, packed weight error max "
+				+ maxWeightError + ", packed weights add up to 1 within " + maxSumError);
+
+		float[] errors = measureDualQuaternionError(model, animation, mesh.getVertices(), packed, vertexCount);
+		System.out.println("Dual quaternion vs matrix skinning over " + SAMPLES + " poses: max " + errors[0]
+				+ ", average " + errors[1] + " (model is " + errors[2] + " units tall)");
+		if (maxSumError > 1e-4f) {
+			System.out.println("FAILED: the packed weights don't add up to 1");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the biggest and the average distance between the vertices skinned both ways, and the height of
+	 *         the model
+	 */
+	private static float[] measureDualQuaternionError(AnimatedModel model, Animation animation, float[] positions,
+			ByteBuffer packed, int vertexCount) {
+		Random random = new Random(1);
+		float[] matrixSkinned = new float[3];
+		float[] dualSkinned = new float[3];
+		float max = 0;
+		double total = 0;
+		float minY = Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int sample = 0; sample < SAMPLES; sample++) {
+			model.getAnimator().setAnimationTime(random.nextFloat() * animation.getLength());
+			model.update(0);
+			Matrix4f[] transforms = model.getJointTransforms();
+			FloatBuffer dualQuaternions = model.getDualQuaternionPalette();
+			for (int vertex = 0; vertex < vertexCount; vertex++) {
+				float x = positions[vertex * 3];
+				float y = positions[vertex * 3 + 1];
+				float z = positions[vertex * 3 + 2];
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+				skinWithMatrices(transforms, packed, vertex, x, y, z, matrixSkinned);
+				skinWithDualQuaternions(dualQuaternions, packed, vertex, x, y, z, dualSkinned);
+				float dx = matrixSkinned[0] - dualSkinned[0];
+				float dy = matrixSkinned[1] - dualSkinned[1];
+				float dz = matrixSkinned[2] - dualSkinned[2];
+				float error = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				max = Math.max(max, error);
+				total += error;
+			}
+		}
+		return new float[] { max, (float) (total / ((double) SAMPLES * vertexCount)), maxY - minY };
+	}
+
+	private static void skinWithMatrices(Matrix4f[] transforms, ByteBuffer packed, int vertex, float x, float y, float z,
+			float[] result) {
+		result[0] = result[1] = result[2] = 0;
+		for (int i = 0; i < SkinningFormat.WEIGHTS_PER_VERTEX; i++) {
+			Matrix4f m = transforms[SkinningFormat.getJoint(packed, vertex, i)];
+			float weight = SkinningFormat.getWeight(packed, vertex, i);
+			result[0] += (m.m00 * x + m.m10 * y + m.m20 * z + m.m30) * weight;
+			result[1] += (m.m01 * x + m.m11 * y + m.m21 * z + m.m31) * weight;
+			result[2] += (m.m02 * x + m.m12 * y + m.m22 * z + m.m32) * weight;
+		}
+	}
+
+	private static void skinWithDualQuaternions(FloatBuffer dualQuaternions, ByteBuffer packed, int vertex, float x,
+			float y, float z, float[] result) {
+		float[] real = new float[4];
+		float[] dual = new float[4];
+		int first = SkinningFormat.getJoint(packed, vertex, 0) * 8;
+		for (int i = 0; i < SkinningFormat.WEIGHTS_PER_VERTEX; i++) {
+			int joint = SkinningFormat.getJoint(packed, vertex, i) * 8;
+			float dot = 0;
+			for (int c = 0; c < 4; c++) {
+				dot += dualQuaternions.get(joint + c) * dualQuaternions.get(first + c);
+			}
+			float weight = SkinningFormat.getWeight(packed, vertex, i);
+			if (dot < 0) {
+				weight = -weight;
+			}
+			for (int c = 0; c < 4; c++) {
+				real[c] += dualQuaternions.get(joint + c) * weight;
+				dual[c] += dualQuaternions.get(joint + 4 + c) * weight;
+			}
+		}
+		float length = (float) Math.sqrt(real[0] * real[0] + real[1] * real[1] + real[2] * real[2] + real[3] * real[3]);
+		for (int c = 0; c < 4; c++) {
+			real[c] /= length;
+			dual[c] /= length;
+		}
+		// position + 2 * cross(real.xyz, cross(real.xyz, position) + real.w * position)
+		float cx = real[1] * z - real[2] * y + real[3] * x;
+		float cy = real[2] * x - real[0] * z + real[3] * y;
+		float cz = real[0] * y - real[1] * x + real[3] * z;
+		result[0] = x + 2 * (real[1] * cz - real[2] * cy);
+		result[1] = y + 2 * (real[2] * cx - real[0] * cz);
+		result[2] = z + 2 * (real[0] * cy - real[1] * cx);
+		// 2 * (real.w * dual.xyz - dual.w * real.xyz + cross(real.xyz, dual.xyz))
+		result[0] += 2 * (real[3] * dual[0] - dual[3] * real[0] + real[1] * dual[2] - real[2] * dual[1]);
+		result[1] += 2 * (real[3] * dual[1] - dual[3] * real[1] + real[2] * dual[0] - real[0] * dual[2]);
+		result[2] += 2 * (real[3] * dual[2] - dual[3] * real[2] + real[0] * dual[1] - real[1] * dual[0]);
+	}
+
+}
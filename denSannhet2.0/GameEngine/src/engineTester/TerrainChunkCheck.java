@@ -0,0 +1,180 @@
+package engineTester;
+
+import java.util.TreeSet;
+
+import terrains.Terrain;
+import terrains.TerrainChunks;
+
+	/**
+	 * Checks the index lists of TerrainChunks without OpenGL. For every pair of chunks next to each other, at
+	 * every combination of levels, it builds both chunks the way TerrainRenderer does and checks that:
+	 *
+	 *  - both chunks use exactly the same vertices on the edge they share, so there can't be any cracks
+	 *  - the triangles of each chunk cover the whole chunk once, all with the same winding
+	 *
+	 * Then it moves the camera over a grid of positions around a terrain and the terrains east and south of it,
+	 * and checks that both terrains of a seam pick the same level for the chunks on each side of it, the way
+	 * TerrainRenderer picks them, so the seam is stitched the same way from both sides.
+	 *
+	 * Run it with the vertex count of the heightMap as argument (256 by default). Exits with 1 if a check fails.
+	 */
+public class TerrainChunkCheck {
+
+	private static final float[] LOD_DISTANCES = { 100, 30 };
+	private static final float CAMERA_STEP = 7.3f;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int vertexCount = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		TerrainChunks chunks = new TerrainChunks(vertexCount);
+		int count = chunks.getChunksPerSide();
+		int pairs = 0;
+		for(int first = 0; first < count - 1; first++) {
+			for(int other = 0; other < count; other++) {
+				for(int levelA = 0; levelA <= TerrainChunks.MAX_LEVEL; levelA++) {
+					for(int levelB = 0; levelB <= TerrainChunks.MAX_LEVEL; levelB++) {
+						checkPair(chunks, first, other, levelA, levelB, true);
+						checkPair(chunks, other, first, levelA, levelB, false);
+						pairs += 2;
+					}
+				}
+			}
+		}
+		int cameras = checkSeams(chunks);
+		System.out.println(vertexCount + " vertices, " + count + "x" + count + " chunks, "
+				+ pairs + " chunk pairs and the seams from " + cameras + " camera positions checked, " + failures + " failures");
+		if(failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Picks the levels of a terrain at (0, 0) and of the terrains east and south of it for every camera position,
+	 * and compares the ring of each terrain with the chunks of the other one along the seam.
+	 * @return the number of camera positions
+	 */
+	private static int checkSeams(TerrainChunks chunks) {
+		int count = chunks.getChunksPerSide();
+		int side = count + 2;
+		int[] levels = new int[side * side];
+		int[] east = new int[side * side];
+		int[] south = new int[side * side];
+		int cameras = 0;
+		for(float lodDistance : LOD_DISTANCES) {
+			for(float cameraZ = -Terrain.SIZE / 2; cameraZ < Terrain.SIZE * 2.5f; cameraZ += CAMERA_STEP) {
+				for(float cameraX = -Terrain.SIZE / 2; cameraX < Terrain.SIZE * 2.5f; cameraX += CAMERA_STEP) {
+					chunks.chooseLevels(0, 0, Terrain.SIZE, cameraX, cameraZ, lodDistance, levels);
+					chunks.chooseLevels(Terrain.SIZE, 0, Terrain.SIZE, cameraX, cameraZ, lodDistance, east);
+					chunks.chooseLevels(0, Terrain.SIZE, Terrain.SIZE, cameraX, cameraZ, lodDistance, south);
+					for(int c = 0; c < count; c++) {
+						String where = " at camera " + cameraX + "," + cameraZ + " with lod distance " + lodDistance;
+						// the east seam, between the last column of the terrain and the first of the east terrain
+						int row = (c + 1) * side;
+						checkSeam("east", c, levels[row + count], east[row], levels[row + count + 1], east[row + 1], where);
+						// the south seam, between the last row of the terrain and the first of the south terrain
+						checkSeam("south", c, levels[count * side + c + 1], south[c + 1],
+								levels[(count + 1) * side + c + 1], south[side + c + 1], where);
+					}
+					cameras++;
+				}
+			}
+		}
+		return cameras;
+	}
+
+	/**
+	 * @param own - the level of the chunk on this side of the seam
+	 * @param seenFromOther - the level the other terrain has for it in its ring
+	 * @param seenFromOwn - the level this terrain has for the chunk on the other side, in its ring
+	 * @param other - the level of the chunk on the other side
+	 */
+	private static void checkSeam(String seam, int chunk, int own, int seenFromOther, int seenFromOwn, int other,
+			String where) {
+		if(own != seenFromOther || other != seenFromOwn) {
+			fail(seam + " seam at chunk " + chunk + where + ": levels " + own + " and " + other
+					+ " on the two sides, but the other terrains see " + seenFromOther + " and " + seenFromOwn);
+		}
+	}
+
+	/**
+	 * Builds the chunk at (cx, cz) and the one after it, along x when alongX is true and along z otherwise.
+	 */
+	private static void checkPair(TerrainChunks chunks, int cx, int cz, int levelA, int levelB, boolean alongX) {
+		int stride = chunks.getVertexCount();
+		int bx = alongX ? cx + 1 : cx;
+		int bz = alongX ? cz : cz + 1;
+		int edgeStep = 1 << Math.max(levelA, levelB);
+		int stepA = 1 << levelA;
+		int stepB = 1 << levelB;
+		int[] a = TerrainChunks.buildIndices(stride, chunks.getChunkSize(cx), chunks.getChunkSize(cz), stepA,
+				stepA, alongX ? edgeStep : stepA, alongX ? stepA : edgeStep, stepA);
+		int[] b = TerrainChunks.buildIndices(stride, chunks.getChunkSize(bx), chunks.getChunkSize(bz), stepB,
+				alongX ? stepB : edgeStep, stepB, stepB, alongX ? edgeStep : stepB);
+		checkCoverage(chunks, cx, cz, a);
+		checkCoverage(chunks, bx, bz, b);
+
+		// the shared edge, in vertices of the whole terrain
+		int edgeX = chunks.getChunkStart(bx);
+		int edgeZ = chunks.getChunkStart(bz);
+		TreeSet<Integer> edgeA = edgeVertices(chunks, cx, cz, a, alongX, alongX ? edgeX : edgeZ);
+		TreeSet<Integer> edgeB = edgeVertices(chunks, bx, bz, b, alongX, alongX ? edgeX : edgeZ);
+		if(!edgeA.equals(edgeB)) {
+			fail("edge between chunk " + cx + "," + cz + " at level " + levelA + " and " + bx + "," + bz
+					+ " at level " + levelB + ": " + edgeA + " != " + edgeB);
+		}
+	}
+
+	private static TreeSet<Integer> edgeVertices(TerrainChunks chunks, int cx, int cz, int[] indices,
+			boolean alongX, int edge) {
+		int stride = chunks.getVertexCount();
+		int base = chunks.getBaseVertex(cx, cz);
+		TreeSet<Integer> vertices = new TreeSet<Integer>();
+		for(int index:indices) {
+			int vertex = base + index;
+			int position = alongX ? vertex % stride : vertex / stride;
+			if(position == edge) {
+				vertices.add(vertex);
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * The triangles must all turn the same way, and their areas must add up to the area of the chunk.
+	 * Together that means they cover the chunk without holes or overlaps.
+	 */
+	private static void checkCoverage(TerrainChunks chunks, int cx, int cz, int[] indices) {
+		int stride = chunks.getVertexCount();
+		int width = chunks.getChunkSize(cx);
+		int depth = chunks.getChunkSize(cz);
+		long area = 0;
+		for(int i = 0; i < indices.length; i += 3) {
+			int x0 = indices[i] % stride, z0 = indices[i] / stride;
+			int x1 = indices[i + 1] % stride, z1 = indices[i + 1] / stride;
+			int x2 = indices[i + 2] % stride, z2 = indices[i + 2] / stride;
+			if(x0 > width || x1 > width || x2 > width || z0 > depth || z1 > depth || z2 > depth) {
+				fail("chunk " + cx + "," + cz + " uses a vertex outside the chunk");
+				return;
+			}
+			// twice the area, positive for the winding of Terrain.generateTerrainData (x to the right, z down)
+			long cross = (long) (z1 - z0) * (x2 - x0) - (long) (x1 - x0) * (z2 - z0);
+			if(cross <= 0) {
+				fail("chunk " + cx + "," + cz + " has a triangle with the wrong winding or no area");
+				return;
+			}
+			area += cross;
+		}
+		if(area != 2L * width * depth) {
+			fail("chunk " + cx + "," + cz + " covers " + area / 2.0 + " quads instead of " + width * depth);
+		}
+	}
+
+	private static void fail(String message) {
+		if(failures < 10) {
+			System.err.println(message);
+		}
+		failures++;
+	}
+
+}
@@ -0,0 +1,214 @@
+package engineTester;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import terrains.Terrain;
+import terrains.TerrainGrid;
+
+	/**
+	 * Checks and times TerrainGrid without OpenGL, using terrains that only have heights.
+	 *
+	 * The heights of every terrain are taken from one tilted plane over the whole world, so the true height of
+	 * any point is known, also on the seams between terrains. The checks cover the borders of the terrains,
+	 * negative coordinates, removing terrains, and a grid with thousands of terrains. Then a million heights
+	 * are looked up, and compared to looping through a list of terrains like before.
+	 *
+	 * Usage: TerrainGridBenchmark [tilesPerSide] [queries]. Exits with 1 if a check fails.
+	 */
+public class TerrainGridBenchmark {
+
+	private static final int VERTEX_COUNT = 33;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int tilesPerSide = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+		checkBorders();
+		checkRemove();
+
+		// a square of tiles around the origin, half of them at negative positions
+		TerrainGrid grid = new TerrainGrid();
+		List<Terrain> list = new ArrayList<Terrain>();
+		int first = -tilesPerSide / 2;
+		for(int gz = first; gz < first + tilesPerSide; gz++) {
+			for(int gx = first; gx < first + tilesPerSide; gx++) {
+				Terrain terrain = planeTerrain(gx, gz);
+				grid.put(terrain);
+				list.add(terrain);
+			}
+		}
+		check(grid.size() == tilesPerSide * tilesPerSide, "grid holds " + grid.size() + " tiles");
+		checkSeams(grid, first, tilesPerSide);
+
+		float min = first * Terrain.SIZE;
+		float extent = tilesPerSide * Terrain.SIZE;
+		Random random = new Random(7);
+		float[] xs = new float[queries];
+		float[] zs = new float[queries];
+		for(int i = 0; i < queries; i++) {
+			xs[i] = min + random.nextFloat() * extent;
+			zs[i] = min + random.nextFloat() * extent;
+		}
+
+		float sum = 0;
+		for(int warmup = 0; warmup < 5; warmup++) {
+			sum += queryGrid(grid, xs, zs, queries);
+		}
+		long start = System.nanoTime();
+		sum += queryGrid(grid, xs, zs, queries);
+		long gridNanos = System.nanoTime() - start;
+
+		// looping through the list is so slow with many tiles that a smaller number of points is enough
+		int scanQueries = Math.min(queries, 20000);
+		sum += queryList(list, xs, zs, scanQueries);
+		start = System.nanoTime();
+		sum += queryList(list, xs, zs, scanQueries);
+		long listNanos = System.nanoTime() - start;
+
+		System.out.println(grid.size() + " tiles, " + queries + " height queries");
+		System.out.println("TerrainGrid: " + (gridNanos / 1000000f) + " ms, " + ((float) gridNanos / queries) + " ns per query");
+		System.out.println("List scan:   " + ((float) listNanos / scanQueries) + " ns per query (" + scanQueries + " queries)");
+		System.out.println("(checksum " + sum + ")");
+		System.out.println(failures + " failures");
+		if(failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static float queryGrid(TerrainGrid grid, float[] xs, float[] zs, int count) {
+		float sum = 0;
+		for(int i = 0; i < count; i++) {
+			sum += grid.getHeight(xs[i], zs[i]);
+		}
+		return sum;
+	}
+
+	private static float queryList(List<Terrain> list, float[] xs, float[] zs, int count) {
+		float sum = 0;
+		for(int i = 0; i < count; i++) {
+			for(Terrain terrain:list) {
+				if(xs[i] >= terrain.getX() && xs[i] < terrain.getX() + Terrain.SIZE
+						&& zs[i] >= terrain.getZ() && zs[i] < terrain.getZ() + Terrain.SIZE) {
+					sum += terrain.getHeightOfTerrain(xs[i], zs[i]);
+					break;
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Points on and right next to the seams must land on the right terrain, also below zero, where a cast to
+	 * int would round the wrong way.
+	 */
+	private static void checkBorders() {
+		TerrainGrid grid = new TerrainGrid();
+		for(int gz = -2; gz <= 1; gz++) {
+			for(int gx = -2; gx <= 1; gx++) {
+				grid.put(planeTerrain(gx, gz));
+			}
+		}
+		checkTile(grid, 0, 0, 0, 0);
+		checkTile(grid, -0.001f, 0, -1, 0);
+		checkTile(grid, 0, -0.001f, 0, -1);
+		checkTile(grid, -10, -10, -1, -1);
+		checkTile(grid, 799.999f, 0, 0, 0);
+		checkTile(grid, 800, 0, 1, 0);
+		checkTile(grid, -800, -800, -1, -1);
+		checkTile(grid, -800.001f, -800.001f, -2, -2);
+		checkTile(grid, -1600, 1599.9f, -2, 1);
+		check(grid.getTerrainAt(1600, 0) == null, "no tile past the edge of the grid");
+		check(grid.getHeight(1600, 0) == 0, "height 0 past the edge of the grid");
+		check(grid.getTerrainAt(-1600.001f, 0) == null, "no tile past the negative edge of the grid");
+		// a float just below a negative seam rounds onto the seam when it is made relative to the terrain
+		float justBelow = Math.nextDown(0f);
+		checkHeight(grid, justBelow, -400);
+		checkHeight(grid, -400, justBelow);
+		checkHeight(grid, Math.nextDown(-800f), Math.nextDown(-800f));
+	}
+
+	private static void checkRemove() {
+		TerrainGrid grid = new TerrainGrid();
+		List<Terrain> all = new ArrayList<Terrain>();
+		for(int gz = -50; gz < 50; gz++) {
+			for(int gx = -50; gx < 50; gx++) {
+				Terrain terrain = new Terrain(gx, gz, new float[2][2]);
+				grid.put(terrain);
+				all.add(terrain);
+			}
+		}
+		for(int i = 0; i < all.size(); i += 2) {
+			check(grid.remove(all.get(i)), "remove tile " + i);
+		}
+		check(!grid.remove(all.get(0)), "removing twice");
+		check(grid.size() == all.size() / 2, "size after remove");
+		for(int i = 0; i < all.size(); i++) {
+			Terrain terrain = all.get(i);
+			Terrain found = grid.get(terrain.getGridX(), terrain.getGridZ());
+			check(found == (i % 2 == 0 ? null : terrain), "tile " + terrain.getGridX() + ", " + terrain.getGridZ() + " after remove");
+		}
+		Terrain replacement = new Terrain(3, 3, new float[2][2]);
+		grid.put(replacement);
+		check(grid.get(3, 3) == replacement, "replaced tile");
+	}
+
+	/**
+	 * Walks along every seam of the grid and compares the height with the plane.
+	 */
+	private static void checkSeams(TerrainGrid grid, int first, int tilesPerSide) {
+		Random random = new Random(3);
+		for(int i = 1; i < tilesPerSide; i++) {
+			float seam = (first + i) * Terrain.SIZE;
+			for(int j = 0; j < 20; j++) {
+				float along = (first + random.nextFloat() * tilesPerSide) * Terrain.SIZE;
+				checkHeight(grid, seam, along);
+				checkHeight(grid, Math.nextDown(seam), along);
+				checkHeight(grid, along, seam);
+				checkHeight(grid, along, Math.nextDown(seam));
+			}
+		}
+	}
+
+	private static void checkTile(TerrainGrid grid, float x, float z, int gridX, int gridZ) {
+		Terrain terrain = grid.getTerrainAt(x, z);
+		check(terrain != null && terrain.getGridX() == gridX && terrain.getGridZ() == gridZ,
+				"(" + x + ", " + z + ") should be on tile " + gridX + ", " + gridZ);
+		checkHeight(grid, x, z);
+	}
+
+	private static void checkHeight(TerrainGrid grid, float x, float z) {
+		float height = grid.getHeight(x, z);
+		float expected = plane(x, z);
+		check(Math.abs(height - expected) <= 0.01f + Math.abs(expected) * 1e-5f,
+				"height at (" + x + ", " + z + ") is " + height + ", should be " + expected);
+	}
+
+	private static Terrain planeTerrain(int gridX, int gridZ) {
+		float[][] heights = new float[VERTEX_COUNT][VERTEX_COUNT];
+		float step = Terrain.SIZE / (VERTEX_COUNT - 1);
+		for(int i = 0; i < VERTEX_COUNT; i++) {
+			for(int j = 0; j < VERTEX_COUNT; j++) {
+				heights[i][j] = plane(gridX * Terrain.SIZE + i * step, gridZ * Terrain.SIZE + j * step);
+			}
+		}
+		return new Terrain(gridX, gridZ, heights);
+	}
+
+	private static float plane(float x, float z) {
+		return 0.01f * x - 0.02f * z + 5;
+	}
+
+	private static void check(boolean ok, String message) {
+		if(!ok) {
+			if(failures < 20) {
+				System.err.println("FAILED: " + message);
+			}
+			failures++;
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package engineTester;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+import terrains.HeightField;
+import terrains.Terrain;
+import terrains.TerrainGrid;
+import toolbox.Maths;
+
+	/**
+	 * Compares the height lookup of Terrain with the way it was done before, when every call made three
+	 * Vector3f and a Vector2f for Maths.barryCentric. The heights must be exactly the same, bit for bit.
+	 * It also times the batched TerrainGrid.getHeights, on one thread and on the fork-join pool.
+	 *
+	 * The bytes allocated are measured with the allocation counter of the JVM for the current thread, so the
+	 * numbers for the fork-join pool only count the calling thread.
+	 *
+	 * Run from the GameEngine folder, so the heightMap can be found. Usage: TerrainHeightBenchmark [points]
+	 */
+public class TerrainHeightBenchmark {
+
+	public static void main(String[] args) {
+		int points = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		HeightField field = Terrain.generateTerrainData("textures/terrain/heightmap").getHeights();
+		float[][] heights = field.toArray();
+		TerrainGrid grid = new TerrainGrid();
+		for(int gz = -1; gz <= 0; gz++) {
+			for(int gx = -1; gx <= 0; gx++) {
+				grid.put(new Terrain(gx, gz, field));
+			}
+		}
+		Terrain terrain = grid.get(0, -1);
+
+		Random random = new Random(11);
+		float[] xs = new float[points];
+		float[] zs = new float[points];
+		for(int i = 0; i < points; i++) {
+			xs[i] = terrain.getX() + random.nextFloat() * Terrain.SIZE;
+			zs[i] = terrain.getZ() + random.nextFloat() * Terrain.SIZE;
+		}
+
+		// exactly the same heights, on random points and on every vertex of the terrain
+		int mismatches = 0;
+		for(int i = 0; i < points; i++) {
+			if(Float.floatToIntBits(terrain.getHeightOfTerrain(xs[i], zs[i]))
+					!= Float.floatToIntBits(legacyHeight(terrain, heights, xs[i], zs[i]))) {
+				mismatches++;
+			}
+		}
+		float step = Terrain.SIZE / (heights.length - 1);
+		for(int i = 0; i < heights.length; i++) {
+			for(int j = 0; j < heights.length; j++) {
+				float x = terrain.getX() + i * step;
+				float z = terrain.getZ() + j * step;
+				if(Float.floatToIntBits(terrain.getHeightOfTerrain(x, z))
+						!= Float.floatToIntBits(legacyHeight(terrain, heights, x, z))) {
+					mismatches++;
+				}
+			}
+		}
+		System.out.println("Mismatches against the old barryCentric: " + mismatches);
+
+		float sum = 0;
+		for(int warmup = 0; warmup < 5; warmup++) {
+			sum += runLegacy(terrain, heights, xs, zs);
+			sum += runSingle(terrain, xs, zs);
+		}
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		sum += runLegacy(terrain, heights, xs, zs);
+		report("Old getHeightOfTerrain", start, allocated, points);
+		allocated = allocatedBytes();
+		start = System.nanoTime();
+		sum += runSingle(terrain, xs, zs);
+		report("getHeightOfTerrain", start, allocated, points);
+
+		// the batch covers all four terrains, so the seams are included
+		for(int i = 0; i < points; i++) {
+			xs[i] = -Terrain.SIZE + random.nextFloat() * 2 * Terrain.SIZE;
+			zs[i] = -Terrain.SIZE + random.nextFloat() * 2 * Terrain.SIZE;
+		}
+		float[] result = new float[points];
+		// batches below the threshold stay on this thread, so the same small batch is run many times
+		float[] smallXs = slice(xs, 0, 8192);
+		float[] smallZs = slice(zs, 0, 8192);
+		float[] small = new float[8192];
+		int repeats = Math.max(1, points / small.length);
+		for(int warmup = 0; warmup < 5; warmup++) {
+			grid.getHeights(xs, zs, result);
+			grid.getHeights(smallXs, smallZs, small);
+		}
+		allocated = allocatedBytes();
+		start = System.nanoTime();
+		for(int i = 0; i < repeats; i++) {
+			grid.getHeights(smallXs, smallZs, small);
+		}
+		report("TerrainGrid.getHeights, one thread", start, allocated, repeats * small.length);
+		allocated = allocatedBytes();
+		start = System.nanoTime();
+		grid.getHeights(xs, zs, result);
+		report("TerrainGrid.getHeights, fork-join", start, allocated, points);
+
+		int batchMismatches = 0;
+		for(int i = 0; i < points; i++) {
+			if(Float.floatToIntBits(result[i]) != Float.floatToIntBits(grid.getHeight(xs[i], zs[i]))) {
+				batchMismatches++;
+			}
+		}
+		System.out.println("Mismatches between getHeights and getHeight: " + batchMismatches);
+		System.out.println("(checksum " + sum + ")");
+		if(mismatches > 0 || batchMismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static float runLegacy(Terrain terrain, float[][] heights, float[] xs, float[] zs) {
+		float sum = 0;
+		for(int i = 0; i < xs.length; i++) {
+			sum += legacyHeight(terrain, heights, xs[i], zs[i]);
+		}
+		return sum;
+	}
+
+	private static float runSingle(Terrain terrain, float[] xs, float[] zs) {
+		float sum = 0;
+		for(int i = 0; i < xs.length; i++) {
+			sum += terrain.getHeightOfTerrain(xs[i], zs[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Terrain.getHeightOfTerrain as it was before, with the vectors.
+	 */
+	private static float legacyHeight(Terrain terrain, float[][] heights, float worldX, float worldZ) {
+		float terrainX = worldX - terrain.getX();
+		float terrainZ = worldZ - terrain.getZ();
+		float gridSquareSize = Terrain.SIZE / ((float)heights.length - 1);
+		int gridX = (int) Math.floor(terrainX / gridSquareSize);
+		int gridZ = (int) Math.floor(terrainZ / gridSquareSize);
+		if(gridX >= heights.length - 1 || gridZ >= heights.length - 1 || gridX < 0 || gridZ < 0) {
+			return 0;
+		}
+		float xCoord = (terrainX % gridSquareSize) / gridSquareSize;
+		float zCoord = (terrainZ % gridSquareSize) / gridSquareSize;
+		if (xCoord <= (1-zCoord)) {
+			return Maths.barryCentric(new Vector3f(0, heights[gridX][gridZ], 0), new Vector3f(1,
+							heights[gridX + 1][gridZ], 0), new Vector3f(0,
+							heights[gridX][gridZ + 1], 1), new Vector2f(xCoord, zCoord));
+		}
+		return Maths.barryCentric(new Vector3f(1, heights[gridX + 1][gridZ], 0), new Vector3f(1,
+							heights[gridX + 1][gridZ + 1], 1), new Vector3f(0,
+							heights[gridX][gridZ + 1], 1), new Vector2f(xCoord, zCoord));
+	}
+
+	private static float[] slice(float[] data, int offset, int length) {
+		float[] slice = new float[length];
+		System.arraycopy(data, offset, slice, 0, length);
+		return slice;
+	}
+
+	private static void report(String name, long start, long allocatedBefore, int points) {
+		long nanos = System.nanoTime() - start;
+		long bytes = allocatedBytes() - allocatedBefore;
+		System.out.println(name + ": " + ((float) nanos / points) + " ns per point, "
+				+ ((float) bytes / points) + " bytes per point");
+	}
+
+	/**
+	 * @return the bytes allocated by this thread so far, or 0 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+}
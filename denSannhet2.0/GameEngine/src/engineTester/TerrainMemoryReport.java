@@ -0,0 +1,88 @@
+package engineTester;
+
+import terrains.HeightField;
+import terrains.Terrain;
+import terrains.TerrainData;
+
+	/**
+	 * Prints how much GPU memory a terrain tile takes up as a mesh, and as a height texture displaced on the GPU,
+	 * for the heightMaps of the game. No OpenGL is needed, the sizes are worked out from the data that would be
+	 * uploaded.
+	 *
+	 * It also works out the vertices and normals the way terrainVertexShader does for a displaced terrain, and
+	 * checks they are the same as the ones in the mesh, so both modes draw the same ground the collision uses.
+	 *
+	 * Run from the GameEngine folder, so the heightMaps can be found. Exits with 1 if a vertex is different.
+	 */
+public class TerrainMemoryReport {
+
+	private static int differences = 0;
+
+	public static void main(String[] args) {
+		report("textures/terrain/heightmap");
+		report("textures/terrain/heightmap_alternative");
+		System.out.println(differences + " vertices different from the mesh");
+		if(differences > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void report(String heightMap) {
+		TerrainData mesh = Terrain.generateTerrainData(heightMap);
+		TerrainData displaced = Terrain.generateHeightData(heightMap);
+		HeightField heights = displaced.getHeights();
+		int count = heights.getSize();
+		// the flat grid has two floats per vertex, and is shared by every displaced tile of this size
+		long gridBytes = count * count * 2L * 4;
+		System.out.println(heightMap + " (" + count + "x" + count + " vertices)");
+		System.out.println("  mesh per tile:          " + mesh.getGpuSizeInBytes() / 1024 + " KB on the GPU");
+		System.out.println("  displaced per tile:     " + displaced.getGpuSizeInBytes() / 1024 + " KB on the GPU, plus "
+				+ gridBytes / 1024 + " KB once for the shared grid");
+		System.out.println("  collision, both modes:  " + heights.getSizeInBytes() / 1024 + " KB on the heap");
+		for(int tiles = 9; tiles <= 25; tiles += 16) {
+			System.out.println("  " + tiles + " tiles:  mesh " + tiles * mesh.getGpuSizeInBytes() / 1024 + " KB, displaced "
+					+ (tiles * displaced.getGpuSizeInBytes() + gridBytes) / 1024 + " KB");
+		}
+		compare(mesh, heights);
+	}
+
+	/**
+	 * Works out every vertex like the vertex shader does, and compares it to the mesh.
+	 */
+	private static void compare(TerrainData mesh, HeightField heights) {
+		int count = heights.getSize();
+		short[] data = heights.getData();
+		float gridSize = count - 1;
+		float[] vertices = mesh.getVertices();
+		float[] normals = mesh.getNormals();
+		for(int row = 0; row < count; row++) {
+			for(int column = 0; column < count; column++) {
+				int pointer = (row * count + column) * 3;
+				float x = column / gridSize * Terrain.SIZE;
+				float y = heightAt(data, heights, column, row);
+				float z = row / gridSize * Terrain.SIZE;
+				float normalX = heightAt(data, heights, column - 1, row) - heightAt(data, heights, column + 1, row);
+				float normalZ = heightAt(data, heights, column, row - 1) - heightAt(data, heights, column, row + 1);
+				float length = (float) Math.sqrt(normalX * normalX + 4 + normalZ * normalZ);
+				if(x != vertices[pointer] || y != vertices[pointer + 1] || z != vertices[pointer + 2]
+						|| Math.abs(normalX / length - normals[pointer]) > 1e-6f
+						|| Math.abs(2 / length - normals[pointer + 1]) > 1e-6f
+						|| Math.abs(normalZ / length - normals[pointer + 2]) > 1e-6f) {
+					differences++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * heightAt from terrainVertexShader: the 16 bit number from the texture, times the scale, plus the offset.
+	 */
+	private static float heightAt(short[] data, HeightField heights, int x, int z) {
+		int count = heights.getSize();
+		if(x < 0 || z < 0 || x >= count || z >= count) {
+			return 0;
+		}
+		return heights.getOffset() + (float) (data[z * count + x] & 0xFFFF) * heights.getScale();
+	}
+
+}
@@ -0,0 +1,227 @@
+package engineTester;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+import models.RawModel;
+import models.TexturedModel;
+import textures.AtlasRegion;
+import textures.ModelTexture;
+import textures.TextureArray;
+import textures.TextureData;
+import textures.TexturePacker;
+
+	/**
+	 * Checks the TexturePacker and the texture coordinates of a packed texture without OpenGL. Random textures are
+	 * packed with different page sizes and paddings, and for every packing it checks that:
+	 *
+	 *  - every region with its padding is inside its page, and no two of them on the same layer overlap
+	 *  - composeLayer copies every image into its region, fills the padding with the nearest edge pixel of the
+	 *    image and leaves the rest of the page empty
+	 *  - the texture coordinates the vertex shader works out, atlasRect.xy + (uv / numberOfRows + offset) *
+	 *    atlasRect.zw, put uv 0 and 1 exactly on the edges of the region, or of the part of it for the texture
+	 *    index of the entity when the texture has several rows
+	 *
+	 * Every pixel of an image has its own value, so a pixel copied to the wrong place is always noticed.
+	 * Exits with 1 if a check fails.
+	 */
+public class TexturePackerCheck {
+
+	private static final int[][] PACKERS = { { 512, 512, 0 }, { 512, 512, 1 }, { 512, 256, 4 }, { 1024, 1024, 16 } };
+	private static final int TEXTURES = 60;
+	private static final int MAX_SIZE = 200;
+	private static final int[] ROWS = { 1, 2, 4 };
+	private static final float EPSILON = 1e-3f;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		int regions = 0;
+		int layers = 0;
+		for(int[] settings : PACKERS) {
+			TexturePacker packer = new TexturePacker(settings[0], settings[1], settings[2]);
+			int count = TEXTURES + 1;
+			String[] names = new String[count];
+			int[] widths = new int[count];
+			int[] heights = new int[count];
+			for(int i = 0; i < TEXTURES; i++) {
+				names[i] = "texture" + i;
+				widths[i] = 1 + random.nextInt(MAX_SIZE);
+				heights[i] = 1 + random.nextInt(MAX_SIZE);
+			}
+			// one texture that only just fits on a page
+			names[TEXTURES] = "full page";
+			widths[TEXTURES] = packer.getPageWidth() - 2 * packer.getPadding();
+			heights[TEXTURES] = packer.getPageHeight() - 2 * packer.getPadding();
+			List<AtlasRegion> packed = packer.pack(names, widths, heights);
+			String name = settings[0] + "x" + settings[1] + " pages with padding " + settings[2];
+			checkRegions(name, packer, packed, names, widths, heights);
+			checkLayers(name, packer, packed);
+			checkTextureCoords(name, packed);
+			regions += packed.size();
+			layers += TexturePacker.getLayerCount(packed);
+		}
+		System.out.println(PACKERS.length + " packings, " + regions + " regions on " + layers + " layers checked, "
+				+ failures + " failures");
+		if(failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Every region must be where pack said, with its padding inside the page and not overlapping any other.
+	 */
+	private static void checkRegions(String name, TexturePacker packer, List<AtlasRegion> regions, String[] names,
+			int[] widths, int[] heights) {
+		int padding = packer.getPadding();
+		for(int i = 0; i < regions.size(); i++) {
+			AtlasRegion region = regions.get(i);
+			if(!region.getName().equals(names[i]) || region.getWidth() != widths[i] || region.getHeight() != heights[i]) {
+				fail(name + ": region " + i + " is " + region + ", expected " + names[i] + " " + widths[i] + "x" + heights[i]);
+			}
+			if(region.getLayer() < 0 || region.getX() - padding < 0 || region.getY() - padding < 0
+					|| region.getX() + region.getWidth() + padding > packer.getPageWidth()
+					|| region.getY() + region.getHeight() + padding > packer.getPageHeight()) {
+				fail(name + ": " + region + " with its padding is outside the page");
+			}
+			for(int j = i + 1; j < regions.size(); j++) {
+				AtlasRegion other = regions.get(j);
+				if(region.getLayer() == other.getLayer()
+						&& region.getX() - padding < other.getX() + other.getWidth() + padding
+						&& other.getX() - padding < region.getX() + region.getWidth() + padding
+						&& region.getY() - padding < other.getY() + other.getHeight() + padding
+						&& other.getY() - padding < region.getY() + region.getHeight() + padding) {
+					fail(name + ": " + region + " overlaps " + other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Composes every layer from images where every pixel is different, and checks every pixel of the page.
+	 */
+	private static void checkLayers(String name, TexturePacker packer, List<AtlasRegion> regions) {
+		int padding = packer.getPadding();
+		int pageWidth = packer.getPageWidth();
+		List<TextureData> images = new ArrayList<TextureData>();
+		for(int i = 0; i < regions.size(); i++) {
+			AtlasRegion region = regions.get(i);
+			ByteBuffer buffer = BufferUtils.createByteBuffer(region.getWidth() * region.getHeight() * 4);
+			for(int y = 0; y < region.getHeight(); y++) {
+				for(int x = 0; x < region.getWidth(); x++) {
+					buffer.putInt((y * region.getWidth() + x) * 4, pixel(i, x, y));
+				}
+			}
+			images.add(new TextureData(buffer, region.getWidth(), region.getHeight()));
+		}
+		for(int layer = 0; layer < TexturePacker.getLayerCount(regions); layer++) {
+			ByteBuffer page = packer.composeLayer(regions, images, layer);
+			// which image should be at every pixel, with its padding, -1 for none
+			int[] owners = new int[pageWidth * packer.getPageHeight()];
+			Arrays.fill(owners, -1);
+			for(int i = 0; i < regions.size(); i++) {
+				AtlasRegion region = regions.get(i);
+				if(region.getLayer() != layer) {
+					continue;
+				}
+				for(int y = -padding; y < region.getHeight() + padding; y++) {
+					for(int x = -padding; x < region.getWidth() + padding; x++) {
+						owners[(region.getY() + y) * pageWidth + region.getX() + x] = i;
+					}
+				}
+			}
+			int wrong = 0;
+			for(int p = 0; p < owners.length; p++) {
+				int expected = 0;
+				if(owners[p] >= 0) {
+					AtlasRegion region = regions.get(owners[p]);
+					// outside the image, the padding repeats the nearest pixel on its edge
+					int x = Math.max(0, Math.min(region.getWidth() - 1, p % pageWidth - region.getX()));
+					int y = Math.max(0, Math.min(region.getHeight() - 1, p / pageWidth - region.getY()));
+					expected = pixel(owners[p], x, y);
+				}
+				if(page.getInt(p * 4) != expected && wrong++ == 0) {
+					fail(name + ": layer " + layer + " has the wrong pixel at " + p % pageWidth + "," + p / pageWidth
+							+ (owners[p] >= 0 ? " of " + regions.get(owners[p]) : ", it should be empty"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out the texture coordinates of uv 0 and 1 the way the vertex shader does, with atlasRect and the
+	 * offset of the entity as StaticShader and EntityRenderer load them, and checks they land on the edges.
+	 */
+	private static void checkTextureCoords(String name, List<AtlasRegion> regions) {
+		TextureArray array = new TextureArray(0, TexturePacker.getLayerCount(regions), regions);
+		RawModel rawModel = new RawModel(0, 0, 1);
+		for(AtlasRegion region : regions) {
+			for(int rows : ROWS) {
+				ModelTexture texture = new ModelTexture(array, region.getName());
+				texture.setNumberOfRows(rows);
+				TexturedModel model = new TexturedModel(rawModel, texture);
+				AtlasRegion rect = texture.getRegion();
+				for(int index = 0; index < rows * rows; index++) {
+					Entity entity = new Entity(model, index, new Vector3f(0, 0, 0), 0, 0, 0, 1);
+					float xOffset = entity.getTextureXOffset();
+					float yOffset = entity.getTextureYOffset();
+					int column = index % rows;
+					int row = index / rows;
+					float left = region.getX() + (float) region.getWidth() * column / rows;
+					float right = region.getX() + (float) region.getWidth() * (column + 1) / rows;
+					float top = region.getY() + (float) region.getHeight() * row / rows;
+					float bottom = region.getY() + (float) region.getHeight() * (row + 1) / rows;
+					String what = name + ": " + region + " with " + rows + " rows, index " + index;
+					checkEdge(what, "u = 0", shader(rect.getU(), rect.getUScale(), 0, rows, xOffset) * region.getPageWidth(), left);
+					checkEdge(what, "u = 1", shader(rect.getU(), rect.getUScale(), 1, rows, xOffset) * region.getPageWidth(), right);
+					checkEdge(what, "v = 0", shader(rect.getV(), rect.getVScale(), 0, rows, yOffset) * region.getPageHeight(), top);
+					checkEdge(what, "v = 1", shader(rect.getV(), rect.getVScale(), 1, rows, yOffset) * region.getPageHeight(), bottom);
+				}
+				if(rows == 1) {
+					// remapU and remapV are the CPU version for a texture without rows
+					checkEdge(name + ": " + region, "remapU(1)", region.remapU(1) * region.getPageWidth(), region.getX() + region.getWidth());
+					checkEdge(name + ": " + region, "remapV(1)", region.remapV(1) * region.getPageHeight(), region.getY() + region.getHeight());
+				}
+			}
+		}
+	}
+
+	/**
+	 * One coordinate of pass_textureCoords = atlasRect.xy + ((textureCoords / numberOfRows) + textureOffset) * atlasRect.zw
+	 */
+	private static float shader(float rectStart, float rectScale, float uv, int rows, float offset) {
+		return rectStart + (uv / rows + offset) * rectScale;
+	}
+
+	/**
+	 * @param pixels - the texture coordinate times the size of the page
+	 */
+	private static void checkEdge(String what, String uv, float pixels, float expected) {
+		if(Math.abs(pixels - expected) > EPSILON) {
+			fail(what + ": " + uv + " is at pixel " + pixels + ", expected " + expected);
+		}
+	}
+
+	/**
+	 * A value no other pixel of any image has, never 0 like the empty page.
+	 */
+	private static int pixel(int image, int x, int y) {
+		return (image + 1) << 22 | y << 11 | x;
+	}
+
+	private static void fail(String message) {
+		if(failures < 10) {
+			System.err.println(message);
+		}
+		failures++;
+	}
+
+}
@@ -0,0 +1,157 @@
+package engineTester;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.lwjgl.BufferUtils;
+
+import shaders.UniformCache;
+
+	/**
+	 * Checks the UniformCache without OpenGL. Random values, often the same as the last one, are loaded to
+	 * random locations as floats, vectors, ints and matrices. A location is only allowed to be skipped when the
+	 * value loaded to it last has exactly the same bits, which is checked against a plain copy of every value.
+	 * The values include -0 and NaN, and ints like Integer.MIN_VALUE, which has the bits of -0, and ints with the
+	 * bits of a NaN, which only an exact compare of the bits gets right.
+	 *
+	 * Then it loads the uniforms StaticShader loads for one frame twice, the material of 4 textured models and the
+	 * matrix and texture offset of their 200 entities, and prints how many loads went through each time.
+	 * Exits with 1 if the cache ever gets it wrong. Usage: UniformCacheCheck [loads].
+	 */
+public class UniformCacheCheck {
+
+	private static final int LOCATIONS = 40;
+	// few different values, so the same value comes back often
+	private static final float[] FLOATS = { 0, 1, 2, -0f, Float.NaN };
+	private static final int[] INTS = { 0, 1, 2, Integer.MIN_VALUE, 0x7fc00000, 0x7fc00001 };
+
+	public static void main(String[] args) {
+		int loads = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		Random random = new Random(1);
+		UniformCache cache = new UniformCache();
+		int[][] last = new int[LOCATIONS][];
+		FloatBuffer matrix = BufferUtils.createFloatBuffer(16);
+		int uploads = 0;
+		for(int i = 0; i < loads; i++) {
+			if(random.nextInt(1000) == 0) {
+				cache.clear();
+				Arrays.fill(last, null);
+			}
+			int location = random.nextInt(LOCATIONS + 1) - 1;
+			int type = random.nextInt(5);
+			float value = FLOATS[random.nextInt(FLOATS.length)];
+			int[] values;
+			boolean upload;
+			switch(type) {
+			case 0:
+				values = bits(value);
+				upload = cache.update(location, value);
+				break;
+			case 1:
+				values = bits(value, 1);
+				upload = cache.update(location, value, 1);
+				break;
+			case 2:
+				values = bits(value, 1, value);
+				upload = cache.update(location, value, 1, value);
+				break;
+			case 3:
+				int intValue = INTS[random.nextInt(INTS.length)];
+				values = new int[] { intValue };
+				upload = cache.updateInt(location, intValue);
+				break;
+			default:
+				values = new int[16];
+				matrix.clear();
+				for(int j = 0; j < 16; j++) {
+					float element = j == 5 ? value : j;
+					values[j] = Float.floatToRawIntBits(element);
+					matrix.put(element);
+				}
+				matrix.flip();
+				upload = cache.update(location, matrix);
+				if(matrix.position() != 0 || matrix.remaining() != 16) {
+					System.out.println("FAILED: the cache moved the buffer");
+					System.exit(1);
+				}
+			}
+			boolean expected = location >= 0 && !Arrays.equals(last[Math.max(location, 0)], values);
+			if(upload != expected) {
+				System.out.println("FAILED: load " + i + " to location " + location + " was "
+						+ (upload ? "made" : "skipped") + ", the last value was " + Arrays.toString(last[Math.max(location, 0)]));
+				System.exit(1);
+			}
+			if(upload) {
+				last[location] = values;
+				uploads++;
+			}
+		}
+		System.out.println(loads + " random loads: " + uploads + " went through, the rest had the value already");
+
+		UniformCache shader = new UniformCache();
+		int first = loadFrame(shader, matrix);
+		int second = loadFrame(shader, matrix);
+		System.out.println("StaticShader frame: " + first + " loads the first frame, " + second
+				+ " the next frame with the same entities");
+	}
+
+	private static int[] bits(float... values) {
+		int[] bits = new int[values.length];
+		for(int i = 0; i < values.length; i++) {
+			bits[i] = Float.floatToRawIntBits(values[i]);
+		}
+		return bits;
+	}
+
+	/**
+	 * The loads of a frame of StaticShader when it draws every entity by itself, with the locations numbered in
+	 * the order the shader gets them. The camera, sky colour and lights are in the SceneData uniform buffer, so
+	 * what is left is useInstancing once, the material of every textured model and the matrix and texture offset
+	 * of every entity. The 200 entities are spread over 4 textured models in one texture array, the way the
+	 * trees, ferns, grass and flowers of MainGameLoop are.
+	 * @return the loads that went through
+	 */
+	private static int loadFrame(UniformCache cache, FloatBuffer matrix) {
+		int transformation = 0;
+		int shineDamper = 1;
+		int reflectivity = 2;
+		int useFakeLighting = 3;
+		int numberOfRows = 4;
+		int offset = 5;
+		int useInstancing = 6;
+		int atlasRect = 7;
+		int textureLayer = 10;
+		int useTextureArray = 11;
+		// number of rows and fake lighting of every model
+		int[][] models = { { 1, 0 }, { 2, 0 }, { 3, 1 }, { 1, 1 } };
+		int uploads = 0;
+		uploads += cache.update(useInstancing, 0) ? 1 : 0;
+		for(int model = 0; model < models.length; model++) {
+			int rows = models[model][0];
+			uploads += cache.update(numberOfRows, rows) ? 1 : 0;
+			uploads += cache.update(useFakeLighting, models[model][1]) ? 1 : 0;
+			uploads += cache.update(shineDamper, 1) ? 1 : 0;
+			uploads += cache.update(reflectivity, 0) ? 1 : 0;
+			uploads += cache.update(useTextureArray, 1) ? 1 : 0;
+			uploads += cache.update(textureLayer, 0) ? 1 : 0;
+			uploads += cache.update(atlasRect, model * 0.25f, 0, 0.25f, 0.25f) ? 1 : 0;
+			for(int entity = 0; entity < 50; entity++) {
+				int index = entity % (rows * rows);
+				uploads += cache.update(transformation, fill(matrix, model * 50 + entity)) ? 1 : 0;
+				uploads += cache.update(offset, (float) (index % rows) / rows, (float) (index / rows) / rows) ? 1 : 0;
+			}
+		}
+		return uploads;
+	}
+
+	private static FloatBuffer fill(FloatBuffer matrix, float value) {
+		matrix.clear();
+		for(int i = 0; i < 16; i++) {
+			matrix.put(i == 12 ? value : i % 5 == 0 ? 1 : 0);
+		}
+		matrix.flip();
+		return matrix;
+	}
+
+}
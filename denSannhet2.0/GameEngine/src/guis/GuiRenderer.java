@@ -3,20 +3,21 @@ package guis;
 import java.util.List;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
-import org.lwjgl.util.vector.Matrix4f;
 
 import models.RawModel;
+import renderEngine.GlStateCache;
 import renderEngine.Loader;
-import toolbox.Maths;
+import renderEngine.MasterRenderer;
+import renderEngine.RenderQueue;
 
-public class GuiRenderer {
+public class GuiRenderer implements RenderQueue.Renderer {
 
 	private final RawModel quad;
 	private GuiShader shader;
+	private GlStateCache glState = GlStateCache.get();
 	
+	// The GUIs of the frame, the items submitted to the render queue are indices into it
+	private List<GuiTexture> frameGuis;
 	
 	public GuiRenderer(Loader loader){
 		float[] positions = { -1, 1, -1, -1, 1, 1, 1, -1 };
@@ -24,29 +25,53 @@ public class GuiRenderer {
 		shader = new GuiShader();
 	};
 	
-	public void render(List<GuiTexture> guis) {
-		shader.start();
-		GL30.glBindVertexArray(quad.getVaoID());
-		GL20.glEnableVertexAttribArray(0);
-		GL11.glEnable(GL11.GL_BLEND);
-		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
-		GL11.glDisable(GL11.GL_DEPTH_TEST);
-		for(GuiTexture gui: guis){
-			GL13.glActiveTexture(GL13.GL_TEXTURE0);
-			GL11.glBindTexture(GL11.GL_TEXTURE_2D, gui.getTexture());
-			Matrix4f matrix = Maths.createTransformationMatrix(gui.getPosition(), gui.getScale());
-			shader.loadTransformation(matrix);
-			GL11.glDrawArrays(GL11.GL_TRIANGLE_STRIP, 0, quad.getVertexCount());
+	/**
+	 * Submits every GUI to the render queue. They are drawn after everything else, in the order of the list,
+	 * so the last one ends up on top.
+	 */
+	public void submit(List<GuiTexture> guis, RenderQueue queue) {
+		frameGuis = guis;
+		for(int i = 0; i < guis.size(); i++) {
+			queue.submit(queue.createGuiKey(MasterRenderer.GUI_SHADER, guis.get(i).getTexture(), quad.getVaoID()), i);
 		}
-		GL11.glEnable(GL11.GL_DEPTH_TEST);
-		GL11.glDisable(GL11.GL_BLEND);
-		GL20.glDisableVertexAttribArray(0);
-		GL30.glBindVertexArray(0);
+	}
+	
+	@Override
+	public void begin() {
+		shader.start();
+		glState.enable(GL11.GL_BLEND);
+		glState.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		glState.disable(GL11.GL_DEPTH_TEST);
+	}
+	
+	@Override
+	public void bindTexture(int item) {
+		glState.bindTexture(0, GL11.GL_TEXTURE_2D, frameGuis.get(item).getTexture());
+	}
+	
+	@Override
+	public void bindModel(int item) {
+		glState.bindVertexArray(quad.getVaoID());
+		glState.enableVertexAttribArray(0);
+	}
+	
+	@Override
+	public void draw(int item) {
+		GuiTexture gui = frameGuis.get(item);
+		shader.loadTransformation(gui.getPosition(), gui.getScale());
+		GL11.glDrawArrays(GL11.GL_TRIANGLE_STRIP, 0, quad.getVertexCount());
+	}
+	
+	@Override
+	public void end() {
+		glState.enable(GL11.GL_DEPTH_TEST);
+		glState.disable(GL11.GL_BLEND);
+		glState.bindVertexArray(0);
 		shader.stop();
 	}
 	
 	public void cleanUp() {
 		shader.cleanUp();
 	}
-	
+
 }
@@ -1,6 +1,7 @@
 package guis;
  
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector2f;
  
 import shaders.shaderProgram;
  
@@ -10,6 +11,8 @@ public class GuiShader extends shaderProgram{
     private static final String FRAGMENT_FILE = "src/guis/guiFragmentShader.txt";
      
     private int location_transformationMatrix;
+    // Filled in for every GUI, so no matrix has to be created per GUI per frame
+    private Matrix4f transformation = new Matrix4f();
  
     public GuiShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
@@ -18,6 +21,18 @@ public class GuiShader extends shaderProgram{
     public void loadTransformation(Matrix4f matrix){
         super.loadMatrix(location_transformationMatrix, matrix);
     }
+    
+    /**
+     * Loads the same matrix as Maths.createTransformationMatrix(position, scale), a translation and a scale.
+     */
+    public void loadTransformation(Vector2f position, Vector2f scale){
+        transformation.setIdentity();
+        transformation.m00 = scale.x;
+        transformation.m11 = scale.y;
+        transformation.m30 = position.x;
+        transformation.m31 = position.y;
+        super.loadMatrix(location_transformationMatrix, transformation);
+    }
  
     @Override
     protected void getAllUniformLocations() {
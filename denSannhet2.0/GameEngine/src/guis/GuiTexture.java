@@ -2,9 +2,12 @@ package guis;
 
 import org.lwjgl.util.vector.Vector2f;
 
+import textures.TextureHandle;
+
 public class GuiTexture {
 	
 	private int texture;
+	private TextureHandle handle;
 	private Vector2f position;
 	private Vector2f scale;
 	
@@ -14,8 +17,14 @@ public class GuiTexture {
 		this.scale = scale;
 	}
 
+	public GuiTexture(TextureHandle handle, Vector2f position, Vector2f scale) {
+		this.handle = handle;
+		this.position = position;
+		this.scale = scale;
+	}
+
 	public int getTexture() {
-		return texture;
+		return handle != null ? handle.getID() : texture;
 	}
 
 
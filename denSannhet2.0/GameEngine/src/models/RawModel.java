@@ -10,9 +10,20 @@ public class RawModel {
 	private int vaoID;
 	private int vertexCount;
 	
+	/**
+	 * Distance from the origin of the model to its furthest vertex. Used as the radius of the
+	 * bounding sphere when culling. 0 means we don't know it, and the model is never culled.
+	 */
+	private float boundingRadius;
+	
 	public RawModel(int vaoID, int vertexCount){
+		this(vaoID, vertexCount, 0);
+	}
+	
+	public RawModel(int vaoID, int vertexCount, float boundingRadius){
 		this.vaoID = vaoID;
 		this.vertexCount = vertexCount;
+		this.boundingRadius = boundingRadius;
 	}
 
 	public int getVaoID() {
@@ -22,6 +33,10 @@ public class RawModel {
 	public int getVertexCount() {
 		return vertexCount;
 	}
+
+	public float getBoundingRadius() {
+		return boundingRadius;
+	}
 	
 
 }
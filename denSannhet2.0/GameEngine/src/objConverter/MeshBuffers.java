@@ -0,0 +1,76 @@
+package objConverter;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+
+	/**
+	 * The same data as ModelData, but already in the buffers OpenGL wants, so the Loader can upload them
+	 * directly. When the mesh comes from the MeshCache the buffers are views into the memory mapped cache file,
+	 * so the data never passes through a java array at all.
+	 */
+public class MeshBuffers {
+
+	private FloatBuffer positions;
+	private FloatBuffer textureCoords;
+	private FloatBuffer normals;
+	private IntBuffer indices;
+	private float furthestPoint;
+
+	public MeshBuffers(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices,
+			float furthestPoint) {
+		this.positions = positions;
+		this.textureCoords = textureCoords;
+		this.normals = normals;
+		this.indices = indices;
+		this.furthestPoint = furthestPoint;
+	}
+
+	/**
+	 * Copies the arrays of a freshly parsed model into new direct buffers.
+	 */
+	public static MeshBuffers fromModelData(ModelData data) {
+		return new MeshBuffers(toBuffer(data.getVertices()), toBuffer(data.getTextureCoords()),
+				toBuffer(data.getNormals()), toBuffer(data.getIndices()), data.getFurthestPoint());
+	}
+
+	private static FloatBuffer toBuffer(float[] data) {
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(data.length);
+		buffer.put(data);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static IntBuffer toBuffer(int[] data) {
+		IntBuffer buffer = BufferUtils.createIntBuffer(data.length);
+		buffer.put(data);
+		buffer.flip();
+		return buffer;
+	}
+
+	public FloatBuffer getPositions() {
+		return positions;
+	}
+
+	public FloatBuffer getTextureCoords() {
+		return textureCoords;
+	}
+
+	public FloatBuffer getNormals() {
+		return normals;
+	}
+
+	public IntBuffer getIndices() {
+		return indices;
+	}
+
+	public int getIndexCount() {
+		return indices.remaining();
+	}
+
+	public float getFurthestPoint() {
+		return furthestPoint;
+	}
+
+}
@@ -0,0 +1,253 @@
+package objConverter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+	/**
+	 * A binary copy of a parsed .obj file, stored next to it as a .mesh file. Parsing the text of a .obj file
+	 * is slow, so the first time a model is loaded the result is written to the cache, and the next time
+	 * the cache file is memory mapped and handed to the Loader as it is.
+	 *
+	 * The layout of a .mesh file, in the byte order of the machine that wrote it:
+	 *
+	 *  int    MAGIC
+	 *  int    VERSION
+	 *  long   size of the .obj file
+	 *  long   last modified time of the .obj file
+	 *  long   CRC32 of the .obj file
+	 *  int    number of vertices
+	 *  int    number of indices
+	 *  float  furthest point, the bounding radius of the model
+	 *  int    padding, so the data starts at a multiple of 8
+	 *  float  positions[vertices * 3]
+	 *  float  textureCoords[vertices * 2]
+	 *  float  normals[vertices * 3]
+	 *  int    indices[indices]
+	 *
+	 * A cache file is only used when it was written for the .obj file as it is now. If the size is different
+	 * the cache is stale. If the size is the same but the modified time is not (after a checkout for example)
+	 * the CRC decides, so we don't parse the model again just because the file was touched. When the CRC matches
+	 * the new modified time is written to the cache, so the CRC is only worked out once after a touch.
+	 */
+public class MeshCache {
+
+	public static final String EXTENSION = ".mesh";
+
+	private static final int MAGIC = 0x4D455348; // "MESH"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 48;
+	// Where the last modified time of the .obj file is in the header, after MAGIC, VERSION and the size
+	private static final int MODIFIED_OFFSET = 16;
+
+	/**
+	 * Reads the cached mesh of the .obj file.
+	 * @param objFile
+	 * @return the mesh, or null if there is no cache file or it doesn't belong to the .obj file any more
+	 */
+	public static MeshBuffers load(File objFile) {
+		File cacheFile = getCacheFile(objFile);
+		if(!cacheFile.isFile() || !objFile.isFile()) {
+			return null;
+		}
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(cacheFile, "r");
+			FileChannel channel = file.getChannel();
+			if(channel.size() < HEADER_SIZE) {
+				return null;
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+			while(header.hasRemaining()) {
+				if(channel.read(header) < 0) {
+					break;
+				}
+			}
+			if(header.hasRemaining()) {
+				// the file ended inside the header, it was cut off
+				return null;
+			}
+			header.flip();
+			if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+				return null;
+			}
+			long sourceSize = header.getLong();
+			long sourceModified = header.getLong();
+			long sourceCrc = header.getLong();
+			int vertexCount = header.getInt();
+			int indexCount = header.getInt();
+			float furthestPoint = header.getFloat();
+
+			if(sourceSize != objFile.length()) {
+				return null;
+			}
+			long modified = objFile.lastModified();
+			if(sourceModified != modified && sourceCrc != crc(objFile)) {
+				return null;
+			}
+			long dataSize = (long) vertexCount * 8 * 4 + (long) indexCount * 4;
+			if(channel.size() != HEADER_SIZE + dataSize) {
+				return null;
+			}
+			if(sourceModified != modified) {
+				// only touched, remember the new time so the next load doesn't have to check the CRC again
+				storeModified(cacheFile, modified);
+			}
+
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, dataSize);
+			data.order(ByteOrder.nativeOrder());
+			int position = 0;
+			ByteBuffer positions = slice(data, position, vertexCount * 3 * 4);
+			position += vertexCount * 3 * 4;
+			ByteBuffer textureCoords = slice(data, position, vertexCount * 2 * 4);
+			position += vertexCount * 2 * 4;
+			ByteBuffer normals = slice(data, position, vertexCount * 3 * 4);
+			position += vertexCount * 3 * 4;
+			ByteBuffer indices = slice(data, position, indexCount * 4);
+			return new MeshBuffers(positions.asFloatBuffer(), textureCoords.asFloatBuffer(),
+					normals.asFloatBuffer(), indices.asIntBuffer(), furthestPoint);
+		} catch (IOException e) {
+			System.err.println("Could not read mesh cache " + cacheFile);
+			e.printStackTrace();
+			return null;
+		} finally {
+			close(file);
+		}
+	}
+
+	/**
+	 * Writes the parsed model to the cache file of the .obj file. The data is first written to a temporary file
+	 * which is renamed when it is complete, so a crash never leaves a half written cache behind.
+	 * @param objFile
+	 * @param data
+	 * @return true if the cache file was written
+	 */
+	public static boolean store(File objFile, ModelData data) {
+		File cacheFile = getCacheFile(objFile);
+		File tempFile = new File(cacheFile.getPath() + ".tmp");
+		int vertexCount = data.getVertices().length / 3;
+		int indexCount = data.getIndices().length;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + vertexCount * 8 * 4 + indexCount * 4);
+		buffer.order(ByteOrder.nativeOrder());
+		try {
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(objFile.length());
+			buffer.putLong(objFile.lastModified());
+			buffer.putLong(crc(objFile));
+			buffer.putInt(vertexCount);
+			buffer.putInt(indexCount);
+			buffer.putFloat(data.getFurthestPoint());
+			buffer.putInt(0);
+			buffer.asFloatBuffer().put(data.getVertices()).put(data.getTextureCoords()).put(data.getNormals());
+			buffer.position(HEADER_SIZE + vertexCount * 8 * 4);
+			buffer.asIntBuffer().put(data.getIndices());
+			buffer.position(0);
+
+			RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+			try {
+				file.setLength(0);
+				FileChannel channel = file.getChannel();
+				while(buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				file.close();
+			}
+			cacheFile.delete();
+			if(!tempFile.renameTo(cacheFile)) {
+				tempFile.delete();
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			System.err.println("Could not write mesh cache " + cacheFile);
+			e.printStackTrace();
+			tempFile.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the last modified time of the .obj file over the one in the header of the cache file. If that fails
+	 * the cache is still fine, the CRC is just checked again the next time.
+	 */
+	private static void storeModified(File cacheFile, long modified) {
+		ByteBuffer time = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+		time.putLong(modified);
+		time.flip();
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(cacheFile, "rw");
+			FileChannel channel = file.getChannel();
+			long position = MODIFIED_OFFSET;
+			while(time.hasRemaining()) {
+				position += channel.write(time, position);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not update the modified time in mesh cache " + cacheFile);
+			e.printStackTrace();
+		} finally {
+			close(file);
+		}
+	}
+
+	/**
+	 * Deletes the cache file of the .obj file, so the next load has to parse it again.
+	 */
+	public static boolean delete(File objFile) {
+		return getCacheFile(objFile).delete();
+	}
+
+	/**
+	 * The cache file lies next to the .obj file, with the same name: res/models/pine.obj -> res/models/pine.mesh
+	 */
+	public static File getCacheFile(File objFile) {
+		String path = objFile.getPath();
+		if(path.endsWith(".obj")) {
+			path = path.substring(0, path.length() - 4);
+		}
+		return new File(path + EXTENSION);
+	}
+
+	private static ByteBuffer slice(ByteBuffer data, int position, int length) {
+		ByteBuffer view = data.duplicate();
+		view.position(position);
+		view.limit(position + length);
+		return view.slice().order(ByteOrder.nativeOrder());
+	}
+
+	private static long crc(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		InputStream in = new FileInputStream(file);
+		try {
+			int read;
+			while((read = in.read(chunk)) > 0) {
+				crc.update(chunk, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	private static void close(RandomAccessFile file) {
+		if(file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
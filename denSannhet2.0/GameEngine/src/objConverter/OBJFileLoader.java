@@ -7,6 +7,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
@@ -20,7 +22,86 @@ public class OBJFileLoader {
 	
 	private static final String RES_LOC = "res/";
 	
+	// Numbers for the mesh cache, see loadMesh
+	// Atomic, because models can be loaded on several threads at once by the AssetPipeline
+	private static final AtomicInteger cacheHits = new AtomicInteger();
+	private static final AtomicInteger cacheMisses = new AtomicInteger();
+	private static final AtomicLong loadTimeNanos = new AtomicLong();
+	
+	/**
+	 * Loads the model the fast way. If the model has been loaded before, the binary copy in the MeshCache is used
+	 * and the .obj file is not parsed at all. Otherwise the .obj file is parsed with loadOBJ, and the result is
+	 * written to the cache for the next time.
+	 * @param objFileName - path of the model inside res, without extension
+	 * @return the model in buffers ready for Loader.loadToVAO
+	 */
+	public static MeshBuffers loadMesh(String objFileName) {
+		long start = System.nanoTime();
+		File objFile = new File(RES_LOC + objFileName + ".obj");
+		MeshBuffers mesh = MeshCache.load(objFile);
+		if(mesh != null) {
+			cacheHits.incrementAndGet();
+		} else {
+			cacheMisses.incrementAndGet();
+			ModelData data = loadOBJ(objFileName);
+			MeshCache.store(objFile, data);
+			mesh = MeshBuffers.fromModelData(data);
+		}
+		loadTimeNanos.addAndGet(System.nanoTime() - start);
+		return mesh;
+	}
+	
+	/**
+	 * @return number of models loadMesh found in the cache
+	 */
+	public static int getCacheHits() {
+		return cacheHits.get();
+	}
+	
+	/**
+	 * @return number of models loadMesh had to parse from the .obj file
+	 */
+	public static int getCacheMisses() {
+		return cacheMisses.get();
+	}
+	
+	/**
+	 * @return the total time spent in loadMesh, in milliseconds
+	 */
+	public static double getLoadTimeMillis() {
+		return loadTimeNanos.get() / 1000000.0;
+	}
+	
+	public static void resetCacheStatistics() {
+		cacheHits.set(0);
+		cacheMisses.set(0);
+		loadTimeNanos.set(0);
+	}
+	
+	// One parser per thread, so the parsers can keep their arrays between files
+	private static final ThreadLocal<OBJParser> parsers = new ThreadLocal<OBJParser>() {
+		@Override
+		protected OBJParser initialValue() {
+			return new OBJParser();
+		}
+	};
+	
+	/**
+	 * Parses the .obj file with the OBJParser, which reads the numbers straight from the bytes of the file.
+	 * @param objFileName - path of the model inside res, without extension
+	 * @return the model
+	 */
 	public static ModelData loadOBJ(String objFileName) {
+		return parsers.get().parse(new File(RES_LOC + objFileName + ".obj"));
+	}
+	
+	/**
+	 * The old way of parsing a .obj file, with a String for every line and a object for every number and vertex.
+	 * Not used by the game any more, but kept so the OBJParser can be checked against it, see OBJParserBenchmark.
+	 * @param objFileName - path of the model inside res, without extension
+	 * @return the model
+	 */
+	public static ModelData loadOBJLegacy(String objFileName) {
 		FileReader isr = null;
 		File objFile = new File(RES_LOC + objFileName + ".obj");
 		try {
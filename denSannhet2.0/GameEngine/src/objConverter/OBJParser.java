@@ -0,0 +1,411 @@
+package objConverter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+	/**
+	 * Reads .obj files without creating objects for every line, number and vertex like the old loader did.
+	 * The whole file is read into a byte array, and the numbers are parsed straight from the bytes into
+	 * growable primitive arrays. Vertices that are used with more than one texture coordinate or normal
+	 * are found through a open-addressing hash table on (position, texture, normal), instead of following
+	 * the chain of Vertex.duplicateVertex.
+	 *
+	 * The arrays are kept between files, so after the first few models a parser only allocates the
+	 * arrays of the returned ModelData. A parser is not thread safe, use one per thread.
+	 *
+	 * The result is exactly the same as OBJFileLoader.loadOBJLegacy, down to the bits of every float. So it
+	 * also does the things the old loader did: only the first three vertices of a face are used, reading stops
+	 * at the first line after the faces that is not a face, and unused positions get texture and normal 0.
+	 */
+public class OBJParser {
+
+	private static final int UNSET = -1;
+
+	// Exact powers of ten in a double, 10^22 is the biggest one a double can hold without rounding
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		double power = 1;
+		for(int i = 0; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = power;
+			power *= 10;
+		}
+	}
+
+	private byte[] bytes = new byte[64 * 1024];
+	private int length;
+	private int pos;
+
+	private float[] positions = new float[3 * 1024];
+	private int positionCount;
+	private float[] textures = new float[2 * 1024];
+	private int textureCount;
+	private float[] normals = new float[3 * 1024];
+	private int normalCount;
+
+	// For every output vertex: which position, texture and normal it uses
+	private int[] vertexPosition = new int[1024];
+	private int[] vertexTexture = new int[1024];
+	private int[] vertexNormal = new int[1024];
+	private int vertexCount;
+
+	private int[] indices = new int[4 * 1024];
+	private int indexCount;
+
+	// Open addressing table of vertex index + 1, 0 is a empty slot
+	private int[] table = new int[2048];
+	private int tableCount;
+
+	// Numbers that were not safe to convert on the fast path, and went through Float.parseFloat
+	private int slowFloats = 0;
+
+	/**
+	 * Parses the .obj file.
+	 * @param objFile
+	 * @return the model, or null if the file could not be read
+	 */
+	public ModelData parse(File objFile) {
+		try {
+			readFile(objFile);
+		} catch (IOException e) {
+			System.err.println("Error reading the file " + objFile);
+			e.printStackTrace();
+			return null;
+		}
+		reset();
+
+		boolean inFaces = false;
+		while(pos < length) {
+			byte first = bytes[pos];
+			byte second = pos + 1 < length ? bytes[pos + 1] : 0;
+			byte third = pos + 2 < length ? bytes[pos + 2] : 0;
+			if(first == 'f' && second == ' ') {
+				inFaces = true;
+				pos += 2;
+				processVertex();
+				processVertex();
+				processVertex();
+			} else if(inFaces) {
+				break;
+			} else if(first == 'v' && second == ' ') {
+				pos += 2;
+				ensurePositions();
+				positions[positionCount * 3] = nextFloat();
+				positions[positionCount * 3 + 1] = nextFloat();
+				positions[positionCount * 3 + 2] = nextFloat();
+				addVertex(positionCount, UNSET, UNSET);
+				positionCount++;
+			} else if(first == 'v' && second == 't' && third == ' ') {
+				pos += 3;
+				ensureTextures();
+				textures[textureCount * 2] = nextFloat();
+				textures[textureCount * 2 + 1] = nextFloat();
+				textureCount++;
+			} else if(first == 'v' && second == 'n' && third == ' ') {
+				pos += 3;
+				ensureNormals();
+				normals[normalCount * 3] = nextFloat();
+				normals[normalCount * 3 + 1] = nextFloat();
+				normals[normalCount * 3 + 2] = nextFloat();
+				normalCount++;
+			}
+			skipLine();
+		}
+		return toModelData();
+	}
+
+	/**
+	 * @return how many numbers were converted with Float.parseFloat, because the fast path could not
+	 * guarantee the exact same result
+	 */
+	public int getSlowFloats() {
+		return slowFloats;
+	}
+
+	private void reset() {
+		pos = 0;
+		positionCount = 0;
+		textureCount = 0;
+		normalCount = 0;
+		vertexCount = 0;
+		indexCount = 0;
+		tableCount = 0;
+		Arrays.fill(table, 0);
+	}
+
+	private void readFile(File objFile) throws IOException {
+		long size = objFile.length();
+		if(size > Integer.MAX_VALUE - 8) {
+			throw new IOException("File too big: " + objFile);
+		}
+		if(bytes.length < size) {
+			bytes = new byte[(int) size];
+		}
+		InputStream in = new FileInputStream(objFile);
+		try {
+			length = 0;
+			int read;
+			while(length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+				length += read;
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads one "position/texture/normal" of a face and finds or creates the vertex for it.
+	 * Same as the old processVertex and dealWithAlreadyProcessedVertex together.
+	 */
+	private void processVertex() {
+		int position = nextInt() - 1;
+		expect('/');
+		int texture = nextInt() - 1;
+		expect('/');
+		int normal = nextInt() - 1;
+
+		int index;
+		if(vertexTexture[position] == UNSET) {
+			vertexTexture[position] = texture;
+			vertexNormal[position] = normal;
+			insert(position);
+			index = position;
+		} else {
+			index = find(position, texture, normal);
+			if(index == UNSET) {
+				index = vertexCount;
+				addVertex(position, texture, normal);
+				insert(index);
+			}
+		}
+		if(indexCount == indices.length) {
+			indices = grow(indices);
+		}
+		indices[indexCount++] = index;
+	}
+
+	private void addVertex(int position, int texture, int normal) {
+		if(vertexCount == vertexPosition.length) {
+			vertexPosition = grow(vertexPosition);
+			vertexTexture = grow(vertexTexture);
+			vertexNormal = grow(vertexNormal);
+		}
+		vertexPosition[vertexCount] = position;
+		vertexTexture[vertexCount] = texture;
+		vertexNormal[vertexCount] = normal;
+		vertexCount++;
+	}
+
+	private int find(int position, int texture, int normal) {
+		int mask = table.length - 1;
+		int slot = hash(position, texture, normal) & mask;
+		while(table[slot] != 0) {
+			int vertex = table[slot] - 1;
+			if(vertexPosition[vertex] == position && vertexTexture[vertex] == texture && vertexNormal[vertex] == normal) {
+				return vertex;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return UNSET;
+	}
+
+	private void insert(int vertex) {
+		if((tableCount + 1) * 2 > table.length) {
+			rehash();
+		}
+		int mask = table.length - 1;
+		int slot = hash(vertexPosition[vertex], vertexTexture[vertex], vertexNormal[vertex]) & mask;
+		while(table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = vertex + 1;
+		tableCount++;
+	}
+
+	private void rehash() {
+		int[] old = table;
+		table = new int[old.length * 2];
+		tableCount = 0;
+		for(int entry : old) {
+			if(entry != 0) {
+				insert(entry - 1);
+			}
+		}
+	}
+
+	private static int hash(int position, int texture, int normal) {
+		int h = position * 0x9E3779B1 + texture * 0x85EBCA77 + normal * 0xC2B2AE3D;
+		return h ^ (h >>> 15);
+	}
+
+	/**
+	 * Builds the arrays the same way the old convertDataToArrays did.
+	 */
+	private ModelData toModelData() {
+		float[] verticesArray = new float[vertexCount * 3];
+		float[] texturesArray = new float[vertexCount * 2];
+		float[] normalsArray = new float[vertexCount * 3];
+		float furthestPoint = 0;
+		for(int i = 0; i < vertexCount; i++) {
+			int position = vertexPosition[i];
+			// unused vertices get the first texture coordinate and normal
+			int texture = vertexTexture[i] == UNSET ? 0 : vertexTexture[i];
+			int normal = vertexNormal[i] == UNSET ? 0 : vertexNormal[i];
+			float x = positions[position * 3];
+			float y = positions[position * 3 + 1];
+			float z = positions[position * 3 + 2];
+			// same as Vector3f.length()
+			float length = (float) Math.sqrt(x * x + y * y + z * z);
+			if(length > furthestPoint) {
+				furthestPoint = length;
+			}
+			verticesArray[i * 3] = x;
+			verticesArray[i * 3 + 1] = y;
+			verticesArray[i * 3 + 2] = z;
+			texturesArray[i * 2] = textures[texture * 2];
+			texturesArray[i * 2 + 1] = 1 - textures[texture * 2 + 1];
+			normalsArray[i * 3] = normals[normal * 3];
+			normalsArray[i * 3 + 1] = normals[normal * 3 + 1];
+			normalsArray[i * 3 + 2] = normals[normal * 3 + 2];
+		}
+		int[] indicesArray = new int[indexCount];
+		System.arraycopy(indices, 0, indicesArray, 0, indexCount);
+		return new ModelData(verticesArray, texturesArray, normalsArray, indicesArray, furthestPoint);
+	}
+
+	private void skipSpaces() {
+		while(pos < length && (bytes[pos] == ' ' || bytes[pos] == '\t')) {
+			pos++;
+		}
+	}
+
+	private void skipLine() {
+		while(pos < length && bytes[pos] != '\n') {
+			pos++;
+		}
+		pos++;
+	}
+
+	private void expect(char c) {
+		if(pos >= length || bytes[pos] != c) {
+			throw new NumberFormatException("Expected '" + c + "' at byte " + pos);
+		}
+		pos++;
+	}
+
+	private int nextInt() {
+		skipSpaces();
+		boolean negative = false;
+		if(pos < length && bytes[pos] == '-') {
+			negative = true;
+			pos++;
+		}
+		int start = pos;
+		int value = 0;
+		while(pos < length && bytes[pos] >= '0' && bytes[pos] <= '9') {
+			value = value * 10 + (bytes[pos] - '0');
+			pos++;
+		}
+		if(pos == start) {
+			throw new NumberFormatException("Expected a number at byte " + start);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a number like -12.345678 from the bytes. The digits are collected into a long, which is exact,
+	 * and divided by a exact power of ten, which gives the correctly rounded double. Rounding that double to a
+	 * float gives the same float as Float.parseFloat, unless the double lies exactly halfway between two floats.
+	 * That case, numbers with exponents and numbers with too many digits are left to Float.parseFloat.
+	 */
+	private float nextFloat() {
+		skipSpaces();
+		int start = pos;
+		boolean negative = false;
+		if(pos < length && (bytes[pos] == '-' || bytes[pos] == '+')) {
+			negative = bytes[pos] == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = 0;
+		boolean fraction = false;
+		boolean simple = true;
+		while(pos < length) {
+			byte b = bytes[pos];
+			if(b >= '0' && b <= '9') {
+				if(mantissa != 0 || b != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if(fraction) {
+					decimals++;
+				}
+			} else if(b == '.' && !fraction) {
+				fraction = true;
+			} else if(b == 'e' || b == 'E' || b == '-' || b == '+') {
+				simple = false;
+			} else {
+				break;
+			}
+			// a long with more digits might not fit exactly in a double
+			if(digits > 15) {
+				simple = false;
+			}
+			pos++;
+		}
+		if(simple && decimals < POWERS_OF_TEN.length && pos > start) {
+			double exact = mantissa / POWERS_OF_TEN[decimals];
+			float value = (float) exact;
+			if(!isHalfway(exact, value)) {
+				return negative ? -value : value;
+			}
+		}
+		slowFloats++;
+		return Float.parseFloat(new String(bytes, start, pos - start, StandardCharsets.ISO_8859_1));
+	}
+
+	private static boolean isHalfway(double exact, float rounded) {
+		if(exact == rounded) {
+			return false;
+		}
+		float other = Math.nextAfter(rounded, exact);
+		// both differences are exact, the floats are next to each other and close to the double
+		return (exact - rounded) == (other - exact);
+	}
+
+	private void ensurePositions() {
+		if((positionCount + 1) * 3 > positions.length) {
+			positions = grow(positions);
+		}
+	}
+
+	private void ensureTextures() {
+		if((textureCount + 1) * 2 > textures.length) {
+			textures = grow(textures);
+		}
+	}
+
+	private void ensureNormals() {
+		if((normalCount + 1) * 3 > normals.length) {
+			normals = grow(normals);
+		}
+	}
+
+	private static float[] grow(float[] array) {
+		float[] bigger = new float[array.length * 2];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] bigger = new int[array.length * 2];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+}
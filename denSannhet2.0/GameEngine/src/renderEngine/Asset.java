@@ -0,0 +1,74 @@
+package renderEngine;
+
+	/**
+	 * A asset that is being loaded by the AssetPipeline. Once the pipeline has finished, get() returns the
+	 * loaded object. It also remembers how long the loading took, for the report of the pipeline.
+	 * @param <T> what the asset turns into, like a RawModel or a texture ID
+	 */
+public class Asset<T> {
+
+	private final String name;
+
+	private volatile T result;
+	private volatile Throwable error;
+	private volatile boolean done = false;
+
+	// time spent on a worker thread reading, parsing and decoding, and on the main thread uploading
+	private volatile long loadNanos;
+	private volatile long uploadNanos;
+
+	Asset(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the loaded object
+	 * @throws IllegalStateException if the asset is not finished yet
+	 * @throws RuntimeException if loading the asset failed
+	 */
+	public T get() {
+		if(!done) {
+			throw new IllegalStateException("Asset " + name + " is not loaded yet");
+		}
+		if(error != null) {
+			throw new RuntimeException("Could not load " + name, error);
+		}
+		return result;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	public double getLoadMillis() {
+		return loadNanos / 1000000.0;
+	}
+
+	public double getUploadMillis() {
+		return uploadNanos / 1000000.0;
+	}
+
+	void setLoadNanos(long loadNanos) {
+		this.loadNanos = loadNanos;
+	}
+
+	void finish(T result, long uploadNanos) {
+		this.result = result;
+		this.uploadNanos = uploadNanos;
+		this.done = true;
+	}
+
+	void fail(Throwable error) {
+		this.error = error;
+		this.done = true;
+	}
+
+}
@@ -0,0 +1,195 @@
+package renderEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import models.RawModel;
+import objConverter.MeshBuffers;
+import objConverter.OBJFileLoader;
+import textures.TextureArray;
+import textures.TextureAtlasData;
+import textures.TexturePacker;
+
+	/**
+	 * Loads many assets at the same time. Reading files, parsing models and decoding images is done by a pool
+	 * of worker threads. When a worker is done, the upload of the result to the GPU is queued in the Loader,
+	 * because OpenGL calls only work on the main thread. The main thread runs those uploads while it waits in
+	 * waitForAll.
+	 *
+	 * Single textures are not loaded here but by the TextureManager, which makes sure every file is only loaded
+	 * once, and the terrain tiles are generated by the TerrainStreamer while the game runs.
+	 *
+	 * The number of workers can be changed with -Dassets.threads=N, with 1 it works like the old serial loading,
+	 * which is useful to compare the startup time against.
+	 */
+public class AssetPipeline {
+
+	private final Loader loader;
+	private final ExecutorService workers;
+	private final int threads;
+
+	private final List<Asset<?>> assets = new ArrayList<Asset<?>>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private long startTime = -1;
+	private long wallNanos = 0;
+
+	public AssetPipeline(Loader loader) {
+		this(loader, Integer.getInteger("assets.threads", Runtime.getRuntime().availableProcessors()));
+	}
+
+	public AssetPipeline(Loader loader, int threads) {
+		this.loader = loader;
+		this.threads = Math.max(1, threads);
+		this.workers = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "asset-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * What the main thread does with the result of a worker, like putting it in a VAO.
+	 */
+	private interface Upload<D, T> {
+		T upload(D data);
+	}
+
+	/**
+	 * Loads a .obj model, from the mesh cache when possible.
+	 * @param objFileName - path inside res, without extension
+	 */
+	public Asset<RawModel> loadModel(final String objFileName) {
+		return submit(objFileName + ".obj", new Callable<MeshBuffers>() {
+			@Override
+			public MeshBuffers call() {
+				return OBJFileLoader.loadMesh(objFileName);
+			}
+		}, new Upload<MeshBuffers, RawModel>() {
+			@Override
+			public RawModel upload(MeshBuffers mesh) {
+				return loader.loadToVAO(mesh);
+			}
+		});
+	}
+
+	/**
+	 * Decodes the textures and packs them into the layers of one texture array.
+	 * @param packer - decides the size of the layers and the padding between the textures
+	 * @param fileNames - PNG files inside res, without extension
+	 */
+	public Asset<TextureArray> loadTextureArray(final TexturePacker packer, final String... fileNames) {
+		return submit("texture array of " + fileNames.length + " textures", new Callable<TextureAtlasData>() {
+			@Override
+			public TextureAtlasData call() throws Exception {
+				return TextureAtlasData.pack(packer, fileNames);
+			}
+		}, new Upload<TextureAtlasData, TextureArray>() {
+			@Override
+			public TextureArray upload(TextureAtlasData atlas) {
+				return loader.loadTextureArray(atlas, packer.getPadding());
+			}
+		});
+	}
+
+	private <D, T> Asset<T> submit(String name, final Callable<D> work, final Upload<D, T> upload) {
+		if(startTime < 0) {
+			startTime = System.nanoTime();
+		}
+		final Asset<T> asset = new Asset<T>(name);
+		assets.add(asset);
+		pending.incrementAndGet();
+		workers.submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				final D data;
+				try {
+					data = work.call();
+				} catch (Throwable e) {
+					asset.setLoadNanos(System.nanoTime() - start);
+					fail(asset, e);
+					return;
+				}
+				asset.setLoadNanos(System.nanoTime() - start);
+				loader.queueUpload(new Runnable() {
+					@Override
+					public void run() {
+						long uploadStart = System.nanoTime();
+						try {
+							T result = upload.upload(data);
+							asset.finish(result, System.nanoTime() - uploadStart);
+						} catch (Throwable e) {
+							fail(asset, e);
+							return;
+						}
+						pending.decrementAndGet();
+					}
+				});
+			}
+		});
+		return asset;
+	}
+
+	private void fail(Asset<?> asset, Throwable e) {
+		System.err.println("Could not load " + asset.getName());
+		e.printStackTrace();
+		asset.fail(e);
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * Runs the uploads of finished assets until every asset submitted so far is done.
+	 * Must be called on the main thread, with the OpenGL context.
+	 */
+	public void waitForAll() {
+		while(pending.get() > 0) {
+			if(loader.processUploads() == 0) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		loader.processUploads();
+		if(startTime >= 0) {
+			wallNanos += System.nanoTime() - startTime;
+			startTime = -1;
+		}
+	}
+
+	/**
+	 * Prints how long every asset took, and the total. The sum of the load and upload times is about what
+	 * loading everything one by one would take, so sum / wall time is the speedup of loading in parallel.
+	 */
+	public void printReport() {
+		double sum = 0;
+		for(Asset<?> asset : assets) {
+			sum += asset.getLoadMillis() + asset.getUploadMillis();
+			System.out.println(String.format("  %-50s load %8.1f ms  upload %6.1f ms%s", asset.getName(),
+					asset.getLoadMillis(), asset.getUploadMillis(), asset.isFailed() ? "  FAILED" : ""));
+		}
+		double wall = wallNanos / 1000000.0;
+		System.out.println(String.format("Loaded %d assets with %d threads in %.1f ms (%.1f ms of work, %.2fx)",
+				assets.size(), threads, wall, sum, wall > 0 ? sum / wall : 0));
+	}
+
+	/**
+	 * Stops the worker threads. Assets that are still loading are thrown away.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+
+}
@@ -1,16 +1,22 @@
 package renderEngine;
 
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.lwjgl.opengl.Display;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GLContext;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
 
 import entities.Entity;
+import models.RawModel;
 import models.TexturedModel;
 import shaders.StaticShader;
 import textures.ModelTexture;
@@ -21,93 +27,282 @@ import toolbox.Maths;
 	 * @author Hkon S. Bckman
 	 *
 	 */
-public class EntityRenderer {
+public class EntityRenderer implements RenderQueue.Renderer {
+	
+	/**
+	 * The most entities we stream into the instance VBO at once. Batches bigger than this
+	 * are split up into several instanced draw calls.
+	 */
+	private static final int MAX_INSTANCES = 10000;
+	
+	// 16 floats for the transformation matrix, and 2 floats for the texture atlas offset.
+	private static final int INSTANCE_DATA_LENGTH = 18;
+	
+	// The attribute slots of the per-instance data, right after the 0/1/2 slots the Loader uses for the model itself.
+	// A mat4 attribute takes up four slots, one for each column, so the matrix lives in 3, 4, 5 and 6.
+	private static final int INSTANCE_MATRIX_ATTRIBUTE = 3;
+	private static final int INSTANCE_OFFSET_ATTRIBUTE = 7;
+	
+	private static final FloatBuffer instanceBuffer = BufferUtils.createFloatBuffer(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
 	
 	//private Matrix4f projectionMatrix;
 	private StaticShader shader;
 	
+	private Loader loader;
+	private GlStateCache glState = GlStateCache.get();
+	
+	// Filled with the transformation of every entity in turn, so drawing an entity doesn't create a matrix
+	private final Matrix4f transformation = new Matrix4f();
+	
+	// The one VBO every model streams its instance data through, and the VAOs it already has been attached to.
+	private int instanceVbo;
+	private Set<Integer> instancedVaos = new HashSet<Integer>();
+	
+	/**
+	 * When true, every textured model is drawn with one instanced draw call. When false, we fall back to
+	 * drawing every entity by itself, with its own uniforms.
+	 */
+	private boolean useInstancing;
+	
+	// Number of draw calls issued during the last frame.
+	private int drawCalls = 0;
 	
-	public EntityRenderer(StaticShader shader, Matrix4f projectionMatrix) {
+	// Number of textures bound during the last frame. The render queue skips the models sharing a texture (array).
+	private int textureBinds = 0;
+	
+	/**
+	 * The textured models of the frame and their entities, the items submitted to the render queue are
+	 * indices into these lists.
+	 */
+	private List<TexturedModel> frameModels = new ArrayList<TexturedModel>();
+	private List<List<Entity>> frameBatches = new ArrayList<List<Entity>>();
+	
+	
+	public EntityRenderer(StaticShader shader, Loader loader) {
 		this.shader = shader;
+		this.loader = loader;
+		this.useInstancing = isInstancingSupported();
+		this.instanceVbo = loader.createEmptyVbo(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
 		
-		//createProjectionMatrix();
 		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
+		shader.connectTextureUnits();
 		shader.stop();
 	}
 
 	
 	/**
 	 * Loop through all the keys in the hashMap, all the texturedModels as well.
-	 * For each textured model we need to prepare the textured model. Then we are going to get all the 
-	 * entities that use that texturedModel. And finally draw it.
+	 * Every textured model is submitted to the render queue as one draw, with the distance to its closest entity.
+	 * The queue sorts them by texture and VAO, and draws them through the methods below.
 	 * 
 	 * @param entities
+	 * @param queue
+	 * @param cameraPosition
 	 */
-	public void render(Map<TexturedModel, List<Entity>> entities) {
-		for(TexturedModel model:entities.keySet()) {
-			prepareTexturedModel(model);
-			List<Entity> batch = entities.get(model);
+	public void submit(Map<TexturedModel, List<Entity>> entities, RenderQueue queue, Vector3f cameraPosition) {
+		frameModels.clear();
+		frameBatches.clear();
+		for(Map.Entry<TexturedModel, List<Entity>> entry:entities.entrySet()) {
+			TexturedModel model = entry.getKey();
+			List<Entity> batch = entry.getValue();
+			float closest = Float.MAX_VALUE;
 			for(Entity entity:batch) {
-				prepareInstances(entity);
-				
-				// run the final texture model, "draw"
-				GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+				closest = Math.min(closest, distanceSquared(entity.getPosition(), cameraPosition));
 			}
-			unbindTexturedModel();
+			ModelTexture texture = model.getTexture();
+			long key = queue.createKey(MasterRenderer.ENTITY_SHADER, texture.isHasTransparency(), texture.getID(),
+					model.getRawModel().getVaoID(), (float) Math.sqrt(closest));
+			queue.submit(key, frameModels.size());
+			frameModels.add(model);
+			frameBatches.add(batch);
 		}
-		
 	}
+	
+	private static float distanceSquared(Vector3f a, Vector3f b) {
+		float dx = a.x - b.x;
+		float dy = a.y - b.y;
+		float dz = a.z - b.z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+	
+	@Override
+	public void begin() {
+		drawCalls = 0;
+		textureBinds = 0;
+		shader.start();
+		shader.loadUseInstancing(useInstancing);
+	}
+	
+	/**
+	 * Bind the texture of the model.
+	 */
+	@Override
+	public void bindTexture(int item) {
+		ModelTexture texture = frameModels.get(item).getTexture();
+		if(texture.isInTextureArray()) {
+			glState.bindTexture(1, GL30.GL_TEXTURE_2D_ARRAY, texture.getID());
+		} else {
+			glState.bindTexture(0, GL11.GL_TEXTURE_2D, texture.getID());
+		}
+		textureBinds++;
+	}
+	
+	/**
+	 * Bind the model(VAO). The instance VBO is attached to the VAO first, because that binds the VAO by itself.
+	 */
+	@Override
+	public void bindModel(int item) {
+		RawModel rawModel = frameModels.get(item).getRawModel();
+		if(useInstancing) {
+			attachInstanceAttributes(rawModel);
+		}
+		glState.bindVertexArray(rawModel.getVaoID());
+		glState.enableVertexAttribArray(0);	
+		glState.enableVertexAttribArray(1);	
+		glState.enableVertexAttribArray(2);
+		for(int i = INSTANCE_MATRIX_ATTRIBUTE; i <= INSTANCE_OFFSET_ATTRIBUTE; i++) {
+			if(useInstancing) {
+				glState.enableVertexAttribArray(i);
+			} else {
+				glState.disableVertexAttribArray(i);
+			}
+		}
+	}
+	
+	/**
+	 * Draws all the entities of the textured model, with one instanced draw call or one draw call each.
+	 */
+	@Override
+	public void draw(int item) {
+		TexturedModel model = frameModels.get(item);
+		List<Entity> batch = frameBatches.get(item);
+		loadMaterial(model.getTexture());
+		if(useInstancing) {
+			renderInstanced(model, batch);
+			return;
+		}
+		for(Entity entity:batch) {
+			prepareInstances(entity);
+			
+			// run the final texture model, "draw"
+			GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+			drawCalls++;
+		}
+	}
+	
+	@Override
+	public void end() {
+		glState.bindVertexArray(0);
+		shader.stop();
+	}
+	
 	/**
-	 * Bind the VAO and Texture.
-	 * There is also a check of local boolean to determine if the model has transparency, and therefore
-	 * need to disable the culling of the back side of the model in context with the viewer.
-	 * We also load up damper and reflectivity onto texture, before binding it
+	 * Draws every entity of the batch with a single draw call. The transformation matrix and texture offset
+	 * of every entity is written into the instance VBO, and the vertex shader reads them as per-instance attributes
+	 * instead of uniforms.
 	 * @param model
+	 * @param batch
 	 */
-	private void  prepareTexturedModel(TexturedModel model) {
-		// Bind the model(VAO)
-		GL30.glBindVertexArray(model.getRawModel().getVaoID());
-		GL20.glEnableVertexAttribArray(0);	
-		GL20.glEnableVertexAttribArray(1);	
-		GL20.glEnableVertexAttribArray(2);
-		ModelTexture texture = model.getTexture();
-		shader.loadNumberOfRows(texture.getNumberOfRows());
-		
-		if(texture.isHasTransparency()) {
-			MasterRenderer.disableCulling();
+	private void renderInstanced(TexturedModel model, List<Entity> batch) {
+		RawModel rawModel = model.getRawModel();
+		for(int start = 0; start < batch.size(); start += MAX_INSTANCES) {
+			int count = Math.min(MAX_INSTANCES, batch.size() - start);
+			instanceBuffer.clear();
+			for(int i = start; i < start + count; i++) {
+				storeInstanceData(batch.get(i));
+			}
+			instanceBuffer.flip();
+			loader.updateVbo(instanceVbo, instanceBuffer);
+			GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, rawModel.getVertexCount(), GL11.GL_UNSIGNED_INT, 0, count);
+			drawCalls++;
 		}
+	}
+	
+	/**
+	 * Loads the material of the texture. Models in the same texture array share the texture, but each has its
+	 * own region and shine settings, so this is done for every model.
+	 * The culling of models with transparency is turned off by the render queue, from the key.
+	 * @param texture
+	 */
+	private void loadMaterial(ModelTexture texture) {
+		shader.loadNumberOfRows(texture.getNumberOfRows());
 	// adjust the normals of the texture, to create more light if needed.
 		shader.loadFakeLightingVariable(texture.isUseFakeLighting());
 	// Load up shine settings
 		shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
-	// Bind the texture
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getID());
+	// Where the texture is in its texture array, if it is in one
+		shader.loadAtlasRegion(texture.getRegion());
+	}
+	
+	private void prepareInstances(Entity entity) {
+		Matrix4f transformationMatrix = Maths.createTransformationMatrix(entity.getPosition(), entity.getRotX(),
+				entity.getRotY(), entity.getRotZ(), entity.getScale(), transformation);
+		shader.loadTransformationMatrix(transformationMatrix);
+		shader.loadOffset(entity.getTextureXOffset(), entity.getTextureYOffset());
 	}
 	
 	/**
-	 * Unbind all the texture of the model.
-	 * 
-	 * We enable culling of models before we clear every vertexArray's
-	 * we do this to make sure culling of models is by "default" for every
-	 * entity within the game.
+	 * Writes the per-instance data of one entity into the instance buffer, in the same
+	 * layout as the attributes set up in attachInstanceAttributes.
+	 * @param entity
 	 */
-	private void unbindTexturedModel() {
-		MasterRenderer.enableCulling();
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL30.glBindVertexArray(0);
+	private void storeInstanceData(Entity entity) {
+		Matrix4f transformationMatrix = Maths.createTransformationMatrix(entity.getPosition(), entity.getRotX(),
+				entity.getRotY(), entity.getRotZ(), entity.getScale(), transformation);
+		transformationMatrix.store(instanceBuffer);
+		instanceBuffer.put(entity.getTextureXOffset());
+		instanceBuffer.put(entity.getTextureYOffset());
 	}
 	
-	private void prepareInstances(Entity entity) {
-		Matrix4f transformationMatrix = Maths.createTransformationMatrix(
-				entity.getPosition(), entity.getRotX(), entity.getRotY(), entity.getRotZ(), entity.getScale());
-		shader.loadTransformationMatrix(transformationMatrix);
-		shader.loadOffset(entity.getTextureXOffset(), entity.getTextureYOffset());
+	/**
+	 * The first time a model is drawn instanced, the instance VBO is attached to its VAO.
+	 * Every column of the matrix is its own vec4 attribute, followed by the texture offset.
+	 * @param rawModel
+	 */
+	private void attachInstanceAttributes(RawModel rawModel) {
+		int vaoID = rawModel.getVaoID();
+		if(instancedVaos.contains(vaoID)) {
+			return;
+		}
+		for(int column = 0; column < 4; column++) {
+			loader.addInstancedAttribute(vaoID, instanceVbo, INSTANCE_MATRIX_ATTRIBUTE + column, 4, INSTANCE_DATA_LENGTH, column * 4);
+		}
+		loader.addInstancedAttribute(vaoID, instanceVbo, INSTANCE_OFFSET_ATTRIBUTE, 2, INSTANCE_DATA_LENGTH, 16);
+		instancedVaos.add(vaoID);
+	}
+	
+	/**
+	 * Instanced arrays are core from OpenGL 3.3, on anything older we stay on the per-entity path.
+	 */
+	private static boolean isInstancingSupported() {
+		return GLContext.getCapabilities().OpenGL33;
+	}
+	
+	public boolean isUseInstancing() {
+		return useInstancing;
 	}
 	
+	/**
+	 * Switches between instanced rendering and the old path of one draw call per entity.
+	 * Instancing is never turned on when the graphics card does not support it.
+	 */
+	public void setUseInstancing(boolean useInstancing) {
+		this.useInstancing = useInstancing && isInstancingSupported();
+	}
+	
+	/**
+	 * @return the number of textures bound for entities during the last frame.
+	 */
+	public int getTextureBinds() {
+		return textureBinds;
+	}
+	
+	/**
+	 * @return the number of draw calls issued for entities during the last frame.
+	 */
+	public int getDrawCalls() {
+		return drawCalls;
+	}
 
 
 }
@@ -132,8 +327,8 @@ public class EntityRenderer {
 		GL20.glEnableVertexAttribArray(1);	
 		GL20.glEnableVertexAttribArray(2);
 		
-		Matrix4f transformationMatrix = Maths.createTransformationMatrix(
-				entity.getPosition(), entity.getRotX(), entity.getRotY(), entity.getRotZ(), entity.getScale());
+		Matrix4f transformationMatrix = Maths.createTransformationMatrix(entity.getPosition(), entity.getRotX(),
+				entity.getRotY(), entity.getRotZ(), entity.getScale(), transformation);
 		shader.loadTransformationMatrix(transformationMatrix);
 		ModelTexture texture = model.getTexture();
 		
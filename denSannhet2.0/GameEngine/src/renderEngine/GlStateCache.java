@@ -0,0 +1,406 @@
+package renderEngine;
+
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * Keeps a copy of the OpenGL state the renderers change all the time: the program, the VAO and the attribute
+ * arrays enabled in it, the texture bound to every texture unit, and culling, depth testing and blending. Every
+ * renderer goes through here instead of calling OpenGL, and a call that would set the state to what it already
+ * is never reaches OpenGL. The calls made and skipped are counted for every frame.
+ *
+ * The enabled attribute arrays belong to the VAO, so they are remembered for every VAO. The state is unknown
+ * until it is set the first time, and after invalidate, so the first call always goes through. Code that changes
+ * the state behind the back of the cache, like slick-util loading a texture, has to call invalidate afterwards.
+ *
+ * The OpenGL calls themselves are made by a Backend, so the cache can be run without OpenGL with a fake one.
+ */
+public class GlStateCache {
+
+	/**
+	 * The OpenGL calls the cache makes.
+	 */
+	public interface Backend {
+		void useProgram(int program);
+		void bindVertexArray(int vao);
+		void enableVertexAttribArray(int index);
+		void disableVertexAttribArray(int index);
+		void activeTexture(int unit);
+		void bindTexture(int target, int texture);
+		void enable(int capability);
+		void disable(int capability);
+		void cullFace(int mode);
+		void blendFunc(int source, int destination);
+	}
+
+	/**
+	 * Makes the calls on the OpenGL context of the thread.
+	 */
+	private static class LwjglBackend implements Backend {
+		public void useProgram(int program) {
+			GL20.glUseProgram(program);
+		}
+		public void bindVertexArray(int vao) {
+			GL30.glBindVertexArray(vao);
+		}
+		public void enableVertexAttribArray(int index) {
+			GL20.glEnableVertexAttribArray(index);
+		}
+		public void disableVertexAttribArray(int index) {
+			GL20.glDisableVertexAttribArray(index);
+		}
+		public void activeTexture(int unit) {
+			GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+		}
+		public void bindTexture(int target, int texture) {
+			GL11.glBindTexture(target, texture);
+		}
+		public void enable(int capability) {
+			GL11.glEnable(capability);
+		}
+		public void disable(int capability) {
+			GL11.glDisable(capability);
+		}
+		public void cullFace(int mode) {
+			GL11.glCullFace(mode);
+		}
+		public void blendFunc(int source, int destination) {
+			GL11.glBlendFunc(source, destination);
+		}
+	}
+
+	public static final int MAX_TEXTURE_UNITS = 16;
+
+	private static final int UNKNOWN = -1;
+	private static final int ALL = -1;
+
+	// The capabilities and texture targets that are kept track of, the rest always go through
+	private static final int[] CAPABILITIES = { GL11.GL_CULL_FACE, GL11.GL_DEPTH_TEST, GL11.GL_BLEND };
+	private static final int[] TARGETS = { GL11.GL_TEXTURE_2D, GL30.GL_TEXTURE_2D_ARRAY };
+
+	private static GlStateCache instance;
+
+	private final Backend backend;
+
+	private int program = UNKNOWN;
+	private int vao = UNKNOWN;
+	// The enabled attribute arrays of every VAO by VAO ID, one bit per attribute, and which of the bits are known.
+	// A new VAO has none enabled, and they are all known
+	private int[] attributeMasks = new int[256];
+	private int[] knownAttributes = filled(256, ALL);
+	// The attributes changed while the VAO was unknown, they aren't known in VAOs we haven't seen yet either
+	private int unknownAttributes = 0;
+	private int activeUnit = UNKNOWN;
+	private final int[][] textures = new int[MAX_TEXTURE_UNITS][TARGETS.length];
+	private final int[] capabilities = new int[CAPABILITIES.length];
+	private int cullFace = UNKNOWN;
+	private int blendSource = UNKNOWN;
+	private int blendDestination = UNKNOWN;
+
+	private int issued = 0;
+	private int suppressed = 0;
+	private int lastIssued = 0;
+	private int lastSuppressed = 0;
+
+	public GlStateCache(Backend backend) {
+		this.backend = backend;
+		invalidate();
+	}
+
+	/**
+	 * @return the cache of the OpenGL context, shared by all the renderers
+	 */
+	public static GlStateCache get() {
+		if(instance == null) {
+			instance = new GlStateCache(new LwjglBackend());
+		}
+		return instance;
+	}
+
+	/**
+	 * Forgets the program, VAO binding, textures and capabilities, so the next call of each goes through.
+	 * The attribute arrays of the VAOs are kept, they can only be changed with the VAO bound.
+	 */
+	public void invalidate() {
+		program = UNKNOWN;
+		vao = UNKNOWN;
+		activeUnit = UNKNOWN;
+		for(int[] unit : textures) {
+			for(int i = 0; i < unit.length; i++) {
+				unit[i] = UNKNOWN;
+			}
+		}
+		for(int i = 0; i < capabilities.length; i++) {
+			capabilities[i] = UNKNOWN;
+		}
+		cullFace = UNKNOWN;
+		blendSource = UNKNOWN;
+		blendDestination = UNKNOWN;
+	}
+
+	/**
+	 * Starts counting the calls of a new frame, the counts of the frame before are kept for getIssuedCalls and
+	 * getSuppressedCalls.
+	 */
+	public void startFrame() {
+		lastIssued = issued;
+		lastSuppressed = suppressed;
+		issued = 0;
+		suppressed = 0;
+	}
+
+	public void useProgram(int program) {
+		if(this.program == program) {
+			suppressed++;
+			return;
+		}
+		backend.useProgram(program);
+		this.program = program;
+		issued++;
+	}
+
+	public void bindVertexArray(int vao) {
+		if(this.vao == vao) {
+			suppressed++;
+			return;
+		}
+		backend.bindVertexArray(vao);
+		this.vao = vao;
+		issued++;
+	}
+
+	/**
+	 * Enables the attribute array in the VAO that is bound.
+	 */
+	public void enableVertexAttribArray(int index) {
+		setAttribute(index, true);
+	}
+
+	/**
+	 * Disables the attribute array in the VAO that is bound.
+	 */
+	public void disableVertexAttribArray(int index) {
+		setAttribute(index, false);
+	}
+
+	private void setAttribute(int index, boolean enabled) {
+		int bit = 1 << index;
+		if(vao < 0) {
+			// we don't know which VAO this is, so the attribute isn't known in any of them anymore
+			if(enabled) {
+				backend.enableVertexAttribArray(index);
+			} else {
+				backend.disableVertexAttribArray(index);
+			}
+			for(int i = 0; i < knownAttributes.length; i++) {
+				knownAttributes[i] &= ~bit;
+			}
+			unknownAttributes |= bit;
+			issued++;
+			return;
+		}
+		ensureVao(vao);
+		if((knownAttributes[vao] & bit) != 0 && ((attributeMasks[vao] & bit) != 0) == enabled) {
+			suppressed++;
+			return;
+		}
+		knownAttributes[vao] |= bit;
+		if(enabled) {
+			backend.enableVertexAttribArray(index);
+			attributeMasks[vao] |= bit;
+		} else {
+			backend.disableVertexAttribArray(index);
+			attributeMasks[vao] &= ~bit;
+		}
+		issued++;
+	}
+
+	private void ensureVao(int id) {
+		if(id >= attributeMasks.length) {
+			int length = Math.max(id + 1, attributeMasks.length * 2);
+			int[] masks = new int[length];
+			System.arraycopy(attributeMasks, 0, masks, 0, attributeMasks.length);
+			int[] known = filled(length, ~unknownAttributes);
+			System.arraycopy(knownAttributes, 0, known, 0, knownAttributes.length);
+			attributeMasks = masks;
+			knownAttributes = known;
+		}
+	}
+
+	private static int[] filled(int length, int value) {
+		int[] array = new int[length];
+		Arrays.fill(array, value);
+		return array;
+	}
+
+	/**
+	 * Binds the texture to the texture unit, and makes the unit active if it needs to. When the texture is
+	 * already bound there, both the glActiveTexture and the glBindTexture are skipped.
+	 * @param unit - the number of the unit, 0 for GL_TEXTURE0
+	 */
+	public void bindTexture(int unit, int target, int texture) {
+		int index = getTargetIndex(target);
+		if(index >= 0 && textures[unit][index] == texture) {
+			suppressed += 2;
+			return;
+		}
+		activeTexture(unit);
+		backend.bindTexture(target, texture);
+		if(index >= 0) {
+			textures[unit][index] = texture;
+		}
+		issued++;
+	}
+
+	/**
+	 * Binds the texture to the texture unit that is active, the way the Loader binds textures to upload them.
+	 */
+	public void bindTexture(int target, int texture) {
+		if(activeUnit < 0) {
+			// we don't know where it ends up, so the next bind of every unit goes through
+			backend.bindTexture(target, texture);
+			issued++;
+			invalidateTextures();
+			return;
+		}
+		bindTexture(activeUnit, target, texture);
+	}
+
+	public void activeTexture(int unit) {
+		if(activeUnit == unit) {
+			suppressed++;
+			return;
+		}
+		backend.activeTexture(unit);
+		activeUnit = unit;
+		issued++;
+	}
+
+	private void invalidateTextures() {
+		for(int[] unit : textures) {
+			for(int i = 0; i < unit.length; i++) {
+				unit[i] = UNKNOWN;
+			}
+		}
+	}
+
+	public void enable(int capability) {
+		setCapability(capability, true);
+	}
+
+	public void disable(int capability) {
+		setCapability(capability, false);
+	}
+
+	private void setCapability(int capability, boolean enabled) {
+		int index = getCapabilityIndex(capability);
+		int state = enabled ? 1 : 0;
+		if(index >= 0 && capabilities[index] == state) {
+			suppressed++;
+			return;
+		}
+		if(enabled) {
+			backend.enable(capability);
+		} else {
+			backend.disable(capability);
+		}
+		if(index >= 0) {
+			capabilities[index] = state;
+		}
+		issued++;
+	}
+
+	public void cullFace(int mode) {
+		if(cullFace == mode) {
+			suppressed++;
+			return;
+		}
+		backend.cullFace(mode);
+		cullFace = mode;
+		issued++;
+	}
+
+	public void blendFunc(int source, int destination) {
+		if(blendSource == source && blendDestination == destination) {
+			suppressed++;
+			return;
+		}
+		backend.blendFunc(source, destination);
+		blendSource = source;
+		blendDestination = destination;
+		issued++;
+	}
+
+	/**
+	 * Has to be called when a VAO is deleted. OpenGL binds VAO 0 if it was bound, and a new VAO that gets the
+	 * same ID starts with no attribute arrays enabled.
+	 */
+	public void forgetVertexArray(int id) {
+		if(id < attributeMasks.length) {
+			attributeMasks[id] = 0;
+			knownAttributes[id] = ALL;
+		}
+		if(vao == id) {
+			vao = 0;
+		}
+	}
+
+	/**
+	 * Has to be called when a texture is deleted. OpenGL binds texture 0 in the units it was bound to.
+	 */
+	public void forgetTexture(int id) {
+		for(int[] unit : textures) {
+			for(int i = 0; i < unit.length; i++) {
+				if(unit[i] == id) {
+					unit[i] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Has to be called when a program is deleted.
+	 */
+	public void forgetProgram(int id) {
+		if(program == id) {
+			program = UNKNOWN;
+		}
+	}
+
+	private static int getTargetIndex(int target) {
+		for(int i = 0; i < TARGETS.length; i++) {
+			if(TARGETS[i] == target) {
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	private static int getCapabilityIndex(int capability) {
+		for(int i = 0; i < CAPABILITIES.length; i++) {
+			if(CAPABILITIES[i] == capability) {
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @return the number of calls that went through to OpenGL in the last frame
+	 */
+	public int getIssuedCalls() {
+		return lastIssued;
+	}
+
+	/**
+	 * @return the number of calls that were skipped in the last frame, because the state already was right
+	 */
+	public int getSuppressedCalls() {
+		return lastSuppressed;
+	}
+
+}
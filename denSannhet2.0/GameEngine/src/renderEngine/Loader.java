@@ -3,21 +3,35 @@ package renderEngine;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL14;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
 import org.newdawn.slick.opengl.Texture;
 import org.newdawn.slick.opengl.TextureLoader;
 
+import animation.SkinningFormat;
 import models.RawModel;
+import objConverter.MeshBuffers;
+import terrains.HeightField;
+import textures.TextureArray;
+import textures.TextureAtlasData;
+import textures.TextureData;
 
 	/**
 	 * The Loader is the class which will load in the 3D models into the memory. By storing for example positional data of the model in a VAO,( Vertex Array Object ) 
@@ -38,6 +52,19 @@ public class Loader {
 	private List<Integer> vbos = new ArrayList<Integer>();
 	private List<Integer> textures = new ArrayList<Integer>();
 	
+	/**
+	 * The VBO's that belong to each VAO, so a single model can be deleted with unloadModel
+	 * without waiting for cleanUp. Buffers shared between VAO's, like the instance data, are not in here.
+	 */
+	private Map<Integer, List<Integer>> vaoBuffers = new HashMap<Integer, List<Integer>>();
+	private List<Integer> currentVaoBuffers;
+	
+	/**
+	 * OpenGL calls only work on the thread that created the display. Other threads that have prepared data
+	 * for the GPU put the upload in this queue, and the main thread runs them in processUploads.
+	 */
+	private Queue<Runnable> uploads = new ConcurrentLinkedQueue<Runnable>();
+	
 
 	/**
 	 * Takes in positions of model's vertex, load the data into a VAO.
@@ -55,6 +82,33 @@ public class Loader {
 		return new RawModel(vaoID, indices.length);
 	}
 	
+	/**
+	 * Same as the method above, but also stores the radius of the model's bounding sphere
+	 * in the RawModel, so the model can be frustum culled.
+	 * @param boundingRadius - distance from the origin to the furthest vertex, see ModelData.getFurthestPoint
+	 * @return RawModel
+	 */
+	public RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices, float boundingRadius){
+		RawModel model = loadToVAO(positions, textureCoords, normals, indices);
+		return new RawModel(model.getVaoID(), model.getVertexCount(), boundingRadius);
+	}
+	
+	/**
+	 * Loads a model that is already in buffers, like the ones from OBJFileLoader.loadMesh.
+	 * The buffers are uploaded as they are, without copying them into arrays first.
+	 * @param mesh
+	 * @return RawModel
+	 */
+	public RawModel loadToVAO(MeshBuffers mesh){
+		int vaoID = createVAO();
+		bindIndicesBuffer(mesh.getIndices());
+		storeDataInAttributeList(0, 3, mesh.getPositions());
+		storeDataInAttributeList(1, 2, mesh.getTextureCoords());
+		storeDataInAttributeList(2, 3, mesh.getNormals());
+		unbindVAO();
+		return new RawModel(vaoID, mesh.getIndexCount(), mesh.getFurthestPoint());
+	}
+	
 	public RawModel loadToVAO(float[] positions) {
 		int vaoID = createVAO();
 		this.storeDataInAttributeList(0, 2, positions);
@@ -63,19 +117,21 @@ public class Loader {
 	}
 	
 	/**
-	 * Similar to the method above, only that it
-	 * stores two extra values to the attribute list
+	 * Similar to the method above, only that it also stores the joints and weights of every vertex, packed
+	 * into one interleaved buffer by SkinningFormat. Attribute 3 is the joint indices and attribute 4 the
+	 * weights.
+	 * @param weightsPerVertex - how many joint IDs and weights every vertex has in the arrays
 	 */
 	public RawModel loadAnimatedModelToVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices, int[] jointIds,
-			float[] vertexWeights) {
+			float[] vertexWeights, int weightsPerVertex) {
 		int vaoID = createVAO();
 		bindIndicesBuffer(indices);
 		storeDataInAttributeList(0, 3, positions);
 		storeDataInAttributeList(1, 2, textureCoords);
 		storeDataInAttributeList(2, 3, normals);
-		storeIntDataInAttributeList(3,3, jointIds);
-		storeDataInAttributeList(4,3, vertexWeights);
-		return new RawModel(vaoID, positions.length / 2);
+		storeSkinningInAttributeLists(3, 4, SkinningFormat.pack(jointIds, vertexWeights, weightsPerVertex));
+		unbindVAO();
+		return new RawModel(vaoID, indices.length);
 	}
 	
 	/**
@@ -87,6 +143,8 @@ public class Loader {
 		Texture texture = null;
 		try {
 			texture = TextureLoader.getTexture("PNG", new FileInputStream("res/"+fileName+".png"));
+			// slick-util binds the texture by itself
+			GlStateCache.get().invalidate();
 			GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
 			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
 			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
@@ -102,6 +160,243 @@ public class Loader {
 	}
 	
 	
+	/**
+	 * Uploads a texture that has already been decoded, for example on another thread.
+	 * Uses the same filtering as loadTexture(String).
+	 * @param data
+	 * @return textureID
+	 */
+	public int loadTexture(TextureData data) {
+		int textureID = createTexture(data.getWidth(), data.getHeight());
+		uploadTextureRows(textureID, data, 0, data.getHeight());
+		finishTexture(textureID);
+		return textureID;
+	}
+	
+	/**
+	 * Creates a empty RGBA texture with room for a image of the given size. The pixels are filled in
+	 * afterwards with uploadTextureRows, so a big texture can be uploaded over several frames.
+	 * @param width
+	 * @param height
+	 * @return textureID
+	 */
+	public int createTexture(int width, int height) {
+		int textureID = GL11.glGenTextures();
+		textures.add(textureID);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, textureID);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, width, height, 0, 
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, 0);
+		return textureID;
+	}
+	
+	/**
+	 * Copies some of the rows of the image into a texture made with createTexture.
+	 * @param textureID
+	 * @param data - the whole image
+	 * @param firstRow - the first row to copy
+	 * @param rows - how many rows to copy
+	 */
+	public void uploadTextureRows(int textureID, TextureData data, int firstRow, int rows) {
+		int rowSize = data.getWidth() * 4;
+		ByteBuffer pixels = data.getBuffer().duplicate();
+		pixels.position(firstRow * rowSize);
+		pixels.limit((firstRow + rows) * rowSize);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, textureID);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, firstRow, data.getWidth(), rows, 
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, 0);
+	}
+	
+	/**
+	 * Generates the mipmaps once every row of the texture is uploaded, and sets the same filtering
+	 * as loadTexture(String).
+	 * @param textureID
+	 */
+	public void finishTexture(int textureID) {
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, textureID);
+		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, 0);
+	}
+	
+	/**
+	 * Uploads the layers of a packed atlas as one GL_TEXTURE_2D_ARRAY. The mipmaps stop at the level where
+	 * the padding between the textures is used up, below that they would blend into each other.
+	 * @param atlas
+	 * @param padding - the padding the atlas was packed with
+	 * @return the texture array
+	 */
+	public TextureArray loadTextureArray(TextureAtlasData atlas, int padding) {
+		int textureID = GL11.glGenTextures();
+		textures.add(textureID);
+		int layers = atlas.getLayers().size();
+		GlStateCache.get().bindTexture(GL30.GL_TEXTURE_2D_ARRAY, textureID);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL12.glTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, GL11.GL_RGBA8, atlas.getPageWidth(), atlas.getPageHeight(), layers,
+				0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		for(int layer = 0; layer < layers; layer++) {
+			GL12.glTexSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, atlas.getPageWidth(), atlas.getPageHeight(), 1,
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, atlas.getLayers().get(layer));
+		}
+		int maxLevel = 0;
+		while((2 << maxLevel) <= padding) {
+			maxLevel++;
+		}
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL12.GL_TEXTURE_MAX_LEVEL, maxLevel);
+		GL30.glGenerateMipmap(GL30.GL_TEXTURE_2D_ARRAY);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glTexParameterf(GL30.GL_TEXTURE_2D_ARRAY, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+		GlStateCache.get().bindTexture(GL30.GL_TEXTURE_2D_ARRAY, 0);
+		return new TextureArray(textureID, layers, atlas.getRegions());
+	}
+
+	/**
+	 * Uploads the heights of a terrain as a texture with one 16 bit whole number per texel, the same numbers
+	 * the HeightField keeps for collision. The terrain vertex shader reads them with texelFetch, so there is
+	 * no filtering and no mipmaps.
+	 * @param heights
+	 * @return textureID
+	 */
+	public int loadHeightTexture(HeightField heights) {
+		short[] data = heights.getData();
+		ShortBuffer buffer = BufferUtils.createShortBuffer(data.length);
+		buffer.put(data);
+		buffer.flip();
+		int textureID = GL11.glGenTextures();
+		textures.add(textureID);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, textureID);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL30.GL_R16UI, heights.getSize(), heights.getSize(), 0,
+				GL30.GL_RED_INTEGER, GL11.GL_UNSIGNED_SHORT, buffer);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, 0);
+		GlStateCache.get().bindTexture(GL11.GL_TEXTURE_2D, 0);
+		return textureID;
+	}
+
+	/**
+	 * Deletes a single texture right away, instead of waiting for cleanUp.
+	 * @param textureID
+	 */
+	public void deleteTexture(int textureID) {
+		GL11.glDeleteTextures(textureID);
+		GlStateCache.get().forgetTexture(textureID);
+		textures.remove((Integer) textureID);
+	}
+	
+	/**
+	 * Queues OpenGL work from any thread, to be run on the main thread by processUploads.
+	 * @param upload
+	 */
+	public void queueUpload(Runnable upload) {
+		uploads.add(upload);
+	}
+	
+	/**
+	 * Runs every queued upload. Must be called on the thread with the OpenGL context.
+	 * @return the number of uploads that were run
+	 */
+	public int processUploads() {
+		return processUploads(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Runs queued uploads until the time budget is used up, the rest waits for the next call.
+	 * At least one upload is run every call, so a big upload can't block the queue forever.
+	 * Must be called on the thread with the OpenGL context.
+	 * @param budgetNanos - how long we may spend uploading
+	 * @return the number of uploads that were run
+	 */
+	public int processUploads(long budgetNanos) {
+		long start = System.nanoTime();
+		int count = 0;
+		Runnable upload;
+		while((upload = uploads.poll()) != null) {
+			upload.run();
+			count++;
+			if(System.nanoTime() - start >= budgetNanos) {
+				break;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * @return the number of uploads waiting in the queue
+	 */
+	public int getQueuedUploads() {
+		return uploads.size();
+	}
+	
+	/**
+	 * Creates a empty VBO that can hold the given amount of floats. Used for data that changes
+	 * every frame, like the per-instance data when rendering instanced.
+	 * @param floatCount
+	 * @return vboID
+	 */
+	public int createEmptyVbo(int floatCount) {
+		int vboID = GL15.glGenBuffers();
+		vbos.add(vboID);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, floatCount * 4, GL15.GL_STREAM_DRAW);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		return vboID;
+	}
+
+	/**
+	 * Uploads a list of indices that is not tied to a single VAO. It is bound to a VAO with
+	 * glBindBuffer(GL_ELEMENT_ARRAY_BUFFER) before drawing, like the shared index lists of the terrain chunks.
+	 * @param indices
+	 * @return vboID
+	 */
+	public int loadIndexBuffer(int[] indices) {
+		int vboID = GL15.glGenBuffers();
+		vbos.add(vboID);
+		// uploaded through GL_ARRAY_BUFFER, so it doesn't change the index buffer of whatever VAO is bound
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, storeDataInIntBuffer(indices), GL15.GL_STATIC_DRAW);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		return vboID;
+	}
+
+	/**
+	 * Attaches a attribute of a VBO holding per-instance data to a VAO. The divisor makes
+	 * OpenGL step to the next value once per instance, instead of once per vertex.
+	 * @param vao
+	 * @param vbo
+	 * @param attribute
+	 * @param dataSize - number of floats in this attribute
+	 * @param instancedDataLength - number of floats per instance in the VBO
+	 * @param offset - number of floats from the start of a instance to this attribute
+	 */
+	public void addInstancedAttribute(int vao, int vbo, int attribute, int dataSize, int instancedDataLength, int offset) {
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GlStateCache.get().bindVertexArray(vao);
+		GL20.glVertexAttribPointer(attribute, dataSize, GL11.GL_FLOAT, false, instancedDataLength * 4, offset * 4);
+		GL33.glVertexAttribDivisor(attribute, 1);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		GlStateCache.get().bindVertexArray(0);
+	}
+
+	/**
+	 * Replaces the content of a VBO created with createEmptyVbo. The old storage is orphaned first,
+	 * so we don't have to wait for the GPU to finish drawing with last frame's data.
+	 * @param vbo
+	 * @param buffer - flipped buffer with the new data
+	 */
+	public void updateVbo(int vbo, FloatBuffer buffer) {
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer.capacity() * 4, GL15.GL_STREAM_DRAW);
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, buffer);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
 	/**
 	 * Deletes vertexArrays, when we are done with it. Don't want to keep VAO's and VBO's in memory accidently.
 	 */
@@ -117,6 +412,29 @@ public class Loader {
 		}
 	}
 	
+	/**
+	 * Deletes the VAO of the model and all the VBO's that were created for it. Used for models that come and go
+	 * while the game is running, like the terrain tiles, so they don't stay on the GPU until cleanUp.
+	 * @param model
+	 */
+	public void unloadModel(RawModel model) {
+		int vaoID = model.getVaoID();
+		List<Integer> buffers = vaoBuffers.remove(vaoID);
+		if(buffers == null) {
+			return;
+		}
+		for(int vbo:buffers) {
+			GL15.glDeleteBuffers(vbo);
+			vbos.remove(Integer.valueOf(vbo));
+		}
+		GL30.glDeleteVertexArrays(vaoID);
+		GlStateCache.get().forgetVertexArray(vaoID);
+		vaos.remove(Integer.valueOf(vaoID));
+		if(currentVaoBuffers == buffers) {
+			currentVaoBuffers = null;
+		}
+	}
+	
 	/**
 	 * Creates a empty VAO and return the ID of the empty VAO.
 	 * @return vaoID
@@ -124,10 +442,22 @@ public class Loader {
 	private int createVAO(){
 		int vaoID = GL30.glGenVertexArrays();
 		vaos.add(vaoID);
-		GL30.glBindVertexArray(vaoID);
+		currentVaoBuffers = new ArrayList<Integer>();
+		vaoBuffers.put(vaoID, currentVaoBuffers);
+		GlStateCache.get().bindVertexArray(vaoID);
 		return vaoID;
 	}
 	
+	/**
+	 * Remembers a VBO of the VAO being created, so it can be deleted together with the VAO.
+	 */
+	private void addVaoBuffer(int vboID) {
+		vbos.add(vboID);
+		if(currentVaoBuffers != null) {
+			currentVaoBuffers.add(vboID);
+		}
+	}
+	
 	/**
 	 * takes in the number of attribute list for the VAO, 
 	 * then store the data for each attribute itself. 
@@ -136,26 +466,31 @@ public class Loader {
 	 * @param data
 	 */
 	private void storeDataInAttributeList(int attributeNumber, int coordinateSize, float[] data){
+		storeDataInAttributeList(attributeNumber, coordinateSize, storeDataInFloatBuffer(data));
+	}
+	
+	private void storeDataInAttributeList(int attributeNumber, int coordinateSize, FloatBuffer buffer){
 		int vboID = GL15.glGenBuffers();
-		vbos.add(vboID);
+		addVaoBuffer(vboID);
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
-		FloatBuffer buffer = storeDataInFloatBuffer(data);
 		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
 		GL20.glVertexAttribPointer(attributeNumber, coordinateSize, GL11.GL_FLOAT, false, 0, 0);
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
 	}
 	
-	/*
-	 * ADDED
-	 * Works the same as the method above, only that it takes in a int instead of float.
+	/**
+	 * Stores the joints and weights of SkinningFormat in one buffer, read by two attributes. The joint indices
+	 * are unsigned bytes read as integers, the weights unsigned shorts read as floats from 0 to 1.
 	 */
-	private void storeIntDataInAttributeList(int attributeNumber, int coordinateSize, int[] data) {
+	private void storeSkinningInAttributeLists(int jointAttribute, int weightAttribute, ByteBuffer buffer) {
 		int vboID = GL15.glGenBuffers();
-		vbos.add(vboID);
+		addVaoBuffer(vboID);
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
-		IntBuffer buffer = storeDataInIntBuffer(data);
 		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
-		GL30.glVertexAttribIPointer(attributeNumber, coordinateSize, GL11.GL_INT, coordinateSize * 4,0); // This line did the fix, We multiply it by 4, because floats and Integers are 4 bytes big
+		GL30.glVertexAttribIPointer(jointAttribute, SkinningFormat.WEIGHTS_PER_VERTEX, GL11.GL_UNSIGNED_BYTE,
+				SkinningFormat.BYTES_PER_VERTEX, 0);
+		GL20.glVertexAttribPointer(weightAttribute, SkinningFormat.WEIGHTS_PER_VERTEX, GL11.GL_UNSIGNED_SHORT, true,
+				SkinningFormat.BYTES_PER_VERTEX, SkinningFormat.WEIGHTS_OFFSET);
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
 	}
 	
@@ -163,7 +498,7 @@ public class Loader {
 	 * Unbind the VAO, when finished using it.
 	 */
 	private void unbindVAO(){
-		GL30.glBindVertexArray(0);
+		GlStateCache.get().bindVertexArray(0);
 	}
 	
 	/**
@@ -171,11 +506,14 @@ public class Loader {
 	 * @param indices
 	 */
 	private void bindIndicesBuffer(int[] indices) {
+		bindIndicesBuffer(storeDataInIntBuffer(indices));
+	}
+	
+	private void bindIndicesBuffer(IntBuffer buffer) {
 		int vboID = GL15.glGenBuffers();
-		vbos.add(vboID);
+		addVaoBuffer(vboID);
 		// remember that it has to be VBO t
 		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID);
-		IntBuffer buffer = storeDataInIntBuffer(indices);
 		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
 	}
 	
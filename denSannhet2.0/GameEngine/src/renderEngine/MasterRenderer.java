@@ -8,18 +8,25 @@ import java.util.Map;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
 
 import animation.AnimatedModel;
 import animation.AnimatedModelRenderer;
 import animation.AnimatedModelShader;
+import animation.PoseEvaluator;
 import entities.Camera;
 import entities.Entity;
 import entities.Light;
+import guis.GuiRenderer;
+import guis.GuiTexture;
 import models.RawModel;
 import models.TexturedModel;
 import shaders.StaticShader;
 import shaders.TerrainShader;
+import shaders.shaderProgram;
 import terrains.Terrain;
+import toolbox.Frustum;
+import toolbox.Maths;
 
 public class MasterRenderer {
 	
@@ -30,6 +37,12 @@ public class MasterRenderer {
 	private static final float NEAR_PLANE = 0.1f;
 	private static final float FAR_PLANE = 10000;
 	
+	// The shaders in the keys of the render queue, the opaque draws are sorted in this order
+	public static final int ENTITY_SHADER = 0;
+	public static final int ANIMATED_SHADER = 1;
+	public static final int TERRAIN_SHADER = 2;
+	public static final int GUI_SHADER = 3;
+	
 	private static final float RED = 0.5f;
 	private static final float GREEN = 0.5f;
 	private static final float BLUE = 0.5f;
@@ -41,8 +54,11 @@ public class MasterRenderer {
 	 */
 	private Matrix4f projectionMatrix;
 	
-	
-	private Matrix4f animatedProjectionMatrix;
+	/**
+	 * The projection, view matrix, sky colour and lights of the frame, loaded once into a uniform buffer that
+	 * the entity, animated model and terrain shaders all read.
+	 */
+	private SceneData sceneData;
 	
 	private StaticShader shader = new StaticShader();
 	private EntityRenderer renderer;
@@ -51,11 +67,44 @@ public class MasterRenderer {
 	private AnimatedModelShader animatedModelShader = new AnimatedModelShader();
 	private AnimatedModelRenderer animatedModelRenderer;
 	
+	/**
+	 * The animated models of the current frame. Their poses are all worked out at the start of render, 
+	 * spread over all the cores, before any of them are drawn.
+	 */
+	private List<AnimatedModel> animatedModels = new ArrayList<AnimatedModel>();
+	private PoseEvaluator poseEvaluator = new PoseEvaluator(Runtime.getRuntime().availableProcessors());
+	
+	// The animated models drawn in the last frame
+	private int lastAnimatedModels = 0;
+	
 	private TerrainRenderer terrainRenderer;
 	private TerrainShader terrainShader = new TerrainShader();
 	
 	private List<Terrain> terrains = new ArrayList<Terrain>();
 	
+	private GuiRenderer guiRenderer;
+	private List<GuiTexture> guis = new ArrayList<GuiTexture>();
+	
+	/**
+	 * Every draw of the frame goes through the render queue, sorted by pass, shader, texture, VAO and depth.
+	 * The program, textures, VAO and culling are only changed when the next draw needs something else.
+	 */
+	private RenderQueue renderQueue = new RenderQueue(FAR_PLANE);
+	
+	/**
+	 * The view frustum of the current frame, updated in updateFrustum. Entities outside of it 
+	 * are thrown away in processEntity, before they ever reach the entity renderer.
+	 */
+	private Frustum frustum = new Frustum();
+	private Matrix4f viewMatrix;
+	private boolean frustumCulling = true;
+	
+	// Counting entities in the current frame, and the result of the last frame.
+	private int entitiesSubmitted = 0;
+	private int entitiesCulled = 0;
+	private int lastEntitiesSubmitted = 0;
+	private int lastEntitiesCulled = 0;
+	
 	
 	/** 
 	 * HashMap containing all the textured models and their entities. 
@@ -79,15 +128,20 @@ public class MasterRenderer {
 	/**
 	 *  By calling this constructor we automatically also call our specialized render classes constructors
 	 *  We also enables the culling of models and creates the projection matrix of the world
+	 *  @param loader - used by the entity renderer to create the VBO holding the per-instance data
 	 */
-	public MasterRenderer() {
+	public MasterRenderer(Loader loader) {
 		enableCulling();
 		createProjectionMatrix();
-		createAnimatedProjectionMatrix();
-		renderer = new EntityRenderer(shader, projectionMatrix);
-		animatedModelRenderer = new AnimatedModelRenderer(animatedModelShader, animatedProjectionMatrix); // ADDED
-		terrainRenderer = new TerrainRenderer(terrainShader, projectionMatrix);
-		
+		sceneData = new SceneData();
+		renderer = new EntityRenderer(shader, loader);
+		animatedModelRenderer = new AnimatedModelRenderer(animatedModelShader); // ADDED
+		terrainRenderer = new TerrainRenderer(terrainShader, loader);
+		guiRenderer = new GuiRenderer(loader);
+		renderQueue.setRenderer(ENTITY_SHADER, renderer);
+		renderQueue.setRenderer(ANIMATED_SHADER, animatedModelRenderer);
+		renderQueue.setRenderer(TERRAIN_SHADER, terrainRenderer);
+		renderQueue.setRenderer(GUI_SHADER, guiRenderer);
 	}
 	
 	/**
@@ -96,8 +150,8 @@ public class MasterRenderer {
 	 * Why render something you can't see?
 	 */
 	public static void enableCulling() {
-		GL11.glEnable(GL11.GL_CULL_FACE);
-		GL11.glCullFace(GL11.GL_BACK);
+		GlStateCache.get().enable(GL11.GL_CULL_FACE);
+		GlStateCache.get().cullFace(GL11.GL_BACK);
 	}
 	
 	/**
@@ -106,7 +160,7 @@ public class MasterRenderer {
 	 *  the model.
 	 */
 	public static void disableCulling() {
-		GL11.glDisable(GL11.GL_CULL_FACE);
+		GlStateCache.get().disable(GL11.GL_CULL_FACE);
 	}
 	
 	
@@ -115,41 +169,66 @@ public class MasterRenderer {
 	 * for every frame. so 100 similar models will only call the render once per frame and not 100 x frames. We pass this hashMap into the shader.render 
 	 * there will the method will loop through the list and create texture models accordingly to the keys found within the hashMap.
 	 * 
-	 * This function will call all the methods related to rendering, first it will clear all the buffers. then call the respective shaders and
-	 * methods to render the models correctly. The entities. or in this world the trees, plants, grass, flowers are first rendered. then the animatedPlayer
-	 * is rendered. And last the terrain is rendered.
+	 * This function will call all the methods related to rendering, first it will clear all the buffers and load the
+	 * lights, sky colour and camera into the SceneData, once for all the shaders. Then the entities, animated models, terrains and GUIs of the
+	 * frame are submitted to the render queue, which sorts them so everything using the same shader, texture and
+	 * model is drawn after each other, and draws them. The GUIs are drawn last, on top of the rest.
 	 * 
 	 * @param lights - list of lights in this world
 	 * @param camera - the camera of the viewer of this world
-	 * @param animatedPlayer - the player controlled by the viewer.
 	 */
-	public void render(List<Light> lights, Camera camera, AnimatedModel animatedPlayer) {
+	public void render(List<Light> lights, Camera camera) {
+		GlStateCache.get().startFrame();
+		shaderProgram.startFrame();
+		poseEvaluator.update(animatedModels, DisplayManager.getFrameTimeSeconds());
 		prepare();
-		shader.start();
-		shader.loadSkyColour(RED, GREEN, BLUE);
-		shader.loadLights(lights);
-		shader.loadViewMatrix(camera);
-		renderer.render(entities);
-		shader.stop();
+		sceneData.update(projectionMatrix, Maths.createViewMatrix(camera), RED, GREEN, BLUE, lights);
 		
-		animatedModelShader.start();
-		animatedModelShader.loadSkyColor(RED, GREEN, BLUE);
-		animatedModelShader.loadLights(lights);
-		animatedModelShader.loadViewMatrix(camera);
-		animatedModelRenderer.render(animatedPlayer);
-		animatedModelShader.stop();
-		
-		terrainShader.start();
-		terrainShader.loadSkyColour(RED, GREEN, BLUE);
-		terrainShader.loadLights(lights);
-		terrainShader.loadViewMatrix(camera);
-		terrainRenderer.render(terrains);
-		terrainShader.stop();
+		renderer.submit(entities, renderQueue, camera.getPosition());
+		animatedModelRenderer.submit(animatedModels, renderQueue, camera.getPosition());
+		terrainRenderer.submit(terrains, renderQueue, camera);
+		guiRenderer.submit(guis, renderQueue);
+		renderQueue.execute();
+		lastAnimatedModels = animatedModels.size();
 		
 		terrains.clear();
+		animatedModels.clear();
+		guis.clear();
 		// clearing hashMap
 		entities.clear();
 		
+		lastEntitiesSubmitted = entitiesSubmitted;
+		lastEntitiesCulled = entitiesCulled;
+		entitiesSubmitted = 0;
+		entitiesCulled = 0;
+		
+	}
+	
+	/**
+	 * Renders the player controlled by the viewer along with the rest of the frame.
+	 * @param animatedPlayer - the player controlled by the viewer.
+	 */
+	public void render(List<Light> lights, Camera camera, AnimatedModel animatedPlayer) {
+		processAnimatedModel(animatedPlayer);
+		render(lights, camera);
+	}
+	
+	/**
+	 * Adds a animated model to be animated and rendered this frame. Has to be done every frame, 
+	 * like the entities and terrains.
+	 * @param animatedModel
+	 */
+	public void processAnimatedModel(AnimatedModel animatedModel) {
+		animatedModels.add(animatedModel);
+	}
+	
+	/**
+	 * Adds a GUI to be drawn on top of this frame. Has to be done every frame, the GUIs are drawn in the
+	 * order they are added.
+	 * @param gui
+	 */
+	public void processGui(GuiTexture gui) {
+		guis.add(gui);
 	}
 	
 	/**
@@ -162,11 +241,47 @@ public class MasterRenderer {
 	}
 	
 	/**
-	 * Sort and put in entities for the HashMap
+	 * Calculates the view frustum for this frame. Has to be called before the entities of the frame
+	 * are processed, else they are culled against the frustum of the last frame.
+	 * @param camera
+	 */
+	public void updateFrustum(Camera camera) {
+		viewMatrix = Maths.createViewMatrix(camera);
+		frustum.update(projectionMatrix, viewMatrix);
+	}
+	
+	/**
+	 * Sort and put in entities for the HashMap.
+	 * Entities whose bounding sphere is completely outside the view frustum are skipped.
 	 */
 	public void processEntity(Entity entity) {
 		// identifying the model
 		TexturedModel entityModel = entity.getModel();
+		entitiesSubmitted++;
+		if(!isVisible(entity)) {
+			entitiesCulled++;
+			return;
+		}
+		addToBatch(entityModel, entity);
+	}
+	
+	/**
+	 * Puts in entities that have already been culled against the frustum of this frame, like the result of
+	 * EntityGrid.queryFrustum, so they aren't tested a second time. The entities the index threw away are
+	 * counted as submitted and culled, the same as if they had gone through processEntity.
+	 * @param visible - the entities the index found inside the frustum
+	 * @param culled - the number of entities the index left out
+	 */
+	public void processVisibleEntities(List<Entity> visible, int culled) {
+		entitiesSubmitted += visible.size() + culled;
+		entitiesCulled += culled;
+		for(int i = 0; i < visible.size(); i++) {
+			Entity entity = visible.get(i);
+			addToBatch(entity.getModel(), entity);
+		}
+	}
+	
+	private void addToBatch(TexturedModel entityModel, Entity entity) {
 		List<Entity> batch = entities.get(entityModel);
 		if(batch != null) {
 			batch.add(entity);
@@ -176,7 +291,182 @@ public class MasterRenderer {
 			newBatch.add(entity);
 			entities.put(entityModel, newBatch);
 		}
-		
+	}
+	
+	/**
+	 * Test the bounding sphere of the entity against the frustum. The radius of the model is scaled
+	 * with the entity, and models without a known radius are always drawn.
+	 */
+	private boolean isVisible(Entity entity) {
+		float radius = entity.getModel().getRawModel().getBoundingRadius();
+		if(!frustumCulling || viewMatrix == null || radius <= 0) {
+			return true;
+		}
+		Vector3f position = entity.getPosition();
+		return frustum.sphereInFrustum(position.x, position.y, position.z, radius * entity.getScale());
+	}
+	
+	/**
+	 * @return the view frustum of the current frame, as calculated by updateFrustum
+	 */
+	public Frustum getFrustum() {
+		return frustum;
+	}
+	
+	public void setFrustumCulling(boolean frustumCulling) {
+		this.frustumCulling = frustumCulling;
+	}
+	
+	public boolean isFrustumCulling() {
+		return frustumCulling;
+	}
+	
+	/**
+	 * @return the number of entities passed to processEntity or processVisibleEntities in the last frame,
+	 * including the ones a spatial index culled
+	 */
+	public int getEntitiesSubmitted() {
+		return lastEntitiesSubmitted;
+	}
+	
+	/**
+	 * @return the number of entities that were outside the view frustum in the last frame, culled here or by
+	 * the spatial index that gave them to processVisibleEntities
+	 */
+	public int getEntitiesCulled() {
+		return lastEntitiesCulled;
+	}
+	
+	/**
+	 * Switches the entities between instanced rendering, one draw call per textured model, 
+	 * and the old way of one draw call per entity.
+	 */
+	public void setInstancedRendering(boolean instanced) {
+		renderer.setUseInstancing(instanced);
+	}
+	
+	public boolean isInstancedRendering() {
+		return renderer.isUseInstancing();
+	}
+	
+	/**
+	 * @return the number of texture binds used to render the entities in the last frame
+	 */
+	public int getEntityTextureBinds() {
+		return renderer.getTextureBinds();
+	}
+	
+	/**
+	 * @return the number of draw calls used to render the entities in the last frame
+	 */
+	public int getEntityDrawCalls() {
+		return renderer.getDrawCalls();
+	}
+	
+	/**
+	 * @return the number of animated models drawn in the last frame
+	 */
+	public int getAnimatedModelsRendered() {
+		return lastAnimatedModels;
+	}
+	
+	/**
+	 * @return the number of glUniform calls used to draw the animated models in the last frame
+	 */
+	public int getAnimatedUniformUploads() {
+		return animatedModelRenderer.getUniformUploads();
+	}
+	
+	/**
+	 * Switches the joint transforms of the animated models between one upload of the whole palette per 
+	 * model, and the old way of one upload per joint.
+	 */
+	public void setJointPaletteUpload(boolean paletteUpload) {
+		animatedModelShader.setPaletteUpload(paletteUpload);
+	}
+	
+	/**
+	 * Switches the animated models between matrix skinning and dual quaternion skinning, which uploads
+	 * half as much per model and keeps the volume around bent joints.
+	 */
+	public void setDualQuaternionSkinning(boolean dualQuaternionSkinning) {
+		animatedModelShader.setDualQuaternionSkinning(dualQuaternionSkinning);
+	}
+	
+	/**
+	 * @return the number of draws the render queue executed in the last frame
+	 */
+	public int getQueuedDraws() {
+		return renderQueue.getDraws();
+	}
+	
+	/**
+	 * @return the number of program, texture, VAO and culling changes made in the last frame
+	 */
+	public int getStateChangesIssued() {
+		return renderQueue.getStateChangesIssued();
+	}
+	
+	/**
+	 * @return the number of program, texture, VAO and culling changes skipped in the last frame, because the
+	 * draw before already had the same state
+	 */
+	public int getStateChangesElided() {
+		return renderQueue.getStateChangesElided();
+	}
+	
+	/**
+	 * @return the number of changes skipped in the last frame of one state, one of the RenderQueue.STATE constants
+	 */
+	public int getStateChangesElided(int state) {
+		return renderQueue.getElided(state);
+	}
+	
+	/**
+	 * @return the number of state changing OpenGL calls that went through the GlStateCache in the last frame
+	 */
+	public int getGlCallsIssued() {
+		return GlStateCache.get().getIssuedCalls();
+	}
+	
+	/**
+	 * @return the number of state changing OpenGL calls the GlStateCache skipped in the last frame, because the
+	 * state already was right
+	 */
+	public int getGlCallsSuppressed() {
+		return GlStateCache.get().getSuppressedCalls();
+	}
+	
+	/**
+	 * @return the number of glUniform calls made by all the shaders in the last frame
+	 */
+	public int getUniformUploads() {
+		return shaderProgram.getFrameUniformUploads();
+	}
+	
+	/**
+	 * @return the number of uniform loads skipped in the last frame, because the uniform already had the value
+	 */
+	public int getUniformUploadsSkipped() {
+		return shaderProgram.getFrameUniformUploadsSkipped();
+	}
+	
+	/**
+	 * @return the number of terrain triangles drawn in the last frame
+	 */
+	public int getTerrainTriangles() {
+		return terrainRenderer.getTriangles();
+	}
+	
+	/**
+	 * @return the number of terrain chunks drawn in the last frame
+	 */
+	public int getTerrainChunkDraws() {
+		return terrainRenderer.getChunkDraws();
+	}
+	
+	public void setTerrainLodDistance(float lodDistance) {
+		terrainRenderer.setLodDistance(lodDistance);
 	}
 	
 	/**
@@ -185,7 +475,10 @@ public class MasterRenderer {
 	public void cleanUp() {
 		shader.cleanUp();
 		animatedModelShader.cleanUp();
+		poseEvaluator.cleanUp();
 		terrainShader.cleanUp();
+		guiRenderer.cleanUp();
+		sceneData.cleanUp();
 	}
 	
 	/**
@@ -193,7 +486,7 @@ public class MasterRenderer {
 	 * Clearing color and depth buffers.
 	 */
 	public void prepare() {
-		GL11.glEnable(GL11.GL_DEPTH_TEST);
+		GlStateCache.get().enable(GL11.GL_DEPTH_TEST);
 		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
 		GL11.glClearColor(RED, GREEN, BLUE, 1);
 	}
@@ -218,20 +511,5 @@ public class MasterRenderer {
 		
 	}
 	
-	private void createAnimatedProjectionMatrix() {
-		float aspectRatio = (float) Display.getWidth() / (float) Display.getHeight();
-		float y_scale = (float) ((1f / Math.tan(Math.toRadians(FOV / 2f))) * aspectRatio);
-		float x_scale = y_scale / aspectRatio;
-		float frustum_length = FAR_PLANE - NEAR_PLANE;
-		
-		animatedProjectionMatrix = new Matrix4f();
-		animatedProjectionMatrix.m00 = x_scale;
-		animatedProjectionMatrix.m11 = y_scale;
-		animatedProjectionMatrix.m22 = -((FAR_PLANE + NEAR_PLANE) / frustum_length);
-		animatedProjectionMatrix.m23 = -1;
-		animatedProjectionMatrix.m32 = -(( 2 * NEAR_PLANE * FAR_PLANE) / frustum_length);
-		animatedProjectionMatrix.m33 = 0;
-		
-	}
 
 }
@@ -0,0 +1,354 @@
+package renderEngine;
+
+/**
+ * Every draw of a frame is submitted to the queue with a 64 bit sort key, and the queue draws them sorted by key
+ * instead of in the order the renderers happen to loop through them. The key holds the pass, the shader, if the
+ * model is drawn without back face culling, the texture, the VAO and the depth:
+ *
+ *	63-60 pass | 59-56 shader | 55 no culling | 54-40 texture | 39-24 VAO | 23-0 depth
+ *
+ * So every draw with the same shader comes after each other, inside that every draw with the same texture and so
+ * on, and the closest models are drawn first. The GUI pass is blended and must be drawn in the order it was
+ * submitted, so there the depth is the order, and comes before the texture:
+ *
+ *	63-60 pass | 59-56 shader | 55 no culling | 54-31 order | 30-16 texture | 15-0 VAO
+ *
+ * The keys are sorted with a radix sort, without creating any objects. When the queue is executed the program,
+ * texture, VAO and culling are only changed when the draw needs something else than the draw before it, and the
+ * changes that were skipped are counted.
+ */
+public class RenderQueue {
+
+	public static final int PASS_OPAQUE = 0;
+	public static final int PASS_GUI = 1;
+
+	// The states the queue keeps track of, for getIssued and getElided
+	public static final int STATE_PROGRAM = 0;
+	public static final int STATE_TEXTURE = 1;
+	public static final int STATE_VAO = 2;
+	public static final int STATE_CULLING = 3;
+	private static final int STATE_COUNT = 4;
+
+	public static final int MAX_SHADERS = 16;
+	public static final int MAX_TEXTURE = 0x7FFF;
+	public static final int MAX_VAO = 0xFFFF;
+	public static final int MAX_DEPTH = 0xFFFFFF;
+
+	private static final int PASS_SHIFT = 60;
+	private static final int SHADER_SHIFT = 56;
+	private static final int NO_CULLING_SHIFT = 55;
+	private static final int TEXTURE_SHIFT = 40;
+	private static final int VAO_SHIFT = 24;
+	private static final int ORDER_SHIFT = 31;
+	private static final int ORDERED_TEXTURE_SHIFT = 16;
+
+	/**
+	 * Draws the items of one shader. The queue calls begin when it gets to the first draw of the shader, and end
+	 * when it moves on to another shader. In between bindTexture and bindModel are only called when the texture or
+	 * VAO of the draw is different from the one before it. The item is what the renderer submitted the key with,
+	 * usually a index into its own list of the frame.
+	 */
+	public interface Renderer {
+		void begin();
+		void bindTexture(int item);
+		void bindModel(int item);
+		void draw(int item);
+		void end();
+	}
+
+	private final float farPlane;
+	private final Renderer[] renderers = new Renderer[MAX_SHADERS];
+
+	// The keys and items of the frame, and the same again for the radix sort to sort into
+	private long[] keys = new long[256];
+	private int[] items = new int[256];
+	private long[] sortedKeys = new long[256];
+	private int[] sortedItems = new int[256];
+	private int size = 0;
+	private final int[] counts = new int[256];
+
+	// The GUI draws of the frame so far, to keep them in order
+	private int order = 0;
+
+	// What was issued and skipped in the last frame
+	private final int[] issued = new int[STATE_COUNT];
+	private final int[] elided = new int[STATE_COUNT];
+	private int lastDraws = 0;
+
+	// When false the draws are executed in the order they were submitted, to compare against
+	private boolean sorting = true;
+
+	/**
+	 * @param farPlane - the distance the depth of the keys goes up to, further away than this is all the same
+	 */
+	public RenderQueue(float farPlane) {
+		this.farPlane = farPlane;
+	}
+
+	/**
+	 * Sets the renderer that draws everything submitted with the shader.
+	 */
+	public void setRenderer(int shader, Renderer renderer) {
+		renderers[shader] = renderer;
+	}
+
+	/**
+	 * Creates the key of a draw in the opaque pass.
+	 * @param noCulling - true for models with transparency, that are seen from behind
+	 * @param distance - the distance from the camera to the model
+	 */
+	public long createKey(int shader, boolean noCulling, int texture, int vao, float distance) {
+		return ((long) PASS_OPAQUE << PASS_SHIFT) | ((long) shader << SHADER_SHIFT) | (noCulling ? 1L << NO_CULLING_SHIFT : 0)
+				| ((long) (texture & MAX_TEXTURE) << TEXTURE_SHIFT) | ((long) (vao & MAX_VAO) << VAO_SHIFT) | quantizeDepth(distance);
+	}
+
+	/**
+	 * Creates the key of a GUI quad. They are drawn in the order the keys are created, after everything else.
+	 */
+	public long createGuiKey(int shader, int texture, int vao) {
+		int position = Math.min(order++, MAX_DEPTH);
+		return ((long) PASS_GUI << PASS_SHIFT) | ((long) shader << SHADER_SHIFT) | ((long) position << ORDER_SHIFT)
+				| ((long) (texture & MAX_TEXTURE) << ORDERED_TEXTURE_SHIFT) | (vao & MAX_VAO);
+	}
+
+	private long quantizeDepth(float distance) {
+		if(distance <= 0) {
+			return 0;
+		}
+		return distance >= farPlane ? MAX_DEPTH : (long) (distance / farPlane * MAX_DEPTH);
+	}
+
+	public static int getPass(long key) {
+		return (int) (key >>> PASS_SHIFT);
+	}
+
+	public static int getShader(long key) {
+		return (int) (key >>> SHADER_SHIFT) & (MAX_SHADERS - 1);
+	}
+
+	public static boolean isNoCulling(long key) {
+		return ((key >>> NO_CULLING_SHIFT) & 1) != 0;
+	}
+
+	public static int getTexture(long key) {
+		int shift = getPass(key) == PASS_GUI ? ORDERED_TEXTURE_SHIFT : TEXTURE_SHIFT;
+		return (int) (key >>> shift) & MAX_TEXTURE;
+	}
+
+	public static int getVao(long key) {
+		int shift = getPass(key) == PASS_GUI ? 0 : VAO_SHIFT;
+		return (int) (key >>> shift) & MAX_VAO;
+	}
+
+	/**
+	 * Adds a draw to the frame.
+	 * @param key - from createKey or createGuiKey
+	 * @param item - given back to the renderer of the shader when the draw is executed
+	 */
+	public void submit(long key, int item) {
+		if(size == keys.length) {
+			grow(size * 2);
+		}
+		keys[size] = key;
+		items[size] = item;
+		size++;
+	}
+
+	private void grow(int capacity) {
+		long[] newKeys = new long[capacity];
+		int[] newItems = new int[capacity];
+		System.arraycopy(keys, 0, newKeys, 0, size);
+		System.arraycopy(items, 0, newItems, 0, size);
+		keys = newKeys;
+		items = newItems;
+		sortedKeys = new long[capacity];
+		sortedItems = new int[capacity];
+	}
+
+	/**
+	 * Sorts the draws by key, one byte at a time from the lowest. Each round keeps the order of the round before
+	 * for equal bytes, so draws with the same key stay in the order they were submitted. Bytes that are the same
+	 * in every key, like the pass in a frame without GUI, are skipped.
+	 */
+	public void sort() {
+		for(int shift = 0; shift < 64; shift += 8) {
+			for(int i = 0; i < counts.length; i++) {
+				counts[i] = 0;
+			}
+			for(int i = 0; i < size; i++) {
+				counts[(int) (keys[i] >>> shift) & 0xFF]++;
+			}
+			if(size == 0 || counts[(int) (keys[0] >>> shift) & 0xFF] == size) {
+				continue;
+			}
+			// where every byte value starts in the sorted arrays
+			int start = 0;
+			for(int i = 0; i < 256; i++) {
+				int count = counts[i];
+				counts[i] = start;
+				start += count;
+			}
+			for(int i = 0; i < size; i++) {
+				int position = counts[(int) (keys[i] >>> shift) & 0xFF]++;
+				sortedKeys[position] = keys[i];
+				sortedItems[position] = items[i];
+			}
+			long[] swapKeys = keys;
+			keys = sortedKeys;
+			sortedKeys = swapKeys;
+			int[] swapItems = items;
+			items = sortedItems;
+			sortedItems = swapItems;
+		}
+	}
+
+	/**
+	 * Sorts the draws and hands them to the renderers of their shaders, then empties the queue for the next frame.
+	 * Culling is turned back on at the end, the way the rest of the game expects it.
+	 */
+	public void execute() {
+		if(sorting) {
+			sort();
+		}
+		for(int i = 0; i < STATE_COUNT; i++) {
+			issued[i] = 0;
+			elided[i] = 0;
+		}
+		Renderer current = null;
+		int currentShader = -1;
+		int currentTexture = -1;
+		int currentVao = -1;
+		// culling is on when the frame starts
+		boolean culling = true;
+		for(int i = 0; i < size; i++) {
+			long key = keys[i];
+			int shader = getShader(key);
+			if(shader != currentShader) {
+				if(current != null) {
+					current.end();
+				}
+				current = renderers[shader];
+				currentShader = shader;
+				// the textures and VAO are set up again for the new program
+				currentTexture = -1;
+				currentVao = -1;
+				current.begin();
+				issued[STATE_PROGRAM]++;
+			} else {
+				elided[STATE_PROGRAM]++;
+			}
+			boolean cull = !isNoCulling(key);
+			if(cull != culling) {
+				applyCulling(cull);
+				culling = cull;
+				issued[STATE_CULLING]++;
+			} else {
+				elided[STATE_CULLING]++;
+			}
+			int texture = getTexture(key);
+			if(texture != currentTexture) {
+				current.bindTexture(items[i]);
+				currentTexture = texture;
+				issued[STATE_TEXTURE]++;
+			} else {
+				elided[STATE_TEXTURE]++;
+			}
+			int vao = getVao(key);
+			if(vao != currentVao) {
+				current.bindModel(items[i]);
+				currentVao = vao;
+				issued[STATE_VAO]++;
+			} else {
+				elided[STATE_VAO]++;
+			}
+			current.draw(items[i]);
+		}
+		if(current != null) {
+			current.end();
+		}
+		if(!culling) {
+			applyCulling(true);
+		}
+		lastDraws = size;
+		size = 0;
+		order = 0;
+	}
+
+	/**
+	 * Turns back face culling on or off.
+	 */
+	protected void applyCulling(boolean culling) {
+		if(culling) {
+			MasterRenderer.enableCulling();
+		} else {
+			MasterRenderer.disableCulling();
+		}
+	}
+
+	public void setSorting(boolean sorting) {
+		this.sorting = sorting;
+	}
+
+	public boolean isSorting() {
+		return sorting;
+	}
+
+	/**
+	 * @return the number of draws submitted in the queue right now
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public long getKey(int index) {
+		return keys[index];
+	}
+
+	public int getItem(int index) {
+		return items[index];
+	}
+
+	/**
+	 * @return the number of draws executed in the last frame
+	 */
+	public int getDraws() {
+		return lastDraws;
+	}
+
+	/**
+	 * @return the number of times the state was changed in the last frame, one of the STATE constants
+	 */
+	public int getIssued(int state) {
+		return issued[state];
+	}
+
+	/**
+	 * @return the number of times the state was already right and the change was skipped in the last frame
+	 */
+	public int getElided(int state) {
+		return elided[state];
+	}
+
+	/**
+	 * @return all the state changes skipped in the last frame
+	 */
+	public int getStateChangesElided() {
+		int total = 0;
+		for(int count : elided) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * @return all the state changes made in the last frame
+	 */
+	public int getStateChangesIssued() {
+		int total = 0;
+		for(int count : issued) {
+			total += count;
+		}
+		return total;
+	}
+
+}
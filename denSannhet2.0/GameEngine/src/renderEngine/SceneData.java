@@ -0,0 +1,107 @@
+package renderEngine;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Light;
+
+/**
+ * The uniforms that are the same for every shader in a frame, the camera, the sky colour and the lights, kept
+ * in one uniform buffer. It is filled once per frame and bound to binding point BINDING, where the entity,
+ * animated model and terrain shaders all read it as the uniform block SceneData:
+ *
+ *	layout(std140) uniform SceneData {
+ *		mat4 projectionMatrix;		// offset 0
+ *		mat4 viewMatrix;			// offset 64
+ *		vec4 skyColour;				// offset 128, w not used
+ *		vec4 lightPosition[10];		// offset 144, w not used
+ *		vec4 lightColour[10];		// offset 304, w not used
+ *		vec4 attenuation[10];		// offset 464, w not used
+ *	};
+ *
+ * std140 gives every vec3 and every element of an array the room of a vec4, so the vectors are declared as vec4
+ * to make the offsets the same as the layout. The block has to be declared exactly like this in every shader.
+ */
+public class SceneData {
+
+	public static final String BLOCK_NAME = "SceneData";
+	public static final int BINDING = 0;
+	public static final int MAX_LIGHTS = 10;
+
+	// The offsets in floats
+	private static final int PROJECTION = 0;
+	private static final int VIEW = 16;
+	private static final int SKY_COLOUR = 32;
+	private static final int LIGHT_POSITION = 36;
+	private static final int LIGHT_COLOUR = LIGHT_POSITION + MAX_LIGHTS * 4;
+	private static final int ATTENUATION = LIGHT_COLOUR + MAX_LIGHTS * 4;
+	public static final int SIZE = ATTENUATION + MAX_LIGHTS * 4;
+
+	private final FloatBuffer data = BufferUtils.createFloatBuffer(SIZE);
+	private final int uboID;
+
+	/**
+	 * Creates the uniform buffer and binds it to its binding point, where it stays for the whole game.
+	 */
+	public SceneData() {
+		uboID = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, uboID);
+		GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, SIZE * 4, GL15.GL_DYNAMIC_DRAW);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+		GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, BINDING, uboID);
+	}
+
+	/**
+	 * Fills in the data of the frame and loads it to the uniform buffer with one call.
+	 * @param lights - the first MAX_LIGHTS are used, the rest of the array is filled with lights that do nothing
+	 */
+	public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, float red, float green, float blue,
+			List<Light> lights) {
+		data.clear();
+		data.position(PROJECTION);
+		projectionMatrix.store(data);
+		data.position(VIEW);
+		viewMatrix.store(data);
+		data.position(SKY_COLOUR);
+		data.put(red).put(green).put(blue).put(1);
+		for(int i = 0; i < MAX_LIGHTS; i++) {
+			if(i < lights.size()) {
+				Light light = lights.get(i);
+				putVector(LIGHT_POSITION + i * 4, light.getPosition());
+				putVector(LIGHT_COLOUR + i * 4, light.getColour());
+				putVector(ATTENUATION + i * 4, light.getAttentuation());
+			}else {
+				putVector(LIGHT_POSITION + i * 4, 0, 0, 0);
+				putVector(LIGHT_COLOUR + i * 4, 0, 0, 0);
+				putVector(ATTENUATION + i * 4, 1, 0, 0);
+			}
+		}
+		data.clear();
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, uboID);
+		GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	private void putVector(int offset, Vector3f vector) {
+		putVector(offset, vector.x, vector.y, vector.z);
+	}
+
+	private void putVector(int offset, float x, float y, float z) {
+		data.put(offset, x);
+		data.put(offset + 1, y);
+		data.put(offset + 2, z);
+		data.put(offset + 3, 0);
+	}
+
+	public void cleanUp() {
+		GL15.glDeleteBuffers(uboID);
+	}
+
+}
@@ -1,68 +1,277 @@
 package renderEngine;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL32;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
+import entities.Camera;
 import entities.Entity;
 import models.RawModel;
 import models.TexturedModel;
 import shaders.TerrainShader;
 import terrains.Terrain;
+import terrains.TerrainChunks;
 import textures.ModelTexture;
 import textures.TerrainTexturePack;
 import toolbox.Maths;
 
-public class TerrainRenderer {
+public class TerrainRenderer implements RenderQueue.Renderer {
+	
+	/**
+	 * Chunks closer to the camera than this are drawn at full detail. The level goes up by one every time
+	 * the distance doubles, so a chunk at 2 * LOD_DISTANCE uses every 4th vertex.
+	 */
+	private static final float DEFAULT_LOD_DISTANCE = 100;
 	
 	private TerrainShader shader;
+	private Loader loader;
+	private GlStateCache glState = GlStateCache.get();
+	
+	private float lodDistance = DEFAULT_LOD_DISTANCE;
+	
+	// The chunk layout for each size of terrain, and the index buffers that have been built for the chunks so far
+	private Map<Integer, TerrainChunks> layouts = new HashMap<Integer, TerrainChunks>();
+	private Map<Long, ChunkIndices> indexBuffers = new HashMap<Long, ChunkIndices>();
+	
+	// The flat grid for each size of terrain, shared by all the terrains that are displaced on the GPU
+	private Map<Integer, RawModel> grids = new HashMap<Integer, RawModel>();
 	
-	public TerrainRenderer(TerrainShader shader, Matrix4f projectionMatrix) {
+	// The terrains of the frame, the items submitted to the render queue are indices into it
+	private List<Terrain> frameTerrains;
+	private Vector3f cameraPosition;
+	
+	// The level of every chunk of the terrain being rendered, with a ring of chunks around it for the neighbours
+	private int[] levels = new int[0];
+	
+	// Metrics of the last frame
+	private int triangles = 0;
+	private int chunkDraws = 0;
+	
+	public TerrainRenderer(TerrainShader shader, Loader loader) {
 		this.shader = shader;
+		this.loader = loader;
 		shader.start();
-		shader.loadProjectionMatrix(projectionMatrix);
 		// we only need to connect them once, and they will stay connected to the texturePack class for whole run of the game
 		shader.connectTextureUnits();
+		shader.loadTerrainSize(Terrain.SIZE);
 		shader.stop();
 	}
 	
 	/**
-	 *  Loop through all the terrains then prepare it, render it and then unbind it
+	 *  Submits every terrain to the render queue as one draw. All the chunks of a terrain share its VAO and
+	 *  textures, so they are drawn inside the draw of the terrain.
 	 * @param terrains
+	 * @param queue
+	 * @param camera - the level of detail of each chunk is picked by its distance to the camera
 	 */
-	public void render(List<Terrain> terrains) {
-		for(Terrain terrain:terrains) {
-			prepareTerrain(terrain);
-			loadModelMatrix(terrain);
-			// run the final texture model, "draw"
-			GL11.glDrawElements(GL11.GL_TRIANGLES, terrain.getModel().getVertexCount(), 
-					GL11.GL_UNSIGNED_INT, 0);
-			unbindTexturedModel();
+	public void submit(List<Terrain> terrains, RenderQueue queue, Camera camera) {
+		frameTerrains = terrains;
+		cameraPosition = camera.getPosition();
+		triangles = 0;
+		chunkDraws = 0;
+		for(int i = 0; i < terrains.size(); i++) {
+			Terrain terrain = terrains.get(i);
+			float dx = terrain.getX() + Terrain.SIZE / 2 - cameraPosition.x;
+			float dz = terrain.getZ() + Terrain.SIZE / 2 - cameraPosition.z;
+			long key = queue.createKey(MasterRenderer.TERRAIN_SHADER, false, terrain.getBlendMap().getTextureID(),
+					getVao(terrain), (float) Math.sqrt(dx * dx + dz * dz));
+			queue.submit(key, i);
 		}
 	}
-	 
+	
 	/**
-	 * Bind the VAO and Texture.
-	 * We also load up damper and reflectivity onto texture, before binding it
-	 * @param model
-	 */
-	private void  prepareTerrain(Terrain terrain) {
-		RawModel rawModel = terrain.getModel();
-		// Bind the model(VAO)
-		GL30.glBindVertexArray(rawModel.getVaoID());
-		GL20.glEnableVertexAttribArray(0);	
-		GL20.glEnableVertexAttribArray(1);	
-		GL20.glEnableVertexAttribArray(2);
-		bindTextures(terrain);
+	 * @return the VAO the terrain is drawn with, the shared flat grid for a displaced terrain
+	 */
+	private int getVao(Terrain terrain) {
+		if(terrain.isDisplaced()) {
+			return getGrid(terrain.getVertexCount()).getVaoID();
+		}
+		return terrain.getModel().getVaoID();
+	}
+	
+	@Override
+	public void begin() {
+		shader.start();
 	// Load up shine settings
 		shader.loadShineVariables(1, 0);
 	}
 	
+	/**
+	 * The key of a terrain has the blend map as its texture, and terrains with the same blend map share the texture
+	 * pack, so the textures are only bound again when the blend map changes.
+	 */
+	@Override
+	public void bindTexture(int item) {
+		bindTextures(frameTerrains.get(item));
+	}
+	
+	/**
+	 * Bind the VAO. A displaced terrain binds the shared flat grid instead of a model of its own.
+	 */
+	@Override
+	public void bindModel(int item) {
+		Terrain terrain = frameTerrains.get(item);
+		glState.bindVertexArray(getVao(terrain));
+		glState.enableVertexAttribArray(0);
+		if(!terrain.isDisplaced()) {
+			glState.enableVertexAttribArray(1);	
+			glState.enableVertexAttribArray(2);
+		}
+	}
+	
+	/**
+	 * Loads the height texture of a displaced terrain, and renders the terrain chunk by chunk.
+	 */
+	@Override
+	public void draw(int item) {
+		Terrain terrain = frameTerrains.get(item);
+		if(terrain.isDisplaced()) {
+			glState.bindTexture(5, GL11.GL_TEXTURE_2D, terrain.getHeightTexture());
+			shader.loadDisplaced(true);
+			shader.loadHeightField(terrain.getHeights());
+		} else {
+			shader.loadDisplaced(false);
+		}
+		loadModelMatrix(terrain);
+		renderChunks(terrain, cameraPosition);
+	}
+	
+	@Override
+	public void end() {
+		glState.bindVertexArray(0);
+		shader.stop();
+	}
+	
+	/**
+	 * Picks the level of every chunk, and draws each chunk with the index buffer for its level and the levels
+	 * of its neighbours. The neighbours outside the terrain are given the level they get in the next terrain,
+	 * see TerrainChunks.chooseLevels, so the edges between two terrains are stitched the same way from both sides.
+	 */
+	private void renderChunks(Terrain terrain, Vector3f cameraPosition) {
+		TerrainChunks chunks = getLayout(terrain.getVertexCount());
+		int count = chunks.getChunksPerSide();
+		int side = count + 2;
+		if(levels.length < side * side) {
+			levels = new int[side * side];
+		}
+		chunks.chooseLevels(terrain.getX(), terrain.getZ(), Terrain.SIZE, cameraPosition.x, cameraPosition.z,
+				lodDistance, levels);
+		int stride = chunks.getVertexCount();
+		for(int cz = 0; cz < count; cz++) {
+			for(int cx = 0; cx < count; cx++) {
+				int index = (cz + 1) * side + cx + 1;
+				int level = levels[index];
+				ChunkIndices indices = getIndices(stride, chunks.getChunkSize(cx), chunks.getChunkSize(cz), level,
+						Math.max(level, levels[index - side]), Math.max(level, levels[index + 1]),
+						Math.max(level, levels[index + side]), Math.max(level, levels[index - 1]));
+				GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indices.vboID);
+				GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, indices.indexCount, GL11.GL_UNSIGNED_INT, 0,
+						chunks.getBaseVertex(cx, cz));
+				triangles += indices.indexCount / 3;
+				chunkDraws++;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the flat grid for terrains with the given number of vertices along each side, and builds it the
+	 * first time. Every vertex only has its column and row, in the same order as the vertices of a terrain
+	 * mesh, so the index buffers of the chunks work for both.
+	 */
+	private RawModel getGrid(int vertexCount) {
+		RawModel grid = grids.get(vertexCount);
+		if(grid == null) {
+			float[] positions = new float[vertexCount * vertexCount * 2];
+			int pointer = 0;
+			for(int row = 0; row < vertexCount; row++) {
+				for(int column = 0; column < vertexCount; column++) {
+					positions[pointer++] = column;
+					positions[pointer++] = row;
+				}
+			}
+			grid = loader.loadToVAO(positions);
+			grids.put(vertexCount, grid);
+		}
+		return grid;
+	}
+	
+	private TerrainChunks getLayout(int vertexCount) {
+		TerrainChunks chunks = layouts.get(vertexCount);
+		if(chunks == null) {
+			chunks = new TerrainChunks(vertexCount);
+			layouts.put(vertexCount, chunks);
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Gets the index buffer of a chunk, and builds it the first time that combination of size and levels is used.
+	 * The levels of the edges are already the coarser level of the chunk and its neighbour.
+	 */
+	private ChunkIndices getIndices(int stride, int width, int depth, int level, 
+			int topLevel, int rightLevel, int bottomLevel, int leftLevel) {
+		long key = ((long) stride << 36) | ((long) width << 28) | ((long) depth << 20) | (level << 16)
+				| (topLevel << 12) | (rightLevel << 8) | (bottomLevel << 4) | leftLevel;
+		ChunkIndices indices = indexBuffers.get(key);
+		if(indices == null) {
+			int[] data = TerrainChunks.buildIndices(stride, width, depth, 1 << level, 
+					1 << topLevel, 1 << rightLevel, 1 << bottomLevel, 1 << leftLevel);
+			indices = new ChunkIndices(loader.loadIndexBuffer(data), data.length);
+			indexBuffers.put(key, indices);
+		}
+		return indices;
+	}
+	
+	/**
+	 * Sets the distance where the chunks start to lose detail. Setting it very high draws everything at full detail.
+	 * @param lodDistance
+	 */
+	public void setLodDistance(float lodDistance) {
+		this.lodDistance = lodDistance;
+	}
+	
+	public float getLodDistance() {
+		return lodDistance;
+	}
+	
+	/**
+	 * @return the number of triangles drawn for the terrains in the last frame
+	 */
+	public int getTriangles() {
+		return triangles;
+	}
+	
+	/**
+	 * @return the number of chunks drawn in the last frame, one draw call each
+	 */
+	public int getChunkDraws() {
+		return chunkDraws;
+	}
+	
+	/**
+	 * @return the number of index buffers built for the different chunk sizes and levels
+	 */
+	public int getIndexBufferCount() {
+		return indexBuffers.size();
+	}
+	 
+	/**
+	 * @return the bytes taken up on the GPU by the flat grids of the displaced terrains, once for each size
+	 */
+	public long getGridSizeInBytes() {
+		long bytes = 0;
+		for(RawModel grid:grids.values()) {
+			bytes += grid.getVertexCount() * 2L * 4;
+		}
+		return bytes;
+	}
+	 
 	/**
 	 *  Binding the 4 textures that consist within the texturePack class, 
 	 *  then binding the blendMap of the current terrain.
@@ -71,30 +280,15 @@ public class TerrainRenderer {
 	private void bindTextures(Terrain terrain) {
 		TerrainTexturePack texturePack = terrain.getTexturePack();
 		// background Texture
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getBackgroundTexture().getTextureID());
+		glState.bindTexture(0, GL11.GL_TEXTURE_2D, texturePack.getBackgroundTexture().getTextureID());
 		// texture 1
-		GL13.glActiveTexture(GL13.GL_TEXTURE1);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getrTexture().getTextureID());
+		glState.bindTexture(1, GL11.GL_TEXTURE_2D, texturePack.getrTexture().getTextureID());
 		// texture 2
-		GL13.glActiveTexture(GL13.GL_TEXTURE2);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getgTexture().getTextureID());
+		glState.bindTexture(2, GL11.GL_TEXTURE_2D, texturePack.getgTexture().getTextureID());
 		// texture 3
-		GL13.glActiveTexture(GL13.GL_TEXTURE3);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturePack.getbTexture().getTextureID());
+		glState.bindTexture(3, GL11.GL_TEXTURE_2D, texturePack.getbTexture().getTextureID());
 		// blendMap
-		GL13.glActiveTexture(GL13.GL_TEXTURE4);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, terrain.getBlendMap().getTextureID());
-	}
-	
-	/*
-	 * Un-bind all the texture related to the terrain
-	 */
-	private void unbindTexturedModel() {
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL30.glBindVertexArray(0);
+		glState.bindTexture(4, GL11.GL_TEXTURE_2D, terrain.getBlendMap().getTextureID());
 	}
 	
 	private void loadModelMatrix(Terrain terrain) {
@@ -103,4 +297,17 @@ public class TerrainRenderer {
 		shader.loadTransformationMatrix(transformationMatrix);
 	}
 
+	/**
+	 * A index buffer shared by all chunks with the same size and levels.
+	 */
+	private static class ChunkIndices {
+		private final int vboID;
+		private final int indexCount;
+		
+		private ChunkIndices(int vboID, int indexCount) {
+			this.vboID = vboID;
+			this.indexCount = indexCount;
+		}
+	}
+
 }
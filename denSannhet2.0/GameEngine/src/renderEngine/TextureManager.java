@@ -0,0 +1,220 @@
+package renderEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwjgl.BufferUtils;
+
+import textures.TextureData;
+import textures.TextureHandle;
+
+	/**
+	 * Loads textures in the background, and makes sure every file is only loaded once.
+	 *
+	 * acquire() gives back a TextureHandle right away. The first time a file is asked for, the PNG is decoded on
+	 * a worker thread, and the upload is queued in the Loader. The upload is done a few rows at a time, so even
+	 * the big blend maps don't make a frame stutter, as long as the main loop calls Loader.processUploads with a
+	 * time budget every frame. Until the texture is ready the handle points to a 1x1 grey placeholder.
+	 *
+	 * Asking for the same file again gives the same handle, and only counts a extra reference. When every
+	 * reference has been given back with release(), the texture is deleted from the GPU.
+	 *
+	 * acquire and release must be called from the main thread.
+	 */
+public class TextureManager {
+
+	/**
+	 * The most bytes uploaded in one go, about 256 rows of a 1024 wide texture. Bigger textures are
+	 * uploaded in several steps, so the time budget of processUploads can be kept.
+	 */
+	private static final int MAX_UPLOAD_BYTES = 1024 * 1024;
+
+	private final Loader loader;
+	private final ExecutorService decoders;
+
+	private final Map<String, TextureHandle> handles = new HashMap<String, TextureHandle>();
+	private final int placeholderID;
+
+	// Metrics
+	private int hits = 0;
+	private int misses = 0;
+	private final AtomicInteger pending = new AtomicInteger();
+	private long bytesResident = 0;
+	private int failed = 0;
+
+	public TextureManager(Loader loader) {
+		this.loader = loader;
+		ByteBuffer grey = BufferUtils.createByteBuffer(4);
+		grey.put((byte) 128).put((byte) 128).put((byte) 128).put((byte) 255);
+		grey.flip();
+		this.placeholderID = loader.loadTexture(new TextureData(grey, 1, 1));
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		this.decoders = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "texture-decoder-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Gets the texture of the file, and starts loading it if this is the first time it is asked for.
+	 * @param fileName - path inside res, without extension
+	 * @return the handle of the texture, which points to the placeholder until the texture is ready
+	 */
+	public TextureHandle acquire(String fileName) {
+		TextureHandle handle = handles.get(fileName);
+		if(handle != null) {
+			hits++;
+			handle.addReference();
+			return handle;
+		}
+		misses++;
+		handle = new TextureHandle(fileName, placeholderID);
+		handle.addReference();
+		handles.put(fileName, handle);
+		pending.incrementAndGet();
+		decode(handle);
+		return handle;
+	}
+
+	/**
+	 * Gives back a reference to the texture. When this was the last one, the texture is deleted.
+	 * @param handle
+	 */
+	public void release(TextureHandle handle) {
+		if(handle.isReleased() || handle.removeReference() > 0) {
+			return;
+		}
+		handle.setReleased();
+		handles.remove(handle.getFileName());
+		if(handle.isResident()) {
+			bytesResident -= handle.getSizeInBytes();
+			loader.deleteTexture(handle.getID());
+		}
+	}
+
+	private void decode(final TextureHandle handle) {
+		decoders.submit(new Runnable() {
+			@Override
+			public void run() {
+				if(handle.isReleased()) {
+					pending.decrementAndGet();
+					return;
+				}
+				try {
+					TextureData data = TextureData.decode(handle.getFileName());
+					loader.queueUpload(new Upload(handle, data));
+				} catch (IOException e) {
+					System.err.println("Could not load texture " + handle.getFileName());
+					e.printStackTrace();
+					loader.queueUpload(new Runnable() {
+						@Override
+						public void run() {
+							// counted on the main thread, so the metrics don't need to be thread safe
+							failed++;
+							pending.decrementAndGet();
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Uploads one texture a few rows at a time. Every run uploads one band of rows and queues itself again,
+	 * until the whole image is on the GPU.
+	 */
+	private class Upload implements Runnable {
+		private final TextureHandle handle;
+		private final TextureData data;
+		private final int rowsPerStep;
+		private int textureID = -1;
+		private int nextRow = 0;
+
+		private Upload(TextureHandle handle, TextureData data) {
+			this.handle = handle;
+			this.data = data;
+			this.rowsPerStep = Math.max(1, MAX_UPLOAD_BYTES / (data.getWidth() * 4));
+		}
+
+		@Override
+		public void run() {
+			if(handle.isReleased()) {
+				if(textureID != -1) {
+					loader.deleteTexture(textureID);
+				}
+				pending.decrementAndGet();
+				return;
+			}
+			if(textureID == -1) {
+				textureID = loader.createTexture(data.getWidth(), data.getHeight());
+			}
+			int rows = Math.min(rowsPerStep, data.getHeight() - nextRow);
+			loader.uploadTextureRows(textureID, data, nextRow, rows);
+			nextRow += rows;
+			if(nextRow < data.getHeight()) {
+				loader.queueUpload(this);
+				return;
+			}
+			loader.finishTexture(textureID);
+			handle.setResident(textureID, data.getSizeInBytes());
+			bytesResident += data.getSizeInBytes();
+			pending.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return how many times a texture was asked for that was already loaded or loading
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many times a texture had to be loaded from file
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the bytes taken up by the textures on the GPU, not counting mipmaps
+	 */
+	public long getBytesResident() {
+		return bytesResident;
+	}
+
+	/**
+	 * @return the number of textures that are still being decoded or uploaded
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public int getTextureCount() {
+		return handles.size();
+	}
+
+	/**
+	 * Stops the decoder threads. The textures themselves are deleted by Loader.cleanUp.
+	 */
+	public void cleanUp() {
+		decoders.shutdownNow();
+	}
+
+}
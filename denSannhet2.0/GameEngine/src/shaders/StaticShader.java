@@ -1,14 +1,9 @@
 package shaders;
 
-import java.util.List;
-
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
 
-import entities.Camera;
-import entities.Light;
-import toolbox.Maths;
+import renderEngine.SceneData;
+import textures.AtlasRegion;
 
 
 /**
@@ -16,24 +11,22 @@ import toolbox.Maths;
  */
 public class StaticShader extends shaderProgram {
 	
-	private static final int MAX_LIGHTS = 10;
-	
 	private static final String VERTEX_FILE = "src/shaders/vertexShader.txt";
 	private static final String FRAGMENT_FILE = "src/shaders/fragmentShader.txt";
 	
 	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int location_lightPosition[];
-	private int location_lightColour[];
-	private int location_attenuation[];
 	private int location_shineDamper;
 	private int location_reflectivity;
 	private int location_useFakeLighting;
 	
-	private int location_skycolour;
 	private int location_numberOfRows;
 	private int location_offset;
+	private int location_useInstancing;
+	private int location_atlasRect;
+	private int location_textureSampler;
+	private int location_textureArraySampler;
+	private int location_textureLayer;
+	private int location_useTextureArray;
 
 	public StaticShader() {
 		super(VERTEX_FILE, FRAGMENT_FILE);
@@ -44,29 +37,27 @@ public class StaticShader extends shaderProgram {
 		super.bindAttribute(0, "position");
 		super.bindAttribute(1, "textureCoords");
 		super.bindAttribute(2, "normal");
+		// mat4 attribute, so it also takes up the slots 4, 5 and 6
+		super.bindAttribute(3, "instanceMatrix");
+		super.bindAttribute(7, "instanceOffset");
 	}
 
 	@Override
 	protected void getAllUniformLocations() {
+		super.bindUniformBlock(SceneData.BLOCK_NAME, SceneData.BINDING);
 		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
 		location_shineDamper = super.getUniformLocation("shineDamper");
 		location_reflectivity = super.getUniformLocation("reflectivity");
 		location_useFakeLighting = super.getUniformLocation("useFakeLighting");
 		
-		location_skycolour = super.getUniformLocation("skyColour");
 		location_numberOfRows = super.getUniformLocation("numberOfRows");
 		location_offset = super.getUniformLocation("offset");
-		
-		location_lightPosition = new int[MAX_LIGHTS];
-		location_lightColour = new int [MAX_LIGHTS];
-		location_attenuation = new int [MAX_LIGHTS];
-		for(int i = 0; i < 10; i++) {
-			location_lightPosition[i] = super.getUniformLocation("lightPosition[" + i + "]");
-			location_lightColour[i] = super.getUniformLocation("lightColour[" + i + "]");
-			location_attenuation[i] = super.getUniformLocation("attenuation[" + i + "]");
-		}
+		location_useInstancing = super.getUniformLocation("useInstancing");
+		location_atlasRect = super.getUniformLocation("atlasRect");
+		location_textureSampler = super.getUniformLocation("textureSampler");
+		location_textureArraySampler = super.getUniformLocation("textureArraySampler");
+		location_textureLayer = super.getUniformLocation("textureLayer");
+		location_useTextureArray = super.getUniformLocation("useTextureArray");
 	}
 	
 	public void loadNumberOfRows(int numberOfRows) {
@@ -74,11 +65,38 @@ public class StaticShader extends shaderProgram {
 	}
 	
 	public void loadOffset(float x, float y) {
-		 super.load2DVector(location_offset, new Vector2f(x, y));
+		super.load2DVector(location_offset, x, y);
+	}
+	
+	/**
+	 * Tells the vertex shader to read the transformation matrix and texture offset from the
+	 * per-instance attributes instead of the uniforms.
+	 */
+	public void loadUseInstancing(boolean useInstancing) {
+		super.loadBoolean(location_useInstancing, useInstancing);
+	}
+	
+	/**
+	 * Normal textures are bound to texture unit 0, texture arrays to unit 1.
+	 */
+	public void connectTextureUnits() {
+		super.loadInt(location_textureSampler, 0);
+		super.loadInt(location_textureArraySampler, 1);
 	}
 	
-	public void loadSkyColour(float r, float g, float b) {
-		super.loadVector(location_skycolour, new Vector3f(r,g,b));
+	/**
+	 * Tells the shader where the texture of the model is inside its texture array.
+	 * @param region - the region of the texture, or null for a normal texture
+	 */
+	public void loadAtlasRegion(AtlasRegion region) {
+		if(region == null) {
+			super.loadBoolean(location_useTextureArray, false);
+			super.load4DVector(location_atlasRect, 0, 0, 1, 1);
+			return;
+		}
+		super.loadBoolean(location_useTextureArray, true);
+		super.loadFloat(location_textureLayer, region.getLayer());
+		super.load4DVector(location_atlasRect, region.getU(), region.getV(), region.getUScale(), region.getVScale());
 	}
 	
 	public void loadFakeLightingVariable(boolean useFake) {
@@ -94,28 +112,5 @@ public class StaticShader extends shaderProgram {
 		super.loadMatrix(location_transformationMatrix, matrix);
 	}
 	
-	public void loadLights(List<Light> lights) {
-		for(int i = 0; i < 10; i++) {
-			if(i < lights.size()) {
-				super.loadVector(location_lightPosition[i], lights.get(i).getPosition());
-				super.loadVector(location_lightColour[i], lights.get(i).getColour());
-				super.loadVector(location_attenuation[i], lights.get(i).getAttentuation());
-			}else {
-				super.loadVector(location_lightPosition[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_lightColour[i],  new Vector3f(0, 0, 0));
-				super.loadVector(location_attenuation[i], new Vector3f(1, 0, 0));
-			}
-		}
-	}
-	
-	public void loadProjectionMatrix(Matrix4f projection) {
-		super.loadMatrix(location_projectionMatrix, projection);
-	}
-	
-	public void loadViewMatrix(Camera camera) {
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		super.loadMatrix(location_viewMatrix, viewMatrix);
-	}
-	
 
 }
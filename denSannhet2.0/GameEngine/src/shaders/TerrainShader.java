@@ -1,35 +1,29 @@
 package shaders;
 
-import java.util.List;
-
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector3f;
 
-import entities.Camera;
-import entities.Light;
-import toolbox.Maths;
+import renderEngine.SceneData;
+import terrains.HeightField;
 
 public class TerrainShader extends shaderProgram{
 	
-	private static final int MAX_LIGHTS = 10;
-	
 	private static final String VERTEX_FILE = "src/shaders/TerrainVertexShader.txt";
 	private static final String FRAGMENT_FILE = "src/shaders/TerrainFragmentShader.txt";
 	
 	private int location_transformationMatrix;
-	private int location_projectionMatrix;
-	private int location_viewMatrix;
-	private int location_lightPosition[];
-	private int location_lightColour[];
-	private int location_attenuation[];
 	private int location_shineDamper;
 	private int location_reflectivity;
-	private int location_skycolour;
 	private int location_backgroundTexture;
 	private int location_rTexture;
 	private int location_gTexture;
 	private int location_bTexture;
 	private int location_blendMap;
+	private int location_displaced;
+	private int location_heightMap;
+	private int location_vertexCount;
+	private int location_heightScale;
+	private int location_heightOffset;
+	private int location_terrainSize;
 	
 	public TerrainShader() {
 		super(VERTEX_FILE, FRAGMENT_FILE);
@@ -46,26 +40,21 @@ public class TerrainShader extends shaderProgram{
 
 	@Override
 	protected void getAllUniformLocations() {
+		super.bindUniformBlock(SceneData.BLOCK_NAME, SceneData.BINDING);
 		location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-		location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-		location_viewMatrix = super.getUniformLocation("viewMatrix");
 		location_shineDamper = super.getUniformLocation("shineDamper");
 		location_reflectivity = super.getUniformLocation("reflectivity");
-		location_skycolour = super.getUniformLocation("skyColour");
 		location_backgroundTexture = super.getUniformLocation("backgroundTexture");
 		location_rTexture = super.getUniformLocation("rTexture");
 		location_gTexture = super.getUniformLocation("gTexture");
 		location_bTexture = super.getUniformLocation("bTexture");
 		location_blendMap = super.getUniformLocation("blendMap");
-		
-		location_lightPosition = new int[MAX_LIGHTS];
-		location_lightColour = new int [MAX_LIGHTS];
-		location_attenuation = new int [MAX_LIGHTS];
-		for(int i = 0; i < 10; i++) {
-			location_lightPosition[i] = super.getUniformLocation("lightPosition[" + i + "]");
-			location_lightColour[i] = super.getUniformLocation("lightColour[" + i + "]");
-			location_attenuation[i] = super.getUniformLocation("attenuation[" + i + "]");
-		}
+		location_displaced = super.getUniformLocation("displaced");
+		location_heightMap = super.getUniformLocation("heightMap");
+		location_vertexCount = super.getUniformLocation("vertexCount");
+		location_heightScale = super.getUniformLocation("heightScale");
+		location_heightOffset = super.getUniformLocation("heightOffset");
+		location_terrainSize = super.getUniformLocation("terrainSize");
 	}
 	
 	/**
@@ -75,6 +64,7 @@ public class TerrainShader extends shaderProgram{
 	 *  Green to position 2
 	 *  Blue to position 3
 	 *  blenMap to position 4
+	 *  heightMap of displaced terrains to position 5
 	 */
 	public void connectTextureUnits() {
 		super.loadInt(location_backgroundTexture, 0);
@@ -82,10 +72,29 @@ public class TerrainShader extends shaderProgram{
 		super.loadInt(location_gTexture, 2);
 		super.loadInt(location_bTexture, 3);
 		super.loadInt(location_blendMap, 4);
+		super.loadInt(location_heightMap, 5);
+	}
+	
+	public void loadTerrainSize(float size) {
+		super.loadFloat(location_terrainSize, size);
+	}
+	
+	/**
+	 * Tells the shader if the terrain is drawn from a mesh, or from the flat grid and its heightMap.
+	 * @param displaced
+	 */
+	public void loadDisplaced(boolean displaced) {
+		super.loadBoolean(location_displaced, displaced);
 	}
 	
-	public void loadSkyColour(float r, float g, float b) {
-		super.loadVector(location_skycolour, new Vector3f(r,g,b));
+	/**
+	 * Loads how to turn the numbers in the heightMap of a displaced terrain back into heights.
+	 * @param heights - the heights the heightMap was made from
+	 */
+	public void loadHeightField(HeightField heights) {
+		super.loadInt(location_vertexCount, heights.getSize());
+		super.loadFloat(location_heightScale, heights.getScale());
+		super.loadFloat(location_heightOffset, heights.getOffset());
 	}
 	
 	public void loadShineVariables(float damper, float reflectivity) {
@@ -97,27 +106,4 @@ public class TerrainShader extends shaderProgram{
 		super.loadMatrix(location_transformationMatrix, matrix);
 	}
 	
-	public void loadLights(List<Light> lights) {
-		for(int i = 0; i < 10; i++) {
-			if(i < lights.size()) {
-				super.loadVector(location_lightPosition[i], lights.get(i).getPosition());
-				super.loadVector(location_lightColour[i], lights.get(i).getColour());
-				super.loadVector(location_attenuation[i], lights.get(i).getAttentuation());
-			}else {
-				super.loadVector(location_lightPosition[i], new Vector3f(0, 0, 0));
-				super.loadVector(location_lightColour[i],  new Vector3f(0, 0, 0));
-				super.loadVector(location_attenuation[i], new Vector3f(1, 0, 0));
-			}
-		}
-	}
-	
-	public void loadProjectionMatrix(Matrix4f projection) {
-		super.loadMatrix(location_projectionMatrix, projection);
-	}
-	
-	public void loadViewMatrix(Camera camera) {
-		Matrix4f viewMatrix = Maths.createViewMatrix(camera);
-		super.loadMatrix(location_viewMatrix, viewMatrix);
-	}
-	
 }
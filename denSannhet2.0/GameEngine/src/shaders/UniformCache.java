@@ -0,0 +1,115 @@
+package shaders;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Remembers the last value loaded to every uniform location of one shader program. A uniform keeps its value
+ * in the program until it is loaded again, so loading the value it already has is a wasted glUniform call.
+ * The update methods store the new value and return true when it is different from the last one, the only time
+ * the shaderProgram has to make the call.
+ *
+ * Nothing is known about a location before its first value is loaded, so the first load always goes through.
+ * Locations of -1, uniforms the shader doesn't have or the compiler removed, are never loaded. No objects are
+ * created, except when a location or array is loaded the first time and there is no room for it yet.
+ */
+public class UniformCache {
+
+	// The bits of the values of every location, and how many of them are known, 0 for nothing loaded yet.
+	// Floats are compared by their bits, so -0 is not the same as 0 and a NaN is the same as itself
+	private int[][] values = new int[32][];
+	private int[] sizes = new int[32];
+
+	public boolean update(int location, float x) {
+		return update(location, 1, Float.floatToRawIntBits(x), 0, 0, 0);
+	}
+
+	public boolean update(int location, float x, float y) {
+		return update(location, 2, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y), 0, 0);
+	}
+
+	public boolean update(int location, float x, float y, float z) {
+		return update(location, 3, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y), Float.floatToRawIntBits(z), 0);
+	}
+
+	public boolean update(int location, float x, float y, float z, float w) {
+		return update(location, 4, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y), Float.floatToRawIntBits(z),
+				Float.floatToRawIntBits(w));
+	}
+
+	/**
+	 * Ints are kept as they are, so every int is remembered exactly.
+	 */
+	public boolean updateInt(int location, int value) {
+		return update(location, 1, value, 0, 0, 0);
+	}
+
+	private boolean update(int location, int size, int x, int y, int z, int w) {
+		if(location < 0) {
+			return false;
+		}
+		int[] known = getValues(location, 4);
+		if(sizes[location] == size && known[0] == x && known[1] == y && known[2] == z && known[3] == w) {
+			return false;
+		}
+		known[0] = x;
+		known[1] = y;
+		known[2] = z;
+		known[3] = w;
+		sizes[location] = size;
+		return true;
+	}
+
+	/**
+	 * For matrices and arrays, compares the floats of the buffer from its position to its limit, without
+	 * moving the position. An array is remembered at the location of its first element.
+	 */
+	public boolean update(int location, FloatBuffer data) {
+		if(location < 0) {
+			return false;
+		}
+		int size = data.remaining();
+		int start = data.position();
+		int[] known = getValues(location, size);
+		boolean same = sizes[location] == size;
+		for(int i = 0; i < size && same; i++) {
+			same = known[i] == Float.floatToRawIntBits(data.get(start + i));
+		}
+		if(same) {
+			return false;
+		}
+		for(int i = 0; i < size; i++) {
+			known[i] = Float.floatToRawIntBits(data.get(start + i));
+		}
+		sizes[location] = size;
+		return true;
+	}
+
+	/**
+	 * Forgets every value, so the next load of every location goes through.
+	 */
+	public void clear() {
+		for(int i = 0; i < sizes.length; i++) {
+			sizes[i] = 0;
+		}
+	}
+
+	private int[] getValues(int location, int size) {
+		if(location >= values.length) {
+			int length = Math.max(location + 1, values.length * 2);
+			int[][] newValues = new int[length][];
+			int[] newSizes = new int[length];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			System.arraycopy(sizes, 0, newSizes, 0, sizes.length);
+			values = newValues;
+			sizes = newSizes;
+		}
+		int[] known = values[location];
+		if(known == null || known.length < size) {
+			known = new int[Math.max(size, 4)];
+			values[location] = known;
+			sizes[location] = 0;
+		}
+		return known;
+	}
+
+}
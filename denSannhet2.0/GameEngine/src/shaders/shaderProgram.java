@@ -8,9 +8,13 @@ import java.nio.FloatBuffer;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import renderEngine.GlStateCache;
 
 /**
  * Contains everything a shader program needs
@@ -24,6 +28,17 @@ public abstract class shaderProgram {
 	// Needed to load a Matrix to a uniform variable
 	private static FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16); // 16 because we use 4 x 4 matrixes
 	
+	// Counts every glUniform call made by any shader program, so the calls a renderer makes can be measured
+	private static int uniformUploads = 0;
+	// The same for the frame so far and the frame before, and the loads that were skipped
+	private static int frameUploads = 0;
+	private static int frameSkipped = 0;
+	private static int lastFrameUploads = 0;
+	private static int lastFrameSkipped = 0;
+	
+	// The last value loaded to every uniform of this program
+	private final UniformCache uniforms = new UniformCache();
+	
 	public shaderProgram(String vertexFile, String fragmentFile) {
 		// Gets the ID
 		vertexShaderID = loadShader(vertexFile, GL20.GL_VERTEX_SHADER);
@@ -51,12 +66,24 @@ public abstract class shaderProgram {
 		return GL20.glGetUniformLocation(programID, uniformName);
 	}
 		
+	/**
+	 * Connects a uniform block of the shader code to a uniform buffer binding point, like the SceneData every
+	 * frame is loaded into. Nothing happens if the shader has no block with the name.
+	 */
+	protected void bindUniformBlock(String blockName, int binding) {
+		int index = GL31.glGetUniformBlockIndex(programID, blockName);
+		if(index != GL31.GL_INVALID_INDEX) {
+			GL31.glUniformBlockBinding(programID, index, binding);
+		}
+	}
+		
+	// The program is only made current if it isn't already
 	public void start() {
-		GL20.glUseProgram(programID);
+		GlStateCache.get().useProgram(programID);
 	}
 	
 	public void stop() {
-		GL20.glUseProgram(0);
+		GlStateCache.get().useProgram(0);
 	}
 	
 	public void cleanUp() {
@@ -66,6 +93,7 @@ public abstract class shaderProgram {
 		GL20.glDeleteShader(vertexShaderID);
 		GL20.glDeleteShader(fragmentShaderID);
 		GL20.glDeleteProgram(programID);
+		GlStateCache.get().forgetProgram(programID);
 	}
 	
 	// Class extending this must have this method
@@ -76,40 +104,159 @@ public abstract class shaderProgram {
 		 GL20.glBindAttribLocation(programID, attribute, variableName);
 	}
 	
-	// Loads up the location of the uniform and the float value
+	// Loads up the location of the uniform and the float value, only if the uniform doesn't have it already
 	protected void loadFloat(int location, float value) {
-		GL20.glUniform1f(location, value);
+		if(uniforms.update(location, value)) {
+			GL20.glUniform1f(location, value);
+			uploaded();
+		} else {
+			skipped();
+		}
 	}
 	
 	// Loads up the location of the uniform and the int value
 	public void loadInt(int location, int value) {
-		GL20.glUniform1i(location, value);
+		if(uniforms.updateInt(location, value)) {
+			GL20.glUniform1i(location, value);
+			uploaded();
+		} else {
+			skipped();
+		}
 	}
 	
 	// Loads up a vector to a uniform
 	protected void loadVector(int location, Vector3f vector) {
-		GL20.glUniform3f(location, vector.x, vector.y, vector.z);  // Notice glUniform3f, because its 3 floats
+		loadVector(location, vector.x, vector.y, vector.z);
+	}
+	
+	// The same without a Vector3f, so nothing has to be created to load a constant
+	protected void loadVector(int location, float x, float y, float z) {
+		if(uniforms.update(location, x, y, z)) {
+			GL20.glUniform3f(location, x, y, z);  // Notice glUniform3f, because its 3 floats
+			uploaded();
+		} else {
+			skipped();
+		}
 	}
 	
 	protected void load2DVector(int location, Vector2f vector) {
-		GL20.glUniform2f(location, vector.x, vector.y);
+		load2DVector(location, vector.x, vector.y);
+	}
+	
+	protected void load2DVector(int location, float x, float y) {
+		if(uniforms.update(location, x, y)) {
+			GL20.glUniform2f(location, x, y);
+			uploaded();
+		} else {
+			skipped();
+		}
+	}
+	
+	protected void load4DVector(int location, Vector4f vector) {
+		load4DVector(location, vector.x, vector.y, vector.z, vector.w);
+	}
+	
+	protected void load4DVector(int location, float x, float y, float z, float w) {
+		if(uniforms.update(location, x, y, z, w)) {
+			GL20.glUniform4f(location, x, y, z, w);
+			uploaded();
+		} else {
+			skipped();
+		}
 	}
 	
 	// Loads up a boolean, if its true we load up a 1, false we load up a 0
 	protected void loadBoolean(int location, boolean value) {
-		float toLoad = 0;
-		if(value) {
-			toLoad = 1;
-		}
-		GL20.glUniform1f(location, toLoad);
+		loadFloat(location, value ? 1 : 0);
 	}
 	
 	// Loads a matrix to a uniform variable, need a float buffer see on variables
 	protected void loadMatrix(int location, Matrix4f matrix) {
 		matrix.store(matrixBuffer);
 		matrixBuffer.flip();
-		GL20.glUniformMatrix4(location, false, matrixBuffer);
-		
+		if(uniforms.update(location, matrixBuffer)) {
+			GL20.glUniformMatrix4(location, false, matrixBuffer);
+			uploaded();
+		} else {
+			skipped();
+		}
+	}
+	
+	/**
+	 * Loads a whole array of matrices with one call, starting at the location of the first element of a
+	 * mat4 array uniform. The buffer holds 16 floats for every matrix, from its position to its limit.
+	 * Skipped when the array already holds exactly these matrices.
+	 */
+	protected void loadMatrices(int location, FloatBuffer matrices) {
+		if(uniforms.update(location, matrices)) {
+			GL20.glUniformMatrix4(location, false, matrices);
+			uploaded();
+		} else {
+			skipped();
+		}
+	}
+	
+	/**
+	 * Loads a whole array of vec4 with one call, starting at the location of the first element of a vec4
+	 * array uniform. The buffer holds 4 floats for every vector, from its position to its limit.
+	 * Skipped when the array already holds exactly these vectors.
+	 */
+	protected void loadVectors(int location, FloatBuffer vectors) {
+		if(uniforms.update(location, vectors)) {
+			GL20.glUniform4(location, vectors);
+			uploaded();
+		} else {
+			skipped();
+		}
+	}
+	
+	/**
+	 * Forgets the values loaded to the uniforms, so the next load of every uniform goes through. Needed when
+	 * a uniform is loaded through another location, like a whole array through its first element.
+	 */
+	protected void forgetUniforms() {
+		uniforms.clear();
+	}
+	
+	private static void uploaded() {
+		uniformUploads++;
+		frameUploads++;
+	}
+	
+	private static void skipped() {
+		frameSkipped++;
+	}
+	
+	/**
+	 * Starts counting the uniform loads of a new frame, the counts of the frame before are kept for
+	 * getFrameUniformUploads and getFrameUniformUploadsSkipped.
+	 */
+	public static void startFrame() {
+		lastFrameUploads = frameUploads;
+		lastFrameSkipped = frameSkipped;
+		frameUploads = 0;
+		frameSkipped = 0;
+	}
+	
+	/**
+	 * @return the number of glUniform calls made since the start, for measuring how many calls something makes
+	 */
+	public static int getUniformUploads() {
+		return uniformUploads;
+	}
+	
+	/**
+	 * @return the number of glUniform calls made by all the shader programs in the last frame
+	 */
+	public static int getFrameUniformUploads() {
+		return lastFrameUploads;
+	}
+	
+	/**
+	 * @return the number of uniform loads skipped in the last frame, because the uniform already had the value
+	 */
+	public static int getFrameUniformUploadsSkipped() {
+		return lastFrameSkipped;
 	}
 	
 	/**
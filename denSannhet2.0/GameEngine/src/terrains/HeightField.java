@@ -0,0 +1,137 @@
+package terrains;
+
+	/**
+	 * The heights of a terrain, stored as 16 bit numbers in one flat array.
+	 *
+	 * A height is stored as a whole number from 0 to 65535, and turned back into a float with
+	 * offset + value * scale. The offset is the lowest height of the terrain and the scale is chosen so 65535 is
+	 * the highest, so for a terrain 80 high the heights are off by less than a thousandth. That takes half the
+	 * memory of floats, and one array (row after row) is a lot kinder to the cache than an array of rows.
+	 *
+	 * The height at grid position (x, z) is at index z * size + x, the same order as the pixels of the heightMap.
+	 */
+public class HeightField {
+
+	private static final int LEVELS = 65535;
+
+	private final int size;
+	private final short[] data;
+	private final float scale;
+	private final float offset;
+
+	/**
+	 * @param size - the number of heights along each side
+	 * @param data - size * size quantized heights, row after row
+	 * @param scale - the height between two quantized values
+	 * @param offset - the height of quantized value 0
+	 */
+	public HeightField(int size, short[] data, float scale, float offset) {
+		this.size = size;
+		this.data = data;
+		this.scale = scale;
+		this.offset = offset;
+	}
+
+	/**
+	 * Quantizes heights given as heights[x][z], the way Terrain used to keep them.
+	 */
+	public static HeightField fromHeights(float[][] heights) {
+		int size = heights.length;
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for(int x = 0; x < size; x++) {
+			for(int z = 0; z < size; z++) {
+				min = Math.min(min, heights[x][z]);
+				max = Math.max(max, heights[x][z]);
+			}
+		}
+		float scale = getScale(min, max);
+		short[] data = new short[size * size];
+		for(int x = 0; x < size; x++) {
+			for(int z = 0; z < size; z++) {
+				data[z * size + x] = quantize(heights[x][z], min, scale);
+			}
+		}
+		return new HeightField(size, data, scale, min);
+	}
+
+	/**
+	 * @return the scale that spreads the heights from min to max over all the quantized values
+	 */
+	static float getScale(float min, float max) {
+		return max > min ? (max - min) / LEVELS : 0;
+	}
+
+	static short quantize(float height, float offset, float scale) {
+		if(scale == 0) {
+			return 0;
+		}
+		int value = Math.round((height - offset) / scale);
+		return (short) Math.min(Math.max(value, 0), LEVELS);
+	}
+
+	/**
+	 * @return the height at the grid position, which must be inside the field
+	 */
+	public float get(int x, int z) {
+		return offset + (data[z * size + x] & 0xFFFF) * scale;
+	}
+
+	/**
+	 * @return the height at the grid position, or 0 outside the field, like the heightMap gave outside the image
+	 */
+	public float getOrZero(int x, int z) {
+		if(x < 0 || x >= size || z < 0 || z >= size) {
+			return 0;
+		}
+		return get(x, z);
+	}
+
+	/**
+	 * @return the heights as heights[x][z], for code that still wants them that way
+	 */
+	public float[][] toArray() {
+		float[][] heights = new float[size][size];
+		for(int x = 0; x < size; x++) {
+			for(int z = 0; z < size; z++) {
+				heights[x][z] = get(x, z);
+			}
+		}
+		return heights;
+	}
+
+	/**
+	 * @return the quantized heights themselves, not a copy, for uploading them to the GPU
+	 */
+	public short[] getData() {
+		return data;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public float getScale() {
+		return scale;
+	}
+
+	public float getOffset() {
+		return offset;
+	}
+
+	public float getMinHeight() {
+		return offset;
+	}
+
+	public float getMaxHeight() {
+		return offset + LEVELS * scale;
+	}
+
+	/**
+	 * @return the bytes taken up by the quantized heights
+	 */
+	public long getSizeInBytes() {
+		return 2L * data.length;
+	}
+
+}
@@ -6,9 +6,6 @@ import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
-
 import models.RawModel;
 import renderEngine.Loader;
 import textures.TerrainTexture;
@@ -31,7 +28,7 @@ import toolbox.Maths;
  */
 public class Terrain {
 	// Size is the size of the terrain
-	private static final float SIZE = 800;
+	public static final float SIZE = 800;
 	
 	// The height differences between the lowest point on the terrain and the highest point possible to achieve.
 	private static final float MAX_HEIGHT = 40;
@@ -45,9 +42,16 @@ public class Terrain {
 	// Terrain own Z value.
 	private float z;
 	
+	// The position of the terrain in the grid of terrains, x = gridX * SIZE
+	private int gridX;
+	private int gridZ;
+	
 	// The model of the terrain with heightMap implemented for high and lows.
 	private RawModel model;
 	
+	// The heights as a texture, for terrains without a model that are displaced in the vertex shader. 0 if there is none.
+	private int heightTexture;
+	
 	// A class that holds onto more then one texture, we get the different textures from the class based on what 
 	// kind of colours we find on the image (blendMap).
 	private TerrainTexturePack texturePack;
@@ -56,9 +60,9 @@ public class Terrain {
 	private TerrainTexture blendMap;
 	
 	/**
-	 * Matrix that hold onto the difference in height based on the RGB values of HeightMap image we use when creating a Terrain.
+	 * The heights based on the RGB values of HeightMap image we use when creating a Terrain, used for collision.
 	 */
-	private float [][] heights;
+	private HeightField heights;
 	
 	/**
 	 * Constructor of terrain.
@@ -70,12 +74,55 @@ public class Terrain {
 	 * @param heightMap
 	 */
 	public Terrain(int gridX, int gridZ, Loader loader, TerrainTexturePack texturePack, TerrainTexture blendMap, String heightMap) {
+		this(gridX, gridZ, loader, texturePack, blendMap, generateTerrainData(heightMap));
+	}
+	
+	/**
+	 * Constructor of terrain, for when the terrain data already has been generated with generateTerrainData.
+	 * Only uploads the mesh, so this is cheap compared to the constructor taking a heightMap.
+	 * If the data has no mesh (see generateHeightData) only the heights are uploaded, as a texture, and the
+	 * terrain is drawn by moving the vertices of a flat grid that all such terrains share.
+	 * @param gridX
+	 * @param gridZ
+	 * @param loader
+	 * @param texturePack
+	 * @param blendMap
+	 * @param data
+	 */
+	public Terrain(int gridX, int gridZ, Loader loader, TerrainTexturePack texturePack, TerrainTexture blendMap, TerrainData data) {
+		this(gridX, gridZ, data.getHeights());
 		this.texturePack = texturePack;
 		this.blendMap = blendMap;
+		if(data.hasMesh()) {
+			this.model = loader.loadToVAO(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getIndices());
+		} else {
+			this.heightTexture = loader.loadHeightTexture(heights);
+		}
+	}
+	
+	/**
+	 * Constructor of a terrain that only has heights, and no model or textures. It can't be rendered, 
+	 * but it is enough for collision, and it doesn't need OpenGL.
+	 * @param gridX
+	 * @param gridZ
+	 * @param heights
+	 */
+	public Terrain(int gridX, int gridZ, float[][] heights) {
+		this(gridX, gridZ, HeightField.fromHeights(heights));
+	}
+	
+	/**
+	 * Same as the constructor above, with heights that already are a HeightField.
+	 * @param gridX
+	 * @param gridZ
+	 * @param heights
+	 */
+	public Terrain(int gridX, int gridZ, HeightField heights) {
+		this.gridX = gridX;
+		this.gridZ = gridZ;
 		this.x = gridX * SIZE;
 		this.z = gridZ * SIZE;
-		this.model = generateTerrain(loader, heightMap);
-		
+		this.heights = heights;
 	}
 	
 	public float getX() {
@@ -85,10 +132,43 @@ public class Terrain {
 	public float getZ() {
 		return z;
 	}
+	
+	public int getGridX() {
+		return gridX;
+	}
+	
+	public int getGridZ() {
+		return gridZ;
+	}
 
+	/**
+	 * @return the model, or null if the terrain is displaced on the GPU
+	 */
 	public RawModel getModel() {
 		return model;
 	}
+	
+	public int getHeightTexture() {
+		return heightTexture;
+	}
+	
+	/**
+	 * @return true if the terrain has no model of its own, and is drawn from its height texture
+	 */
+	public boolean isDisplaced() {
+		return model == null;
+	}
+
+	/**
+	 * @return the number of vertices along each side of the terrain
+	 */
+	public int getVertexCount() {
+		return heights.getSize();
+	}
+	
+	public HeightField getHeights() {
+		return heights;
+	}
 
 	public TerrainTexturePack getTexturePack() {
 		return texturePack;
@@ -99,39 +179,75 @@ public class Terrain {
 	}
 	
 	public float getHeightOfTerrain(float worldX, float worldZ) {
-		float terrainX = worldX - this.x;
-		float terrainZ = worldZ - this.z;
-		float gridSquareSize = SIZE / ((float)heights.length - 1);
+		return getHeightOfTerrainLocal(worldX - this.x, worldZ - this.z);
+	}
+	
+	/**
+	 * Same as getHeightOfTerrain, but with the position measured from the corner of this terrain.
+	 * @param terrainX - from 0 to SIZE
+	 * @param terrainZ - from 0 to SIZE
+	 * @return the height, or 0 outside the terrain
+	 */
+	public float getHeightOfTerrainLocal(float terrainX, float terrainZ) {
+		int vertexCount = heights.getSize();
+		float gridSquareSize = SIZE / ((float)vertexCount - 1);
 		int gridX = (int) Math.floor(terrainX / gridSquareSize);
 		int gridZ = (int) Math.floor(terrainZ / gridSquareSize);
-		if(gridX >= heights.length - 1 || gridZ >= heights.length - 1 || gridX < 0 || gridZ < 0) {
+		if(gridX >= vertexCount - 1 || gridZ >= vertexCount - 1 || gridX < 0 || gridZ < 0) {
 			return 0;
 		}
 		float xCoord = (terrainX % gridSquareSize) / gridSquareSize;
 		float zCoord = (terrainZ % gridSquareSize) / gridSquareSize;
 		float answer;
+		// The same triangles as before, but without making vectors for them, this is called a lot
 		if (xCoord <= (1-zCoord)) {
-			answer = Maths.barryCentric(new Vector3f(0, heights[gridX][gridZ], 0), new Vector3f(1,
-							heights[gridX + 1][gridZ], 0), new Vector3f(0,
-							heights[gridX][gridZ + 1], 1), new Vector2f(xCoord, zCoord));
+			answer = Maths.barryCentric(0, heights.get(gridX, gridZ), 0, 1, 
+							heights.get(gridX + 1, gridZ), 0, 0,
+							heights.get(gridX, gridZ + 1), 1, xCoord, zCoord);
 		} else {
 			answer = Maths
-					.barryCentric(new Vector3f(1, heights[gridX + 1][gridZ], 0), new Vector3f(1,
-							heights[gridX + 1][gridZ + 1], 1), new Vector3f(0,
-							heights[gridX][gridZ + 1], 1), new Vector2f(xCoord, zCoord));
+					.barryCentric(1, heights.get(gridX + 1, gridZ), 0, 1,
+							heights.get(gridX + 1, gridZ + 1), 1, 0,
+							heights.get(gridX, gridZ + 1), 1, xCoord, zCoord);
 		}
 		return answer;
 		
 	}
 	
 	/**
-	 * This method is called in the constructor Terrain, it generates terrain and saves the heightMaps values to
-	 * a float in the fields of the class, called heights.
-	 * Returns a Rawmodel.
-	 * @param loader, heightMap
-	 * @return RawModel
+	 * Finds the heights of many positions at once, like when placing a lot of vegetation.
+	 * @param worldX - the x of every position
+	 * @param worldZ - the z of every position
+	 * @param result - gets the height of every position, 0 for positions outside the terrain
+	 */
+	public void getHeightsOfTerrain(float[] worldX, float[] worldZ, float[] result) {
+		for(int i = 0; i < result.length; i++) {
+			result[i] = getHeightOfTerrainLocal(worldX[i] - this.x, worldZ[i] - this.z);
+		}
+	}
+	
+	/**
+	 * This method generates the mesh of the terrain from the heightMap, and the heights that are later used
+	 * for collision. It makes no OpenGL calls, so it is safe to call from any thread.
+	 * Returns the TerrainData.
+	 * @param heightMap
+	 * @return TerrainData
+	 */
+	public static TerrainData generateTerrainData(String heightMap){
+		return generateTerrainData(readHeightMap(heightMap));
+	}
+	
+	/**
+	 * Same as generateTerrainData, but only decodes the heights and makes no mesh. Terrains made from this data
+	 * are displaced on the GPU, which takes a lot less memory than a mesh for every terrain.
+	 * @param heightMap
+	 * @return TerrainData without a mesh
 	 */
-	private RawModel generateTerrain(Loader loader, String heightMap){
+	public static TerrainData generateHeightData(String heightMap){
+		return new TerrainData(decodeHeightField(readHeightMap(heightMap)));
+	}
+	
+	private static BufferedImage readHeightMap(String heightMap) {
 		BufferedImage image = null;
 		
 		try {
@@ -140,13 +256,21 @@ public class Terrain {
 			e.printStackTrace();
 			System.err.println("Could not load HeightMap. Please check spelling of file path.");
 		}
-		
-//		Returns the height of the BufferedImage.
-		int VERTEX_COUNT = image.getHeight();
+		return image;
+	}
 	
+	/**
+	 * Same as the method above, with a heightMap that already has been read.
+	 * The heights are decoded from the image once, and then used for the vertices, the normals and collision.
+	 * @param image
+	 * @return TerrainData
+	 */
+	public static TerrainData generateTerrainData(BufferedImage image){
+		HeightField heights = decodeHeightField(image);
+		
 		//since each pixel in the heightMap represent a vertex. the vertex count of the terrain will now be decided
 		// by the pixel count of the hieghtMap
-		heights = new float [VERTEX_COUNT][VERTEX_COUNT];
+		int VERTEX_COUNT = heights.getSize();
 		
 		int count = VERTEX_COUNT * VERTEX_COUNT;
 		float[] vertices = new float[count * 3];
@@ -157,18 +281,12 @@ public class Terrain {
 		for(int i = 0; i < VERTEX_COUNT; i++){
 			for(int j = 0; j < VERTEX_COUNT; j++){
 				vertices[vertexPointer * 3] = (float)j/((float)VERTEX_COUNT - 1) * SIZE;
-				
-				float height = getHeight(j, i, image);
-				heights[j][i] = height; 
-				// setting the vertex point equal to the corresponding pixels MAX_HEIGHT returned from the
-				// getHeight function.
-				vertices[vertexPointer * 3 + 1] = height;
+				// setting the vertex point equal to the height of the corresponding pixel, the same height 
+				// that is used for collision
+				vertices[vertexPointer * 3 + 1] = heights.get(j, i);
 				vertices[vertexPointer * 3 + 2] = (float)i/((float)VERTEX_COUNT - 1) * SIZE;
 				
-				Vector3f normal = calculateNormal(j, i, image);
-				normals[vertexPointer * 3] = normal.x;
-				normals[vertexPointer * 3 + 1] = normal.y;
-				normals[vertexPointer * 3 + 2] = normal.z;
+				calculateNormal(j, i, heights, normals, vertexPointer * 3);
 				
 				textureCoords[vertexPointer * 2] = (float)j/((float)VERTEX_COUNT - 1);
 				textureCoords[vertexPointer * 2 + 1] = (float)i/((float)VERTEX_COUNT - 1);
@@ -190,33 +308,60 @@ public class Terrain {
 				indices[pointer++] = bottomRight;
 			}
 		}
-		return loader.loadToVAO(vertices, textureCoords, normals, indices);
+		return new TerrainData(vertices, textureCoords, normals, indices, heights);
+	}
+	
+	/**
+	 * Reads all the pixels of the heightMap in one go, and turns them into a HeightField. 
+	 * Reading the pixels one by one with getRGB is a lot slower, and it used to be done five times per pixel.
+	 * @param image
+	 * @return the heights
+	 */
+	public static HeightField decodeHeightField(BufferedImage image) {
+		int size = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, size, size, null, 0, size);
+		// a bigger colour is always a bigger height, so the lowest and highest colour give the range
+		int minColour = Integer.MAX_VALUE;
+		int maxColour = Integer.MIN_VALUE;
+		for(int pixel:pixels) {
+			minColour = Math.min(minColour, pixel);
+			maxColour = Math.max(maxColour, pixel);
+		}
+		float minHeight = toHeight(minColour);
+		float scale = HeightField.getScale(minHeight, toHeight(maxColour));
+		short[] data = new short[pixels.length];
+		for(int i = 0; i < pixels.length; i++) {
+			data[i] = HeightField.quantize(toHeight(pixels[i]), minHeight, scale);
+		}
+		return new HeightField(size, data, scale, minHeight);
 	}
 	
-	private Vector3f calculateNormal(int x, int z, BufferedImage image) {
-		float heightL = getHeight(x - 1, z, image);
-		float heightR = getHeight(x + 1, z, image);
-		float heightD = getHeight(x, z - 1, image);
-		float heightU = getHeight(x, z + 1, image);
-		Vector3f normal = new Vector3f(heightL - heightR, 2f, heightD - heightU);
-		normal.normalise();
-		return normal;
+	/**
+	 * Works out the normal of a vertex from the heights around it, and writes it into the normals.
+	 */
+	private static void calculateNormal(int x, int z, HeightField heights, float[] normals, int pointer) {
+		float heightL = heights.getOrZero(x - 1, z);
+		float heightR = heights.getOrZero(x + 1, z);
+		float heightD = heights.getOrZero(x, z - 1);
+		float heightU = heights.getOrZero(x, z + 1);
+		float normalX = heightL - heightR;
+		float normalY = 2f;
+		float normalZ = heightD - heightU;
+		float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+		normals[pointer] = normalX / length;
+		normals[pointer + 1] = normalY / length;
+		normals[pointer + 2] = normalZ / length;
 	}
 	
 	/**
-	 *  Returns a height that is represented by a specified pixel on the heightMap. the numbers returned are in range
+	 *  Returns the height that is represented by the colour of a pixel on the heightMap. the colours are in range
 	 *  from -256^3 to 256^3 so we convert them to reasonable numbers, then multiply them with specified MAX_HEIGHT field
 	 *  in this class. Therefore not creating anything outside of the scope of the terrain.
-	 * @param x
-	 * @param y
-	 * @param image
-	 * @return float - containing two values, both in the range of -MAX_HEIGHT to MAX_HEIGHT
+	 * @param colour - the colour from getRGB
+	 * @return float - in the range of -MAX_HEIGHT to MAX_HEIGHT
 	 */
-	private float getHeight(int x, int y, BufferedImage image) {
-		if(x < 0 || x >= image.getHeight() || y < 0 || y >= image.getHeight()) {
-			return 0;
-		}
-		float height = image.getRGB(x, y);
+	private static float toHeight(int colour) {
+		float height = colour;
 		height += MAX_PIXEL_COLOUR/2f;
 		height /= MAX_PIXEL_COLOUR/2f;
 		height *= MAX_HEIGHT;
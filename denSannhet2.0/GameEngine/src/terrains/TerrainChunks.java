@@ -0,0 +1,226 @@
+package terrains;
+
+	/**
+	 * Splits the vertex grid of a terrain into square chunks, and builds the index lists to draw a chunk at
+	 * a lower level of detail. The vertices of the terrain are not touched, a chunk at level L just uses every
+	 * 2^L'th vertex of the grid in both directions, so all the levels share the one vertex buffer of the terrain.
+	 *
+	 * When two chunks next to each other are drawn at different levels, the finer one would have vertices on
+	 * the shared edge that the coarser one skips, and small cracks would show between them. To avoid this the
+	 * edge vertices of the finer chunk are moved onto the vertices of the coarser one (stitching). The triangles
+	 * that get squashed flat by this are left out. Both chunks then use exactly the same vertices on the
+	 * shared edge, so the edge is the same line on both sides.
+	 *
+	 * Sizes and positions are counted in quads (the space between two vertices) from the start of the chunk.
+	 * The index lists are relative to the first vertex of the chunk, so they can be drawn with
+	 * glDrawElementsBaseVertex and shared by every chunk of the same size.
+	 */
+public class TerrainChunks {
+
+	/**
+	 * The number of quads along each side of a chunk. The last chunk of a row is smaller when the
+	 * terrain doesn't divide evenly, like the 255 quads of a 256 pixel heightMap.
+	 */
+	public static final int CHUNK_QUADS = 32;
+
+	/**
+	 * The coarsest level, where a chunk of CHUNK_QUADS is a single quad.
+	 */
+	public static final int MAX_LEVEL = Integer.numberOfTrailingZeros(CHUNK_QUADS);
+
+	private final int vertexCount;
+	private final int chunksPerSide;
+
+	/**
+	 * @param vertexCount - the number of vertices along each side of the terrain
+	 */
+	public TerrainChunks(int vertexCount) {
+		this.vertexCount = vertexCount;
+		this.chunksPerSide = (vertexCount - 2) / CHUNK_QUADS + 1;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	public int getChunksPerSide() {
+		return chunksPerSide;
+	}
+
+	/**
+	 * @param chunk - the index of the chunk along one side of the terrain
+	 * @return the first quad of the chunk
+	 */
+	public int getChunkStart(int chunk) {
+		return chunk * CHUNK_QUADS;
+	}
+
+	/**
+	 * @param chunk - the index of the chunk along one side of the terrain
+	 * @return the number of quads of the chunk along that side
+	 */
+	public int getChunkSize(int chunk) {
+		return Math.min(CHUNK_QUADS, vertexCount - 1 - chunk * CHUNK_QUADS);
+	}
+
+	/**
+	 * @return the index of the first vertex of the chunk, the base vertex to draw it with
+	 */
+	public int getBaseVertex(int chunkX, int chunkZ) {
+		return getChunkStart(chunkZ) * vertexCount + getChunkStart(chunkX);
+	}
+
+	/**
+	 * Picks the level of every chunk of a terrain, and of the ring of chunks around it, which are the edge chunks
+	 * of the terrains next to it. Every chunk gets its real size, so the smaller last chunk of a row is not
+	 * treated as a full one, and the ring chunks are measured from the origin of the terrain they belong to.
+	 * Both terrains on each side of an edge then work out exactly the same level for the chunks along it, and
+	 * stitch the edge the same way.
+	 * @param terrainX - the x of the terrain, a whole multiple of terrainSize like all terrain positions
+	 * @param terrainZ - the z of the terrain
+	 * @param terrainSize - the width of the terrain in the world
+	 * @param lodDistance - chunks closer than this are at level 0, and the level goes up every time it doubles
+	 * @param levels - filled with the (chunksPerSide + 2)^2 levels, row by row, starting with the ring chunk at (-1, -1)
+	 */
+	public void chooseLevels(float terrainX, float terrainZ, float terrainSize, float cameraX, float cameraZ,
+			float lodDistance, int[] levels) {
+		int side = chunksPerSide + 2;
+		for(int cz = -1; cz <= chunksPerSide; cz++) {
+			float minZ = getChunkBound(terrainZ, terrainSize, cz, false);
+			float maxZ = getChunkBound(terrainZ, terrainSize, cz, true);
+			for(int cx = -1; cx <= chunksPerSide; cx++) {
+				float minX = getChunkBound(terrainX, terrainSize, cx, false);
+				float maxX = getChunkBound(terrainX, terrainSize, cx, true);
+				levels[(cz + 1) * side + cx + 1] = chooseLevel(cameraX, cameraZ, minX, minZ, maxX, maxZ, lodDistance);
+			}
+		}
+	}
+
+	/**
+	 * Where a chunk starts or ends in the world along one side. Chunk -1 is the last chunk of the terrain before
+	 * this one, and chunk chunksPerSide the first chunk of the terrain after it, both worked out from the origin
+	 * of that terrain the same way that terrain does it for its own chunks.
+	 * @param origin - the x or z of the terrain
+	 * @param end - true for where the chunk ends, false for where it starts
+	 */
+	public float getChunkBound(float origin, float terrainSize, int chunk, boolean end) {
+		if(chunk < 0) {
+			origin -= terrainSize;
+			chunk += chunksPerSide;
+		} else if(chunk >= chunksPerSide) {
+			origin += terrainSize;
+			chunk -= chunksPerSide;
+		}
+		int edge = end ? chunk + 1 : chunk;
+		if(edge == chunksPerSide) {
+			return origin + terrainSize;
+		}
+		return origin + getChunkStart(edge) * (terrainSize / (vertexCount - 1));
+	}
+
+	/**
+	 * @return the level of a chunk, from the distance between the camera and the closest point of the chunk
+	 */
+	public static int chooseLevel(float cameraX, float cameraZ, float minX, float minZ, float maxX, float maxZ,
+			float lodDistance) {
+		float dx = Math.max(0, Math.max(minX - cameraX, cameraX - maxX));
+		float dz = Math.max(0, Math.max(minZ - cameraZ, cameraZ - maxZ));
+		float distance = (float) Math.sqrt(dx * dx + dz * dz);
+		int level = 0;
+		float limit = lodDistance;
+		while(distance >= limit && level < MAX_LEVEL) {
+			level++;
+			limit *= 2;
+		}
+		return level;
+	}
+
+	/**
+	 * Builds the triangles of a chunk. The steps of the edges are the distance between the vertices on that
+	 * edge, and should be the coarser step of this chunk and the chunk on the other side, so both chunks
+	 * end up with the same edge. An edge step smaller than the step of the chunk is treated as the step of
+	 * the chunk.
+	 * @param stride - the number of vertices in one row of the terrain
+	 * @param width - the number of quads of the chunk along x
+	 * @param depth - the number of quads of the chunk along z
+	 * @param step - the distance between the vertices inside the chunk, 2^level
+	 * @param topStep - step of the edge at z = 0
+	 * @param rightStep - step of the edge at x = width
+	 * @param bottomStep - step of the edge at z = depth
+	 * @param leftStep - step of the edge at x = 0
+	 * @return the indices, in the same winding as Terrain.generateTerrainData
+	 */
+	public static int[] buildIndices(int stride, int width, int depth, int step,
+			int topStep, int rightStep, int bottomStep, int leftStep) {
+		int[] xs = positions(width, step);
+		int[] zs = positions(depth, step);
+		int[] indices = new int[6 * (xs.length - 1) * (zs.length - 1)];
+		int pointer = 0;
+		for(int gz = 0; gz < zs.length - 1; gz++) {
+			for(int gx = 0; gx < xs.length - 1; gx++) {
+				int x0 = xs[gx], x1 = xs[gx + 1];
+				int z0 = zs[gz], z1 = zs[gz + 1];
+				int topLeft = stitch(stride, x0, z0, width, depth, topStep, rightStep, bottomStep, leftStep);
+				int topRight = stitch(stride, x1, z0, width, depth, topStep, rightStep, bottomStep, leftStep);
+				int bottomLeft = stitch(stride, x0, z1, width, depth, topStep, rightStep, bottomStep, leftStep);
+				int bottomRight = stitch(stride, x1, z1, width, depth, topStep, rightStep, bottomStep, leftStep);
+				if(topLeft != bottomLeft && topLeft != topRight && bottomLeft != topRight) {
+					indices[pointer++] = topLeft;
+					indices[pointer++] = bottomLeft;
+					indices[pointer++] = topRight;
+				}
+				if(topRight != bottomLeft && topRight != bottomRight && bottomLeft != bottomRight) {
+					indices[pointer++] = topRight;
+					indices[pointer++] = bottomLeft;
+					indices[pointer++] = bottomRight;
+				}
+			}
+		}
+		if(pointer == indices.length) {
+			return indices;
+		}
+		int[] trimmed = new int[pointer];
+		System.arraycopy(indices, 0, trimmed, 0, pointer);
+		return trimmed;
+	}
+
+	/**
+	 * The positions used along one side of a chunk at the given step: every multiple of step, and the end of
+	 * the side even when it is not a multiple.
+	 */
+	public static int[] positions(int size, int step) {
+		int count = (size + step - 1) / step + 1;
+		int[] positions = new int[count];
+		for(int i = 0; i < count - 1; i++) {
+			positions[i] = i * step;
+		}
+		positions[count - 1] = size;
+		return positions;
+	}
+
+	/**
+	 * Moves a vertex on the edge of the chunk back onto the nearest vertex used by the coarser edge,
+	 * and returns its index. Vertices inside the chunk and the corners are never moved.
+	 */
+	private static int stitch(int stride, int x, int z, int width, int depth,
+			int topStep, int rightStep, int bottomStep, int leftStep) {
+		if(z == 0) {
+			x = snap(x, width, topStep);
+		} else if(z == depth) {
+			x = snap(x, width, bottomStep);
+		} else if(x == 0) {
+			z = snap(z, depth, leftStep);
+		} else if(x == width) {
+			z = snap(z, depth, rightStep);
+		}
+		return z * stride + x;
+	}
+
+	private static int snap(int position, int size, int step) {
+		if(position == size) {
+			return size;
+		}
+		return position / step * step;
+	}
+
+}
@@ -0,0 +1,84 @@
+package terrains;
+
+	/**
+	 * Everything that is needed to build a Terrain, worked out from the heightMap without any OpenGL calls.
+	 * This way the heavy part of making a terrain can be done on another thread, and only the upload
+	 * to the GPU has to happen on the main thread.
+	 */
+public class TerrainData {
+
+	private float[] vertices;
+	private float[] textureCoords;
+	private float[] normals;
+	private int[] indices;
+	private HeightField heights;
+
+	public TerrainData(float[] vertices, float[] textureCoords, float[] normals, int[] indices, HeightField heights) {
+		this.vertices = vertices;
+		this.textureCoords = textureCoords;
+		this.normals = normals;
+		this.indices = indices;
+		this.heights = heights;
+	}
+
+	/**
+	 * TerrainData with only the heights, for terrains that are displaced on the GPU and share one flat grid
+	 * instead of having a mesh of their own.
+	 * @param heights
+	 */
+	public TerrainData(HeightField heights) {
+		this.heights = heights;
+	}
+
+	/**
+	 * @return false if there are only heights, see the constructor above
+	 */
+	public boolean hasMesh() {
+		return vertices != null;
+	}
+
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	public float[] getTextureCoords() {
+		return textureCoords;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	public HeightField getHeights() {
+		return heights;
+	}
+
+	/**
+	 * @return the number of bytes the mesh takes up on the GPU once it is uploaded
+	 */
+	public long getMeshSizeInBytes() {
+		if(!hasMesh()) {
+			return 0;
+		}
+		return 4L * (vertices.length + textureCoords.length + normals.length + indices.length);
+	}
+
+	/**
+	 * @return the bytes of this terrain on the GPU: the mesh, or the height texture when there is no mesh
+	 */
+	public long getGpuSizeInBytes() {
+		return hasMesh() ? getMeshSizeInBytes() : heights.getSizeInBytes();
+	}
+
+	/**
+	 * @return the number of bytes the heights kept for collision take up
+	 */
+	public long getHeightsSizeInBytes() {
+		return heights.getSizeInBytes();
+	}
+
+}
@@ -0,0 +1,297 @@
+package terrains;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+	/**
+	 * Finds the terrain under any point of the world, without looping through the terrains.
+	 *
+	 * The world position is turned into the grid position of the terrain with a floor division by Terrain.SIZE,
+	 * and the grid position is looked up in a hash table. Floor (and not a cast to int) is important, because
+	 * a cast rounds towards zero, so x = -10 would end up on terrain 0 instead of terrain -1.
+	 *
+	 * The hash table uses open addressing: the grid positions and terrains are stored in two arrays, and a
+	 * terrain that lands on a used slot goes in the next free one. There are no objects per entry, and a
+	 * lookup is a few array reads, also with thousands of terrains.
+	 */
+public class TerrainGrid {
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Batches with at least this many positions are split over the threads of the fork-join pool, in pieces
+	 * of BATCH_PIECE positions. Smaller batches are not worth the overhead.
+	 */
+	private static final int PARALLEL_THRESHOLD = 16384;
+	private static final int BATCH_PIECE = 4096;
+
+	/**
+	 * The largest position inside a terrain. A position just below a seam can be rounded up to SIZE when it is
+	 * made relative to the terrain, and it is moved back inside so it doesn't fall off the edge.
+	 */
+	private static final float MAX_LOCAL = Math.nextDown(Terrain.SIZE);
+
+	private long[] keys = new long[MIN_CAPACITY];
+	private Terrain[] terrains = new Terrain[MIN_CAPACITY];
+	private int size = 0;
+
+	// The terrain found by the last lookup, the player asks for the same one every frame
+	private long lastKey;
+	private Terrain lastTerrain;
+
+	/**
+	 * Adds the terrain at its grid position, replacing the terrain that was there.
+	 * @param terrain
+	 * @return the terrain that was replaced, or null
+	 */
+	public Terrain put(Terrain terrain) {
+		if((size + 1) * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		lastTerrain = null;
+		long key = key(terrain.getGridX(), terrain.getGridZ());
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while(terrains[slot] != null) {
+			if(keys[slot] == key) {
+				Terrain old = terrains[slot];
+				terrains[slot] = terrain;
+				return old;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		terrains[slot] = terrain;
+		size++;
+		return null;
+	}
+
+	/**
+	 * Removes the terrain at the grid position of the terrain, if it is that terrain.
+	 * @param terrain
+	 * @return false if the terrain was not in the grid
+	 */
+	public boolean remove(Terrain terrain) {
+		int slot = find(key(terrain.getGridX(), terrain.getGridZ()));
+		if(slot < 0 || terrains[slot] != terrain) {
+			return false;
+		}
+		lastTerrain = null;
+		removeSlot(slot);
+		return true;
+	}
+
+	/**
+	 * @return the terrain at the grid position, or null if there is none
+	 */
+	public Terrain get(int gridX, int gridZ) {
+		long key = key(gridX, gridZ);
+		if(lastTerrain != null && lastKey == key) {
+			return lastTerrain;
+		}
+		int slot = find(key);
+		if(slot < 0) {
+			return null;
+		}
+		lastKey = key;
+		lastTerrain = terrains[slot];
+		return lastTerrain;
+	}
+
+	/**
+	 * @return the terrain under the world position, or null if there is none
+	 */
+	public Terrain getTerrainAt(float worldX, float worldZ) {
+		return get(toGrid(worldX), toGrid(worldZ));
+	}
+
+	/**
+	 * The height of the ground at the world position, from whichever terrain is under it. Points on a seam
+	 * belong to the terrain with the higher grid position, like the floor division says.
+	 * @return the height, or 0 where there is no terrain
+	 */
+	public float getHeight(float worldX, float worldZ) {
+		return heightOn(getTerrainAt(worldX, worldZ), worldX, worldZ);
+	}
+
+	/**
+	 * Finds the heights of many positions at once, for example to place thousands of plants on the ground.
+	 * Gives exactly the same heights as getHeight. Large batches are worked out on several threads, so the
+	 * grid must not be changed until this returns.
+	 * @param worldX - the x of every position
+	 * @param worldZ - the z of every position
+	 * @param result - gets the height of every position, 0 where there is no terrain
+	 */
+	public void getHeights(float[] worldX, float[] worldZ, float[] result) {
+		if(result.length >= PARALLEL_THRESHOLD) {
+			ForkJoinPool.commonPool().invoke(new HeightBatch(worldX, worldZ, result, 0, result.length));
+		} else {
+			getHeights(worldX, worldZ, result, 0, result.length);
+		}
+	}
+
+	/**
+	 * Works out the heights of a part of a batch. The terrain of the last position is remembered in a local
+	 * variable, and not in lastTerrain, so several threads can do this at the same time.
+	 */
+	private void getHeights(float[] worldX, float[] worldZ, float[] result, int from, int to) {
+		long currentKey = 0;
+		Terrain current = null;
+		for(int i = from; i < to; i++) {
+			long key = key(toGrid(worldX[i]), toGrid(worldZ[i]));
+			if(current == null || key != currentKey) {
+				int slot = find(key);
+				current = slot < 0 ? null : terrains[slot];
+				currentKey = key;
+			}
+			result[i] = heightOn(current, worldX[i], worldZ[i]);
+		}
+	}
+
+	private static float heightOn(Terrain terrain, float worldX, float worldZ) {
+		if(terrain == null) {
+			return 0;
+		}
+		float terrainX = Math.min(Math.max(worldX - terrain.getX(), 0), MAX_LOCAL);
+		float terrainZ = Math.min(Math.max(worldZ - terrain.getZ(), 0), MAX_LOCAL);
+		return terrain.getHeightOfTerrainLocal(terrainX, terrainZ);
+	}
+
+	/**
+	 * Splits a batch in half until the pieces are small enough, then works them out.
+	 */
+	private class HeightBatch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final float[] worldX;
+		private final float[] worldZ;
+		private final float[] result;
+		private final int from;
+		private final int to;
+
+		private HeightBatch(float[] worldX, float[] worldZ, float[] result, int from, int to) {
+			this.worldX = worldX;
+			this.worldZ = worldZ;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= BATCH_PIECE) {
+				getHeights(worldX, worldZ, result, from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new HeightBatch(worldX, worldZ, result, from, middle),
+					new HeightBatch(worldX, worldZ, result, middle, to));
+		}
+	}
+
+	/**
+	 * @return true if there is a terrain under the world position
+	 */
+	public boolean contains(float worldX, float worldZ) {
+		return getTerrainAt(worldX, worldZ) != null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return all the terrains, in no particular order
+	 */
+	public List<Terrain> getTerrains() {
+		List<Terrain> list = new ArrayList<Terrain>(size);
+		for(Terrain terrain:terrains) {
+			if(terrain != null) {
+				list.add(terrain);
+			}
+		}
+		return list;
+	}
+
+	public void clear() {
+		keys = new long[MIN_CAPACITY];
+		terrains = new Terrain[MIN_CAPACITY];
+		size = 0;
+		lastTerrain = null;
+	}
+
+	/**
+	 * @return the grid position of the terrain a world coordinate lies on
+	 */
+	public static int toGrid(float world) {
+		return (int) Math.floor(world / Terrain.SIZE);
+	}
+
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while(terrains[slot] != null) {
+			if(keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Empties the slot, and moves the entries after it back, so no lookup stops early at the hole.
+	 */
+	private void removeSlot(int slot) {
+		int mask = keys.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while(terrains[next] != null) {
+			int home = hash(keys[next]) & mask;
+			// the entry can fill the hole if its home slot is not between the hole and where it is now
+			if(((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				terrains[hole] = terrains[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		terrains[hole] = null;
+		size--;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Terrain[] oldTerrains = terrains;
+		keys = new long[capacity];
+		terrains = new Terrain[capacity];
+		int mask = capacity - 1;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldTerrains[i] != null) {
+				int slot = hash(oldKeys[i]) & mask;
+				while(terrains[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				terrains[slot] = oldTerrains[i];
+			}
+		}
+	}
+
+	private static long key(int gridX, int gridZ) {
+		return ((long) gridX << 32) | (gridZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Mixes the bits of the key, so terrains next to each other don't end up in slots next to each other.
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}
@@ -0,0 +1,380 @@
+package terrains;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import renderEngine.Loader;
+import textures.TerrainTexture;
+import textures.TerrainTexturePack;
+
+	/**
+	 * Keeps the terrain tiles around the player loaded, so the world has no end.
+	 *
+	 * Every frame update() looks at which grid cell the player is in, and makes sure all the tiles within
+	 * radius cells of it are loaded. A missing tile is generated on a worker thread (heights, normals, texture
+	 * coordinates and indices, see Terrain.generateTerrainData, or only the heights with generateHeightData)
+	 * and the finished TerrainData is uploaded on the main thread, as many tiles per frame as the time budget
+	 * allows.
+	 *
+	 * Tiles the player has walked away from stay loaded, in case the player turns around, until there are more
+	 * than maxResident tiles. Then the tiles that were least recently inside the radius are deleted from the GPU.
+	 *
+	 * Everything except the generation itself must be called from the main thread.
+	 */
+public class TerrainStreamer {
+
+	/**
+	 * Makes the TerrainData of a tile. Called on the worker threads, so it must not make any OpenGL calls.
+	 */
+	public interface TileSource {
+		TerrainData generate(int gridX, int gridZ);
+	}
+
+	private final Loader loader;
+	private final TerrainTexturePack texturePack;
+	private final TerrainTexture blendMap;
+	private final TileSource source;
+	private final int radius;
+	private final int maxResident;
+	private final ExecutorService generators;
+
+	// The loaded tiles in least recently used order, the first one is the first to go
+	private final LinkedHashMap<Long, Tile> resident = new LinkedHashMap<Long, Tile>(16, 0.75f, true);
+	// Tiles that are being generated, and the ones that are done and wait for their upload
+	private final Set<Long> pending = new HashSet<Long>();
+	private final Queue<Tile> generated = new ConcurrentLinkedQueue<Tile>();
+	// Tiles that could not be generated, so we don't keep trying every frame
+	private final Set<Long> failed = new HashSet<Long>();
+
+	private final List<Terrain> terrains = new ArrayList<Terrain>();
+	private final TerrainGrid grid = new TerrainGrid();
+	private final Set<Long> wanted = new HashSet<Long>();
+	private final List<Long> missing = new ArrayList<Long>();
+	private int centerX;
+	private int centerZ;
+
+	// Metrics
+	private int tilesGenerated = 0;
+	private int tilesEvicted = 0;
+	private int tilesDiscarded = 0;
+	private long residentBytes = 0;
+	private long totalGenerationNanos = 0;
+	private long maxGenerationNanos = 0;
+	private long lastUploadNanos = 0;
+
+	/**
+	 * @param loader
+	 * @param texturePack - the textures every tile is painted with
+	 * @param blendMap - the blendMap of every tile
+	 * @param source - makes the data of a tile
+	 * @param radius - the number of tiles to keep loaded on each side of the player's tile
+	 * @param maxResident - the most tiles to keep loaded, at least all the tiles inside the radius
+	 */
+	public TerrainStreamer(Loader loader, TerrainTexturePack texturePack, TerrainTexture blendMap, TileSource source,
+			int radius, int maxResident) {
+		this.loader = loader;
+		this.texturePack = texturePack;
+		this.blendMap = blendMap;
+		this.source = source;
+		this.radius = radius;
+		this.maxResident = Math.max(maxResident, (2 * radius + 1) * (2 * radius + 1));
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		this.generators = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "terrain-generator-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts generating the tiles that are missing around the player, uploads the tiles that are done, and
+	 * evicts tiles when there are too many.
+	 * @param position - the position of the player
+	 * @param budgetNanos - the time this frame may spend uploading. At least one tile is uploaded when one is
+	 * ready, so a slow upload never stops the streaming completely.
+	 */
+	public void update(Vector3f position, long budgetNanos) {
+		centerX = TerrainGrid.toGrid(position.x);
+		centerZ = TerrainGrid.toGrid(position.z);
+		requestMissingTiles();
+		uploadGeneratedTiles(budgetNanos);
+		evictTiles();
+	}
+
+	/**
+	 * Loads all the tiles around the position before returning. Used at startup, when there is nothing to
+	 * show until the ground is there.
+	 * @param position
+	 */
+	public void loadAround(Vector3f position) {
+		update(position, Long.MAX_VALUE);
+		while(!pending.isEmpty()) {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			update(position, Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Works out which tiles should be loaded, marks them as recently used, and starts generating the missing
+	 * ones, the closest first.
+	 */
+	private void requestMissingTiles() {
+		wanted.clear();
+		missing.clear();
+		for(int gz = centerZ - radius; gz <= centerZ + radius; gz++) {
+			for(int gx = centerX - radius; gx <= centerX + radius; gx++) {
+				long key = key(gx, gz);
+				wanted.add(key);
+				if(resident.get(key) == null && !pending.contains(key) && !failed.contains(key)) {
+					missing.add(key);
+				}
+			}
+		}
+		Collections.sort(missing, new Comparator<Long>() {
+			@Override
+			public int compare(Long a, Long b) {
+				return Integer.compare(distance(a), distance(b));
+			}
+		});
+		for(long key:missing) {
+			pending.add(key);
+			generate(gridX(key), gridZ(key));
+		}
+	}
+
+	private void generate(final int gridX, final int gridZ) {
+		generators.submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				TerrainData data = null;
+				try {
+					data = source.generate(gridX, gridZ);
+				} catch (RuntimeException e) {
+					System.err.println("Could not generate terrain tile " + gridX + ", " + gridZ);
+					e.printStackTrace();
+				}
+				generated.add(new Tile(gridX, gridZ, data, System.nanoTime() - start));
+			}
+		});
+	}
+
+	private void uploadGeneratedTiles(long budgetNanos) {
+		long start = System.nanoTime();
+		Tile tile;
+		while((tile = generated.poll()) != null) {
+			long key = key(tile.gridX, tile.gridZ);
+			pending.remove(key);
+			if(tile.data == null) {
+				failed.add(key);
+				continue;
+			}
+			if(!wanted.contains(key)) {
+				// the player moved on while it was being generated
+				tilesDiscarded++;
+				continue;
+			}
+			long uploadStart = System.nanoTime();
+			tile.terrain = new Terrain(tile.gridX, tile.gridZ, loader, texturePack, blendMap, tile.data);
+			lastUploadNanos = System.nanoTime() - uploadStart;
+			tile.sizeInBytes = tile.data.getGpuSizeInBytes() + tile.data.getHeightsSizeInBytes();
+			tile.data = null;
+			resident.put(key, tile);
+			terrains.add(tile.terrain);
+			grid.put(tile.terrain);
+			residentBytes += tile.sizeInBytes;
+			tilesGenerated++;
+			totalGenerationNanos += tile.generationNanos;
+			maxGenerationNanos = Math.max(maxGenerationNanos, tile.generationNanos);
+			if(System.nanoTime() - start >= budgetNanos) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used tiles outside the radius until there are no more than maxResident left.
+	 */
+	private void evictTiles() {
+		Iterator<Map.Entry<Long, Tile>> iterator = resident.entrySet().iterator();
+		while(resident.size() > maxResident && iterator.hasNext()) {
+			Map.Entry<Long, Tile> entry = iterator.next();
+			if(wanted.contains(entry.getKey())) {
+				continue;
+			}
+			Tile tile = entry.getValue();
+			iterator.remove();
+			terrains.remove(tile.terrain);
+			grid.remove(tile.terrain);
+			if(tile.terrain.isDisplaced()) {
+				loader.deleteTexture(tile.terrain.getHeightTexture());
+			} else {
+				loader.unloadModel(tile.terrain.getModel());
+			}
+			residentBytes -= tile.sizeInBytes;
+			tilesEvicted++;
+		}
+	}
+
+	/**
+	 * @return the loaded tiles, to render and collide with
+	 */
+	public List<Terrain> getTerrains() {
+		return terrains;
+	}
+
+	/**
+	 * @return the loaded tiles by their grid position, to find the ground under a position
+	 */
+	public TerrainGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * @return the tile at the grid position, or null if it is not loaded
+	 */
+	public Terrain getTerrain(int gridX, int gridZ) {
+		return grid.get(gridX, gridZ);
+	}
+
+	/**
+	 * @return the tile under the world position, or null if it is not loaded
+	 */
+	public Terrain getTerrainAt(float worldX, float worldZ) {
+		return grid.getTerrainAt(worldX, worldZ);
+	}
+
+	/**
+	 * @return how long the tile took to generate in milliseconds, or -1 if it is not loaded
+	 */
+	public float getTileGenerationMillis(int gridX, int gridZ) {
+		Tile tile = resident.get(key(gridX, gridZ));
+		return tile == null ? -1 : tile.generationNanos / 1000000f;
+	}
+
+	/**
+	 * @return the bytes the tile takes up, the mesh or height texture on the GPU plus the heights kept for
+	 * collision, or -1 if it is not loaded
+	 */
+	public long getTileSizeInBytes(int gridX, int gridZ) {
+		Tile tile = resident.get(key(gridX, gridZ));
+		return tile == null ? -1 : tile.sizeInBytes;
+	}
+
+	public int getResidentTiles() {
+		return resident.size();
+	}
+
+	/**
+	 * @return the number of tiles being generated or waiting for their upload
+	 */
+	public int getPendingTiles() {
+		return pending.size();
+	}
+
+	public int getTilesGenerated() {
+		return tilesGenerated;
+	}
+
+	public int getTilesEvicted() {
+		return tilesEvicted;
+	}
+
+	public int getTilesFailed() {
+		return failed.size();
+	}
+
+	/**
+	 * @return the number of tiles that were generated but not needed any more when they were done
+	 */
+	public int getTilesDiscarded() {
+		return tilesDiscarded;
+	}
+
+	/**
+	 * @return the bytes taken up by all the loaded tiles, see getTileSizeInBytes
+	 */
+	public long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public float getAverageGenerationMillis() {
+		return tilesGenerated == 0 ? 0 : totalGenerationNanos / 1000000f / tilesGenerated;
+	}
+
+	public float getMaxGenerationMillis() {
+		return maxGenerationNanos / 1000000f;
+	}
+
+	/**
+	 * @return how long the upload of the last tile took on the main thread, in milliseconds
+	 */
+	public float getLastUploadMillis() {
+		return lastUploadNanos / 1000000f;
+	}
+
+	/**
+	 * Stops the worker threads. The tiles themselves are deleted by Loader.cleanUp.
+	 */
+	public void cleanUp() {
+		generators.shutdownNow();
+	}
+
+	private int distance(long key) {
+		return Math.max(Math.abs(gridX(key) - centerX), Math.abs(gridZ(key) - centerZ));
+	}
+
+	private static long key(int gridX, int gridZ) {
+		return ((long) gridX << 32) | (gridZ & 0xFFFFFFFFL);
+	}
+
+	private static int gridX(long key) {
+		return (int) (key >> 32);
+	}
+
+	private static int gridZ(long key) {
+		return (int) key;
+	}
+
+	private static class Tile {
+		private final int gridX;
+		private final int gridZ;
+		private final long generationNanos;
+		private TerrainData data;
+		private Terrain terrain;
+		private long sizeInBytes;
+
+		private Tile(int gridX, int gridZ, TerrainData data, long generationNanos) {
+			this.gridX = gridX;
+			this.gridZ = gridZ;
+			this.data = data;
+			this.generationNanos = generationNanos;
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package textures;
+
+	/**
+	 * Where one texture ended up when it was packed into a texture array: which layer, and which rectangle
+	 * of that layer. The rectangle is the texture itself, without the padding around it.
+	 */
+public class AtlasRegion {
+
+	private final String name;
+	private final int layer;
+	private final int x;
+	private final int y;
+	private final int width;
+	private final int height;
+	private final int pageWidth;
+	private final int pageHeight;
+
+	public AtlasRegion(String name, int layer, int x, int y, int width, int height, int pageWidth, int pageHeight) {
+		this.name = name;
+		this.layer = layer;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+	}
+
+	/**
+	 * Changes a texture coordinate of the original texture into the texture coordinate of the same
+	 * pixel in the layer. The vertex shader does the same thing with getU/getV/getUScale/getVScale.
+	 */
+	public float remapU(float u) {
+		return getU() + u * getUScale();
+	}
+
+	public float remapV(float v) {
+		return getV() + v * getVScale();
+	}
+
+	/**
+	 * @return the texture coordinate of the left side of the rectangle
+	 */
+	public float getU() {
+		return (float) x / pageWidth;
+	}
+
+	/**
+	 * @return the texture coordinate of the top of the rectangle
+	 */
+	public float getV() {
+		return (float) y / pageHeight;
+	}
+
+	public float getUScale() {
+		return (float) width / pageWidth;
+	}
+
+	public float getVScale() {
+		return (float) height / pageHeight;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLayer() {
+		return layer;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPageWidth() {
+		return pageWidth;
+	}
+
+	public int getPageHeight() {
+		return pageHeight;
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + layer + " " + x + " " + y + " " + width + " " + height;
+	}
+
+}
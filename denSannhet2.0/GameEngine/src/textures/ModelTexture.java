@@ -4,6 +4,13 @@ public class ModelTexture {
 	
 	private int textureID;
 	
+	// When the texture is loaded through the TextureManager, the ID comes from the handle
+	private TextureHandle handle;
+	
+	// When the texture is packed into a texture array, the ID is the one of the array
+	private TextureArray textureArray;
+	private AtlasRegion region;
+	
 	private float shineDamper = 1;
 	private float reflectivity = 0;
 	
@@ -55,12 +62,48 @@ public class ModelTexture {
 		this.textureID = id;
 	}
 	
+	public ModelTexture(TextureHandle handle) {
+		this.handle = handle;
+	}
+	
+	/**
+	 * A texture that has been packed into a texture array. All models using the same array can be drawn
+	 * without binding a new texture, the shader picks the layer and rectangle of the region.
+	 * @param textureArray
+	 * @param name - the name the texture was packed with
+	 */
+	public ModelTexture(TextureArray textureArray, String name) {
+		this.textureArray = textureArray;
+		this.region = textureArray.getRegion(name);
+		if(region == null) {
+			throw new IllegalArgumentException("No texture " + name + " in the texture array");
+		}
+	}
+	
 	public int getID() {
-		return this.textureID;
+		return getTextureID();
 	}
 
 	public int getTextureID() {
-		return textureID;
+		if(textureArray != null) {
+			return textureArray.getTextureID();
+		}
+		return handle != null ? handle.getID() : textureID;
+	}
+	
+	public boolean isInTextureArray() {
+		return textureArray != null;
+	}
+	
+	/**
+	 * @return where in the texture array the texture is, or null when it is a normal texture
+	 */
+	public AtlasRegion getRegion() {
+		return region;
+	}
+	
+	public TextureHandle getHandle() {
+		return handle;
 	}
 
 	public float getShineDamper() {
@@ -9,13 +9,20 @@ package textures;
 public class TerrainTexture {
 	
 	private int textureID;
+	
+	// When the texture is loaded through the TextureManager, the ID comes from the handle
+	private TextureHandle handle;
 
 	public TerrainTexture(int textureID) {
 		this.textureID = textureID;
 	}
+	
+	public TerrainTexture(TextureHandle handle) {
+		this.handle = handle;
+	}
 
 	public int getTextureID() {
-		return textureID;
+		return handle != null ? handle.getID() : textureID;
 	}
 
 }
@@ -0,0 +1,41 @@
+package textures;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+	/**
+	 * A GL_TEXTURE_2D_ARRAY on the GPU, holding the layers of a packed atlas, together with the region of
+	 * every texture that was packed into it. Made by Loader.loadTextureArray.
+	 */
+public class TextureArray {
+
+	private final int textureID;
+	private final int layerCount;
+	private final Map<String, AtlasRegion> regions = new HashMap<String, AtlasRegion>();
+
+	public TextureArray(int textureID, int layerCount, List<AtlasRegion> regions) {
+		this.textureID = textureID;
+		this.layerCount = layerCount;
+		for(AtlasRegion region : regions) {
+			this.regions.put(region.getName(), region);
+		}
+	}
+
+	public int getTextureID() {
+		return textureID;
+	}
+
+	public int getLayerCount() {
+		return layerCount;
+	}
+
+	/**
+	 * @param name - the file name the texture was packed with
+	 * @return the region, or null if there is no texture with that name in the array
+	 */
+	public AtlasRegion getRegion(String name) {
+		return regions.get(name);
+	}
+
+}
@@ -0,0 +1,144 @@
+package textures;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+	/**
+	 * The result of packing textures with the TexturePacker: the pixels of every layer and the region of every
+	 * texture. This is everything that is needed to make a TextureArray, but without any OpenGL calls, so it
+	 * can be made on a worker thread.
+	 *
+	 * The packing can be done while the game starts (pack), or ahead of time with TexturePacker.main, which
+	 * saves the layers as PNG files and the regions in a .atlas text file (load).
+	 */
+public class TextureAtlasData {
+
+	private final int pageWidth;
+	private final int pageHeight;
+	private final List<AtlasRegion> regions;
+	private final List<ByteBuffer> layers;
+
+	public TextureAtlasData(int pageWidth, int pageHeight, List<AtlasRegion> regions, List<ByteBuffer> layers) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.regions = regions;
+		this.layers = layers;
+	}
+
+	/**
+	 * Decodes and packs the textures.
+	 * @param packer
+	 * @param fileNames - PNG files inside res, without extension. These are also the names of the regions.
+	 */
+	public static TextureAtlasData pack(TexturePacker packer, String... fileNames) throws IOException {
+		List<TextureData> images = new ArrayList<TextureData>();
+		int[] widths = new int[fileNames.length];
+		int[] heights = new int[fileNames.length];
+		for(int i = 0; i < fileNames.length; i++) {
+			TextureData image = TextureData.decode(fileNames[i]);
+			images.add(image);
+			widths[i] = image.getWidth();
+			heights[i] = image.getHeight();
+		}
+		List<AtlasRegion> regions = packer.pack(fileNames, widths, heights);
+		List<ByteBuffer> layers = new ArrayList<ByteBuffer>();
+		for(int layer = 0; layer < TexturePacker.getLayerCount(regions); layer++) {
+			layers.add(packer.composeLayer(regions, images, layer));
+		}
+		return new TextureAtlasData(packer.getPageWidth(), packer.getPageHeight(), regions, layers);
+	}
+
+	/**
+	 * Saves the atlas as res/atlasName.atlas, and the layers as res/atlasName_0.png, res/atlasName_1.png, ...
+	 * @param atlasName - path inside res, without extension
+	 */
+	public void save(String atlasName) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter("res/" + atlasName + ".atlas"));
+		try {
+			writer.println("page " + pageWidth + " " + pageHeight + " " + layers.size());
+			for(AtlasRegion region : regions) {
+				writer.println(region);
+			}
+		} finally {
+			writer.close();
+		}
+		for(int layer = 0; layer < layers.size(); layer++) {
+			ByteBuffer pixels = layers.get(layer);
+			BufferedImage image = new BufferedImage(pageWidth, pageHeight, BufferedImage.TYPE_INT_ARGB);
+			for(int y = 0; y < pageHeight; y++) {
+				for(int x = 0; x < pageWidth; x++) {
+					int i = (y * pageWidth + x) * 4;
+					int r = pixels.get(i) & 0xff;
+					int g = pixels.get(i + 1) & 0xff;
+					int b = pixels.get(i + 2) & 0xff;
+					int a = pixels.get(i + 3) & 0xff;
+					image.setRGB(x, y, (a << 24) | (r << 16) | (g << 8) | b);
+				}
+			}
+			ImageIO.write(image, "png", new File("res/" + atlasName + "_" + layer + ".png"));
+		}
+	}
+
+	/**
+	 * Loads a atlas saved with save, or with TexturePacker.main.
+	 * @param atlasName - path inside res, without extension
+	 */
+	public static TextureAtlasData load(String atlasName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader("res/" + atlasName + ".atlas"));
+		List<AtlasRegion> regions = new ArrayList<AtlasRegion>();
+		int pageWidth;
+		int pageHeight;
+		int layerCount;
+		try {
+			String[] header = reader.readLine().split(" ");
+			pageWidth = Integer.parseInt(header[1]);
+			pageHeight = Integer.parseInt(header[2]);
+			layerCount = Integer.parseInt(header[3]);
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				String[] parts = line.split(" ");
+				regions.add(new AtlasRegion(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+						Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), Integer.parseInt(parts[5]),
+						pageWidth, pageHeight));
+			}
+		} finally {
+			reader.close();
+		}
+		List<ByteBuffer> layers = new ArrayList<ByteBuffer>();
+		for(int layer = 0; layer < layerCount; layer++) {
+			layers.add(TextureData.decode(atlasName + "_" + layer).getBuffer());
+		}
+		return new TextureAtlasData(pageWidth, pageHeight, regions, layers);
+	}
+
+	public int getPageWidth() {
+		return pageWidth;
+	}
+
+	public int getPageHeight() {
+		return pageHeight;
+	}
+
+	public List<AtlasRegion> getRegions() {
+		return Collections.unmodifiableList(regions);
+	}
+
+	public List<ByteBuffer> getLayers() {
+		return Collections.unmodifiableList(layers);
+	}
+
+}
@@ -0,0 +1,71 @@
+package textures;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+	/**
+	 * The pixels of a decoded PNG image, as RGBA bytes in a direct buffer ready to be uploaded with glTexImage2D.
+	 * Decoding does not touch OpenGL, so it can be done on any thread. Only Loader.loadTexture(TextureData)
+	 * has to run on the thread with the OpenGL context.
+	 */
+public class TextureData {
+
+	private int width;
+	private int height;
+	private ByteBuffer buffer;
+
+	public TextureData(ByteBuffer buffer, int width, int height) {
+		this.buffer = buffer;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Reads and decodes res/fileName.png. The first row of the buffer is the top row of the image, the same
+	 * as slick-util's TextureLoader gives us, so the texture coordinates of the models still fit.
+	 * @param fileName - path inside res, without extension
+	 * @return the decoded image
+	 * @throws IOException if the file can't be read or is not a PNG
+	 */
+	public static TextureData decode(String fileName) throws IOException {
+		InputStream in = new FileInputStream("res/" + fileName + ".png");
+		try {
+			PNGDecoder decoder = new PNGDecoder(in);
+			int width = decoder.getWidth();
+			int height = decoder.getHeight();
+			ByteBuffer buffer = BufferUtils.createByteBuffer(4 * width * height);
+			decoder.decode(buffer, width * 4, Format.RGBA);
+			buffer.flip();
+			return new TextureData(buffer, width, height);
+		} finally {
+			in.close();
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return the number of bytes the pixels take up
+	 */
+	public int getSizeInBytes() {
+		return buffer.capacity();
+	}
+
+}
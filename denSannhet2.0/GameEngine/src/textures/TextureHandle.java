@@ -0,0 +1,76 @@
+package textures;
+
+	/**
+	 * A texture that is loaded by the TextureManager. While the image is still being decoded and uploaded the
+	 * handle gives out the ID of a small placeholder texture, and once the real texture is on the GPU it gives out
+	 * that ID instead. So a model can be drawn right away, and it simply changes looks when its texture is ready.
+	 *
+	 * The same handle is shared by everyone loading the same file. Every user has to give it back with
+	 * TextureManager.release when it is not needed any more, and the texture is deleted when nobody uses it.
+	 */
+public class TextureHandle {
+
+	private final String fileName;
+
+	private volatile int textureID;
+	private volatile boolean resident = false;
+	private volatile boolean released = false;
+	private int references = 0;
+	private long sizeInBytes = 0;
+
+	public TextureHandle(String fileName, int placeholderID) {
+		this.fileName = fileName;
+		this.textureID = placeholderID;
+	}
+
+	/**
+	 * @return the ID of the texture, or of the placeholder when the texture is not ready yet
+	 */
+	public int getID() {
+		return textureID;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return true when the real texture has been uploaded
+	 */
+	public boolean isResident() {
+		return resident;
+	}
+
+	public boolean isReleased() {
+		return released;
+	}
+
+	public int getReferences() {
+		return references;
+	}
+
+	public long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	// Only the TextureManager changes the state of a handle
+
+	public void setResident(int textureID, long sizeInBytes) {
+		this.textureID = textureID;
+		this.sizeInBytes = sizeInBytes;
+		this.resident = true;
+	}
+
+	public void setReleased() {
+		this.released = true;
+	}
+
+	public int addReference() {
+		return ++references;
+	}
+
+	public int removeReference() {
+		return --references;
+	}
+
+}
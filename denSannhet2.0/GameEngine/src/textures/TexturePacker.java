@@ -0,0 +1,204 @@
+package textures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.lwjgl.BufferUtils;
+
+	/**
+	 * Packs many small textures into a few big pages, which become the layers of a texture array. Then all the
+	 * models using those textures can be drawn without binding another texture in between.
+	 *
+	 * The packing is done in shelves: the textures are sorted from highest to lowest, and put next to each other
+	 * in rows (shelves) as high as the first texture in it. When a texture doesn't fit on any shelf, a new shelf is
+	 * started below the last one, and when the page is full, a new page is started.
+	 *
+	 * Every texture gets padding around it, filled with copies of its edge pixels. Without it the mipmaps would
+	 * blend in the colours of the neighbouring textures.
+	 *
+	 * Nothing in here uses OpenGL, so the packing can be run and checked without a display.
+	 */
+public class TexturePacker {
+
+	private final int pageWidth;
+	private final int pageHeight;
+	private final int padding;
+
+	public TexturePacker(int pageWidth, int pageHeight, int padding) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.padding = padding;
+	}
+
+	/**
+	 * A row of textures on a page.
+	 */
+	private static class Shelf {
+		private final int y;
+		private final int height;
+		private int usedWidth = 0;
+
+		private Shelf(int y, int height) {
+			this.y = y;
+			this.height = height;
+		}
+	}
+
+	/**
+	 * Finds a place for every texture.
+	 * @param names - the name of every texture
+	 * @param widths - the width of every texture in pixels
+	 * @param heights - the height of every texture in pixels
+	 * @return the regions, in the same order as the names
+	 * @throws IllegalArgumentException if a texture with its padding is bigger than a page
+	 */
+	public List<AtlasRegion> pack(String[] names, final int[] widths, final int[] heights) {
+		Integer[] order = new Integer[names.length];
+		for(int i = 0; i < order.length; i++) {
+			order[i] = i;
+			if(widths[i] + 2 * padding > pageWidth || heights[i] + 2 * padding > pageHeight) {
+				throw new IllegalArgumentException("Texture " + names[i] + " is too big for a " + pageWidth + "x" + pageHeight + " page");
+			}
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				if(heights[a] != heights[b]) {
+					return heights[b] - heights[a];
+				}
+				return widths[b] - widths[a];
+			}
+		});
+
+		AtlasRegion[] regions = new AtlasRegion[names.length];
+		List<List<Shelf>> pages = new ArrayList<List<Shelf>>();
+		for(int i : order) {
+			int width = widths[i] + 2 * padding;
+			int height = heights[i] + 2 * padding;
+			int layer = -1;
+			Shelf shelf = null;
+			for(int page = 0; page < pages.size() && shelf == null; page++) {
+				shelf = findShelf(pages.get(page), width, height);
+				layer = page;
+			}
+			if(shelf == null) {
+				List<Shelf> page = new ArrayList<Shelf>();
+				pages.add(page);
+				shelf = findShelf(page, width, height);
+				layer = pages.size() - 1;
+			}
+			regions[i] = new AtlasRegion(names[i], layer, shelf.usedWidth + padding, shelf.y + padding,
+					widths[i], heights[i], pageWidth, pageHeight);
+			shelf.usedWidth += width;
+		}
+		return Arrays.asList(regions);
+	}
+
+	/**
+	 * Finds the first shelf with room for the texture, or starts a new one if there is room left on the page.
+	 * @return the shelf, or null if the page is full
+	 */
+	private Shelf findShelf(List<Shelf> page, int width, int height) {
+		for(Shelf shelf : page) {
+			if(shelf.height >= height && pageWidth - shelf.usedWidth >= width) {
+				return shelf;
+			}
+		}
+		int top = 0;
+		if(!page.isEmpty()) {
+			Shelf last = page.get(page.size() - 1);
+			top = last.y + last.height;
+		}
+		if(pageHeight - top < height) {
+			return null;
+		}
+		Shelf shelf = new Shelf(top, height);
+		page.add(shelf);
+		return shelf;
+	}
+
+	/**
+	 * @return the number of layers the regions are spread over
+	 */
+	public static int getLayerCount(List<AtlasRegion> regions) {
+		int layers = 0;
+		for(AtlasRegion region : regions) {
+			layers = Math.max(layers, region.getLayer() + 1);
+		}
+		return layers;
+	}
+
+	/**
+	 * Copies the images of one layer into a RGBA page, with the edges of every image repeated into its padding.
+	 * @param regions - from pack
+	 * @param images - the decoded textures, in the same order as the regions
+	 * @param layer - the layer to build
+	 * @return the pixels of the layer, ready to be uploaded
+	 */
+	public ByteBuffer composeLayer(List<AtlasRegion> regions, List<TextureData> images, int layer) {
+		ByteBuffer page = BufferUtils.createByteBuffer(pageWidth * pageHeight * 4);
+		for(int i = 0; i < regions.size(); i++) {
+			AtlasRegion region = regions.get(i);
+			if(region.getLayer() != layer) {
+				continue;
+			}
+			TextureData image = images.get(i);
+			if(image.getWidth() != region.getWidth() || image.getHeight() != region.getHeight()) {
+				throw new IllegalArgumentException("Image " + region.getName() + " does not match its region");
+			}
+			ByteBuffer source = image.getBuffer();
+			for(int y = -padding; y < region.getHeight() + padding; y++) {
+				int sourceY = clamp(y, region.getHeight());
+				for(int x = -padding; x < region.getWidth() + padding; x++) {
+					int sourceX = clamp(x, region.getWidth());
+					int from = (sourceY * region.getWidth() + sourceX) * 4;
+					int to = ((region.getY() + y) * pageWidth + region.getX() + x) * 4;
+					page.putInt(to, source.getInt(from));
+				}
+			}
+		}
+		return page;
+	}
+
+	private static int clamp(int value, int size) {
+		return Math.max(0, Math.min(size - 1, value));
+	}
+
+	/**
+	 * Packs textures ahead of time, so the game only has to load the finished layers.
+	 * Run from the GameEngine folder: TexturePacker atlasName pageSize padding texture1 texture2 ...
+	 * For example: TexturePacker textures/packed/entities 2048 8 textures/pine textures/fern_atlas_texture
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 4) {
+			System.err.println("Usage: TexturePacker atlasName pageSize padding texture...");
+			return;
+		}
+		int pageSize = Integer.parseInt(args[1]);
+		TexturePacker packer = new TexturePacker(pageSize, pageSize, Integer.parseInt(args[2]));
+		String[] fileNames = Arrays.copyOfRange(args, 3, args.length);
+		TextureAtlasData atlas = TextureAtlasData.pack(packer, fileNames);
+		atlas.save(args[0]);
+		System.out.println("Packed " + fileNames.length + " textures into " + atlas.getLayers().size() + " layers");
+		for(AtlasRegion region : atlas.getRegions()) {
+			System.out.println("  " + region);
+		}
+	}
+
+	public int getPageWidth() {
+		return pageWidth;
+	}
+
+	public int getPageHeight() {
+		return pageHeight;
+	}
+
+	public int getPadding() {
+		return padding;
+	}
+
+}
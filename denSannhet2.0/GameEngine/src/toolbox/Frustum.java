@@ -0,0 +1,171 @@
+package toolbox;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+	/**
+	 * The six planes of the camera's view frustum. Everything outside of them is not visible on the screen,
+	 * so there is no reason to send it to the GPU at all.
+	 *
+	 * The planes are taken directly from the combined projection * view matrix (Gribb/Hartmann). Every plane is
+	 * stored as a, b, c, d where (a, b, c) is the normal pointing into the frustum, so a point is on the inside of
+	 * the plane when a*x + b*y + c*z + d >= 0.
+	 *
+	 * This class does no OpenGL calls, so it can be used and tested without a display.
+	 */
+public class Frustum {
+
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+	public static final int BOTTOM = 2;
+	public static final int TOP = 3;
+	public static final int NEAR = 4;
+	public static final int FAR = 5;
+
+	private final float[][] planes = new float[6][4];
+
+	private final Matrix4f clipMatrix = new Matrix4f();
+
+	// The XZ bounds of the 8 corners of the frustum, from the near plane out to the far plane
+	private float minX;
+	private float maxX;
+	private float minZ;
+	private float maxZ;
+
+	/**
+	 * Extracts the planes from the projection and view matrix of this frame.
+	 * @param projectionMatrix
+	 * @param viewMatrix
+	 */
+	public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+		Matrix4f.mul(projectionMatrix, viewMatrix, clipMatrix);
+		update(clipMatrix);
+	}
+
+	/**
+	 * Extracts the planes from a already combined projection * view matrix.
+	 * LWJGL stores the matrix as m[column][row], so row i is (m0i, m1i, m2i, m3i).
+	 * @param m - the clip matrix
+	 */
+	public void update(Matrix4f m) {
+		setPlane(LEFT,   m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+		setPlane(RIGHT,  m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+		setPlane(BOTTOM, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+		setPlane(TOP,    m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+		setPlane(NEAR,   m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+		setPlane(FAR,    m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+		updateBounds();
+	}
+
+	/**
+	 * Every corner of the frustum is where a left or right, a bottom or top and the near or far plane meet.
+	 */
+	private void updateBounds() {
+		minX = Float.POSITIVE_INFINITY;
+		maxX = Float.NEGATIVE_INFINITY;
+		minZ = Float.POSITIVE_INFINITY;
+		maxZ = Float.NEGATIVE_INFINITY;
+		for(int side = LEFT; side <= RIGHT; side++) {
+			for(int height = BOTTOM; height <= TOP; height++) {
+				for(int depth = NEAR; depth <= FAR; depth++) {
+					addCorner(planes[side], planes[height], planes[depth]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The point where the three planes meet is (d1 * (n2 x n3) + d2 * (n3 x n1) + d3 * (n1 x n2)) / -(n1 . (n2 x n3)).
+	 * Only x and z are needed.
+	 */
+	private void addCorner(float[] p1, float[] p2, float[] p3) {
+		float c23x = p2[1] * p3[2] - p2[2] * p3[1];
+		float c23y = p2[2] * p3[0] - p2[0] * p3[2];
+		float c23z = p2[0] * p3[1] - p2[1] * p3[0];
+		float c31x = p3[1] * p1[2] - p3[2] * p1[1];
+		float c31z = p3[0] * p1[1] - p3[1] * p1[0];
+		float c12x = p1[1] * p2[2] - p1[2] * p2[1];
+		float c12z = p1[0] * p2[1] - p1[1] * p2[0];
+		float denominator = -(p1[0] * c23x + p1[1] * c23y + p1[2] * c23z);
+		if(denominator == 0) {
+			return;
+		}
+		float x = (p1[3] * c23x + p2[3] * c31x + p3[3] * c12x) / denominator;
+		float z = (p1[3] * c23z + p2[3] * c31z + p3[3] * c12z) / denominator;
+		minX = Math.min(minX, x);
+		maxX = Math.max(maxX, x);
+		minZ = Math.min(minZ, z);
+		maxZ = Math.max(maxZ, z);
+	}
+
+	/**
+	 * Normalizes the plane, so the plane equation gives the actual distance to it.
+	 * Without this we could not compare it with the radius of a sphere.
+	 */
+	private void setPlane(int plane, float a, float b, float c, float d) {
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+		planes[plane][0] = a / length;
+		planes[plane][1] = b / length;
+		planes[plane][2] = c / length;
+		planes[plane][3] = d / length;
+	}
+
+	/**
+	 * @return the smallest x of the frustum, so everything visible has a x of at least this
+	 */
+	public float getMinX() {
+		return minX;
+	}
+
+	public float getMaxX() {
+		return maxX;
+	}
+
+	public float getMinZ() {
+		return minZ;
+	}
+
+	public float getMaxZ() {
+		return maxZ;
+	}
+
+	/**
+	 * @return the signed distance from the point to the plane, negative when it is on the outside.
+	 */
+	public float distanceToPlane(int plane, float x, float y, float z) {
+		float[] p = planes[plane];
+		return p[0] * x + p[1] * y + p[2] * z + p[3];
+	}
+
+	/**
+	 * A sphere is only rejected when it is completely on the outside of one of the planes.
+	 * Spheres close to the corners of the frustum can slip through, but that only means we draw a bit too much.
+	 * @return true if some of the sphere might be visible
+	 */
+	public boolean sphereInFrustum(float x, float y, float z, float radius) {
+		for(int i = 0; i < 6; i++) {
+			if(distanceToPlane(i, x, y, z) < -radius) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests a axis aligned box. For each plane we only check the corner furthest along the plane normal,
+	 * if even that one is outside, the whole box is.
+	 * @return true if some of the box might be visible
+	 */
+	public boolean boxInFrustum(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		for(int i = 0; i < 6; i++) {
+			float[] p = planes[i];
+			float x = p[0] >= 0 ? maxX : minX;
+			float y = p[1] >= 0 ? maxY : minY;
+			float z = p[2] >= 0 ? maxZ : minZ;
+			if(p[0] * x + p[1] * y + p[2] * z + p[3] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -8,6 +8,11 @@ import entities.Camera;
 
 public class Maths {
 	
+	// The axes to rotate around, never changed, so they can be shared by every thread
+	private static final Vector3f X_AXIS = new Vector3f(1, 0, 0);
+	private static final Vector3f Y_AXIS = new Vector3f(0, 1, 0);
+	private static final Vector3f Z_AXIS = new Vector3f(0, 0, 1);
+	
 	public static Matrix4f createTransformationMatrix(Vector2f translation, Vector2f scale) {
 		Matrix4f matrix = new Matrix4f();
 		matrix.setIdentity();
@@ -35,6 +40,20 @@ public class Maths {
 		return l1 * p1.y + l2 * p2.y + l3 * p3.y;
 	}
 	
+	/**
+	 * The same as the method above, but with the points as plain floats, so nothing has to be allocated.
+	 * The calculation is done in exactly the same order, so the result is the same to the last bit.
+	 * @return the height of the position on the triangle
+	 */
+	public static float barryCentric(float p1x, float p1y, float p1z, float p2x, float p2y, float p2z,
+			float p3x, float p3y, float p3z, float posX, float posY) {
+		float det = (p2z - p3z) * (p1x - p3x) + (p3x - p2x) * (p1z - p3z);
+		float l1 = ((p2z - p3z) * (posX - p3x) + (p3x - p2x) * (posY - p3z)) / det;
+		float l2 = ((p3z - p1z) * (posX - p3x) + (p1x - p3x) * (posY - p3z)) / det;
+		float l3 = 1.0f - l1 - l2;
+		return l1 * p1y + l2 * p2y + l3 * p3y;
+	}
+	
 	public static Matrix4f createTransformationMatrix(
 			Vector3f translation, float rx, float ry, float rz, float scale) {
 		Matrix4f matrix = new Matrix4f();
@@ -46,6 +65,34 @@ public class Maths {
 		return matrix;
 	}
 	
+	/**
+	 * The same matrix as createTransformationMatrix, written into dest instead of a new matrix, and without
+	 * creating any vectors. For the loops that run for every entity every frame.
+	 * @return dest
+	 */
+	public static Matrix4f createTransformationMatrix(
+			Vector3f translation, float rx, float ry, float rz, float scale, Matrix4f dest) {
+		dest.setIdentity();
+		Matrix4f.translate(translation, dest, dest);
+		Matrix4f.rotate((float) Math.toRadians(rx), X_AXIS, dest, dest);
+		Matrix4f.rotate((float) Math.toRadians(ry), Y_AXIS, dest, dest);
+		Matrix4f.rotate((float) Math.toRadians(rz), Z_AXIS, dest, dest);
+		// what Matrix4f.scale does with the same scale on every axis, the first three columns times the scale
+		dest.m00 *= scale;
+		dest.m01 *= scale;
+		dest.m02 *= scale;
+		dest.m03 *= scale;
+		dest.m10 *= scale;
+		dest.m11 *= scale;
+		dest.m12 *= scale;
+		dest.m13 *= scale;
+		dest.m20 *= scale;
+		dest.m21 *= scale;
+		dest.m22 *= scale;
+		dest.m23 *= scale;
+		return dest;
+	}
+	
 	public static Matrix4f createViewMatrix(Camera camera) {
 		Matrix4f viewMatrix = new Matrix4f();
 		viewMatrix.setIdentity();
@@ -0,0 +1,358 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+import terrains.Terrain;
+import toolbox.Frustum;
+
+	/**
+	 * A uniform grid over the XZ plane holding onto the entities of the world. Instead of looping through every
+	 * entity in the world, a query only looks at the cells it overlaps, so the work done every frame depends on
+	 * what is close to the camera and not on how many entities there are in total.
+	 *
+	 * By default a cell is the same size as a Terrain, so cell (0, -1) covers the same ground as Terrain(0, -1).
+	 *
+	 * Entities are not told when they move, so whoever moves a entity in the grid has to call move() afterwards.
+	 */
+public class EntityGrid {
+
+	private final float cellSize;
+
+	private final Map<Long, Cell> cells = new HashMap<Long, Cell>();
+
+	/**
+	 * Where every entity is stored, so we can remove or move it without searching for it.
+	 */
+	private final Map<Entity, Slot> slots = new IdentityHashMap<Entity, Slot>();
+
+	// The cells of the query being run, kept so the queries don't create a new list every time
+	private final List<Cell> scratchCells = new ArrayList<Cell>();
+
+	// The biggest bounding radius of any entity ever put in the grid
+	private float maxRadius = 0;
+
+	public EntityGrid() {
+		this(Terrain.SIZE);
+	}
+
+	public EntityGrid(float cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Adds the entity to the cell under its current position. Adding a entity that is already in the grid
+	 * is the same as moving it.
+	 * @param entity
+	 */
+	public void insert(Entity entity) {
+		if(slots.containsKey(entity)) {
+			move(entity);
+			return;
+		}
+		Vector3f position = entity.getPosition();
+		Cell cell = getOrCreateCell(cellX(position.x), cellZ(position.z));
+		slots.put(entity, cell.add(entity));
+	}
+
+	/**
+	 * Removes the entity from the grid.
+	 * @return false if the entity was not in the grid
+	 */
+	public boolean remove(Entity entity) {
+		Slot slot = slots.remove(entity);
+		if(slot == null) {
+			return false;
+		}
+		slot.cell.remove(slot.index, slots);
+		if(slot.cell.entities.isEmpty()) {
+			cells.remove(key(slot.cell.x, slot.cell.z));
+		}
+		return true;
+	}
+
+	/**
+	 * Has to be called after the position (or scale) of a entity has changed. If the entity still is inside
+	 * the same cell, only the height bounds of the cell are updated.
+	 * @param entity
+	 */
+	public void move(Entity entity) {
+		Slot slot = slots.get(entity);
+		if(slot == null) {
+			insert(entity);
+			return;
+		}
+		Vector3f position = entity.getPosition();
+		int x = cellX(position.x);
+		int z = cellZ(position.z);
+		if(slot.cell.x == x && slot.cell.z == z) {
+			slot.cell.grow(entity);
+			return;
+		}
+		remove(entity);
+		insert(entity);
+	}
+
+	public boolean contains(Entity entity) {
+		return slots.containsKey(entity);
+	}
+
+	public int size() {
+		return slots.size();
+	}
+
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public void clear() {
+		cells.clear();
+		slots.clear();
+		maxRadius = 0;
+	}
+
+	/**
+	 * Adds every entity whose position is inside the rectangle to the result list.
+	 * @return the result list
+	 */
+	public List<Entity> queryRange(float minX, float minZ, float maxX, float maxZ, List<Entity> result) {
+		List<Cell> inRange = cellsInRange(cellX(minX), cellZ(minZ), cellX(maxX), cellZ(maxZ));
+		for(int i = 0; i < inRange.size(); i++) {
+			Cell cell = inRange.get(i);
+			boolean inside = cell.minX() >= minX && cell.maxX() <= maxX && cell.minZ() >= minZ && cell.maxZ() <= maxZ;
+			if(inside) {
+				result.addAll(cell.entities);
+				continue;
+			}
+			for(int j = 0; j < cell.entities.size(); j++) {
+				Entity entity = cell.entities.get(j);
+				Vector3f p = entity.getPosition();
+				if(p.x >= minX && p.x <= maxX && p.z >= minZ && p.z <= maxZ) {
+					result.add(entity);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds every entity whose position is within the radius of the point, measured in the XZ plane only.
+	 * @return the result list
+	 */
+	public List<Entity> queryRadius(float x, float z, float radius, List<Entity> result) {
+		float radiusSquared = radius * radius;
+		List<Cell> inRange = cellsInRange(cellX(x - radius), cellZ(z - radius), cellX(x + radius), cellZ(z + radius));
+		for(int i = 0; i < inRange.size(); i++) {
+			Cell cell = inRange.get(i);
+			for(int j = 0; j < cell.entities.size(); j++) {
+				Entity entity = cell.entities.get(j);
+				Vector3f p = entity.getPosition();
+				float dx = p.x - x;
+				float dz = p.z - z;
+				if(dx * dx + dz * dz <= radiusSquared) {
+					result.add(entity);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds every entity that might be visible in the frustum. Only the cells under the XZ bounds of the frustum,
+	 * out to its far plane, are looked at. Those cells are rejected by their bounding box first, then the bounding
+	 * sphere of every entity in the cells that are left is tested. A entity can stick out of its cell by its radius,
+	 * so the range is made bigger by the biggest radius in the grid.
+	 * Entities without a bounding radius are always added when their cell is visible.
+	 * @return the result list
+	 */
+	public List<Entity> queryFrustum(Frustum frustum, List<Entity> result) {
+		float minX = frustum.getMinX() - maxRadius;
+		float maxX = frustum.getMaxX() + maxRadius;
+		float minZ = frustum.getMinZ() - maxRadius;
+		float maxZ = frustum.getMaxZ() + maxRadius;
+		List<Cell> inRange;
+		if(minX <= maxX && minZ <= maxZ) {
+			inRange = cellsInRange(cellX(minX), cellZ(minZ), cellX(maxX), cellZ(maxZ));
+		} else {
+			// the frustum has no bounds (not updated yet, or from a broken matrix), so every cell might be visible
+			inRange = allCells();
+		}
+		for(int i = 0; i < inRange.size(); i++) {
+			Cell cell = inRange.get(i);
+			float r = cell.maxRadius;
+			if(!frustum.boxInFrustum(cell.minX() - r, cell.minY - r, cell.minZ() - r, cell.maxX() + r, cell.maxY + r, cell.maxZ() + r)) {
+				continue;
+			}
+			for(int j = 0; j < cell.entities.size(); j++) {
+				Entity entity = cell.entities.get(j);
+				float radius = radiusOf(entity);
+				Vector3f p = entity.getPosition();
+				if(radius <= 0 || frustum.sphereInFrustum(p.x, p.y, p.z, radius)) {
+					result.add(entity);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fills the scratch list with the cells in the range that are in use, so a query doesn't create a list.
+	 * When the range covers more cells than there are in use, it is cheaper to just check all of them. That is
+	 * also what happens for huge ranges, like the ones from infinite bounds, so the loops can't overflow.
+	 */
+	private List<Cell> cellsInRange(int minCellX, int minCellZ, int maxCellX, int maxCellZ) {
+		List<Cell> result = scratchCells;
+		result.clear();
+		// every span is at most 2^32, so each one fits in a long, and the product is only worked out when both are small
+		long spanX = (long) maxCellX - minCellX + 1;
+		long spanZ = (long) maxCellZ - minCellZ + 1;
+		if(spanX <= 0 || spanZ <= 0) {
+			return result;
+		}
+		if(spanX > cells.size() || spanZ > cells.size() || spanX * spanZ > cells.size()) {
+			for(Cell cell : cells.values()) {
+				if(cell.x >= minCellX && cell.x <= maxCellX && cell.z >= minCellZ && cell.z <= maxCellZ) {
+					result.add(cell);
+				}
+			}
+			return result;
+		}
+		// counted from 0, so a range ending at Integer.MAX_VALUE doesn't wrap around
+		for(int i = 0; i < spanX; i++) {
+			for(int j = 0; j < spanZ; j++) {
+				Cell cell = cells.get(key(minCellX + i, minCellZ + j));
+				if(cell != null) {
+					result.add(cell);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fills the scratch list with every cell in use.
+	 */
+	private List<Cell> allCells() {
+		List<Cell> result = scratchCells;
+		result.clear();
+		for(Cell cell : cells.values()) {
+			result.add(cell);
+		}
+		return result;
+	}
+
+	private Cell getOrCreateCell(int x, int z) {
+		Long key = key(x, z);
+		Cell cell = cells.get(key);
+		if(cell == null) {
+			cell = new Cell(x, z);
+			cells.put(key, cell);
+		}
+		return cell;
+	}
+
+	private int cellX(float x) {
+		return (int) Math.floor(x / cellSize);
+	}
+
+	private int cellZ(float z) {
+		return (int) Math.floor(z / cellSize);
+	}
+
+	/**
+	 * Packs the two cell coordinates into one long, x in the high 32 bits and z in the low.
+	 */
+	private static long key(int x, int z) {
+		return ((long) x << 32) | (z & 0xffffffffL);
+	}
+
+	private static float radiusOf(Entity entity) {
+		return entity.getModel().getRawModel().getBoundingRadius() * entity.getScale();
+	}
+
+	/**
+	 * Where in the grid a entity is stored.
+	 */
+	private static class Slot {
+		private Cell cell;
+		private int index;
+
+		private Slot(Cell cell, int index) {
+			this.cell = cell;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * One square of the grid. Besides the entities it remembers the lowest and highest entity and the biggest
+	 * bounding radius in it, so the frustum can reject the whole cell at once. These bounds only grow, so after
+	 * entities have been removed they can be a bit too big, which is safe.
+	 */
+	private class Cell {
+		private final int x;
+		private final int z;
+		private final List<Entity> entities = new ArrayList<Entity>();
+		private float minY = Float.POSITIVE_INFINITY;
+		private float maxY = Float.NEGATIVE_INFINITY;
+		private float maxRadius = 0;
+
+		private Cell(int x, int z) {
+			this.x = x;
+			this.z = z;
+		}
+
+		private Slot add(Entity entity) {
+			entities.add(entity);
+			grow(entity);
+			return new Slot(this, entities.size() - 1);
+		}
+
+		/**
+		 * Removes by moving the last entity into the empty spot, so we don't have to shift the whole list.
+		 */
+		private void remove(int index, Map<Entity, Slot> slots) {
+			int last = entities.size() - 1;
+			if(index != last) {
+				Entity moved = entities.get(last);
+				entities.set(index, moved);
+				slots.get(moved).index = index;
+			}
+			entities.remove(last);
+		}
+
+		private void grow(Entity entity) {
+			float y = entity.getPosition().y;
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+			maxRadius = Math.max(maxRadius, radiusOf(entity));
+			EntityGrid.this.maxRadius = Math.max(EntityGrid.this.maxRadius, maxRadius);
+		}
+
+		private float minX() {
+			return x * cellSize;
+		}
+
+		private float maxX() {
+			return (x + 1) * cellSize;
+		}
+
+		private float minZ() {
+			return z * cellSize;
+		}
+
+		private float maxZ() {
+			return (z + 1) * cellSize;
+		}
+	}
+
+}